@@ -0,0 +1,1605 @@
+/*
+ * Copyright 2010-2011 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+/*
+ * JNI implementation of org.pkcs11.jacknji11.jni.JNI.
+ *
+ * The cryptoki library is loaded with dlopen and all calls go through its
+ * CK_FUNCTION_LIST which is stored in the java JNI.functionList field.
+ * Class and field IDs are looked up once in JNI.init().
+ *
+ * Data buffers for encrypt, decrypt, digest, sign, verify, wrap and random
+ * functions are pinned with GetPrimitiveArrayCritical so the library reads
+ * and writes the java arrays directly, but only while no java mutex or
+ * notify callbacks are registered.  The library may call those callbacks
+ * from inside any function, and calling into java while an array is held
+ * critical is not allowed, so once a callback is registered data buffers
+ * are copied with region copies instead.  A pinned array also holds off
+ * garbage collection until the call returns, so slow tokens are better
+ * used with copies, see JNI.setPinArrays.  Everything else (PINs,
+ * templates, mechanisms, structs) is always copied with region copies,
+ * using stack buffers for small values.
+ *
+ * Author: Joel Hockey (joel.hockey@gmail.com)
+ */
+
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <jni.h>
+
+#ifdef _WIN32
+#include <windows.h>
+#include "cryptoki.h"
+#else
+#include <dlfcn.h>
+#define CK_PTR *
+#define CK_DEFINE_FUNCTION(returnType, name) returnType name
+#define CK_DECLARE_FUNCTION(returnType, name) returnType name
+#define CK_DECLARE_FUNCTION_POINTER(returnType, name) returnType (* name)
+#define CK_CALLBACK_FUNCTION(returnType, name) returnType (* name)
+#ifndef NULL_PTR
+#define NULL_PTR 0
+#endif
+#include "pkcs11.h"
+#endif
+
+#include "org_pkcs11_jacknji11_jni_JNI.h"
+
+/* CK_ULONG to java long, sign extends 4 byte CK_ULONG to match the other providers */
+#define J(v) ((jlong) (CK_LONG) (v))
+/* function list for this JNI instance */
+#define F ((CK_FUNCTION_LIST_PTR) (intptr_t) (*env)->GetLongField(env, self, JNI_functionList))
+#define ALIGN8(len) (((len) + 7) & ~((size_t) 7))
+#define STACK_BYTES 256
+#define STACK_ULONGS 64
+#define STACK_ATTRS 16
+#define STACK_VALUES 1024
+
+static JavaVM *jvm;
+static jclass JNI_class;
+static jclass NativePointer_class;
+static jclass NativePointerByReference_class;
+static jclass PreparedCKM_class;
+static jmethodID NativePointer_init;
+static jmethodID NativePointerByReference_init;
+static jmethodID CK_NOTIFY_invoke;
+static jmethodID CK_CREATEMUTEX_invoke;
+static jmethodID CK_DESTROYMUTEX_invoke;
+static jmethodID CK_LOCKMUTEX_invoke;
+static jmethodID CK_UNLOCKMUTEX_invoke;
+
+static jfieldID JNI_functionList;
+static jfieldID LongRef_value;
+static jfieldID NativePointer_address;
+static jfieldID NativePointerByReference_pointer;
+static jfieldID Pointer_peer;
+static jfieldID CKA_type, CKA_pValue, CKA_ulValueLen, CKA_isSet;
+static jfieldID CKM_mechanism, CKM_pParameter, CKM_ulParameterLen;
+static jfieldID PreparedCKM_address;
+static jfieldID CK_VERSION_major, CK_VERSION_minor;
+static jfieldID CK_INFO_cryptokiVersion, CK_INFO_manufacturerID, CK_INFO_flags,
+    CK_INFO_libraryDescription, CK_INFO_libraryVersion;
+static jfieldID CK_SLOT_INFO_slotDescription, CK_SLOT_INFO_manufacturerID, CK_SLOT_INFO_flags,
+    CK_SLOT_INFO_hardwareVersion, CK_SLOT_INFO_firmwareVersion;
+static jfieldID CK_TOKEN_INFO_label, CK_TOKEN_INFO_manufacturerID, CK_TOKEN_INFO_model,
+    CK_TOKEN_INFO_serialNumber, CK_TOKEN_INFO_flags, CK_TOKEN_INFO_ulMaxSessionCount,
+    CK_TOKEN_INFO_ulSessionCount, CK_TOKEN_INFO_ulMaxRwSessionCount, CK_TOKEN_INFO_ulRwSessionCount,
+    CK_TOKEN_INFO_ulMaxPinLen, CK_TOKEN_INFO_ulMinPinLen, CK_TOKEN_INFO_ulTotalPublicMemory,
+    CK_TOKEN_INFO_ulFreePublicMemory, CK_TOKEN_INFO_ulTotalPrivateMemory,
+    CK_TOKEN_INFO_ulFreePrivateMemory, CK_TOKEN_INFO_hardwareVersion,
+    CK_TOKEN_INFO_firmwareVersion, CK_TOKEN_INFO_utcTime;
+static jfieldID CK_SESSION_INFO_slotID, CK_SESSION_INFO_state, CK_SESSION_INFO_flags,
+    CK_SESSION_INFO_ulDeviceError;
+static jfieldID CK_MECHANISM_INFO_ulMinKeySize, CK_MECHANISM_INFO_ulMaxKeySize, CK_MECHANISM_INFO_flags;
+static jfieldID CK_C_INITIALIZE_ARGS_createMutex, CK_C_INITIALIZE_ARGS_destroyMutex,
+    CK_C_INITIALIZE_ARGS_lockMutex, CK_C_INITIALIZE_ARGS_unlockMutex,
+    CK_C_INITIALIZE_ARGS_flags, CK_C_INITIALIZE_ARGS_pReserved;
+
+/* mutex callbacks from the last successful C_Initialize, process wide */
+static jobject mutexCallbacks[4];
+
+/* notify callbacks for open sessions */
+typedef struct Notify {
+    jobject callback;
+    CK_VOID_PTR application;
+    CK_FUNCTION_LIST_PTR functionList;
+    CK_SLOT_ID slotID;
+    CK_SESSION_HANDLE hSession;
+    struct Notify *next;
+} Notify;
+static Notify *notifies;
+
+#define CLASS(var, name) \
+    if ((var = (*env)->FindClass(env, name)) == NULL) return
+#define FIELD(var, cls, name, sig) \
+    if ((var = (*env)->GetFieldID(env, cls, name, sig)) == NULL) return
+#define METHOD(var, cls, name, sig) \
+    if ((var = (*env)->GetMethodID(env, cls, name, sig)) == NULL) return
+#define VERSION "Lorg/pkcs11/jacknji11/CK_VERSION;"
+
+JNIEXPORT void JNICALL Java_org_pkcs11_jacknji11_jni_JNI_init(JNIEnv *env, jclass cls) {
+    jclass c;
+    if ((*env)->GetJavaVM(env, &jvm) != JNI_OK) return;
+    JNI_class = (*env)->NewGlobalRef(env, cls);
+    FIELD(JNI_functionList, cls, "functionList", "J");
+
+    CLASS(c, "org/pkcs11/jacknji11/LongRef");
+    FIELD(LongRef_value, c, "value", "J");
+
+    CLASS(c, "org/pkcs11/jacknji11/NativePointer");
+    NativePointer_class = (*env)->NewGlobalRef(env, c);
+    FIELD(NativePointer_address, c, "address", "J");
+    METHOD(NativePointer_init, c, "<init>", "(J)V");
+
+    CLASS(c, "org/pkcs11/jacknji11/NativePointerByReference");
+    NativePointerByReference_class = (*env)->NewGlobalRef(env, c);
+    FIELD(NativePointerByReference_pointer, c, "pointer", "Lorg/pkcs11/jacknji11/NativePointer;");
+    METHOD(NativePointerByReference_init, c, "<init>", "(Lorg/pkcs11/jacknji11/NativePointer;)V");
+
+    CLASS(c, "com/sun/jna/Pointer");
+    FIELD(Pointer_peer, c, "peer", "J");
+
+    CLASS(c, "org/pkcs11/jacknji11/CKA");
+    FIELD(CKA_type, c, "type", "J");
+    FIELD(CKA_pValue, c, "pValue", "[B");
+    FIELD(CKA_ulValueLen, c, "ulValueLen", "J");
+    FIELD(CKA_isSet, c, "isSet", "Z");
+
+    CLASS(c, "org/pkcs11/jacknji11/CKM");
+    FIELD(CKM_mechanism, c, "mechanism", "J");
+    FIELD(CKM_pParameter, c, "pParameter", "Lcom/sun/jna/Pointer;");
+    FIELD(CKM_ulParameterLen, c, "ulParameterLen", "J");
+
+    CLASS(c, "org/pkcs11/jacknji11/PreparedCKM");
+    PreparedCKM_class = (*env)->NewGlobalRef(env, c);
+    FIELD(PreparedCKM_address, c, "address", "J");
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_VERSION");
+    FIELD(CK_VERSION_major, c, "major", "B");
+    FIELD(CK_VERSION_minor, c, "minor", "B");
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_INFO");
+    FIELD(CK_INFO_cryptokiVersion, c, "cryptokiVersion", VERSION);
+    FIELD(CK_INFO_manufacturerID, c, "manufacturerID", "[B");
+    FIELD(CK_INFO_flags, c, "flags", "J");
+    FIELD(CK_INFO_libraryDescription, c, "libraryDescription", "[B");
+    FIELD(CK_INFO_libraryVersion, c, "libraryVersion", VERSION);
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_SLOT_INFO");
+    FIELD(CK_SLOT_INFO_slotDescription, c, "slotDescription", "[B");
+    FIELD(CK_SLOT_INFO_manufacturerID, c, "manufacturerID", "[B");
+    FIELD(CK_SLOT_INFO_flags, c, "flags", "J");
+    FIELD(CK_SLOT_INFO_hardwareVersion, c, "hardwareVersion", VERSION);
+    FIELD(CK_SLOT_INFO_firmwareVersion, c, "firmwareVersion", VERSION);
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_TOKEN_INFO");
+    FIELD(CK_TOKEN_INFO_label, c, "label", "[B");
+    FIELD(CK_TOKEN_INFO_manufacturerID, c, "manufacturerID", "[B");
+    FIELD(CK_TOKEN_INFO_model, c, "model", "[B");
+    FIELD(CK_TOKEN_INFO_serialNumber, c, "serialNumber", "[B");
+    FIELD(CK_TOKEN_INFO_flags, c, "flags", "J");
+    FIELD(CK_TOKEN_INFO_ulMaxSessionCount, c, "ulMaxSessionCount", "J");
+    FIELD(CK_TOKEN_INFO_ulSessionCount, c, "ulSessionCount", "J");
+    FIELD(CK_TOKEN_INFO_ulMaxRwSessionCount, c, "ulMaxRwSessionCount", "J");
+    FIELD(CK_TOKEN_INFO_ulRwSessionCount, c, "ulRwSessionCount", "J");
+    FIELD(CK_TOKEN_INFO_ulMaxPinLen, c, "ulMaxPinLen", "J");
+    FIELD(CK_TOKEN_INFO_ulMinPinLen, c, "ulMinPinLen", "J");
+    FIELD(CK_TOKEN_INFO_ulTotalPublicMemory, c, "ulTotalPublicMemory", "J");
+    FIELD(CK_TOKEN_INFO_ulFreePublicMemory, c, "ulFreePublicMemory", "J");
+    FIELD(CK_TOKEN_INFO_ulTotalPrivateMemory, c, "ulTotalPrivateMemory", "J");
+    FIELD(CK_TOKEN_INFO_ulFreePrivateMemory, c, "ulFreePrivateMemory", "J");
+    FIELD(CK_TOKEN_INFO_hardwareVersion, c, "hardwareVersion", VERSION);
+    FIELD(CK_TOKEN_INFO_firmwareVersion, c, "firmwareVersion", VERSION);
+    FIELD(CK_TOKEN_INFO_utcTime, c, "utcTime", "[B");
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_SESSION_INFO");
+    FIELD(CK_SESSION_INFO_slotID, c, "slotID", "J");
+    FIELD(CK_SESSION_INFO_state, c, "state", "J");
+    FIELD(CK_SESSION_INFO_flags, c, "flags", "J");
+    FIELD(CK_SESSION_INFO_ulDeviceError, c, "ulDeviceError", "J");
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_MECHANISM_INFO");
+    FIELD(CK_MECHANISM_INFO_ulMinKeySize, c, "ulMinKeySize", "J");
+    FIELD(CK_MECHANISM_INFO_ulMaxKeySize, c, "ulMaxKeySize", "J");
+    FIELD(CK_MECHANISM_INFO_flags, c, "flags", "J");
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS");
+    FIELD(CK_C_INITIALIZE_ARGS_createMutex, c, "createMutex", "Lorg/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_CREATEMUTEX;");
+    FIELD(CK_C_INITIALIZE_ARGS_destroyMutex, c, "destroyMutex", "Lorg/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_DESTROYMUTEX;");
+    FIELD(CK_C_INITIALIZE_ARGS_lockMutex, c, "lockMutex", "Lorg/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_LOCKMUTEX;");
+    FIELD(CK_C_INITIALIZE_ARGS_unlockMutex, c, "unlockMutex", "Lorg/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_UNLOCKMUTEX;");
+    FIELD(CK_C_INITIALIZE_ARGS_flags, c, "flags", "J");
+    FIELD(CK_C_INITIALIZE_ARGS_pReserved, c, "pReserved", "Lorg/pkcs11/jacknji11/NativePointer;");
+
+    CLASS(c, "org/pkcs11/jacknji11/CK_NOTIFY");
+    METHOD(CK_NOTIFY_invoke, c, "invoke", "(JJLorg/pkcs11/jacknji11/NativePointer;)J");
+    CLASS(c, "org/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_CREATEMUTEX");
+    METHOD(CK_CREATEMUTEX_invoke, c, "invoke", "(Lorg/pkcs11/jacknji11/NativePointerByReference;)J");
+    CLASS(c, "org/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_DESTROYMUTEX");
+    METHOD(CK_DESTROYMUTEX_invoke, c, "invoke", "(Lorg/pkcs11/jacknji11/NativePointer;)J");
+    CLASS(c, "org/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_LOCKMUTEX");
+    METHOD(CK_LOCKMUTEX_invoke, c, "invoke", "(Lorg/pkcs11/jacknji11/NativePointer;)J");
+    CLASS(c, "org/pkcs11/jacknji11/CK_C_INITIALIZE_ARGS$CK_UNLOCKMUTEX");
+    METHOD(CK_UNLOCKMUTEX_invoke, c, "invoke", "(Lorg/pkcs11/jacknji11/NativePointer;)J");
+}
+
+JNIEXPORT jint JNICALL Java_org_pkcs11_jacknji11_jni_JNI_ULongSize(JNIEnv *env, jclass cls) {
+    return (jint) sizeof(CK_ULONG);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_address0(JNIEnv *env, jclass cls, jobject buf) {
+    return (jlong) (intptr_t) (*env)->GetDirectBufferAddress(env, buf);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_load(JNIEnv *env, jclass cls, jstring library) {
+    CK_C_GetFunctionList getFunctionList = NULL;
+    CK_FUNCTION_LIST_PTR functionList = NULL;
+    const char *error = NULL;
+    char msg[1024];
+    const char *name = (*env)->GetStringUTFChars(env, library, NULL);
+    if (name == NULL) {
+        return 0;
+    }
+#ifdef _WIN32
+    HMODULE handle = LoadLibraryA(name);
+    if (handle != NULL) {
+        getFunctionList = (CK_C_GetFunctionList) GetProcAddress(handle, "C_GetFunctionList");
+    }
+#else
+    void *handle = dlopen(name, RTLD_NOW | RTLD_LOCAL);
+    if (handle == NULL) {
+        error = dlerror();
+    } else if ((getFunctionList = (CK_C_GetFunctionList) dlsym(handle, "C_GetFunctionList")) == NULL) {
+        error = dlerror();
+    }
+#endif
+    if (getFunctionList == NULL || getFunctionList(&functionList) != CKR_OK || functionList == NULL) {
+        snprintf(msg, sizeof(msg), "Unable to load cryptoki library '%s': %s", name,
+            error != NULL ? error : "C_GetFunctionList failed");
+        (*env)->ReleaseStringUTFChars(env, library, name);
+        (*env)->ThrowNew(env, (*env)->FindClass(env, "java/lang/UnsatisfiedLinkError"), msg);
+        return 0;
+    }
+    (*env)->ReleaseStringUTFChars(env, library, name);
+    return (jlong) (intptr_t) functionList;
+}
+
+/* LongRef */
+
+static CK_ULONG getRef(JNIEnv *env, jobject ref) {
+    return ref == NULL ? 0 : (CK_ULONG) (*env)->GetLongField(env, ref, LongRef_value);
+}
+
+static void setRef(JNIEnv *env, jobject ref, CK_ULONG value) {
+    if (ref != NULL) {
+        (*env)->SetLongField(env, ref, LongRef_value, J(value));
+    }
+}
+
+static CK_VOID_PTR getPointer(JNIEnv *env, jobject pointer) {
+    return pointer == NULL ? NULL : (CK_VOID_PTR) (intptr_t) (*env)->GetLongField(env, pointer, NativePointer_address);
+}
+
+/* byte[] region copies, uses stack if the array fits */
+
+static jsize arrayLen(JNIEnv *env, jarray a) {
+    return a == NULL ? 0 : (*env)->GetArrayLength(env, a);
+}
+
+static CK_RV copyIn(JNIEnv *env, jbyteArray a, jlong len, CK_BYTE *stack, CK_BYTE_PTR *p) {
+    *p = NULL;
+    if (a == NULL) {
+        return CKR_OK;
+    }
+    if (len < 0 || len > arrayLen(env, a)) {
+        return CKR_ARGUMENTS_BAD;
+    }
+    *p = len <= STACK_BYTES ? stack : (CK_BYTE_PTR) malloc((size_t) len);
+    if (*p == NULL) {
+        return CKR_HOST_MEMORY;
+    }
+    (*env)->GetByteArrayRegion(env, a, 0, (jsize) len, (jbyte *) *p);
+    return CKR_OK;
+}
+
+static void freeIn(CK_BYTE_PTR p, CK_BYTE *stack) {
+    if (p != stack) {
+        free(p);
+    }
+}
+
+/*
+ * byte[] data access.  Arrays are pinned when pinArrays is set and no java
+ * callbacks are registered, otherwise the data is copied into a stack or
+ * malloc buffer and copied back on release.  No JNI calls may be made while
+ * an array is pinned, so LongRef values must be read before and written
+ * after, and all data for a call is got and released together.
+ */
+
+static jboolean pinArrays = JNI_TRUE;
+
+typedef struct Data {
+    jbyteArray a;
+    jint off;
+    CK_BYTE_PTR p;      /* data passed to the library */
+    CK_BYTE_PTR pinned; /* start of the pinned array, NULL if copied */
+    CK_BYTE stack[STACK_BYTES];
+} Data;
+
+/* mutex callbacks may be called from any function, notify callbacks from any function of any session */
+static int pinnable(void) {
+    return pinArrays && notifies == NULL && mutexCallbacks[0] == NULL && mutexCallbacks[1] == NULL
+        && mutexCallbacks[2] == NULL && mutexCallbacks[3] == NULL;
+}
+
+/* len bytes at off, copied in if copyIn is set */
+static CK_RV dataGet(JNIEnv *env, Data *d, int pin, jbyteArray a, jint off, CK_ULONG len, int copyIn) {
+    d->a = a;
+    d->off = off;
+    d->p = NULL;
+    d->pinned = NULL;
+    if (a == NULL) {
+        return CKR_OK;
+    }
+    if (pin) {
+        d->pinned = (CK_BYTE_PTR) (*env)->GetPrimitiveArrayCritical(env, a, NULL);
+        if (d->pinned == NULL) {
+            return CKR_HOST_MEMORY;
+        }
+        d->p = d->pinned + off;
+        return CKR_OK;
+    }
+    d->p = len <= STACK_BYTES ? d->stack : (CK_BYTE_PTR) malloc((size_t) len);
+    if (d->p == NULL) {
+        return CKR_HOST_MEMORY;
+    }
+    if (copyIn && len > 0) {
+        (*env)->GetByteArrayRegion(env, a, off, (jsize) len, (jbyte *) d->p);
+    }
+    return CKR_OK;
+}
+
+/* releases data, out bytes written by the library are copied back to the array */
+static void dataRelease(JNIEnv *env, Data *d, CK_ULONG out) {
+    if (d->pinned != NULL) {
+        (*env)->ReleasePrimitiveArrayCritical(env, d->a, d->pinned, out > 0 ? 0 : JNI_ABORT);
+    } else if (d->p != NULL) {
+        if (out > 0) {
+            (*env)->SetByteArrayRegion(env, d->a, d->off, (jsize) out, (jbyte *) d->p);
+        }
+        if (d->p != d->stack) {
+            free(d->p);
+        }
+    }
+    d->p = NULL;
+    d->pinned = NULL;
+}
+
+/* bytes to copy back after a call that writes len bytes into an output of max bytes */
+static CK_ULONG written(CK_RV rv, CK_ULONG len, CK_ULONG max) {
+    return rv == CKR_OK ? (len < max ? len : max) : 0;
+}
+
+JNIEXPORT void JNICALL Java_org_pkcs11_jacknji11_jni_JNI_setPinArrays(JNIEnv *env, jclass cls, jboolean pin) {
+    pinArrays = pin;
+}
+
+/*
+ * Data offset and length checks so the library never reads or writes past the end
+ * of a pinned array.  Output offsets are checked with badIn and a len of 0.
+ */
+
+static int badIn(JNIEnv *env, jbyteArray a, jint off, jlong len) {
+    jsize max = arrayLen(env, a);
+    return a != NULL && (off < 0 || len < 0 || off > max || len > max - off);
+}
+
+static CK_ULONG clampOut(JNIEnv *env, jbyteArray a, jint off, CK_ULONG len) {
+    jsize max = arrayLen(env, a) - off;
+    return a != NULL && len > (CK_ULONG) max ? (CK_ULONG) max : len;
+}
+
+/* long[] to CK_ULONG[] */
+
+static CK_RV ulongsIn(JNIEnv *env, jlongArray a, CK_ULONG *stack, CK_ULONG_PTR *p) {
+    jsize i, len = arrayLen(env, a);
+    jlong *tmp;
+    *p = NULL;
+    if (a == NULL) {
+        return CKR_OK;
+    }
+    *p = len <= STACK_ULONGS ? stack : (CK_ULONG_PTR) malloc(len * sizeof(CK_ULONG) + 1);
+    if (*p == NULL) {
+        return CKR_HOST_MEMORY;
+    }
+    if (sizeof(CK_ULONG) == sizeof(jlong)) {
+        (*env)->GetLongArrayRegion(env, a, 0, len, (jlong *) *p);
+    } else {
+        tmp = (*env)->GetLongArrayElements(env, a, NULL);
+        for (i = 0; i < len; i++) {
+            (*p)[i] = (CK_ULONG) tmp[i];
+        }
+        (*env)->ReleaseLongArrayElements(env, a, tmp, JNI_ABORT);
+    }
+    return CKR_OK;
+}
+
+static void ulongsOut(JNIEnv *env, jlongArray a, CK_ULONG_PTR p, CK_ULONG *stack) {
+    jsize i, len = arrayLen(env, a);
+    jlong *tmp;
+    if (p == NULL) {
+        return;
+    }
+    if (sizeof(CK_ULONG) == sizeof(jlong)) {
+        (*env)->SetLongArrayRegion(env, a, 0, len, (jlong *) p);
+    } else {
+        tmp = (*env)->GetLongArrayElements(env, a, NULL);
+        for (i = 0; i < len; i++) {
+            tmp[i] = J(p[i]);
+        }
+        (*env)->ReleaseLongArrayElements(env, a, tmp, 0);
+    }
+    if (p != stack) {
+        free(p);
+    }
+}
+
+/* CKM, the parameter is already in native memory held by a JNA Pointer,
+   PreparedCKM also holds the whole CK_MECHANISM struct.  Returns NULL with
+   IllegalStateException pending if a PreparedCKM has been closed. */
+
+static CK_MECHANISM_PTR getMechanism(JNIEnv *env, jobject ckm, CK_MECHANISM_PTR mechanism) {
+    jobject param;
+    jlong address;
+    if (ckm == NULL) {
+        return NULL;
+    }
+    if ((*env)->IsInstanceOf(env, ckm, PreparedCKM_class)) {
+        address = (*env)->GetLongField(env, ckm, PreparedCKM_address);
+        if (address == 0) {
+            (*env)->ThrowNew(env, (*env)->FindClass(env, "java/lang/IllegalStateException"), "PreparedCKM is closed");
+            return NULL;
+        }
+        return (CK_MECHANISM_PTR) (intptr_t) address;
+    }
+    mechanism->mechanism = (CK_MECHANISM_TYPE) (*env)->GetLongField(env, ckm, CKM_mechanism);
+    param = (*env)->GetObjectField(env, ckm, CKM_pParameter);
+    mechanism->pParameter = param == NULL ? NULL : (CK_VOID_PTR) (intptr_t) (*env)->GetLongField(env, param, Pointer_peer);
+    (*env)->DeleteLocalRef(env, param);
+    mechanism->ulParameterLen = (CK_ULONG) (*env)->GetLongField(env, ckm, CKM_ulParameterLen);
+    return mechanism;
+}
+
+/* CKA[], attribute array and values in one block, on the stack for small templates */
+
+typedef struct {
+    CK_ATTRIBUTE_PTR attrs;
+    CK_ULONG count;
+    void *heap;
+    CK_ATTRIBUTE stack[STACK_ATTRS];
+    CK_BYTE stackValues[STACK_VALUES];
+} Template;
+
+static CK_RV templateIn(JNIEnv *env, jobjectArray list, Template *t) {
+    jsize i, n = arrayLen(env, list);
+    size_t valuesLen = 0;
+    CK_BYTE_PTR values;
+    jobject cka;
+    jbyteArray pValue;
+    jlong len;
+
+    t->attrs = NULL;
+    t->count = 0;
+    t->heap = NULL;
+    if (n == 0) {
+        return CKR_OK;
+    }
+    for (i = 0; i < n; i++) {
+        cka = (*env)->GetObjectArrayElement(env, list, i);
+        len = (*env)->GetLongField(env, cka, CKA_ulValueLen);
+        valuesLen += len > 0 ? ALIGN8((size_t) len) : 0;
+        (*env)->DeleteLocalRef(env, cka);
+    }
+    if (n <= STACK_ATTRS && valuesLen <= STACK_VALUES) {
+        t->attrs = t->stack;
+        values = t->stackValues;
+    } else {
+        t->heap = malloc(n * sizeof(CK_ATTRIBUTE) + valuesLen);
+        if (t->heap == NULL) {
+            return CKR_HOST_MEMORY;
+        }
+        t->attrs = (CK_ATTRIBUTE_PTR) t->heap;
+        values = (CK_BYTE_PTR) (t->attrs + n);
+    }
+    t->count = n;
+    for (i = 0; i < n; i++) {
+        cka = (*env)->GetObjectArrayElement(env, list, i);
+        len = (*env)->GetLongField(env, cka, CKA_ulValueLen);
+        t->attrs[i].type = (CK_ATTRIBUTE_TYPE) (*env)->GetLongField(env, cka, CKA_type);
+        t->attrs[i].pValue = NULL;
+        t->attrs[i].ulValueLen = (CK_ULONG) len;
+        if (len > 0) {
+            pValue = (jbyteArray) (*env)->GetObjectField(env, cka, CKA_pValue);
+            if (len > arrayLen(env, pValue)) {
+                (*env)->DeleteLocalRef(env, pValue);
+                (*env)->DeleteLocalRef(env, cka);
+                free(t->heap);
+                t->heap = NULL;
+                return CKR_ARGUMENTS_BAD;
+            }
+            (*env)->GetByteArrayRegion(env, pValue, 0, (jsize) len, (jbyte *) values);
+            t->attrs[i].pValue = values;
+            values += ALIGN8((size_t) len);
+            (*env)->DeleteLocalRef(env, pValue);
+        }
+        (*env)->DeleteLocalRef(env, cka);
+    }
+    return CKR_OK;
+}
+
+/* reads values and lengths written by the library back into CKA[] and frees the template */
+static void templateOut(JNIEnv *env, jobjectArray list, Template *t) {
+    CK_ULONG i;
+    jobject cka;
+    jbyteArray pValue;
+    jlong allocated;
+    CK_ULONG len;
+
+    for (i = 0; i < t->count; i++) {
+        cka = (*env)->GetObjectArrayElement(env, list, (jsize) i);
+        allocated = (*env)->GetLongField(env, cka, CKA_ulValueLen);
+        len = t->attrs[i].ulValueLen;
+        if (t->attrs[i].pValue != NULL && len != CK_UNAVAILABLE_INFORMATION && len > 0) {
+            pValue = (jbyteArray) (*env)->GetObjectField(env, cka, CKA_pValue);
+            (*env)->SetByteArrayRegion(env, pValue, 0,
+                (jsize) (len < (CK_ULONG) allocated ? len : (CK_ULONG) allocated), (jbyte *) t->attrs[i].pValue);
+            (*env)->DeleteLocalRef(env, pValue);
+        }
+        (*env)->SetLongField(env, cka, CKA_ulValueLen, J(len));
+        (*env)->SetBooleanField(env, cka, CKA_isSet, JNI_TRUE);
+        (*env)->DeleteLocalRef(env, cka);
+    }
+}
+
+static void templateFree(Template *t) {
+    free(t->heap);
+}
+
+/* structs */
+
+static void setBytes(JNIEnv *env, jobject obj, jfieldID fid, CK_BYTE_PTR src, jsize len) {
+    jbyteArray a = (jbyteArray) (*env)->GetObjectField(env, obj, fid);
+    if (a == NULL || arrayLen(env, a) != len) {
+        (*env)->DeleteLocalRef(env, a);
+        a = (*env)->NewByteArray(env, len);
+        (*env)->SetObjectField(env, obj, fid, a);
+    }
+    (*env)->SetByteArrayRegion(env, a, 0, len, (jbyte *) src);
+    (*env)->DeleteLocalRef(env, a);
+}
+
+static void setVersion(JNIEnv *env, jobject obj, jfieldID fid, CK_VERSION *version) {
+    jobject v = (*env)->GetObjectField(env, obj, fid);
+    if (v != NULL) {
+        (*env)->SetByteField(env, v, CK_VERSION_major, (jbyte) version->major);
+        (*env)->SetByteField(env, v, CK_VERSION_minor, (jbyte) version->minor);
+        (*env)->DeleteLocalRef(env, v);
+    }
+}
+
+/* callbacks */
+
+static JNIEnv *attach(int *attached) {
+    JNIEnv *env = NULL;
+    *attached = 0;
+    if ((*jvm)->GetEnv(jvm, (void **) &env, JNI_VERSION_1_6) == JNI_EDETACHED) {
+        if ((*jvm)->AttachCurrentThread(jvm, (void **) &env, NULL) != JNI_OK) {
+            return NULL;
+        }
+        *attached = 1;
+    }
+    return env;
+}
+
+static CK_RV detach(JNIEnv *env, int attached, jlong rv) {
+    if ((*env)->ExceptionCheck(env)) {
+        // exceptions must not propagate into the library
+        (*env)->ExceptionClear(env);
+        rv = CKR_GENERAL_ERROR;
+    }
+    if (attached) {
+        (*jvm)->DetachCurrentThread(jvm);
+    }
+    return (CK_RV) rv;
+}
+
+static jobject newPointer(JNIEnv *env, CK_VOID_PTR p) {
+    return (*env)->NewObject(env, NativePointer_class, NativePointer_init, (jlong) (intptr_t) p);
+}
+
+static CK_RV notifyCallback(CK_SESSION_HANDLE hSession, CK_NOTIFICATION event, CK_VOID_PTR pApplication) {
+    Notify *n = (Notify *) pApplication;
+    int attached;
+    jlong rv = CKR_GENERAL_ERROR;
+    jobject app;
+    JNIEnv *env = attach(&attached);
+    if (env == NULL) {
+        return CKR_GENERAL_ERROR;
+    }
+    app = newPointer(env, n->application);
+    if (app != NULL) {
+        rv = (*env)->CallLongMethod(env, n->callback, CK_NOTIFY_invoke, J(hSession), J(event), app);
+        (*env)->DeleteLocalRef(env, app);
+    }
+    return detach(env, attached, rv);
+}
+
+static CK_RV createMutex(CK_VOID_PTR_PTR ppMutex) {
+    int attached;
+    jlong rv = CKR_GENERAL_ERROR;
+    jobject mutex, ref;
+    JNIEnv *env = attach(&attached);
+    if (env == NULL) {
+        return CKR_GENERAL_ERROR;
+    }
+    mutex = newPointer(env, NULL);
+    ref = mutex == NULL ? NULL : (*env)->NewObject(env, NativePointerByReference_class, NativePointerByReference_init, mutex);
+    if (ref != NULL) {
+        rv = (*env)->CallLongMethod(env, mutexCallbacks[0], CK_CREATEMUTEX_invoke, ref);
+        (*env)->DeleteLocalRef(env, mutex);
+        mutex = NULL;
+        if (!(*env)->ExceptionCheck(env)) {
+            mutex = (*env)->GetObjectField(env, ref, NativePointerByReference_pointer);
+            *ppMutex = getPointer(env, mutex);
+        }
+        (*env)->DeleteLocalRef(env, ref);
+    }
+    (*env)->DeleteLocalRef(env, mutex);
+    return detach(env, attached, rv);
+}
+
+static CK_RV mutexCallback(int i, jmethodID invoke, CK_VOID_PTR pMutex) {
+    int attached;
+    jlong rv = CKR_GENERAL_ERROR;
+    jobject mutex;
+    JNIEnv *env = attach(&attached);
+    if (env == NULL) {
+        return CKR_GENERAL_ERROR;
+    }
+    mutex = newPointer(env, pMutex);
+    if (mutex != NULL) {
+        rv = (*env)->CallLongMethod(env, mutexCallbacks[i], invoke, mutex);
+        (*env)->DeleteLocalRef(env, mutex);
+    }
+    return detach(env, attached, rv);
+}
+
+static CK_RV destroyMutex(CK_VOID_PTR pMutex) {
+    return mutexCallback(1, CK_DESTROYMUTEX_invoke, pMutex);
+}
+
+static CK_RV lockMutex(CK_VOID_PTR pMutex) {
+    return mutexCallback(2, CK_LOCKMUTEX_invoke, pMutex);
+}
+
+static CK_RV unlockMutex(CK_VOID_PTR pMutex) {
+    return mutexCallback(3, CK_UNLOCKMUTEX_invoke, pMutex);
+}
+
+static void setMutexCallback(JNIEnv *env, jobject args, jfieldID fid, int i) {
+    jobject callback = (*env)->GetObjectField(env, args, fid);
+    if (mutexCallbacks[i] != NULL) {
+        (*env)->DeleteGlobalRef(env, mutexCallbacks[i]);
+    }
+    mutexCallbacks[i] = callback == NULL ? NULL : (*env)->NewGlobalRef(env, callback);
+    (*env)->DeleteLocalRef(env, callback);
+}
+
+/* frees notify callbacks for sessions that have been closed, hSession 0 matches all sessions */
+static void freeNotifies(JNIEnv *env, CK_FUNCTION_LIST_PTR functionList, CK_SLOT_ID slotID, CK_SESSION_HANDLE hSession, int all) {
+    Notify **pn, *n;
+    (*env)->MonitorEnter(env, JNI_class);
+    pn = &notifies;
+    while ((n = *pn) != NULL) {
+        if (n->functionList == functionList && (all || (hSession != 0 ? n->hSession == hSession : n->slotID == slotID))) {
+            *pn = n->next;
+            (*env)->DeleteGlobalRef(env, n->callback);
+            free(n);
+        } else {
+            pn = &n->next;
+        }
+    }
+    (*env)->MonitorExit(env, JNI_class);
+}
+
+/* common function shapes */
+
+typedef CK_RV (*InOutFn)(CK_SESSION_HANDLE, CK_BYTE_PTR, CK_ULONG, CK_BYTE_PTR, CK_ULONG_PTR);
+typedef CK_RV (*InFn)(CK_SESSION_HANDLE, CK_BYTE_PTR, CK_ULONG);
+typedef CK_RV (*OutFn)(CK_SESSION_HANDLE, CK_BYTE_PTR, CK_ULONG_PTR);
+typedef CK_RV (*InitFn)(CK_SESSION_HANDLE, CK_MECHANISM_PTR, CK_OBJECT_HANDLE);
+
+static jlong inOutAt(JNIEnv *env, InOutFn fn, jlong hSession, jbyteArray in, jint inOff, jlong inLen, jbyteArray out, jint outOff, jobject outLen) {
+    CK_ULONG len, max;
+    Data dIn, dOut;
+    CK_RV rv;
+    int pin = pinnable();
+    if (badIn(env, in, inOff, inLen) || badIn(env, out, outOff, 0)) {
+        return CKR_ARGUMENTS_BAD;
+    }
+    len = max = clampOut(env, out, outOff, getRef(env, outLen));
+    rv = dataGet(env, &dIn, pin, in, inOff, (CK_ULONG) inLen, 1);
+    if (rv == CKR_OK) {
+        rv = dataGet(env, &dOut, pin, out, outOff, max, 0);
+        if (rv == CKR_OK) {
+            rv = fn((CK_SESSION_HANDLE) hSession, dIn.p, (CK_ULONG) inLen, dOut.p, &len);
+        }
+        dataRelease(env, &dOut, written(rv, len, max));
+    }
+    dataRelease(env, &dIn, 0);
+    setRef(env, outLen, len);
+    return J(rv);
+}
+
+static jlong inOut(JNIEnv *env, InOutFn fn, jlong hSession, jbyteArray in, jlong inLen, jbyteArray out, jobject outLen) {
+    return inOutAt(env, fn, hSession, in, 0, inLen, out, 0, outLen);
+}
+
+/* in is read by fn, or written if out is set */
+static jlong inOnlyAt(JNIEnv *env, InFn fn, jlong hSession, jbyteArray in, jint inOff, jlong inLen, int out) {
+    Data dIn;
+    CK_RV rv;
+    if (badIn(env, in, inOff, inLen)) {
+        return CKR_ARGUMENTS_BAD;
+    }
+    rv = dataGet(env, &dIn, pinnable(), in, inOff, (CK_ULONG) inLen, !out);
+    if (rv == CKR_OK) {
+        rv = fn((CK_SESSION_HANDLE) hSession, dIn.p, (CK_ULONG) inLen);
+    }
+    dataRelease(env, &dIn, out ? written(rv, (CK_ULONG) inLen, (CK_ULONG) inLen) : 0);
+    return J(rv);
+}
+
+static jlong inOnly(JNIEnv *env, InFn fn, jlong hSession, jbyteArray in, jlong inLen, int out) {
+    return inOnlyAt(env, fn, hSession, in, 0, inLen, out);
+}
+
+static jlong outOnlyAt(JNIEnv *env, OutFn fn, jlong hSession, jbyteArray out, jint outOff, jobject outLen) {
+    CK_ULONG len, max;
+    Data dOut;
+    CK_RV rv;
+    if (badIn(env, out, outOff, 0)) {
+        return CKR_ARGUMENTS_BAD;
+    }
+    len = max = clampOut(env, out, outOff, getRef(env, outLen));
+    rv = dataGet(env, &dOut, pinnable(), out, outOff, max, 0);
+    if (rv == CKR_OK) {
+        rv = fn((CK_SESSION_HANDLE) hSession, dOut.p, &len);
+    }
+    dataRelease(env, &dOut, written(rv, len, max));
+    setRef(env, outLen, len);
+    return J(rv);
+}
+
+static jlong outOnly(JNIEnv *env, OutFn fn, jlong hSession, jbyteArray out, jobject outLen) {
+    return outOnlyAt(env, fn, hSession, out, 0, outLen);
+}
+
+static jlong inOutAddr(JNIEnv *env, InOutFn fn, jlong hSession, jlong in, jlong inLen, jlong out, jobject outLen) {
+    CK_ULONG len = getRef(env, outLen);
+    CK_RV rv = fn((CK_SESSION_HANDLE) hSession, (CK_BYTE_PTR) (intptr_t) in, (CK_ULONG) inLen, (CK_BYTE_PTR) (intptr_t) out, &len);
+    setRef(env, outLen, len);
+    return J(rv);
+}
+
+static jlong inOnlyAddr(JNIEnv *env, InFn fn, jlong hSession, jlong in, jlong inLen) {
+    return J(fn((CK_SESSION_HANDLE) hSession, (CK_BYTE_PTR) (intptr_t) in, (CK_ULONG) inLen));
+}
+
+static jlong outOnlyAddr(JNIEnv *env, OutFn fn, jlong hSession, jlong out, jobject outLen) {
+    CK_ULONG len = getRef(env, outLen);
+    CK_RV rv = fn((CK_SESSION_HANDLE) hSession, (CK_BYTE_PTR) (intptr_t) out, &len);
+    setRef(env, outLen, len);
+    return J(rv);
+}
+
+static jlong initOp(JNIEnv *env, InitFn fn, jlong hSession, jobject ckm, jlong hKey) {
+    CK_MECHANISM mechanism;
+    CK_MECHANISM_PTR pMech = getMechanism(env, ckm, &mechanism);
+    if (pMech == NULL && ckm != NULL) {
+        return J(CKR_ARGUMENTS_BAD);
+    }
+    return J(fn((CK_SESSION_HANDLE) hSession, pMech, (CK_OBJECT_HANDLE) hKey));
+}
+
+/* NativeProvider */
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Initialize(JNIEnv *env, jobject self, jobject pInitArgs) {
+    CK_C_INITIALIZE_ARGS args;
+    CK_RV rv;
+    if (pInitArgs == NULL) {
+        return J(F->C_Initialize(NULL));
+    }
+    memset(&args, 0, sizeof(args));
+    setMutexCallback(env, pInitArgs, CK_C_INITIALIZE_ARGS_createMutex, 0);
+    setMutexCallback(env, pInitArgs, CK_C_INITIALIZE_ARGS_destroyMutex, 1);
+    setMutexCallback(env, pInitArgs, CK_C_INITIALIZE_ARGS_lockMutex, 2);
+    setMutexCallback(env, pInitArgs, CK_C_INITIALIZE_ARGS_unlockMutex, 3);
+    args.CreateMutex = mutexCallbacks[0] != NULL ? createMutex : NULL;
+    args.DestroyMutex = mutexCallbacks[1] != NULL ? destroyMutex : NULL;
+    args.LockMutex = mutexCallbacks[2] != NULL ? lockMutex : NULL;
+    args.UnlockMutex = mutexCallbacks[3] != NULL ? unlockMutex : NULL;
+    args.flags = (CK_FLAGS) (*env)->GetLongField(env, pInitArgs, CK_C_INITIALIZE_ARGS_flags);
+    jobject pReserved = (*env)->GetObjectField(env, pInitArgs, CK_C_INITIALIZE_ARGS_pReserved);
+    args.pReserved = getPointer(env, pReserved);
+    (*env)->DeleteLocalRef(env, pReserved);
+    rv = F->C_Initialize(&args);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Finalize(JNIEnv *env, jobject self, jobject pReserved) {
+    CK_FUNCTION_LIST_PTR functionList = F;
+    CK_RV rv = functionList->C_Finalize(getPointer(env, pReserved));
+    if (rv == CKR_OK) {
+        freeNotifies(env, functionList, 0, 0, 1);
+    }
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetInfo(JNIEnv *env, jobject self, jobject pInfo) {
+    CK_INFO info;
+    CK_RV rv;
+    memset(&info, 0, sizeof(info));
+    rv = F->C_GetInfo(&info);
+    setVersion(env, pInfo, CK_INFO_cryptokiVersion, &info.cryptokiVersion);
+    setBytes(env, pInfo, CK_INFO_manufacturerID, info.manufacturerID, sizeof(info.manufacturerID));
+    (*env)->SetLongField(env, pInfo, CK_INFO_flags, J(info.flags));
+    setBytes(env, pInfo, CK_INFO_libraryDescription, info.libraryDescription, sizeof(info.libraryDescription));
+    setVersion(env, pInfo, CK_INFO_libraryVersion, &info.libraryVersion);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetSlotList(JNIEnv *env, jobject self, jboolean tokenPresent, jlongArray pSlotList, jobject pulCount) {
+    CK_ULONG stack[STACK_ULONGS];
+    CK_ULONG_PTR list;
+    CK_ULONG count = getRef(env, pulCount);
+    CK_RV rv = ulongsIn(env, pSlotList, stack, &list);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    if (pSlotList != NULL && count > (CK_ULONG) arrayLen(env, pSlotList)) {
+        count = (CK_ULONG) arrayLen(env, pSlotList);
+    }
+    rv = F->C_GetSlotList(tokenPresent ? CK_TRUE : CK_FALSE, list, &count);
+    ulongsOut(env, pSlotList, list, stack);
+    setRef(env, pulCount, count);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetSlotInfo(JNIEnv *env, jobject self, jlong slotID, jobject pInfo) {
+    CK_SLOT_INFO info;
+    CK_RV rv;
+    memset(&info, 0, sizeof(info));
+    rv = F->C_GetSlotInfo((CK_SLOT_ID) slotID, &info);
+    setBytes(env, pInfo, CK_SLOT_INFO_slotDescription, info.slotDescription, sizeof(info.slotDescription));
+    setBytes(env, pInfo, CK_SLOT_INFO_manufacturerID, info.manufacturerID, sizeof(info.manufacturerID));
+    (*env)->SetLongField(env, pInfo, CK_SLOT_INFO_flags, J(info.flags));
+    setVersion(env, pInfo, CK_SLOT_INFO_hardwareVersion, &info.hardwareVersion);
+    setVersion(env, pInfo, CK_SLOT_INFO_firmwareVersion, &info.firmwareVersion);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetTokenInfo(JNIEnv *env, jobject self, jlong slotID, jobject pInfo) {
+    CK_TOKEN_INFO info;
+    CK_RV rv;
+    memset(&info, 0, sizeof(info));
+    rv = F->C_GetTokenInfo((CK_SLOT_ID) slotID, &info);
+    setBytes(env, pInfo, CK_TOKEN_INFO_label, info.label, sizeof(info.label));
+    setBytes(env, pInfo, CK_TOKEN_INFO_manufacturerID, info.manufacturerID, sizeof(info.manufacturerID));
+    setBytes(env, pInfo, CK_TOKEN_INFO_model, info.model, sizeof(info.model));
+    setBytes(env, pInfo, CK_TOKEN_INFO_serialNumber, info.serialNumber, sizeof(info.serialNumber));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_flags, J(info.flags));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulMaxSessionCount, J(info.ulMaxSessionCount));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulSessionCount, J(info.ulSessionCount));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulMaxRwSessionCount, J(info.ulMaxRwSessionCount));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulRwSessionCount, J(info.ulRwSessionCount));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulMaxPinLen, J(info.ulMaxPinLen));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulMinPinLen, J(info.ulMinPinLen));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulTotalPublicMemory, J(info.ulTotalPublicMemory));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulFreePublicMemory, J(info.ulFreePublicMemory));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulTotalPrivateMemory, J(info.ulTotalPrivateMemory));
+    (*env)->SetLongField(env, pInfo, CK_TOKEN_INFO_ulFreePrivateMemory, J(info.ulFreePrivateMemory));
+    setVersion(env, pInfo, CK_TOKEN_INFO_hardwareVersion, &info.hardwareVersion);
+    setVersion(env, pInfo, CK_TOKEN_INFO_firmwareVersion, &info.firmwareVersion);
+    setBytes(env, pInfo, CK_TOKEN_INFO_utcTime, info.utcTime, sizeof(info.utcTime));
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1WaitForSlotEvent(JNIEnv *env, jobject self, jlong flags, jobject pSlot, jobject pReserved) {
+    CK_SLOT_ID slot = getRef(env, pSlot);
+    CK_RV rv = F->C_WaitForSlotEvent((CK_FLAGS) flags, &slot, getPointer(env, pReserved));
+    setRef(env, pSlot, slot);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetMechanismList(JNIEnv *env, jobject self, jlong slotID, jlongArray pMechanismList, jobject pulCount) {
+    CK_ULONG stack[STACK_ULONGS];
+    CK_ULONG_PTR list;
+    CK_ULONG count = getRef(env, pulCount);
+    CK_RV rv = ulongsIn(env, pMechanismList, stack, &list);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    if (pMechanismList != NULL && count > (CK_ULONG) arrayLen(env, pMechanismList)) {
+        count = (CK_ULONG) arrayLen(env, pMechanismList);
+    }
+    rv = F->C_GetMechanismList((CK_SLOT_ID) slotID, list, &count);
+    ulongsOut(env, pMechanismList, list, stack);
+    setRef(env, pulCount, count);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetMechanismInfo(JNIEnv *env, jobject self, jlong slotID, jlong type, jobject pInfo) {
+    CK_MECHANISM_INFO info;
+    CK_RV rv;
+    memset(&info, 0, sizeof(info));
+    rv = F->C_GetMechanismInfo((CK_SLOT_ID) slotID, (CK_MECHANISM_TYPE) type, &info);
+    (*env)->SetLongField(env, pInfo, CK_MECHANISM_INFO_ulMinKeySize, J(info.ulMinKeySize));
+    (*env)->SetLongField(env, pInfo, CK_MECHANISM_INFO_ulMaxKeySize, J(info.ulMaxKeySize));
+    (*env)->SetLongField(env, pInfo, CK_MECHANISM_INFO_flags, J(info.flags));
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1InitToken(JNIEnv *env, jobject self, jlong slotID, jbyteArray pPin, jlong ulPinLen, jbyteArray pLabel32) {
+    CK_BYTE stack[STACK_BYTES];
+    CK_BYTE label[32];
+    CK_BYTE_PTR pin;
+    CK_RV rv = copyIn(env, pPin, ulPinLen, stack, &pin);
+    jsize labelLen = arrayLen(env, pLabel32);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    // label is always 32 bytes, blank padded
+    memset(label, ' ', sizeof(label));
+    if (pLabel32 != NULL) {
+        (*env)->GetByteArrayRegion(env, pLabel32, 0, labelLen < 32 ? labelLen : 32, (jbyte *) label);
+    }
+    rv = F->C_InitToken((CK_SLOT_ID) slotID, pin, (CK_ULONG) ulPinLen, pLabel32 == NULL ? NULL : label);
+    freeIn(pin, stack);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1InitPIN(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPin, jlong ulPinLen) {
+    CK_BYTE stack[STACK_BYTES];
+    CK_BYTE_PTR pin;
+    CK_RV rv = copyIn(env, pPin, ulPinLen, stack, &pin);
+    if (rv == CKR_OK) {
+        rv = F->C_InitPIN((CK_SESSION_HANDLE) hSession, pin, (CK_ULONG) ulPinLen);
+        freeIn(pin, stack);
+    }
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SetPIN(JNIEnv *env, jobject self, jlong hSession, jbyteArray pOldPin, jlong ulOldLen, jbyteArray pNewPin, jlong ulNewLen) {
+    CK_BYTE oldStack[STACK_BYTES];
+    CK_BYTE newStack[STACK_BYTES];
+    CK_BYTE_PTR oldPin, newPin;
+    CK_RV rv = copyIn(env, pOldPin, ulOldLen, oldStack, &oldPin);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = copyIn(env, pNewPin, ulNewLen, newStack, &newPin);
+    if (rv == CKR_OK) {
+        rv = F->C_SetPIN((CK_SESSION_HANDLE) hSession, oldPin, (CK_ULONG) ulOldLen, newPin, (CK_ULONG) ulNewLen);
+        freeIn(newPin, newStack);
+    }
+    freeIn(oldPin, oldStack);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1OpenSession(JNIEnv *env, jobject self, jlong slotID, jlong flags, jobject application, jobject notify, jobject phSession) {
+    CK_FUNCTION_LIST_PTR functionList = F;
+    CK_SESSION_HANDLE hSession = getRef(env, phSession);
+    CK_VOID_PTR app = getPointer(env, application);
+    Notify *n = NULL;
+    CK_RV rv;
+    if (notify != NULL) {
+        // pass our own struct as pApplication so the callback can find the java object
+        if ((n = (Notify *) calloc(1, sizeof(Notify))) == NULL) {
+            return CKR_HOST_MEMORY;
+        }
+        n->callback = (*env)->NewGlobalRef(env, notify);
+        n->application = app;
+        n->functionList = functionList;
+        n->slotID = (CK_SLOT_ID) slotID;
+    }
+    rv = functionList->C_OpenSession((CK_SLOT_ID) slotID, (CK_FLAGS) flags, n != NULL ? (CK_VOID_PTR) n : app,
+        n != NULL ? notifyCallback : NULL, &hSession);
+    if (n != NULL) {
+        if (rv == CKR_OK) {
+            n->hSession = hSession;
+            (*env)->MonitorEnter(env, JNI_class);
+            n->next = notifies;
+            notifies = n;
+            (*env)->MonitorExit(env, JNI_class);
+        } else {
+            (*env)->DeleteGlobalRef(env, n->callback);
+            free(n);
+        }
+    }
+    setRef(env, phSession, hSession);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1CloseSession(JNIEnv *env, jobject self, jlong hSession) {
+    CK_FUNCTION_LIST_PTR functionList = F;
+    CK_RV rv = functionList->C_CloseSession((CK_SESSION_HANDLE) hSession);
+    if (rv == CKR_OK && notifies != NULL) {
+        freeNotifies(env, functionList, 0, (CK_SESSION_HANDLE) hSession, 0);
+    }
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1CloseAllSessions(JNIEnv *env, jobject self, jlong slotID) {
+    CK_FUNCTION_LIST_PTR functionList = F;
+    CK_RV rv = functionList->C_CloseAllSessions((CK_SLOT_ID) slotID);
+    if (rv == CKR_OK && notifies != NULL) {
+        freeNotifies(env, functionList, (CK_SLOT_ID) slotID, 0, 0);
+    }
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetSessionInfo(JNIEnv *env, jobject self, jlong hSession, jobject pInfo) {
+    CK_SESSION_INFO info;
+    CK_RV rv;
+    memset(&info, 0, sizeof(info));
+    rv = F->C_GetSessionInfo((CK_SESSION_HANDLE) hSession, &info);
+    (*env)->SetLongField(env, pInfo, CK_SESSION_INFO_slotID, J(info.slotID));
+    (*env)->SetLongField(env, pInfo, CK_SESSION_INFO_state, J(info.state));
+    (*env)->SetLongField(env, pInfo, CK_SESSION_INFO_flags, J(info.flags));
+    (*env)->SetLongField(env, pInfo, CK_SESSION_INFO_ulDeviceError, J(info.ulDeviceError));
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetOperationState(JNIEnv *env, jobject self, jlong hSession, jbyteArray pOperationState, jobject pulOperationStateLen) {
+    return outOnly(env, F->C_GetOperationState, hSession, pOperationState, pulOperationStateLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SetOperationState(JNIEnv *env, jobject self, jlong hSession, jbyteArray pOperationState, jlong ulOperationStateLen, jlong hEncryptionKey, jlong hAuthenticationKey) {
+    Data state;
+    CK_RV rv;
+    if (badIn(env, pOperationState, 0, ulOperationStateLen)) {
+        return CKR_ARGUMENTS_BAD;
+    }
+    rv = dataGet(env, &state, pinnable(), pOperationState, 0, (CK_ULONG) ulOperationStateLen, 1);
+    if (rv == CKR_OK) {
+        rv = F->C_SetOperationState((CK_SESSION_HANDLE) hSession, state.p, (CK_ULONG) ulOperationStateLen,
+            (CK_OBJECT_HANDLE) hEncryptionKey, (CK_OBJECT_HANDLE) hAuthenticationKey);
+    }
+    dataRelease(env, &state, 0);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Login(JNIEnv *env, jobject self, jlong hSession, jlong userType, jbyteArray pPin, jlong ulPinLen) {
+    CK_BYTE stack[STACK_BYTES];
+    CK_BYTE_PTR pin;
+    CK_RV rv = copyIn(env, pPin, ulPinLen, stack, &pin);
+    if (rv == CKR_OK) {
+        rv = F->C_Login((CK_SESSION_HANDLE) hSession, (CK_USER_TYPE) userType, pin, (CK_ULONG) ulPinLen);
+        freeIn(pin, stack);
+    }
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Logout(JNIEnv *env, jobject self, jlong hSession) {
+    return J(F->C_Logout((CK_SESSION_HANDLE) hSession));
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1CreateObject(JNIEnv *env, jobject self, jlong hSession, jobjectArray pTemplate, jlong ulCount, jobject phObject) {
+    Template t;
+    CK_OBJECT_HANDLE hObject = getRef(env, phObject);
+    CK_RV rv = templateIn(env, pTemplate, &t);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = F->C_CreateObject((CK_SESSION_HANDLE) hSession, t.attrs, (CK_ULONG) ulCount, &hObject);
+    templateOut(env, pTemplate, &t);
+    templateFree(&t);
+    setRef(env, phObject, hObject);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1CopyObject(JNIEnv *env, jobject self, jlong hSession, jlong hObject, jobjectArray pTemplate, jlong ulCount, jobject phNewObject) {
+    Template t;
+    CK_OBJECT_HANDLE hNewObject = getRef(env, phNewObject);
+    CK_RV rv = templateIn(env, pTemplate, &t);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = F->C_CopyObject((CK_SESSION_HANDLE) hSession, (CK_OBJECT_HANDLE) hObject, t.attrs, (CK_ULONG) ulCount, &hNewObject);
+    templateOut(env, pTemplate, &t);
+    templateFree(&t);
+    setRef(env, phNewObject, hNewObject);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DestroyObject(JNIEnv *env, jobject self, jlong hSession, jlong hObject) {
+    return J(F->C_DestroyObject((CK_SESSION_HANDLE) hSession, (CK_OBJECT_HANDLE) hObject));
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetObjectSize(JNIEnv *env, jobject self, jlong hSession, jlong hObject, jobject pulSize) {
+    CK_ULONG size = getRef(env, pulSize);
+    CK_RV rv = F->C_GetObjectSize((CK_SESSION_HANDLE) hSession, (CK_OBJECT_HANDLE) hObject, &size);
+    setRef(env, pulSize, size);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetAttributeValue(JNIEnv *env, jobject self, jlong hSession, jlong hObject, jobjectArray pTemplate, jlong ulCount) {
+    Template t;
+    CK_RV rv = templateIn(env, pTemplate, &t);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = F->C_GetAttributeValue((CK_SESSION_HANDLE) hSession, (CK_OBJECT_HANDLE) hObject, t.attrs, (CK_ULONG) ulCount);
+    templateOut(env, pTemplate, &t);
+    templateFree(&t);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SetAttributeValue(JNIEnv *env, jobject self, jlong hSession, jlong hObject, jobjectArray pTemplate, jlong ulCount) {
+    Template t;
+    CK_RV rv = templateIn(env, pTemplate, &t);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = F->C_SetAttributeValue((CK_SESSION_HANDLE) hSession, (CK_OBJECT_HANDLE) hObject, t.attrs, (CK_ULONG) ulCount);
+    templateOut(env, pTemplate, &t);
+    templateFree(&t);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1FindObjectsInit(JNIEnv *env, jobject self, jlong hSession, jobjectArray pTemplate, jlong ulCount) {
+    Template t;
+    CK_RV rv = templateIn(env, pTemplate, &t);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = F->C_FindObjectsInit((CK_SESSION_HANDLE) hSession, t.attrs, (CK_ULONG) ulCount);
+    templateFree(&t);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1FindObjects(JNIEnv *env, jobject self, jlong hSession, jlongArray phObject, jlong ulMaxObjectCount, jobject pulObjectCount) {
+    CK_ULONG stack[STACK_ULONGS];
+    CK_ULONG_PTR objects;
+    CK_ULONG count = getRef(env, pulObjectCount);
+    CK_ULONG max = (CK_ULONG) ulMaxObjectCount;
+    CK_RV rv = ulongsIn(env, phObject, stack, &objects);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    if (phObject != NULL && max > (CK_ULONG) arrayLen(env, phObject)) {
+        max = (CK_ULONG) arrayLen(env, phObject);
+    }
+    rv = F->C_FindObjects((CK_SESSION_HANDLE) hSession, objects, max, &count);
+    ulongsOut(env, phObject, objects, stack);
+    setRef(env, pulObjectCount, count);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1FindObjectsFinal(JNIEnv *env, jobject self, jlong hSession) {
+    return J(F->C_FindObjectsFinal((CK_SESSION_HANDLE) hSession));
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptInit(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hKey) {
+    return initOp(env, F->C_EncryptInit, hSession, pMechanism, hKey);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Encrypt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jlong ulDataLen, jbyteArray pEncryptedData, jobject pulEncryptedDataLen) {
+    return inOut(env, F->C_Encrypt, hSession, pData, ulDataLen, pEncryptedData, pulEncryptedDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jlong ulPartLen, jbyteArray pEncryptedPart, jobject pulEncryptedPartLen) {
+    return inOut(env, F->C_EncryptUpdate, hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptFinal(JNIEnv *env, jobject self, jlong hSession, jbyteArray pLastEncryptedPart, jobject pulLastEncryptedPartLen) {
+    return outOnly(env, F->C_EncryptFinal, hSession, pLastEncryptedPart, pulLastEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptInit(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hKey) {
+    return initOp(env, F->C_DecryptInit, hSession, pMechanism, hKey);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Decrypt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pEncryptedData, jlong ulEncryptedDataLen, jbyteArray pData, jobject pulDataLen) {
+    return inOut(env, F->C_Decrypt, hSession, pEncryptedData, ulEncryptedDataLen, pData, pulDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pEncryptedPart, jlong ulEncryptedPartLen, jbyteArray pData, jobject pulDataLen) {
+    return inOut(env, F->C_DecryptUpdate, hSession, pEncryptedPart, ulEncryptedPartLen, pData, pulDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptFinal(JNIEnv *env, jobject self, jlong hSession, jbyteArray pLastPart, jobject pulLastPartLen) {
+    return outOnly(env, F->C_DecryptFinal, hSession, pLastPart, pulLastPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestInit(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism) {
+    CK_MECHANISM mechanism;
+    CK_MECHANISM_PTR pMech = getMechanism(env, pMechanism, &mechanism);
+    if (pMech == NULL && pMechanism != NULL) {
+        return J(CKR_ARGUMENTS_BAD);
+    }
+    return J(F->C_DigestInit((CK_SESSION_HANDLE) hSession, pMech));
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Digest(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jlong ulDataLen, jbyteArray pDigest, jobject pulDigestLen) {
+    return inOut(env, F->C_Digest, hSession, pData, ulDataLen, pDigest, pulDigestLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jlong ulPartLen) {
+    return inOnly(env, F->C_DigestUpdate, hSession, pPart, ulPartLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestKey(JNIEnv *env, jobject self, jlong hSession, jlong hKey) {
+    return J(F->C_DigestKey((CK_SESSION_HANDLE) hSession, (CK_OBJECT_HANDLE) hKey));
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestFinal(JNIEnv *env, jobject self, jlong hSession, jbyteArray pDigest, jobject pulDigestLen) {
+    return outOnly(env, F->C_DigestFinal, hSession, pDigest, pulDigestLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignInit(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hKey) {
+    return initOp(env, F->C_SignInit, hSession, pMechanism, hKey);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Sign(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jlong ulDataLen, jbyteArray pSignature, jobject pulSignatureLen) {
+    return inOut(env, F->C_Sign, hSession, pData, ulDataLen, pSignature, pulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jlong ulPartLen) {
+    return inOnly(env, F->C_SignUpdate, hSession, pPart, ulPartLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignFinal(JNIEnv *env, jobject self, jlong hSession, jbyteArray pSignature, jobject pulSignatureLen) {
+    return outOnly(env, F->C_SignFinal, hSession, pSignature, pulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignRecoverInit(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hKey) {
+    return initOp(env, F->C_SignRecoverInit, hSession, pMechanism, hKey);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignRecover(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jlong ulDataLen, jbyteArray pSignature, jobject pulSignatureLen) {
+    return inOut(env, F->C_SignRecover, hSession, pData, ulDataLen, pSignature, pulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyInit(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hKey) {
+    return initOp(env, F->C_VerifyInit, hSession, pMechanism, hKey);
+}
+
+static jlong verifyAt(JNIEnv *env, CK_C_Verify fn, jlong hSession, jbyteArray pData, jint dataOff, jlong ulDataLen, jbyteArray pSignature, jint signatureOff, jlong ulSignatureLen) {
+    Data data, signature;
+    CK_RV rv;
+    int pin = pinnable();
+    if (badIn(env, pData, dataOff, ulDataLen) || badIn(env, pSignature, signatureOff, ulSignatureLen)) {
+        return CKR_ARGUMENTS_BAD;
+    }
+    rv = dataGet(env, &data, pin, pData, dataOff, (CK_ULONG) ulDataLen, 1);
+    if (rv == CKR_OK) {
+        rv = dataGet(env, &signature, pin, pSignature, signatureOff, (CK_ULONG) ulSignatureLen, 1);
+        if (rv == CKR_OK) {
+            rv = fn((CK_SESSION_HANDLE) hSession, data.p, (CK_ULONG) ulDataLen, signature.p, (CK_ULONG) ulSignatureLen);
+        }
+        dataRelease(env, &signature, 0);
+    }
+    dataRelease(env, &data, 0);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Verify(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jlong ulDataLen, jbyteArray pSignature, jlong ulSignatureLen) {
+    return verifyAt(env, F->C_Verify, hSession, pData, 0, ulDataLen, pSignature, 0, ulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jlong ulPartLen) {
+    return inOnly(env, F->C_VerifyUpdate, hSession, pPart, ulPartLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyFinal(JNIEnv *env, jobject self, jlong hSession, jbyteArray pSignature, jlong ulSignatureLen) {
+    return inOnly(env, F->C_VerifyFinal, hSession, pSignature, ulSignatureLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyRecoverInit(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hKey) {
+    return initOp(env, F->C_VerifyRecoverInit, hSession, pMechanism, hKey);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyRecover(JNIEnv *env, jobject self, jlong hSession, jbyteArray pSignature, jlong ulSignatureLen, jbyteArray pData, jobject pulDataLen) {
+    return inOut(env, F->C_VerifyRecover, hSession, pSignature, ulSignatureLen, pData, pulDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestEncryptUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jlong ulPartLen, jbyteArray pEncryptedPart, jobject pulEncryptedPartLen) {
+    return inOut(env, F->C_DigestEncryptUpdate, hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptDigestUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pEncryptedPart, jlong ulEncryptedPartLen, jbyteArray pPart, jobject pulPartLen) {
+    return inOut(env, F->C_DecryptDigestUpdate, hSession, pEncryptedPart, ulEncryptedPartLen, pPart, pulPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignEncryptUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jlong ulPartLen, jbyteArray pEncryptedPart, jobject pulEncryptedPartLen) {
+    return inOut(env, F->C_SignEncryptUpdate, hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptVerifyUpdate(JNIEnv *env, jobject self, jlong hSession, jbyteArray pEncryptedPart, jlong ulEncryptedPartLen, jbyteArray pPart, jobject pulPartLen) {
+    return inOut(env, F->C_DecryptVerifyUpdate, hSession, pEncryptedPart, ulEncryptedPartLen, pPart, pulPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GenerateKey(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jobjectArray pTemplate, jlong ulCount, jobject phKey) {
+    CK_MECHANISM mechanism;
+    Template t;
+    CK_OBJECT_HANDLE hKey = getRef(env, phKey);
+    CK_MECHANISM_PTR pMech = getMechanism(env, pMechanism, &mechanism);
+    if (pMech == NULL && pMechanism != NULL) {
+        return J(CKR_ARGUMENTS_BAD);
+    }
+    CK_RV rv = templateIn(env, pTemplate, &t);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = F->C_GenerateKey((CK_SESSION_HANDLE) hSession, pMech, t.attrs, (CK_ULONG) ulCount, &hKey);
+    templateFree(&t);
+    setRef(env, phKey, hKey);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GenerateKeyPair(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism,
+        jobjectArray pPublicKeyTemplate, jlong ulPublicKeyAttributeCount, jobjectArray pPrivateKeyTemplate, jlong ulPrivateKeyAttributeCount,
+        jobject phPublicKey, jobject phPrivateKey) {
+    CK_MECHANISM mechanism;
+    Template pub, priv;
+    CK_OBJECT_HANDLE hPublicKey = getRef(env, phPublicKey);
+    CK_OBJECT_HANDLE hPrivateKey = getRef(env, phPrivateKey);
+    CK_MECHANISM_PTR pMech = getMechanism(env, pMechanism, &mechanism);
+    if (pMech == NULL && pMechanism != NULL) {
+        return J(CKR_ARGUMENTS_BAD);
+    }
+    CK_RV rv = templateIn(env, pPublicKeyTemplate, &pub);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = templateIn(env, pPrivateKeyTemplate, &priv);
+    if (rv != CKR_OK) {
+        templateFree(&pub);
+        return J(rv);
+    }
+    rv = F->C_GenerateKeyPair((CK_SESSION_HANDLE) hSession, pMech,
+        pub.attrs, (CK_ULONG) ulPublicKeyAttributeCount, priv.attrs, (CK_ULONG) ulPrivateKeyAttributeCount,
+        &hPublicKey, &hPrivateKey);
+    templateFree(&priv);
+    templateFree(&pub);
+    setRef(env, phPublicKey, hPublicKey);
+    setRef(env, phPrivateKey, hPrivateKey);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1WrapKey(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hWrappingKey, jlong hKey, jbyteArray pWrappedKey, jobject pulWrappedKeyLen) {
+    CK_MECHANISM mechanism;
+    CK_MECHANISM_PTR pMech = getMechanism(env, pMechanism, &mechanism);
+    if (pMech == NULL && pMechanism != NULL) {
+        return J(CKR_ARGUMENTS_BAD);
+    }
+    CK_ULONG max = clampOut(env, pWrappedKey, 0, getRef(env, pulWrappedKeyLen));
+    CK_ULONG len = max;
+    CK_FUNCTION_LIST_PTR functionList = F;
+    Data wrapped;
+    CK_RV rv = dataGet(env, &wrapped, pinnable(), pWrappedKey, 0, max, 0);
+    if (rv == CKR_OK) {
+        rv = functionList->C_WrapKey((CK_SESSION_HANDLE) hSession, pMech, (CK_OBJECT_HANDLE) hWrappingKey, (CK_OBJECT_HANDLE) hKey, wrapped.p, &len);
+    }
+    dataRelease(env, &wrapped, written(rv, len, max));
+    setRef(env, pulWrappedKeyLen, len);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1UnwrapKey(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hUnwrappingKey,
+        jbyteArray pWrappedKey, jlong ulWrappedKeyLen, jobjectArray pTemplate, jlong ulAttributeCount, jobject phKey) {
+    CK_MECHANISM mechanism;
+    CK_BYTE stack[STACK_BYTES];
+    CK_BYTE_PTR wrapped;
+    Template t;
+    CK_OBJECT_HANDLE hKey = getRef(env, phKey);
+    CK_MECHANISM_PTR pMech = getMechanism(env, pMechanism, &mechanism);
+    if (pMech == NULL && pMechanism != NULL) {
+        return J(CKR_ARGUMENTS_BAD);
+    }
+    CK_RV rv = copyIn(env, pWrappedKey, ulWrappedKeyLen, stack, &wrapped);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = templateIn(env, pTemplate, &t);
+    if (rv == CKR_OK) {
+        rv = F->C_UnwrapKey((CK_SESSION_HANDLE) hSession, pMech, (CK_OBJECT_HANDLE) hUnwrappingKey,
+            wrapped, (CK_ULONG) ulWrappedKeyLen, t.attrs, (CK_ULONG) ulAttributeCount, &hKey);
+        templateFree(&t);
+    }
+    freeIn(wrapped, stack);
+    setRef(env, phKey, hKey);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DeriveKey(JNIEnv *env, jobject self, jlong hSession, jobject pMechanism, jlong hBaseKey,
+        jobjectArray pTemplate, jlong ulAttributeCount, jobject phKey) {
+    CK_MECHANISM mechanism;
+    Template t;
+    CK_OBJECT_HANDLE hKey = getRef(env, phKey);
+    CK_MECHANISM_PTR pMech = getMechanism(env, pMechanism, &mechanism);
+    if (pMech == NULL && pMechanism != NULL) {
+        return J(CKR_ARGUMENTS_BAD);
+    }
+    CK_RV rv = templateIn(env, pTemplate, &t);
+    if (rv != CKR_OK) {
+        return J(rv);
+    }
+    rv = F->C_DeriveKey((CK_SESSION_HANDLE) hSession, pMech, (CK_OBJECT_HANDLE) hBaseKey,
+        t.attrs, (CK_ULONG) ulAttributeCount, &hKey);
+    templateFree(&t);
+    setRef(env, phKey, hKey);
+    return J(rv);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SeedRandom(JNIEnv *env, jobject self, jlong hSession, jbyteArray pSeed, jlong ulSeedLen) {
+    return inOnly(env, F->C_SeedRandom, hSession, pSeed, ulSeedLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GenerateRandom(JNIEnv *env, jobject self, jlong hSession, jbyteArray pRandom, jlong ulRandomLen) {
+    return inOnly(env, F->C_GenerateRandom, hSession, pRandom, ulRandomLen, 1);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1GetFunctionStatus(JNIEnv *env, jobject self, jlong hSession) {
+    return J(F->C_GetFunctionStatus((CK_SESSION_HANDLE) hSession));
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1CancelFunction(JNIEnv *env, jobject self, jlong hSession) {
+    return J(F->C_CancelFunction((CK_SESSION_HANDLE) hSession));
+}
+
+/* ByteBuffer data functions, addresses of direct buffers */
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Encrypt0(JNIEnv *env, jobject self, jlong hSession, jlong pData, jlong ulDataLen, jlong pEncryptedData, jobject pulEncryptedDataLen) {
+    return inOutAddr(env, F->C_Encrypt, hSession, pData, ulDataLen, pEncryptedData, pulEncryptedDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptUpdate0(JNIEnv *env, jobject self, jlong hSession, jlong pPart, jlong ulPartLen, jlong pEncryptedPart, jobject pulEncryptedPartLen) {
+    return inOutAddr(env, F->C_EncryptUpdate, hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptFinal0(JNIEnv *env, jobject self, jlong hSession, jlong pLastEncryptedPart, jobject pulLastEncryptedPartLen) {
+    return outOnlyAddr(env, F->C_EncryptFinal, hSession, pLastEncryptedPart, pulLastEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Decrypt0(JNIEnv *env, jobject self, jlong hSession, jlong pEncryptedData, jlong ulEncryptedDataLen, jlong pData, jobject pulDataLen) {
+    return inOutAddr(env, F->C_Decrypt, hSession, pEncryptedData, ulEncryptedDataLen, pData, pulDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptUpdate0(JNIEnv *env, jobject self, jlong hSession, jlong pEncryptedPart, jlong ulEncryptedPartLen, jlong pData, jobject pulDataLen) {
+    return inOutAddr(env, F->C_DecryptUpdate, hSession, pEncryptedPart, ulEncryptedPartLen, pData, pulDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptFinal0(JNIEnv *env, jobject self, jlong hSession, jlong pLastPart, jobject pulLastPartLen) {
+    return outOnlyAddr(env, F->C_DecryptFinal, hSession, pLastPart, pulLastPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Digest0(JNIEnv *env, jobject self, jlong hSession, jlong pData, jlong ulDataLen, jlong pDigest, jobject pulDigestLen) {
+    return inOutAddr(env, F->C_Digest, hSession, pData, ulDataLen, pDigest, pulDigestLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestUpdate0(JNIEnv *env, jobject self, jlong hSession, jlong pPart, jlong ulPartLen) {
+    return inOnlyAddr(env, F->C_DigestUpdate, hSession, pPart, ulPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestFinal0(JNIEnv *env, jobject self, jlong hSession, jlong pDigest, jobject pulDigestLen) {
+    return outOnlyAddr(env, F->C_DigestFinal, hSession, pDigest, pulDigestLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Sign0(JNIEnv *env, jobject self, jlong hSession, jlong pData, jlong ulDataLen, jlong pSignature, jobject pulSignatureLen) {
+    return inOutAddr(env, F->C_Sign, hSession, pData, ulDataLen, pSignature, pulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignUpdate0(JNIEnv *env, jobject self, jlong hSession, jlong pPart, jlong ulPartLen) {
+    return inOnlyAddr(env, F->C_SignUpdate, hSession, pPart, ulPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignFinal0(JNIEnv *env, jobject self, jlong hSession, jlong pSignature, jobject pulSignatureLen) {
+    return outOnlyAddr(env, F->C_SignFinal, hSession, pSignature, pulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1Verify0(JNIEnv *env, jobject self, jlong hSession, jlong pData, jlong ulDataLen, jlong pSignature, jlong ulSignatureLen) {
+    return J(F->C_Verify((CK_SESSION_HANDLE) hSession, (CK_BYTE_PTR) (intptr_t) pData, (CK_ULONG) ulDataLen, (CK_BYTE_PTR) (intptr_t) pSignature, (CK_ULONG) ulSignatureLen));
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyUpdate0(JNIEnv *env, jobject self, jlong hSession, jlong pPart, jlong ulPartLen) {
+    return inOnlyAddr(env, F->C_VerifyUpdate, hSession, pPart, ulPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyFinal0(JNIEnv *env, jobject self, jlong hSession, jlong pSignature, jlong ulSignatureLen) {
+    return inOnlyAddr(env, F->C_VerifyFinal, hSession, pSignature, ulSignatureLen);
+}
+
+/* byte[] data functions with offsets */
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jint dataOff, jlong ulDataLen, jbyteArray pEncryptedData, jint encryptedDataOff, jobject pulEncryptedDataLen) {
+    return inOutAt(env, F->C_Encrypt, hSession, pData, dataOff, ulDataLen, pEncryptedData, encryptedDataOff, pulEncryptedDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptUpdateAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jint partOff, jlong ulPartLen, jbyteArray pEncryptedPart, jint encryptedPartOff, jobject pulEncryptedPartLen) {
+    return inOutAt(env, F->C_EncryptUpdate, hSession, pPart, partOff, ulPartLen, pEncryptedPart, encryptedPartOff, pulEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1EncryptFinalAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pLastEncryptedPart, jint lastEncryptedPartOff, jobject pulLastEncryptedPartLen) {
+    return outOnlyAt(env, F->C_EncryptFinal, hSession, pLastEncryptedPart, lastEncryptedPartOff, pulLastEncryptedPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pEncryptedData, jint encryptedDataOff, jlong ulEncryptedDataLen, jbyteArray pData, jint dataOff, jobject pulDataLen) {
+    return inOutAt(env, F->C_Decrypt, hSession, pEncryptedData, encryptedDataOff, ulEncryptedDataLen, pData, dataOff, pulDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptUpdateAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pEncryptedPart, jint encryptedPartOff, jlong ulEncryptedPartLen, jbyteArray pData, jint dataOff, jobject pulDataLen) {
+    return inOutAt(env, F->C_DecryptUpdate, hSession, pEncryptedPart, encryptedPartOff, ulEncryptedPartLen, pData, dataOff, pulDataLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DecryptFinalAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pLastPart, jint lastPartOff, jobject pulLastPartLen) {
+    return outOnlyAt(env, F->C_DecryptFinal, hSession, pLastPart, lastPartOff, pulLastPartLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jint dataOff, jlong ulDataLen, jbyteArray pDigest, jint digestOff, jobject pulDigestLen) {
+    return inOutAt(env, F->C_Digest, hSession, pData, dataOff, ulDataLen, pDigest, digestOff, pulDigestLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestUpdateAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jint partOff, jlong ulPartLen) {
+    return inOnlyAt(env, F->C_DigestUpdate, hSession, pPart, partOff, ulPartLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1DigestFinalAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pDigest, jint digestOff, jobject pulDigestLen) {
+    return outOnlyAt(env, F->C_DigestFinal, hSession, pDigest, digestOff, pulDigestLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jint dataOff, jlong ulDataLen, jbyteArray pSignature, jint signatureOff, jobject pulSignatureLen) {
+    return inOutAt(env, F->C_Sign, hSession, pData, dataOff, ulDataLen, pSignature, signatureOff, pulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignUpdateAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jint partOff, jlong ulPartLen) {
+    return inOnlyAt(env, F->C_SignUpdate, hSession, pPart, partOff, ulPartLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1SignFinalAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pSignature, jint signatureOff, jobject pulSignatureLen) {
+    return outOnlyAt(env, F->C_SignFinal, hSession, pSignature, signatureOff, pulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pData, jint dataOff, jlong ulDataLen, jbyteArray pSignature, jint signatureOff, jlong ulSignatureLen) {
+    return verifyAt(env, F->C_Verify, hSession, pData, dataOff, ulDataLen, pSignature, signatureOff, ulSignatureLen);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyUpdateAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pPart, jint partOff, jlong ulPartLen) {
+    return inOnlyAt(env, F->C_VerifyUpdate, hSession, pPart, partOff, ulPartLen, 0);
+}
+
+JNIEXPORT jlong JNICALL Java_org_pkcs11_jacknji11_jni_JNI_C_1VerifyFinalAt(JNIEnv *env, jobject self, jlong hSession, jbyteArray pSignature, jint signatureOff, jlong ulSignatureLen) {
+    return inOnlyAt(env, F->C_VerifyFinal, hSession, pSignature, signatureOff, ulSignatureLen, 0);
+}
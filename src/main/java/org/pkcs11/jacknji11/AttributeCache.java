@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of attribute values that cannot change once an object exists, such
+ * as CLASS, KEY_TYPE and the public key, keyed by slot, object handle and
+ * attribute type.  Set with {@link CryptokiE#setAttributeCache(AttributeCache)}
+ * and used by {@link CryptokiE#GetAttributeValue(long, long, long...)}, which
+ * only asks the token for types not cached.  Other attribute types are never
+ * cached.
+ * <p>
+ * An object's values are dropped when SetAttributeValue or DestroyObject is
+ * called on it, or a new object gets its handle, through the same CryptokiE.
+ * A slot's values are dropped on login and logout (private objects are only
+ * visible when logged in), when a session that created session objects is
+ * closed (its session object handles may be reused), on InitToken, and on
+ * slot events if the cache is added as a
+ * {@link SlotEventWatcher.Listener}.  Objects destroyed by other applications
+ * are not seen, so use the cache with tokens whose objects are managed by
+ * this application.  VALUE is not cached by default, it is immutable for
+ * certificates but not for data objects, only pass it in types when the
+ * cached objects are certificates.
+ * <p>
+ * Values are held per object, so dropping an object's values is a single
+ * remove.  When there are more than maxSize values, objects are removed in
+ * clock order: an object that was read from the cache since the clock hand
+ * last passed it is kept, so objects in regular use stay cached and objects
+ * read only once are removed first.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class AttributeCache implements SlotEventWatcher.Listener {
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /** CLASS, KEY_TYPE, CERTIFICATE_TYPE, MODULUS, MODULUS_BITS, PUBLIC_EXPONENT, EC_PARAMS and EC_POINT */
+    public static final Set<Long> DEFAULT_TYPES = Collections.unmodifiableSet(new HashSet<Long>(Arrays.asList(
+        CKA.CLASS, CKA.KEY_TYPE, CKA.CERTIFICATE_TYPE, CKA.MODULUS, CKA.MODULUS_BITS, CKA.PUBLIC_EXPONENT,
+        CKA.EC_PARAMS, CKA.EC_POINT)));
+
+    private final int maxSize;
+    private final Set<Long> types;
+    private final Map<Key, ObjectValues> objects = new ConcurrentHashMap<Key, ObjectValues>();
+    /** number of values in objects */
+    private final AtomicInteger size = new AtomicInteger();
+    /** clock hand over objects, used while holding this */
+    private Iterator<Map.Entry<Key, ObjectValues>> hand;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Cache of {@link #DEFAULT_TYPES} with default size. */
+    public AttributeCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TYPES);
+    }
+
+    /**
+     * @param maxSize maximum number of attribute values cached
+     * @param types attribute types that are cached, must not change for the life of an object
+     */
+    public AttributeCache(int maxSize, Set<Long> types) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid maxSize " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.types = new HashSet<Long>(types);
+    }
+
+    /** @return number of values found in cache */
+    public long getHits() { return hits.get(); }
+    /** @return number of cacheable values not found in cache */
+    public long getMisses() { return misses.get(); }
+    /** @return number of cached values */
+    public int size() { return size.get(); }
+
+    /**
+     * @param type CKA type
+     * @return true if values of type are cached
+     */
+    public boolean isCached(long type) {
+        return types.contains(type);
+    }
+
+    /**
+     * @param slotID slot
+     * @param object object handle
+     * @param types CKA types to be read
+     * @return values of object to pass to {@link #get(ObjectValues, long)} and
+     * {@link #put(ObjectValues, CKA)}, or null if none of types are cached
+     */
+    ObjectValues values(long slotID, long object, long... types) {
+        for (long type : types) {
+            if (this.types.contains(type)) {
+                return objects.computeIfAbsent(new Key(slotID, object), k -> new ObjectValues());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param values values of object
+     * @param type CKA type
+     * @return copy of cached attribute, or null if not cached
+     */
+    CKA get(ObjectValues values, long type) {
+        if (!types.contains(type)) {
+            return null;
+        }
+        byte[] value = values.values.get(type);
+        if (value == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        values.referenced = true;
+        return new CKA(type, value.clone());
+    }
+
+    /**
+     * Caches value read from object if its type is cached and it has a value,
+     * unless the object's values were dropped since values was got.
+     */
+    void put(ObjectValues values, CKA cka) {
+        if (cka == null || !types.contains(cka.type) || !cka.hasValue()) {
+            return;
+        }
+        synchronized (values) {
+            if (values.removed) {
+                // invalidated or evicted while reading
+                return;
+            }
+            if (values.values.put(cka.type, Arrays.copyOf(cka.pValue, (int) cka.ulValueLen)) == null) {
+                size.incrementAndGet();
+            }
+        }
+        if (size.get() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Moves the clock hand, removing objects not read from the cache since
+     * the hand last passed them, until there are at most maxSize values.
+     */
+    private synchronized void evict() {
+        // at most two turns, the first clears every referenced flag
+        for (int i = 2 * objects.size() + 2; i > 0 && size.get() > maxSize; i--) {
+            if (hand == null || !hand.hasNext()) {
+                hand = objects.entrySet().iterator();
+                if (!hand.hasNext()) {
+                    return;
+                }
+            }
+            Map.Entry<Key, ObjectValues> e = hand.next();
+            if (e.getValue().referenced) {
+                e.getValue().referenced = false;
+            } else {
+                remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void remove(Key key, ObjectValues values) {
+        if (objects.remove(key, values)) {
+            synchronized (values) {
+                values.removed = true;
+                size.addAndGet(-values.values.size());
+            }
+        }
+    }
+
+    /**
+     * Drops values of object.
+     * @param slotID slot
+     * @param object object handle
+     */
+    public void invalidate(long slotID, long object) {
+        Key key = new Key(slotID, object);
+        ObjectValues values = objects.get(key);
+        if (values != null) {
+            remove(key, values);
+        }
+    }
+
+    /**
+     * Drops all values for slot.
+     * @param slotID slot
+     */
+    public void invalidate(long slotID) {
+        for (Map.Entry<Key, ObjectValues> e : objects.entrySet()) {
+            if (e.getKey().slotID == slotID) {
+                remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drops all values.
+     */
+    public void invalidateAll() {
+        for (Map.Entry<Key, ObjectValues> e : objects.entrySet()) {
+            remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /** Drops values for the slot when its token is inserted or removed. */
+    public void slotEvent(long slotID, boolean tokenPresent) {
+        invalidate(slotID);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AttributeCache size=%d objects=%d hits=%d misses=%d",
+            size.get(), objects.size(), hits.get(), misses.get());
+    }
+
+    /** slot and object handle */
+    private static final class Key {
+        final long slotID;
+        final long object;
+
+        Key(long slotID, long object) {
+            this.slotID = slotID;
+            this.object = object;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(slotID) + Long.hashCode(object);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return slotID == k.slotID && object == k.object;
+        }
+    }
+
+    /** cached values of one object by type */
+    static final class ObjectValues {
+        final Map<Long, byte[]> values = new ConcurrentHashMap<Long, byte[]>(4);
+        /** read from the cache since the clock hand last passed */
+        volatile boolean referenced;
+        /** dropped from the cache, guarded by this */
+        boolean removed;
+    }
+}
@@ -20,6 +20,11 @@
  */
 package org.pkcs11.jacknji11;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Strategy for determining length of attribute value in C_GetAttributeValue request.
  *
@@ -35,6 +40,16 @@ public interface AttributeLengthStrategy {
      */
     int getAttributeLength(long cka);
 
+    /**
+     * Called with the actual length of an attribute value returned by C_GetAttributeValue,
+     * for strategies that learn lengths.  Default does nothing.
+     *
+     * @param cka attribute type
+     * @param length actual length of attribute value
+     */
+    default void lengthObserved(long cka, int length) {
+    }
+
     /**
      * Implementation of {@link AttributeLengthStrategy} that is using a list of large attributes
      * and their maximum length as well as a default length for regular attributes.
@@ -143,6 +158,84 @@ public interface AttributeLengthStrategy {
         }
     }
 
+    /**
+     * Implementation of {@link AttributeLengthStrategy} that learns the largest length seen for
+     * each attribute type, rounded up to a multiple of 8, so that once a type has been read
+     * its values are fetched in a single C_GetAttributeValue call with a buffer no larger than
+     * needed.  Types not seen yet use the initial strategy, by default querying the length.
+     * A longer value than learned costs one extra round trip and raises the learned length.
+     * Types seen with values longer than maxLearnedLength always have their length queried
+     * rather than allocating large buffers.
+     * <p>
+     * The same robustness caveats as {@link MaxLengthStrategy} apply, test with your HSM.
+     */
+    class AdaptiveLengthStrategy implements AttributeLengthStrategy {
+
+        /**
+         * Default largest length learned, 16KB.
+         */
+        public static final int DEFAULT_MAX_LEARNED_LENGTH = 16384;
+
+        /**
+         * Strategy for types not seen yet.
+         */
+        private final AttributeLengthStrategy initial;
+
+        /**
+         * Largest length learned, types with longer values are queried.
+         */
+        private final int maxLearnedLength;
+
+        /**
+         * Learned length per attribute type, 0 if length should be queried.
+         */
+        private final Map<Long, Integer> learned = new ConcurrentHashMap<Long, Integer>();
+
+        /**
+         * Constructor with default values, querying lengths of types not seen yet.
+         */
+        public AdaptiveLengthStrategy() {
+            this(new IndefiniteLengthStrategy(), DEFAULT_MAX_LEARNED_LENGTH);
+        }
+
+        /**
+         * Constructor with custom values.
+         *
+         * @param initial          strategy for types not seen yet
+         * @param maxLearnedLength largest length learned
+         */
+        public AdaptiveLengthStrategy(AttributeLengthStrategy initial, int maxLearnedLength) {
+            this.initial = initial;
+            this.maxLearnedLength = maxLearnedLength;
+        }
+
+        @Override
+        public int getAttributeLength(long cka) {
+            Integer length = learned.get(cka);
+            return length != null ? length : initial.getAttributeLength(cka);
+        }
+
+        @Override
+        public void lengthObserved(long cka, int length) {
+            int size = length > maxLearnedLength ? 0 : Math.max(8, (length + 7) & ~7);
+            learned.merge(cka, size, (a, b) -> a == 0 || b == 0 ? 0 : Math.max(a, b));
+        }
+
+        /**
+         * @return learned length per attribute type, 0 if length is queried
+         */
+        public Map<Long, Integer> getLearnedLengths() {
+            return Collections.unmodifiableMap(new TreeMap<Long, Integer>(learned));
+        }
+
+        /**
+         * Forget learned lengths.
+         */
+        public void reset() {
+            learned.clear();
+        }
+    }
+
     /**
      * Strategy for querying length of attribute value in C_GetAttributeValue request
      * for every attribute.
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+/**
+ * Attribute values of many objects, from
+ * {@link CryptokiE#GetAttributeValues(long, long[], long...)} or
+ * {@link SessionPool#getAttributeValues(long[], int, long...)}.  Row i holds
+ * the values of objects[i] in the order of the requested types, or the error
+ * reading that object.  An error on one object does not stop the others
+ * being read.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class AttributeValues {
+    private final long[] objects;
+    private final long[] types;
+    private final CKA[][] values;
+    private final CKRException[] errors;
+
+    AttributeValues(long[] objects, long[] types) {
+        this.objects = objects.clone();
+        this.types = types.clone();
+        this.values = new CKA[objects.length][];
+        this.errors = new CKRException[objects.length];
+    }
+
+    /** @return object handles, one per row */
+    public long[] getObjects() { return objects.clone(); }
+    /** @return attribute types, one per column */
+    public long[] getTypes() { return types.clone(); }
+    /** @return number of objects */
+    public int size() { return objects.length; }
+
+    /**
+     * @param i row
+     * @return values of object i in the order of {@link #getTypes()}, or null if it could not be read
+     */
+    public CKA[] get(int i) {
+        return values[i];
+    }
+
+    /**
+     * @param i row
+     * @param type CKA type
+     * @return value of type for object i, or null if it could not be read or type was not requested
+     */
+    public CKA get(int i, long type) {
+        if (values[i] == null) {
+            return null;
+        }
+        for (int j = 0; j < types.length; j++) {
+            if (types[j] == type) {
+                return values[i][j];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param i row
+     * @return error reading object i, or null if it was read
+     */
+    public CKRException getError(int i) {
+        return errors[i];
+    }
+
+    /** @return number of objects that could not be read */
+    public int getErrorCount() {
+        int count = 0;
+        for (CKRException e : errors) {
+            if (e != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    long getObject(int i) {
+        return objects[i];
+    }
+
+    long[] types() {
+        return types;
+    }
+
+    void set(int i, CKA[] row) {
+        values[i] = row;
+        errors[i] = null;
+    }
+
+    void fail(int i, CKRException e) {
+        values[i] = null;
+        errors[i] = e;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AttributeValues objects=%d types=%d errors=%d", objects.length, types.length, getErrorCount());
+    }
+}
@@ -29,7 +29,6 @@ import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.pkcs11.jacknji11.jna.JNA;
 
 /**
  * Low-level static java interface that maps to
@@ -73,7 +72,8 @@ public class C {
 
     /**
      * Initially null.  Can be set prior to calling <code>C.Initialize()</code>
-     * or <code>CE.Initialize</code>, else it will use default JNA provider.
+     * or <code>CE.Initialize</code>, else it will use the provider from
+     * {@link NativeProviderFactory#create()}, JNA unless configured otherwise.
      * Changes made after calling <code>Initialize()</code> are ignored.
      */
     public static NativeProvider NATIVE;
@@ -82,7 +82,7 @@ public class C {
 
     static void initCryptoki() {
         if (NATIVE == null) {
-            NATIVE = new JNA();
+            NATIVE = NativeProviderFactory.create();
         }
         if (CRYPTOKI == null) {
             CRYPTOKI = new Cryptoki(NATIVE);
@@ -541,10 +541,16 @@ public class CKM {
         this(mechanism, memory, memory.size());
     }
 
+    /**
+     * PKCS#11 CK_MECHANISM struct constructor.
+     * @param mechanism CKM_? mechanism.  Use one of the public static final long fields in this class.
+     * @param param param for mechanism, kept in bParameter and copied to pParameter
+     */
     public CKM(long mechanism, byte[] param) {
         this.mechanism = mechanism;
         int len = (param != null) ? param.length : 0;
         if (len > 0) {
+            bParameter = param;
             pParameter = new Memory(len);
             pParameter.write(0, param, 0, len);
         }
@@ -559,6 +565,11 @@ public class CKM {
         this(mechanism, CKM.DEFAULT_PARAMS.get(mechanism));
     }
 
+    /** @return native address of pParameter, 0 if there is no param */
+    public long getParameterAddress() {
+        return Pointer.nativeValue(pParameter);
+    }
+
     /** @return string */
     @Override
     public String toString() {
@@ -21,11 +21,11 @@
 
 package org.pkcs11.jacknji11;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.pkcs11.jacknji11.jna.JNA;
 
 /**
  * Low-level non-static java interface that maps to {@link NativeProvider}
@@ -59,6 +59,17 @@ import org.pkcs11.jacknji11.jna.JNA;
  * {@link org.pkcs11.jacknji11.CryptokiE}.  They are kept mostly for backwards
  * compatibility.
  * </ol>
+ * <p>
+ * The encrypt, decrypt, digest, sign and verify functions also take
+ * {@link ByteBuffer}s.  Data is read from position to limit and output is
+ * written from position up to limit.  On success, input position is moved to
+ * limit and output position is moved past the bytes written.  Direct buffers
+ * are passed to the library without copying.  Heap buffers use the byte[]
+ * functions with offsets into the backing array.
+ * <p>
+ * The byte[] functions with offset and length parameters work on a slice of
+ * an array, with output written to the given offset.  Output length is limited
+ * to the space left in the output array.
  *
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
@@ -75,19 +86,34 @@ public class Cryptoki {
     private final NativeProviderMetrics metrics = new NativeProviderMetrics();
 
     /**
-     * Default constructor uses {@link org.pkcs11.jacknji11.jna.JNA}
-     * {@link org.pkcs11.jacknji11.NativeProvider}.
+     * Default constructor uses the {@link org.pkcs11.jacknji11.NativeProvider}
+     * from {@link NativeProviderFactory#create()}, which is
+     * {@link org.pkcs11.jacknji11.jna.JNA} unless configured otherwise.
      */
     public Cryptoki() {
-        this(new JNA());
+        this(null);
     }
 
     /**
-     * @param provider cryptoki {@link org.pkcs11.jacknji11.NativeProvider}.
+     * @param provider cryptoki {@link org.pkcs11.jacknji11.NativeProvider},
+     * if null uses {@link NativeProviderFactory#create()}.
      */
     public Cryptoki(NativeProvider provider) {
-        NativeProvider p = provider != null ? provider : new JNA();
-        this.provider = this.metrics.intercept(p);
+        this(provider, true);
+    }
+
+    /**
+     * Metrics are recorded through a reflective proxy which allocates an
+     * argument array and boxes longs on every call.  Disable them for high
+     * rate callers which do not use {@link #getMetrics()} counts.
+     * @param provider cryptoki {@link org.pkcs11.jacknji11.NativeProvider},
+     * if null uses {@link NativeProviderFactory#create()}.
+     * @param metrics if false, provider is called directly and only
+     * {@link NativeProviderMetrics#getProvider()} is recorded
+     */
+    public Cryptoki(NativeProvider provider, boolean metrics) {
+        NativeProvider p = provider != null ? provider : NativeProviderFactory.create(this.metrics);
+        this.provider = metrics ? this.metrics.intercept(p) : this.metrics.identify(p);
     }
 
     /**
@@ -626,6 +652,72 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Encrypts single-part data.
+     * @param session the session's handle
+     * @param data the plaintext data
+     * @param encryptedData gets ciphertext
+     * @param encryptedDataLen gets c-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Encrypt(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public long Encrypt(long session, ByteBuffer data, ByteBuffer encryptedData, LongRef encryptedDataLen) {
+        if (encryptedData != null) {
+            encryptedDataLen.value = encryptedData.remaining();
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Encrypt session=0x%08x encryptedDataLen=%d\n  data (len=%d):\n", session, encryptedDataLen.value(), bbLen(data)));
+            hexDump(sb, data, bbLen(data));
+            log.debug(sb);
+        }
+        long rv;
+        if (NioBuf.isDirect(data, encryptedData)) {
+            rv = provider.C_Encrypt(session, data, bbLen(data), encryptedData, encryptedDataLen);
+        } else {
+            byte[] out = NioBuf.out(encryptedData);
+            rv = provider.C_Encrypt(session, NioBuf.in(data), NioBuf.offset(data), bbLen(data), out, NioBuf.offset(encryptedData), encryptedDataLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(encryptedData, out, encryptedDataLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Encrypt rv=0x%08x{%s}\n  encryptedData (len=%d):\n", rv, CKR.L2S(rv), encryptedDataLen.value()));
+            hexDumpOut(rv, sb, encryptedData, (int) encryptedDataLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK && encryptedData != null) {
+            NioBuf.advance(data, encryptedData, encryptedDataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Encrypts single-part data.
+     * @param session the session's handle
+     * @param data the plaintext data
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param encryptedData gets ciphertext
+     * @param encryptedDataOff offset in encryptedData to write output
+     * @param encryptedDataLen gets c-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Encrypt(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public long Encrypt(long session, byte[] data, int dataOff, int dataLen, byte[] encryptedData, int encryptedDataOff, LongRef encryptedDataLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Encrypt session=0x%08x encryptedDataLen=%d\n  data (len=%d):\n", session, encryptedDataLen.value(), dataLen));
+            hexDump(sb, data, dataOff, dataLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_Encrypt(session, data, dataOff, dataLen, encryptedData, encryptedDataOff, encryptedDataLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Encrypt rv=0x%08x{%s}\n  encryptedData (len=%d):\n", rv, CKR.L2S(rv), encryptedDataLen.value()));
+            hexDumpOut(rv, sb, encryptedData, encryptedDataOff, (int) encryptedDataLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Continues a multiple-part encryption.
      * @param session the session's handle
@@ -650,6 +742,72 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Continues a multiple-part encryption.
+     * @param session the session's handle
+     * @param part the plaintext data
+     * @param encryptedPart get ciphertext
+     * @param encryptedPartLen gets c-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_EncryptUpdate(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public long EncryptUpdate(long session, ByteBuffer part, ByteBuffer encryptedPart, LongRef encryptedPartLen) {
+        if (encryptedPart != null) {
+            encryptedPartLen.value = encryptedPart.remaining();
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_EncryptUpdate session=0x%08x encryptedPartLen=%d\n  part (len=%d):\n", session, encryptedPartLen.value(), bbLen(part)));
+            hexDump(sb, part, bbLen(part));
+            log.debug(sb);
+        }
+        long rv;
+        if (NioBuf.isDirect(part, encryptedPart)) {
+            rv = provider.C_EncryptUpdate(session, part, bbLen(part), encryptedPart, encryptedPartLen);
+        } else {
+            byte[] out = NioBuf.out(encryptedPart);
+            rv = provider.C_EncryptUpdate(session, NioBuf.in(part), NioBuf.offset(part), bbLen(part), out, NioBuf.offset(encryptedPart), encryptedPartLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(encryptedPart, out, encryptedPartLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_EncryptUpdate rv=0x%08x{%s}\n  encryptedPart (len=%d):\n", rv, CKR.L2S(rv), encryptedPartLen.value()));
+            hexDumpOut(rv, sb, encryptedPart, (int) encryptedPartLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK && encryptedPart != null) {
+            NioBuf.advance(part, encryptedPart, encryptedPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Continues a multiple-part encryption.
+     * @param session the session's handle
+     * @param part the plaintext data
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @param encryptedPart get ciphertext
+     * @param encryptedPartOff offset in encryptedPart to write output
+     * @param encryptedPartLen gets c-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_EncryptUpdate(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public long EncryptUpdate(long session, byte[] part, int partOff, int partLen, byte[] encryptedPart, int encryptedPartOff, LongRef encryptedPartLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_EncryptUpdate session=0x%08x encryptedPartLen=%d\n  part (len=%d):\n", session, encryptedPartLen.value(), partLen));
+            hexDump(sb, part, partOff, partLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_EncryptUpdate(session, part, partOff, partLen, encryptedPart, encryptedPartOff, encryptedPartLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_EncryptUpdate rv=0x%08x{%s}\n  encryptedPart (len=%d):\n", rv, CKR.L2S(rv), encryptedPartLen.value()));
+            hexDumpOut(rv, sb, encryptedPart, encryptedPartOff, (int) encryptedPartLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Finishes a multiple-part encryption.
      * @param session the session's handle
@@ -669,6 +827,60 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Finishes a multiple-part encryption.
+     * @param session the session's handle
+     * @param lastEncryptedPart last c-text
+     * @param lastEncryptedPartLen gets last size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_EncryptFinal(long, ByteBuffer, LongRef)
+     */
+    public long EncryptFinal(long session, ByteBuffer lastEncryptedPart, LongRef lastEncryptedPartLen) {
+        if (lastEncryptedPart != null) {
+            lastEncryptedPartLen.value = lastEncryptedPart.remaining();
+        }
+        if (log.isDebugEnabled()) log.debug(String.format("> C_EncryptFinal session=0x%08x lastEncryptedPartLen=%d", session, lastEncryptedPartLen.value()));
+        long rv;
+        if (NioBuf.isDirect(lastEncryptedPart)) {
+            rv = provider.C_EncryptFinal(session, lastEncryptedPart, lastEncryptedPartLen);
+        } else {
+            byte[] out = NioBuf.out(lastEncryptedPart);
+            rv = provider.C_EncryptFinal(session, out, NioBuf.offset(lastEncryptedPart), lastEncryptedPartLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(lastEncryptedPart, out, lastEncryptedPartLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_EncryptFinal rv=0x%08x{%s}\n  lastEncryptedPart (len=%d):\n", rv, CKR.L2S(rv), lastEncryptedPartLen.value()));
+            hexDumpOut(rv, sb, lastEncryptedPart, (int) lastEncryptedPartLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK) {
+            NioBuf.advance(null, lastEncryptedPart, lastEncryptedPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Finishes a multiple-part encryption.
+     * @param session the session's handle
+     * @param lastEncryptedPart last c-text
+     * @param lastEncryptedPartOff offset in lastEncryptedPart to write output
+     * @param lastEncryptedPartLen gets last size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_EncryptFinal(long, byte[], int, LongRef)
+     */
+    public long EncryptFinal(long session, byte[] lastEncryptedPart, int lastEncryptedPartOff, LongRef lastEncryptedPartLen) {
+        if (log.isDebugEnabled()) log.debug(String.format("> C_EncryptFinal session=0x%08x lastEncryptedPartLen=%d", session, lastEncryptedPartLen.value()));
+        long rv = provider.C_EncryptFinal(session, lastEncryptedPart, lastEncryptedPartOff, lastEncryptedPartLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_EncryptFinal rv=0x%08x{%s}\n  lastEncryptedPart (len=%d):\n", rv, CKR.L2S(rv), lastEncryptedPartLen.value()));
+            hexDumpOut(rv, sb, lastEncryptedPart, lastEncryptedPartOff, (int) lastEncryptedPartLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Intialises a decryption operation.
      * @param session the session's handle
@@ -708,6 +920,72 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Decrypts encrypted data in a single part.
+     * @param session the session's handle
+     * @param encryptedData cipertext
+     * @param data gets plaintext
+     * @param dataLen gets p-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Decrypt(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public long Decrypt(long session, ByteBuffer encryptedData, ByteBuffer data, LongRef dataLen) {
+        if (data != null) {
+            dataLen.value = data.remaining();
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Decrypt session=0x%08x dataLen=%d\n  encryptedData (len=%d):\n", session, dataLen.value(), bbLen(encryptedData)));
+            hexDump(sb, encryptedData, bbLen(encryptedData));
+            log.debug(sb);
+        }
+        long rv;
+        if (NioBuf.isDirect(encryptedData, data)) {
+            rv = provider.C_Decrypt(session, encryptedData, bbLen(encryptedData), data, dataLen);
+        } else {
+            byte[] out = NioBuf.out(data);
+            rv = provider.C_Decrypt(session, NioBuf.in(encryptedData), NioBuf.offset(encryptedData), bbLen(encryptedData), out, NioBuf.offset(data), dataLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(data, out, dataLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Decrypt rv=0x%08x{%s}\n  data (len=%d):\n", rv, CKR.L2S(rv), dataLen.value()));
+            hexDumpOut(rv, sb, data, (int) dataLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK && data != null) {
+            NioBuf.advance(encryptedData, data, dataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Decrypts encrypted data in a single part.
+     * @param session the session's handle
+     * @param encryptedData cipertext
+     * @param encryptedDataOff offset of encryptedData
+     * @param encryptedDataLen length of encryptedData
+     * @param data gets plaintext
+     * @param dataOff offset in data to write output
+     * @param dataLen gets p-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Decrypt(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public long Decrypt(long session, byte[] encryptedData, int encryptedDataOff, int encryptedDataLen, byte[] data, int dataOff, LongRef dataLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Decrypt session=0x%08x dataLen=%d\n  encryptedData (len=%d):\n", session, dataLen.value(), encryptedDataLen));
+            hexDump(sb, encryptedData, encryptedDataOff, encryptedDataLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_Decrypt(session, encryptedData, encryptedDataOff, encryptedDataLen, data, dataOff, dataLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Decrypt rv=0x%08x{%s}\n  data (len=%d):\n", rv, CKR.L2S(rv), dataLen.value()));
+            hexDumpOut(rv, sb, data, dataOff, (int) dataLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Continues a multiple-part decryption.
      * @param session the session's handle
@@ -732,6 +1010,72 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Continues a multiple-part decryption.
+     * @param session the session's handle
+     * @param encryptedPart encrypted data
+     * @param data gets plaintext
+     * @param dataLen get p-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DecryptUpdate(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public long DecryptUpdate(long session, ByteBuffer encryptedPart, ByteBuffer data, LongRef dataLen) {
+        if (data != null) {
+            dataLen.value = data.remaining();
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_DecryptUpdate session=0x%08x dataLen=%d\n  encryptedPart (len=%d):\n", session, dataLen.value(), bbLen(encryptedPart)));
+            hexDump(sb, encryptedPart, bbLen(encryptedPart));
+            log.debug(sb);
+        }
+        long rv;
+        if (NioBuf.isDirect(encryptedPart, data)) {
+            rv = provider.C_DecryptUpdate(session, encryptedPart, bbLen(encryptedPart), data, dataLen);
+        } else {
+            byte[] out = NioBuf.out(data);
+            rv = provider.C_DecryptUpdate(session, NioBuf.in(encryptedPart), NioBuf.offset(encryptedPart), bbLen(encryptedPart), out, NioBuf.offset(data), dataLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(data, out, dataLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_DecryptUpdate rv=0x%08x{%s}\n  data (len=%d):\n", rv, CKR.L2S(rv), dataLen.value()));
+            hexDumpOut(rv, sb, data, (int) dataLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK && data != null) {
+            NioBuf.advance(encryptedPart, data, dataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Continues a multiple-part decryption.
+     * @param session the session's handle
+     * @param encryptedPart encrypted data
+     * @param encryptedPartOff offset of encryptedPart
+     * @param encryptedPartLen length of encryptedPart
+     * @param data gets plaintext
+     * @param dataOff offset in data to write output
+     * @param dataLen get p-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DecryptUpdate(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public long DecryptUpdate(long session, byte[] encryptedPart, int encryptedPartOff, int encryptedPartLen, byte[] data, int dataOff, LongRef dataLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_DecryptUpdate session=0x%08x dataLen=%d\n  encryptedPart (len=%d):\n", session, dataLen.value(), encryptedPartLen));
+            hexDump(sb, encryptedPart, encryptedPartOff, encryptedPartLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_DecryptUpdate(session, encryptedPart, encryptedPartOff, encryptedPartLen, data, dataOff, dataLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_DecryptUpdate rv=0x%08x{%s}\n  data (len=%d):\n", rv, CKR.L2S(rv), dataLen.value()));
+            hexDumpOut(rv, sb, data, dataOff, (int) dataLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Finishes a multiple-part decryption.
      * @param session the session's handle
@@ -751,6 +1095,60 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Finishes a multiple-part decryption.
+     * @param session the session's handle
+     * @param lastPart gets plaintext
+     * @param lastPartLen p-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DecryptFinal(long, ByteBuffer, LongRef)
+     */
+    public long DecryptFinal(long session, ByteBuffer lastPart, LongRef lastPartLen) {
+        if (lastPart != null) {
+            lastPartLen.value = lastPart.remaining();
+        }
+        if (log.isDebugEnabled()) log.debug(String.format("> C_DecryptFinal session=0x%08x lastPartLen=%d", session, lastPartLen.value()));
+        long rv;
+        if (NioBuf.isDirect(lastPart)) {
+            rv = provider.C_DecryptFinal(session, lastPart, lastPartLen);
+        } else {
+            byte[] out = NioBuf.out(lastPart);
+            rv = provider.C_DecryptFinal(session, out, NioBuf.offset(lastPart), lastPartLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(lastPart, out, lastPartLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_DecryptFinal rv=0x%08x{%s}\n  lastPart (len=%d):\n", rv, CKR.L2S(rv), lastPartLen.value()));
+            hexDumpOut(rv, sb, lastPart, (int) lastPartLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK) {
+            NioBuf.advance(null, lastPart, lastPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Finishes a multiple-part decryption.
+     * @param session the session's handle
+     * @param lastPart gets plaintext
+     * @param lastPartOff offset in lastPart to write output
+     * @param lastPartLen p-text size
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DecryptFinal(long, byte[], int, LongRef)
+     */
+    public long DecryptFinal(long session, byte[] lastPart, int lastPartOff, LongRef lastPartLen) {
+        if (log.isDebugEnabled()) log.debug(String.format("> C_DecryptFinal session=0x%08x lastPartLen=%d", session, lastPartLen.value()));
+        long rv = provider.C_DecryptFinal(session, lastPart, lastPartOff, lastPartLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_DecryptFinal rv=0x%08x{%s}\n  lastPart (len=%d):\n", rv, CKR.L2S(rv), lastPartLen.value()));
+            hexDumpOut(rv, sb, lastPart, lastPartOff, (int) lastPartLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Initialises a message-digesting operation.
      * @param session the session's handle
@@ -790,19 +1188,128 @@ public class Cryptoki {
     }
 
     /**
-     * Continues a multiple-part message-digesting.
+     * Digests data in a single part.
      * @param session the session's handle
-     * @param part data to be digested
+     * @param data data to be digested
+     * @param digest gets the message digest
+     * @param digestLen gets digest length
      * @return {@link CKR} return code
-     * @see NativeProvider#C_DigestUpdate(long, byte[], long)
+     * @see NativeProvider#C_Digest(long, ByteBuffer, long, ByteBuffer, LongRef)
      */
-    public long DigestUpdate(long session, byte[] part) {
+    public long Digest(long session, ByteBuffer data, ByteBuffer digest, LongRef digestLen) {
+        if (digest != null) {
+            digestLen.value = digest.remaining();
+        }
         if (log.isDebugEnabled()) {
-            StringBuilder sb = new StringBuilder(String.format("> C_DigestUpdate session=0x%08x\n  part (len=%d):\n", session, part.length));
-            hexDump(sb, part, part.length);
+            StringBuilder sb = new StringBuilder(String.format("> C_Digest session=0x%08x digestLen=%d\n  data (len=%d):\n", session, digestLen.value(), bbLen(data)));
+            hexDump(sb, data, bbLen(data));
             log.debug(sb);
         }
-        long rv = provider.C_DigestUpdate(session, part, baLen(part));
+        long rv;
+        if (NioBuf.isDirect(data, digest)) {
+            rv = provider.C_Digest(session, data, bbLen(data), digest, digestLen);
+        } else {
+            byte[] out = NioBuf.out(digest);
+            rv = provider.C_Digest(session, NioBuf.in(data), NioBuf.offset(data), bbLen(data), out, NioBuf.offset(digest), digestLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(digest, out, digestLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Digest rv=0x%08x{%s}\n  digest (len=%d):\n", rv, CKR.L2S(rv), digestLen.value()));
+            hexDumpOut(rv, sb, digest, (int) digestLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK && digest != null) {
+            NioBuf.advance(data, digest, digestLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Digests data in a single part.
+     * @param session the session's handle
+     * @param data data to be digested
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param digest gets the message digest
+     * @param digestOff offset in digest to write output
+     * @param digestLen gets digest length
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Digest(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public long Digest(long session, byte[] data, int dataOff, int dataLen, byte[] digest, int digestOff, LongRef digestLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Digest session=0x%08x digestLen=%d\n  data (len=%d):\n", session, digestLen.value(), dataLen));
+            hexDump(sb, data, dataOff, dataLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_Digest(session, data, dataOff, dataLen, digest, digestOff, digestLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Digest rv=0x%08x{%s}\n  digest (len=%d):\n", rv, CKR.L2S(rv), digestLen.value()));
+            hexDumpOut(rv, sb, digest, digestOff, (int) digestLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
+    /**
+     * Continues a multiple-part message-digesting.
+     * @param session the session's handle
+     * @param part data to be digested
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DigestUpdate(long, byte[], long)
+     */
+    public long DigestUpdate(long session, byte[] part) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_DigestUpdate session=0x%08x\n  part (len=%d):\n", session, part.length));
+            hexDump(sb, part, part.length);
+            log.debug(sb);
+        }
+        long rv = provider.C_DigestUpdate(session, part, baLen(part));
+        if (log.isDebugEnabled()) log.debug(String.format("< C_DigestUpdate rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        return rv;
+    }
+
+    /**
+     * Continues a multiple-part message-digesting.
+     * @param session the session's handle
+     * @param part data to be digested
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DigestUpdate(long, ByteBuffer, long)
+     */
+    public long DigestUpdate(long session, ByteBuffer part) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_DigestUpdate session=0x%08x\n  part (len=%d):\n", session, bbLen(part)));
+            hexDump(sb, part, bbLen(part));
+            log.debug(sb);
+        }
+        long rv = NioBuf.isDirect(part)
+            ? provider.C_DigestUpdate(session, part, bbLen(part))
+            : provider.C_DigestUpdate(session, NioBuf.in(part), NioBuf.offset(part), bbLen(part));
+        if (log.isDebugEnabled()) log.debug(String.format("< C_DigestUpdate rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        if (rv == CKR.OK) {
+            NioBuf.advance(part, null, 0);
+        }
+        return rv;
+    }
+
+    /**
+     * Continues a multiple-part message-digesting.
+     * @param session the session's handle
+     * @param part data to be digested
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DigestUpdate(long, byte[], int, long)
+     */
+    public long DigestUpdate(long session, byte[] part, int partOff, int partLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_DigestUpdate session=0x%08x\n  part (len=%d):\n", session, partLen));
+            hexDump(sb, part, partOff, partLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_DigestUpdate(session, part, partOff, partLen);
         if (log.isDebugEnabled()) log.debug(String.format("< C_DigestUpdate rv=0x%08x{%s}", rv, CKR.L2S(rv)));
         return rv;
     }
@@ -841,6 +1348,60 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Finishes a multiple-part message-digesting operation.
+     * @param session the session's handle
+     * @param digest gets the message digest
+     * @param digestLen gets byte count of digest
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DigestFinal(long, ByteBuffer, LongRef)
+     */
+    public long DigestFinal(long session, ByteBuffer digest, LongRef digestLen) {
+        if (digest != null) {
+            digestLen.value = digest.remaining();
+        }
+        if (log.isDebugEnabled()) log.debug(String.format("> C_DigestFinal session=0x%08x digestLen=%d", session, digestLen.value()));
+        long rv;
+        if (NioBuf.isDirect(digest)) {
+            rv = provider.C_DigestFinal(session, digest, digestLen);
+        } else {
+            byte[] out = NioBuf.out(digest);
+            rv = provider.C_DigestFinal(session, out, NioBuf.offset(digest), digestLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(digest, out, digestLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_DigestFinal rv=0x%08x{%s}\n  digest (len=%d):\n", rv, CKR.L2S(rv), digestLen.value()));
+            hexDumpOut(rv, sb, digest, (int) digestLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK) {
+            NioBuf.advance(null, digest, digestLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Finishes a multiple-part message-digesting operation.
+     * @param session the session's handle
+     * @param digest gets the message digest
+     * @param digestOff offset in digest to write output
+     * @param digestLen gets byte count of digest
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_DigestFinal(long, byte[], int, LongRef)
+     */
+    public long DigestFinal(long session, byte[] digest, int digestOff, LongRef digestLen) {
+        if (log.isDebugEnabled()) log.debug(String.format("> C_DigestFinal session=0x%08x digestLen=%d", session, digestLen.value()));
+        long rv = provider.C_DigestFinal(session, digest, digestOff, digestLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_DigestFinal rv=0x%08x{%s}\n  digest (len=%d):\n", rv, CKR.L2S(rv), digestLen.value()));
+            hexDumpOut(rv, sb, digest, digestOff, (int) digestLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Initialises a signature (private key encryption) operation, where
      * the signature is (will be) an appendix to the data, and plaintext
@@ -883,6 +1444,74 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Signs (encrypts with private key) data in a single part, where the signature is (will be)
+     * an appendix to the data, and plaintext canot be recovered from the signature.
+     * @param session the session's handle
+     * @param data the data to sign
+     * @param signature gets the signature
+     * @param signatureLen gets signature length
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Sign(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public long Sign(long session, ByteBuffer data, ByteBuffer signature, LongRef signatureLen) {
+        if (signature != null) {
+            signatureLen.value = signature.remaining();
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Sign session=0x%08x signatureLen=%d\n  data (len=%d):\n", session, signatureLen.value(), bbLen(data)));
+            hexDump(sb, data, bbLen(data));
+            log.debug(sb);
+        }
+        long rv;
+        if (NioBuf.isDirect(data, signature)) {
+            rv = provider.C_Sign(session, data, bbLen(data), signature, signatureLen);
+        } else {
+            byte[] out = NioBuf.out(signature);
+            rv = provider.C_Sign(session, NioBuf.in(data), NioBuf.offset(data), bbLen(data), out, NioBuf.offset(signature), signatureLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(signature, out, signatureLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Sign rv=0x%08x{%s}\n  signature (len=%d):\n", rv, CKR.L2S(rv), signatureLen.value()));
+            hexDumpOut(rv, sb, signature, (int) signatureLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK && signature != null) {
+            NioBuf.advance(data, signature, signatureLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Signs (encrypts with private key) data in a single part, where the signature is (will be)
+     * an appendix to the data, and plaintext canot be recovered from the signature.
+     * @param session the session's handle
+     * @param data the data to sign
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param signature gets the signature
+     * @param signatureOff offset in signature to write output
+     * @param signatureLen gets signature length
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Sign(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public long Sign(long session, byte[] data, int dataOff, int dataLen, byte[] signature, int signatureOff, LongRef signatureLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Sign session=0x%08x signatureLen=%d\n  data (len=%d):\n", session, signatureLen.value(), dataLen));
+            hexDump(sb, data, dataOff, dataLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_Sign(session, data, dataOff, dataLen, signature, signatureOff, signatureLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_Sign rv=0x%08x{%s}\n  signature (len=%d):\n", rv, CKR.L2S(rv), signatureLen.value()));
+            hexDumpOut(rv, sb, signature, signatureOff, (int) signatureLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Continues a multiple-part signature operation where the signature is
      * (will be) an appendix to the data, and plaintext cannot be recovered from
@@ -903,6 +1532,53 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Continues a multiple-part signature operation where the signature is
+     * (will be) an appendix to the data, and plaintext cannot be recovered from
+     * the signature.
+     * @param session the session's handle
+     * @param part data to sign
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_SignUpdate(long, ByteBuffer, long)
+     */
+    public long SignUpdate(long session, ByteBuffer part) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_SignUpdate session=0x%08x\n  part (len=%d):\n", session, bbLen(part)));
+            hexDump(sb, part, bbLen(part));
+            log.debug(sb);
+        }
+        long rv = NioBuf.isDirect(part)
+            ? provider.C_SignUpdate(session, part, bbLen(part))
+            : provider.C_SignUpdate(session, NioBuf.in(part), NioBuf.offset(part), bbLen(part));
+        if (log.isDebugEnabled()) log.debug(String.format("< C_SignUpdate rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        if (rv == CKR.OK) {
+            NioBuf.advance(part, null, 0);
+        }
+        return rv;
+    }
+
+    /**
+     * Continues a multiple-part signature operation where the signature is
+     * (will be) an appendix to the data, and plaintext cannot be recovered from
+     * the signature.
+     * @param session the session's handle
+     * @param part data to sign
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_SignUpdate(long, byte[], int, long)
+     */
+    public long SignUpdate(long session, byte[] part, int partOff, int partLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_SignUpdate session=0x%08x\n  part (len=%d):\n", session, partLen));
+            hexDump(sb, part, partOff, partLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_SignUpdate(session, part, partOff, partLen);
+        if (log.isDebugEnabled()) log.debug(String.format("< C_SignUpdate rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        return rv;
+    }
+
     /**
      * Finishes a multiple-part signature operation, returning the signature.
      * @param session the session's handle
@@ -922,6 +1598,60 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Finishes a multiple-part signature operation, returning the signature.
+     * @param session the session's handle
+     * @param signature gets the signature
+     * @param signatureLen gets signature length
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_SignFinal(long, ByteBuffer, LongRef)
+     */
+    public long SignFinal(long session, ByteBuffer signature, LongRef signatureLen) {
+        if (signature != null) {
+            signatureLen.value = signature.remaining();
+        }
+        if (log.isDebugEnabled()) log.debug(String.format("> C_SignFinal session=0x%08x signatureLen=%d", session, signatureLen.value()));
+        long rv;
+        if (NioBuf.isDirect(signature)) {
+            rv = provider.C_SignFinal(session, signature, signatureLen);
+        } else {
+            byte[] out = NioBuf.out(signature);
+            rv = provider.C_SignFinal(session, out, NioBuf.offset(signature), signatureLen);
+            if (rv == CKR.OK) {
+                NioBuf.copyOut(signature, out, signatureLen.value);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_SignFinal rv=0x%08x{%s}\n  signature (len=%d):\n", rv, CKR.L2S(rv), signatureLen.value()));
+            hexDumpOut(rv, sb, signature, (int) signatureLen.value());
+            log.debug(sb);
+        }
+        if (rv == CKR.OK) {
+            NioBuf.advance(null, signature, signatureLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Finishes a multiple-part signature operation, returning the signature.
+     * @param session the session's handle
+     * @param signature gets the signature
+     * @param signatureOff offset in signature to write output
+     * @param signatureLen gets signature length
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_SignFinal(long, byte[], int, LongRef)
+     */
+    public long SignFinal(long session, byte[] signature, int signatureOff, LongRef signatureLen) {
+        if (log.isDebugEnabled()) log.debug(String.format("> C_SignFinal session=0x%08x signatureLen=%d", session, signatureLen.value()));
+        long rv = provider.C_SignFinal(session, signature, signatureOff, signatureLen);
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("< C_SignFinal rv=0x%08x{%s}\n  signature (len=%d):\n", rv, CKR.L2S(rv), signatureLen.value()));
+            hexDumpOut(rv, sb, signature, signatureOff, (int) signatureLen.value());
+            log.debug(sb);
+        }
+        return rv;
+    }
+
     /**
      * Initialises a signature operation, where the data can be recovered from the signature.
      * @param session the session's handle
@@ -999,6 +1729,59 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Verifies a signature in a single-part operation, where the signature is an appendix to the data,
+     * and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param data signed data
+     * @param signature signature
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Verify(long, ByteBuffer, long, ByteBuffer, long)
+     */
+    public long Verify(long session, ByteBuffer data, ByteBuffer signature) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Verify session=0x%08x\n  data (len=%d):\n", session, bbLen(data)));
+            hexDump(sb, data, bbLen(data));
+            sb.append(String.format("\n  signature (len=%d):\n", bbLen(signature)));
+            hexDump(sb, signature, bbLen(signature));
+            log.debug(sb);
+        }
+        long rv = NioBuf.isDirect(data, signature)
+            ? provider.C_Verify(session, data, bbLen(data), signature, bbLen(signature))
+            : provider.C_Verify(session, NioBuf.in(data), NioBuf.offset(data), bbLen(data), NioBuf.in(signature), NioBuf.offset(signature), bbLen(signature));
+        if (log.isDebugEnabled()) log.debug(String.format("< C_Verify rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        if (rv == CKR.OK) {
+            NioBuf.advance(data, signature, bbLen(signature));
+        }
+        return rv;
+    }
+
+    /**
+     * Verifies a signature in a single-part operation, where the signature is an appendix to the data,
+     * and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param data signed data
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param signature signature
+     * @param signatureOff offset of signature
+     * @param signatureLen length of signature
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_Verify(long, byte[], int, long, byte[], int, long)
+     */
+    public long Verify(long session, byte[] data, int dataOff, int dataLen, byte[] signature, int signatureOff, int signatureLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_Verify session=0x%08x\n  data (len=%d):\n", session, dataLen));
+            hexDump(sb, data, dataOff, dataLen);
+            sb.append(String.format("\n  signature (len=%d):\n", signatureLen));
+            hexDump(sb, signature, signatureOff, signatureLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_Verify(session, data, dataOff, dataLen, signature, signatureOff, signatureLen);
+        if (log.isDebugEnabled()) log.debug(String.format("< C_Verify rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        return rv;
+    }
+
     /**
      * Continues a multiple-part verification operation where the signature is an appendix to the data,
      * and plaintet cannot be recovered from the signature.
@@ -1018,6 +1801,51 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Continues a multiple-part verification operation where the signature is an appendix to the data,
+     * and plaintet cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param part signed data
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_VerifyUpdate(long, ByteBuffer, long)
+     */
+    public long VerifyUpdate(long session, ByteBuffer part) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_VerifyUpdate session=0x%08x\n  part (len=%d):\n", session, bbLen(part)));
+            hexDump(sb, part, bbLen(part));
+            log.debug(sb);
+        }
+        long rv = NioBuf.isDirect(part)
+            ? provider.C_VerifyUpdate(session, part, bbLen(part))
+            : provider.C_VerifyUpdate(session, NioBuf.in(part), NioBuf.offset(part), bbLen(part));
+        if (log.isDebugEnabled()) log.debug(String.format("< C_VerifyUpdate rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        if (rv == CKR.OK) {
+            NioBuf.advance(part, null, 0);
+        }
+        return rv;
+    }
+
+    /**
+     * Continues a multiple-part verification operation where the signature is an appendix to the data,
+     * and plaintet cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param part signed data
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_VerifyUpdate(long, byte[], int, long)
+     */
+    public long VerifyUpdate(long session, byte[] part, int partOff, int partLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_VerifyUpdate session=0x%08x\n  part (len=%d):\n", session, partLen));
+            hexDump(sb, part, partOff, partLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_VerifyUpdate(session, part, partOff, partLen);
+        if (log.isDebugEnabled()) log.debug(String.format("< C_VerifyUpdate rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        return rv;
+    }
+
     /**
      * Finishes a multiple-part verification operation, checking the signature.
      * @param session the session's handle
@@ -1036,6 +1864,49 @@ public class Cryptoki {
         return rv;
     }
 
+    /**
+     * Finishes a multiple-part verification operation, checking the signature.
+     * @param session the session's handle
+     * @param signature signature to verify
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_VerifyFinal(long, ByteBuffer, long)
+     */
+    public long VerifyFinal(long session, ByteBuffer signature) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_VerifyFinal session=0x%08x\n  signature (len=%d):\n", session, bbLen(signature)));
+            hexDump(sb, signature, bbLen(signature));
+            log.debug(sb);
+        }
+        long rv = NioBuf.isDirect(signature)
+            ? provider.C_VerifyFinal(session, signature, bbLen(signature))
+            : provider.C_VerifyFinal(session, NioBuf.in(signature), NioBuf.offset(signature), bbLen(signature));
+        if (log.isDebugEnabled()) log.debug(String.format("< C_VerifyFinal rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        if (rv == CKR.OK) {
+            NioBuf.advance(signature, null, 0);
+        }
+        return rv;
+    }
+
+    /**
+     * Finishes a multiple-part verification operation, checking the signature.
+     * @param session the session's handle
+     * @param signature signature to verify
+     * @param signatureOff offset of signature
+     * @param signatureLen length of signature
+     * @return {@link CKR} return code
+     * @see NativeProvider#C_VerifyFinal(long, byte[], int, long)
+     */
+    public long VerifyFinal(long session, byte[] signature, int signatureOff, int signatureLen) {
+        if (log.isDebugEnabled()) {
+            StringBuilder sb = new StringBuilder(String.format("> C_VerifyFinal session=0x%08x\n  signature (len=%d):\n", session, signatureLen));
+            hexDump(sb, signature, signatureOff, signatureLen);
+            log.debug(sb);
+        }
+        long rv = provider.C_VerifyFinal(session, signature, signatureOff, signatureLen);
+        if (log.isDebugEnabled()) log.debug(String.format("< C_VerifyFinal rv=0x%08x{%s}", rv, CKR.L2S(rv)));
+        return rv;
+    }
+
     /**
      * Initialises a signature verification operation, where the data is recovered from the signature.
      * @param session the session's handle
@@ -1378,6 +2249,15 @@ public class Cryptoki {
         return buf == null ? 0 : buf.length;
     }
 
+    /**
+     * Return remaining bytes of buf (0 if buf is null).
+     * @param buf buf
+     * @return remaining bytes of buf (0 if buf is null)
+     */
+    private int bbLen(ByteBuffer buf) {
+        return buf == null ? 0 : buf.remaining();
+    }
+
     /**
      * Return length of template (0 if template is null).
      * @param templ template
@@ -1404,6 +2284,24 @@ public class Cryptoki {
         Hex.dump(sb, data, 0, len, "  ", 32, false);
     }
 
+    private static void hexDump(StringBuilder sb, byte[] data, int off, int len) {
+        if (data == null) {
+            hexDump(sb, data, 0);
+            return;
+        }
+        int start = Math.max(0, Math.min(off, data.length));
+        Hex.dump(sb, data, start, Math.max(0, Math.min(len, data.length - start)), "  ", 32, false);
+    }
+
+    private static void hexDump(StringBuilder sb, ByteBuffer buf, int len) {
+        byte[] data = null;
+        if (buf != null) {
+            data = new byte[Math.min(len, buf.remaining())];
+            buf.duplicate().get(data);
+        }
+        hexDump(sb, data, data == null ? 0 : data.length);
+    }
+
     /**
      * Hex dump data into string builder unless rv is CKR.BUFFER_TOO_SMALL
      * which is indicated by appending "<buffer too small>" to the string builder.
@@ -1423,6 +2321,22 @@ public class Cryptoki {
         }
     }
 
+    private static void hexDumpOut(long rv, StringBuilder sb, byte[] data, int off, int dataLen) {
+        if (rv != CKR.BUFFER_TOO_SMALL) {
+            hexDump(sb, data, off, dataLen);
+        } else {
+            sb.append("  <buffer too small>");
+        }
+    }
+
+    private static void hexDumpOut(long rv, StringBuilder sb, ByteBuffer buf, int len) {
+        if (rv != CKR.BUFFER_TOO_SMALL) {
+            hexDump(sb, buf, len);
+        } else {
+            sb.append("  <buffer too small>");
+        }
+    }
+
     /**
      * Obtain metrics on calls to the underlying {@link NativeProvider}
      *
@@ -21,6 +21,14 @@
 
 package org.pkcs11.jacknji11;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * This is the preferred java interface for calling cryptoki functions.
  * <p>
@@ -69,6 +77,7 @@ public class CryptokiE {
      *
      * @see AttributeLengthStrategy.MaxLengthStrategy
      * @see AttributeLengthStrategy.IndefiniteLengthStrategy
+     * @see AttributeLengthStrategy.AdaptiveLengthStrategy
      */
     private AttributeLengthStrategy attributeLengthStrategy = new AttributeLengthStrategy.IndefiniteLengthStrategy();
 
@@ -82,6 +91,51 @@ public class CryptokiE {
      */
     private boolean attributeBatchModeEnabled = true;
 
+    /**
+     * Cache of FindObjects results, or null to always search the token.
+     * <p>
+     * Default: null
+     */
+    private ObjectHandleCache objectHandleCache;
+
+    /**
+     * Cache of immutable attribute values, or null to always read the token.
+     * <p>
+     * Default: null
+     */
+    private AttributeCache attributeCache;
+
+    /** told of objects created, changed or destroyed */
+    private final List<ObjectListener> objectListeners = new CopyOnWriteArrayList<ObjectListener>();
+
+    /** slot of sessions opened or looked up while a cache is set */
+    private final Map<Long, Long> sessionSlots = new ConcurrentHashMap<Long, Long>();
+
+    /** sessions that created session objects while a cache is set, those objects are destroyed when they close */
+    private final Set<Long> writers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Told of objects created, changed or destroyed through a CryptokiE, see
+     * {@link CryptokiE#addObjectListener(ObjectListener)}.  Called on the
+     * thread making the change, implementations should only record it.
+     */
+    public interface ObjectListener {
+        /**
+         * Object was created, copied, generated, unwrapped, derived, changed or destroyed.
+         * @param slotID slot of object, or -1 if not known
+         * @param object object handle
+         */
+        void objectChanged(long slotID, long object);
+
+        /**
+         * Objects that can be found in slot may have changed, because of login or
+         * logout, the token being initialized, or a session that created session
+         * objects being closed.
+         * @param slotID slot, or -1 if not known or all slots
+         */
+        void objectsChanged(long slotID);
+    }
+
     public CryptokiE() {
       this.c = new Cryptoki();
     }
@@ -93,6 +147,21 @@ public class CryptokiE {
       this.c = c;
     }
 
+    /**
+     * Returns true for errors after which a session can no longer be used but
+     * a new one may work, such as when an HSM restarts or a network HSM fails
+     * over: SESSION_HANDLE_INVALID, SESSION_CLOSED, DEVICE_REMOVED and
+     * TOKEN_NOT_PRESENT.
+     * @param ckr CKR value
+     * @return true if the session is lost and should be opened again
+     * @see SessionPool#execute(SessionCall)
+     * @see ThreadSessionCache#execute(SessionCall)
+     */
+    public static boolean isSessionLost(long ckr) {
+        return ckr == CKR.SESSION_HANDLE_INVALID || ckr == CKR.SESSION_CLOSED
+            || ckr == CKR.DEVICE_REMOVED || ckr == CKR.TOKEN_NOT_PRESENT;
+    }
+
     /**
      * Initialize cryptoki.
      * @see C#Initialize()
@@ -100,6 +169,7 @@ public class CryptokiE {
      */
     public void Initialize() {
         long rv = c.Initialize();
+        resetCaches();
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -110,6 +180,7 @@ public class CryptokiE {
      */
     public void Finalize() {
         long rv = c.Finalize();
+        resetCaches();
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -312,6 +383,7 @@ public class CryptokiE {
      */
     public void InitToken(long slotID, byte[] pin, byte[] label) {
         long rv = c.InitToken(slotID, pin, label);
+        invalidateCaches(slotID);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -353,6 +425,7 @@ public class CryptokiE {
     public void OpenSession(long slotID, long flags, NativePointer application, CK_NOTIFY notify, LongRef session) {
         long rv = c.OpenSession(slotID, flags, application, notify, session);
         if (rv != CKR.OK) throw new CKRException(rv);
+        sessionOpened(session.value(), slotID);
     }
 
     /**
@@ -391,6 +464,7 @@ public class CryptokiE {
      */
     public void CloseSession(long session) {
         long rv = c.CloseSession(session);
+        sessionClosed(session);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -402,6 +476,7 @@ public class CryptokiE {
      */
     public void CloseAllSessions(long slotID) {
         long rv = c.CloseAllSessions(slotID);
+        allSessionsClosed(slotID);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -482,6 +557,7 @@ public class CryptokiE {
      */
     public void Login(long session, long userType, byte[] pin) {
         long rv = c.Login(session, userType, pin);
+        if (rv == CKR.OK) loginChanged(session);
         if (rv != CKR.OK && rv != CKR.USER_ALREADY_LOGGED_IN) throw new CKRException(rv);
     }
 
@@ -537,6 +613,7 @@ public class CryptokiE {
      */
     public void Logout(long session) {
         long rv = c.Logout(session);
+        loginChanged(session);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -550,6 +627,7 @@ public class CryptokiE {
      */
     public void CreateObject(long session, CKA[] templ, LongRef object) {
         long rv = c.CreateObject(session, templ, object);
+        objectsCreated(session, rv, sessionObject(templ), object);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -577,6 +655,7 @@ public class CryptokiE {
      */
     public void CopyObject(long session, long object, CKA[] templ, LongRef newObject) {
         long rv = c.CopyObject(session, object, templ, newObject);
+        objectsCreated(session, rv, sessionObject(templ), newObject);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -604,6 +683,7 @@ public class CryptokiE {
      */
     public void DestroyObject(long session, long object) {
         long rv = c.DestroyObject(session, object);
+        objectChanged(session, object);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -693,7 +773,93 @@ public class CryptokiE {
             return new CKA[0];
         }
 
-        return new GetAttributeProcess(c, session, object, attributeLengthStrategy, attributeBatchModeEnabled, types).fetch();
+        return getAttributeValue(session, object, attributeLengthStrategy, types);
+    }
+
+    /**
+     * Obtains the value of the same attributes of many objects, for example to
+     * list keys.  Lengths learned from the first objects are used to read the
+     * rest in a single C_GetAttributeValue call each, see
+     * {@link AttributeLengthStrategy.AdaptiveLengthStrategy}.  An error reading
+     * one object is recorded in the result and the remaining objects are read.
+     * @param session the session's handle
+     * @param objects the objects' handles
+     * @param types {@link CKA} attribute types to get
+     * @return attribute values and errors of each object
+     * @throws CKRException if the session is lost, see {@link #isSessionLost(long)}
+     * @see SessionPool#getAttributeValues(long[], int, long...)
+     */
+    public AttributeValues GetAttributeValues(long session, long[] objects, long... types) {
+        AttributeValues result = new AttributeValues(objects, types);
+        getAttributeValues(session, result, 0, objects.length, bulkLengthStrategy());
+        return result;
+    }
+
+    /**
+     * Reads the objects of rows from (inclusive) to to (exclusive) into result.
+     * @throws CKRException if the session is lost
+     */
+    void getAttributeValues(long session, AttributeValues result, int from, int to, AttributeLengthStrategy strategy) {
+        long[] types = result.types();
+        for (int i = from; i < to; i++) {
+            try {
+                result.set(i, types.length == 0 ? new CKA[0] : getAttributeValue(session, result.getObject(i), strategy, types));
+            } catch (CKRException e) {
+                if (isSessionLost(e.getCKR())) {
+                    throw e;
+                }
+                result.fail(i, e);
+            }
+        }
+    }
+
+    /**
+     * @return strategy shared by the objects of a bulk read, learning lengths
+     * from the first objects unless the strategy set already does
+     */
+    AttributeLengthStrategy bulkLengthStrategy() {
+        AttributeLengthStrategy strategy = attributeLengthStrategy;
+        if (strategy instanceof AttributeLengthStrategy.AdaptiveLengthStrategy) {
+            return strategy;
+        }
+        return new AttributeLengthStrategy.AdaptiveLengthStrategy(strategy,
+            AttributeLengthStrategy.AdaptiveLengthStrategy.DEFAULT_MAX_LEARNED_LENGTH);
+    }
+
+    private CKA[] getAttributeValue(long session, long object, AttributeLengthStrategy strategy, long... types) {
+        AttributeCache cache = attributeCache;
+        long slotID = cache == null ? -1 : slotOf(session);
+        if (slotID == -1) {
+            return new GetAttributeProcess(c, session, object, strategy, attributeBatchModeEnabled, types).fetch();
+        }
+
+        AttributeCache.ObjectValues cached = cache.values(slotID, object, types);
+        if (cached == null) {
+            return new GetAttributeProcess(c, session, object, strategy, attributeBatchModeEnabled, types).fetch();
+        }
+        CKA[] result = new CKA[types.length];
+        List<Long> missing = new ArrayList<Long>();
+        for (int i = 0; i < types.length; i++) {
+            result[i] = cache.get(cached, types[i]);
+            if (result[i] == null) {
+                missing.add(types[i]);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        long[] fetchTypes = new long[missing.size()];
+        for (int i = 0; i < fetchTypes.length; i++) {
+            fetchTypes[i] = missing.get(i);
+        }
+        CKA[] fetched = new GetAttributeProcess(c, session, object, strategy, attributeBatchModeEnabled, fetchTypes).fetch();
+        for (int i = 0, j = 0; i < result.length; i++) {
+            if (result[i] == null) {
+                result[i] = fetched[j++];
+                cache.put(cached, result[i]);
+            }
+        }
+        return result;
     }
 
     /**
@@ -706,6 +872,7 @@ public class CryptokiE {
      */
     public void SetAttributeValue(long session, long object, CKA... templ) {
         long rv = c.SetAttributeValue(session, object, templ);
+        objectChanged(session, object);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -778,6 +945,21 @@ public class CryptokiE {
      * @see NativeProvider#C_FindObjectsInit(long, CKA[], long)
      */
     public long[] FindObjects(long session, CKA... templ) {
+        ObjectHandleCache cache = objectHandleCache;
+        long slotID = cache == null ? -1 : slotOf(session);
+        if (slotID == -1) {
+            return findObjects(session, templ);
+        }
+        long[] found = cache.get(slotID, templ);
+        if (found == null) {
+            long generation = cache.generation(slotID);
+            found = findObjects(session, templ);
+            cache.put(slotID, generation, templ, found);
+        }
+        return found;
+    }
+
+    private long[] findObjects(long session, CKA... templ) {
         // According to https://docs.oasis-open.org/pkcs11/pkcs11-base/v2.40/os/pkcs11-base-v2.40-os.html#_Toc323205460:
         // "After calling C_FindObjectsInit, the application may call
         // C_FindObjects one or more times to obtain handles for objects
@@ -848,6 +1030,41 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Encrypts single-part data.
+     * @param session the session's handle
+     * @param data the plaintext data
+     * @param encryptedData gets ciphertext
+     * @return number of bytes written to encryptedData
+     * @see Cryptoki#Encrypt(long, ByteBuffer, ByteBuffer, LongRef)
+     * @see NativeProvider#C_Encrypt(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public int Encrypt(long session, ByteBuffer data, ByteBuffer encryptedData) {
+        LongRef l = new LongRef();
+        long rv = c.Encrypt(session, data, encryptedData, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Encrypts single-part data.
+     * @param session the session's handle
+     * @param data the plaintext data
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param encryptedData gets ciphertext
+     * @param encryptedDataOff offset in encryptedData to write output
+     * @return number of bytes written to encryptedData
+     * @see Cryptoki#Encrypt(long, byte[], int, int, byte[], int, LongRef)
+     * @see NativeProvider#C_Encrypt(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public int Encrypt(long session, byte[] data, int dataOff, int dataLen, byte[] encryptedData, int encryptedDataOff) {
+        LongRef l = space(encryptedData, encryptedDataOff);
+        long rv = c.Encrypt(session, data, dataOff, dataLen, encryptedData, encryptedDataOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Encrypts single-part data with 2 calls.  First call determines
      * size of result which may include padding, second call does encrypt.
@@ -895,6 +1112,41 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Continues a multiple-part encryption.
+     * @param session the session's handle
+     * @param part the plaintext data
+     * @param encryptedPart get ciphertext
+     * @return number of bytes written to encryptedPart
+     * @see Cryptoki#EncryptUpdate(long, ByteBuffer, ByteBuffer, LongRef)
+     * @see NativeProvider#C_EncryptUpdate(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public int EncryptUpdate(long session, ByteBuffer part, ByteBuffer encryptedPart) {
+        LongRef l = new LongRef();
+        long rv = c.EncryptUpdate(session, part, encryptedPart, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Continues a multiple-part encryption.
+     * @param session the session's handle
+     * @param part the plaintext data
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @param encryptedPart get ciphertext
+     * @param encryptedPartOff offset in encryptedPart to write output
+     * @return number of bytes written to encryptedPart
+     * @see Cryptoki#EncryptUpdate(long, byte[], int, int, byte[], int, LongRef)
+     * @see NativeProvider#C_EncryptUpdate(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public int EncryptUpdate(long session, byte[] part, int partOff, int partLen, byte[] encryptedPart, int encryptedPartOff) {
+        LongRef l = space(encryptedPart, encryptedPartOff);
+        long rv = c.EncryptUpdate(session, part, partOff, partLen, encryptedPart, encryptedPartOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Continues a multiple-part encryption.
      * @param session the session's handle
@@ -924,6 +1176,37 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Finishes a multiple-part encryption.
+     * @param session the session's handle
+     * @param lastEncryptedPart last c-text
+     * @return number of bytes written to lastEncryptedPart
+     * @see Cryptoki#EncryptFinal(long, ByteBuffer, LongRef)
+     * @see NativeProvider#C_EncryptFinal(long, ByteBuffer, LongRef)
+     */
+    public int EncryptFinal(long session, ByteBuffer lastEncryptedPart) {
+        LongRef l = new LongRef();
+        long rv = c.EncryptFinal(session, lastEncryptedPart, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Finishes a multiple-part encryption.
+     * @param session the session's handle
+     * @param lastEncryptedPart last c-text
+     * @param lastEncryptedPartOff offset in lastEncryptedPart to write output
+     * @return number of bytes written to lastEncryptedPart
+     * @see Cryptoki#EncryptFinal(long, byte[], int, LongRef)
+     * @see NativeProvider#C_EncryptFinal(long, byte[], int, LongRef)
+     */
+    public int EncryptFinal(long session, byte[] lastEncryptedPart, int lastEncryptedPartOff) {
+        LongRef l = space(lastEncryptedPart, lastEncryptedPartOff);
+        long rv = c.EncryptFinal(session, lastEncryptedPart, lastEncryptedPartOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Finishes a multiple-part encryption.
      * @param session the session's handle
@@ -999,6 +1282,41 @@ public class CryptokiE {
 
     }
 
+    /**
+     * Decrypts encrypted data in a single part.
+     * @param session the session's handle
+     * @param encryptedData cipertext
+     * @param data gets plaintext
+     * @return number of bytes written to data
+     * @see Cryptoki#Decrypt(long, ByteBuffer, ByteBuffer, LongRef)
+     * @see NativeProvider#C_Decrypt(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public int Decrypt(long session, ByteBuffer encryptedData, ByteBuffer data) {
+        LongRef l = new LongRef();
+        long rv = c.Decrypt(session, encryptedData, data, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Decrypts encrypted data in a single part.
+     * @param session the session's handle
+     * @param encryptedData cipertext
+     * @param encryptedDataOff offset of encryptedData
+     * @param encryptedDataLen length of encryptedData
+     * @param data gets plaintext
+     * @param dataOff offset in data to write output
+     * @return number of bytes written to data
+     * @see Cryptoki#Decrypt(long, byte[], int, int, byte[], int, LongRef)
+     * @see NativeProvider#C_Decrypt(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public int Decrypt(long session, byte[] encryptedData, int encryptedDataOff, int encryptedDataLen, byte[] data, int dataOff) {
+        LongRef l = space(data, dataOff);
+        long rv = c.Decrypt(session, encryptedData, encryptedDataOff, encryptedDataLen, data, dataOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Decrypts encrypted data in a single-part with 2 calls.  First call determines
      * size of result which may have padding removed, second call does decrypt.
@@ -1046,6 +1364,41 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Continues a multiple-part decryption.
+     * @param session the session's handle
+     * @param encryptedPart encrypted data
+     * @param data gets plaintext
+     * @return number of bytes written to data
+     * @see Cryptoki#DecryptUpdate(long, ByteBuffer, ByteBuffer, LongRef)
+     * @see NativeProvider#C_DecryptUpdate(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public int DecryptUpdate(long session, ByteBuffer encryptedPart, ByteBuffer data) {
+        LongRef l = new LongRef();
+        long rv = c.DecryptUpdate(session, encryptedPart, data, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Continues a multiple-part decryption.
+     * @param session the session's handle
+     * @param encryptedPart encrypted data
+     * @param encryptedPartOff offset of encryptedPart
+     * @param encryptedPartLen length of encryptedPart
+     * @param data gets plaintext
+     * @param dataOff offset in data to write output
+     * @return number of bytes written to data
+     * @see Cryptoki#DecryptUpdate(long, byte[], int, int, byte[], int, LongRef)
+     * @see NativeProvider#C_DecryptUpdate(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public int DecryptUpdate(long session, byte[] encryptedPart, int encryptedPartOff, int encryptedPartLen, byte[] data, int dataOff) {
+        LongRef l = space(data, dataOff);
+        long rv = c.DecryptUpdate(session, encryptedPart, encryptedPartOff, encryptedPartLen, data, dataOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Continues a multiple-part decryption.
      * @param session the session's handle
@@ -1075,6 +1428,37 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Finishes a multiple-part decryption.
+     * @param session the session's handle
+     * @param lastPart gets plaintext
+     * @return number of bytes written to lastPart
+     * @see Cryptoki#DecryptFinal(long, ByteBuffer, LongRef)
+     * @see NativeProvider#C_DecryptFinal(long, ByteBuffer, LongRef)
+     */
+    public int DecryptFinal(long session, ByteBuffer lastPart) {
+        LongRef l = new LongRef();
+        long rv = c.DecryptFinal(session, lastPart, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Finishes a multiple-part decryption.
+     * @param session the session's handle
+     * @param lastPart gets plaintext
+     * @param lastPartOff offset in lastPart to write output
+     * @return number of bytes written to lastPart
+     * @see Cryptoki#DecryptFinal(long, byte[], int, LongRef)
+     * @see NativeProvider#C_DecryptFinal(long, byte[], int, LongRef)
+     */
+    public int DecryptFinal(long session, byte[] lastPart, int lastPartOff) {
+        LongRef l = space(lastPart, lastPartOff);
+        long rv = c.DecryptFinal(session, lastPart, lastPartOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Finishes a multiple-part decryption.
      * @param session the session's handle
@@ -1148,6 +1532,41 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Digests data in a single part.
+     * @param session the session's handle
+     * @param data data to be digested
+     * @param digest gets the message digest
+     * @return number of bytes written to digest
+     * @see Cryptoki#Digest(long, ByteBuffer, ByteBuffer, LongRef)
+     * @see NativeProvider#C_Digest(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public int Digest(long session, ByteBuffer data, ByteBuffer digest) {
+        LongRef l = new LongRef();
+        long rv = c.Digest(session, data, digest, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Digests data in a single part.
+     * @param session the session's handle
+     * @param data data to be digested
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param digest gets the message digest
+     * @param digestOff offset in digest to write output
+     * @return number of bytes written to digest
+     * @see Cryptoki#Digest(long, byte[], int, int, byte[], int, LongRef)
+     * @see NativeProvider#C_Digest(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public int Digest(long session, byte[] data, int dataOff, int dataLen, byte[] digest, int digestOff) {
+        LongRef l = space(digest, digestOff);
+        long rv = c.Digest(session, data, dataOff, dataLen, digest, digestOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Digests data in a single part.
      * @param session the session's handle
@@ -1176,6 +1595,32 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Continues a multiple-part message-digesting.
+     * @param session the session's handle
+     * @param part data to be digested
+     * @see Cryptoki#DigestUpdate(long, ByteBuffer)
+     * @see NativeProvider#C_DigestUpdate(long, ByteBuffer, long)
+     */
+    public void DigestUpdate(long session, ByteBuffer part) {
+        long rv = c.DigestUpdate(session, part);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
+    /**
+     * Continues a multiple-part message-digesting.
+     * @param session the session's handle
+     * @param part data to be digested
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @see Cryptoki#DigestUpdate(long, byte[], int, int)
+     * @see NativeProvider#C_DigestUpdate(long, byte[], int, long)
+     */
+    public void DigestUpdate(long session, byte[] part, int partOff, int partLen) {
+        long rv = c.DigestUpdate(session, part, partOff, partLen);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
     /**
      * Continues a multi-part message-digesting operation, by digesting
      * the value of a secret key as part of the data already digested.
@@ -1202,6 +1647,37 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Finishes a multiple-part message-digesting operation.
+     * @param session the session's handle
+     * @param digest gets the message digest
+     * @return number of bytes written to digest
+     * @see Cryptoki#DigestFinal(long, ByteBuffer, LongRef)
+     * @see NativeProvider#C_DigestFinal(long, ByteBuffer, LongRef)
+     */
+    public int DigestFinal(long session, ByteBuffer digest) {
+        LongRef l = new LongRef();
+        long rv = c.DigestFinal(session, digest, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Finishes a multiple-part message-digesting operation.
+     * @param session the session's handle
+     * @param digest gets the message digest
+     * @param digestOff offset in digest to write output
+     * @return number of bytes written to digest
+     * @see Cryptoki#DigestFinal(long, byte[], int, LongRef)
+     * @see NativeProvider#C_DigestFinal(long, byte[], int, LongRef)
+     */
+    public int DigestFinal(long session, byte[] digest, int digestOff) {
+        LongRef l = space(digest, digestOff);
+        long rv = c.DigestFinal(session, digest, digestOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Finishes a multiple-part message-digesting operation.
      * @param session the session's handle
@@ -1261,6 +1737,43 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Signs (encrypts with private key) data in a single part, where the signature is (will be)
+     * an appendix to the data, and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param data the data to sign
+     * @param signature gets the signature
+     * @return number of bytes written to signature
+     * @see Cryptoki#Sign(long, ByteBuffer, ByteBuffer, LongRef)
+     * @see NativeProvider#C_Sign(long, ByteBuffer, long, ByteBuffer, LongRef)
+     */
+    public int Sign(long session, ByteBuffer data, ByteBuffer signature) {
+        LongRef l = new LongRef();
+        long rv = c.Sign(session, data, signature, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Signs (encrypts with private key) data in a single part, where the signature is (will be)
+     * an appendix to the data, and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param data the data to sign
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param signature gets the signature
+     * @param signatureOff offset in signature to write output
+     * @return number of bytes written to signature
+     * @see Cryptoki#Sign(long, byte[], int, int, byte[], int, LongRef)
+     * @see NativeProvider#C_Sign(long, byte[], int, long, byte[], int, LongRef)
+     */
+    public int Sign(long session, byte[] data, int dataOff, int dataLen, byte[] signature, int signatureOff) {
+        LongRef l = space(signature, signatureOff);
+        long rv = c.Sign(session, data, dataOff, dataLen, signature, signatureOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Signs (encrypts with private key) data in a single part, where the signature is (will be)
      * an appendix to the data, and plaintext cannot be recovered from the signature.
@@ -1292,6 +1805,36 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Continues a multiple-part signature operation where the signature is
+     * (will be) an appendix to the data, and plaintext cannot be recovered from
+     * the signature.
+     * @param session the session's handle
+     * @param part data to sign
+     * @see Cryptoki#SignUpdate(long, ByteBuffer)
+     * @see NativeProvider#C_SignUpdate(long, ByteBuffer, long)
+     */
+    public void SignUpdate(long session, ByteBuffer part) {
+        long rv = c.SignUpdate(session, part);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
+    /**
+     * Continues a multiple-part signature operation where the signature is
+     * (will be) an appendix to the data, and plaintext cannot be recovered from
+     * the signature.
+     * @param session the session's handle
+     * @param part data to sign
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @see Cryptoki#SignUpdate(long, byte[], int, int)
+     * @see NativeProvider#C_SignUpdate(long, byte[], int, long)
+     */
+    public void SignUpdate(long session, byte[] part, int partOff, int partLen) {
+        long rv = c.SignUpdate(session, part, partOff, partLen);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
     /**
      * Finishes a multiple-part signature operation, returning the signature.
      * @param session the session's handle
@@ -1305,6 +1848,37 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Finishes a multiple-part signature operation, returning the signature.
+     * @param session the session's handle
+     * @param signature gets the signature
+     * @return number of bytes written to signature
+     * @see Cryptoki#SignFinal(long, ByteBuffer, LongRef)
+     * @see NativeProvider#C_SignFinal(long, ByteBuffer, LongRef)
+     */
+    public int SignFinal(long session, ByteBuffer signature) {
+        LongRef l = new LongRef();
+        long rv = c.SignFinal(session, signature, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
+    /**
+     * Finishes a multiple-part signature operation, returning the signature.
+     * @param session the session's handle
+     * @param signature gets the signature
+     * @param signatureOff offset in signature to write output
+     * @return number of bytes written to signature
+     * @see Cryptoki#SignFinal(long, byte[], int, LongRef)
+     * @see NativeProvider#C_SignFinal(long, byte[], int, LongRef)
+     */
+    public int SignFinal(long session, byte[] signature, int signatureOff) {
+        LongRef l = space(signature, signatureOff);
+        long rv = c.SignFinal(session, signature, signatureOff, l);
+        if (rv != CKR.OK) throw new CKRException(rv);
+        return (int) l.value;
+    }
+
     /**
      * Finishes a multiple-part signature operation, returning the signature.
      * @param session the session's handle
@@ -1422,6 +1996,38 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Verifies a signature in a single-part operation, where the signature is an appendix to the data,
+     * and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param data signed data
+     * @param signature signature
+     * @see Cryptoki#Verify(long, ByteBuffer, ByteBuffer)
+     * @see NativeProvider#C_Verify(long, ByteBuffer, long, ByteBuffer, long)
+     */
+    public void Verify(long session, ByteBuffer data, ByteBuffer signature) {
+        long rv = c.Verify(session, data, signature);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
+    /**
+     * Verifies a signature in a single-part operation, where the signature is an appendix to the data,
+     * and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param data signed data
+     * @param dataOff offset of data
+     * @param dataLen length of data
+     * @param signature signature
+     * @param signatureOff offset of signature
+     * @param signatureLen length of signature
+     * @see Cryptoki#Verify(long, byte[], int, int, byte[], int, int)
+     * @see NativeProvider#C_Verify(long, byte[], int, long, byte[], int, long)
+     */
+    public void Verify(long session, byte[] data, int dataOff, int dataLen, byte[] signature, int signatureOff, int signatureLen) {
+        long rv = c.Verify(session, data, dataOff, dataLen, signature, signatureOff, signatureLen);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
     /**
      * Continues a multiple-part verification operation where the signature is an appendix to the data,
      * and plaintext cannot be recovered from the signature.
@@ -1435,6 +2041,34 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Continues a multiple-part verification operation where the signature is an appendix to the data,
+     * and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param part signed data
+     * @see Cryptoki#VerifyUpdate(long, ByteBuffer)
+     * @see NativeProvider#C_VerifyUpdate(long, ByteBuffer, long)
+     */
+    public void VerifyUpdate(long session, ByteBuffer part) {
+        long rv = c.VerifyUpdate(session, part);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
+    /**
+     * Continues a multiple-part verification operation where the signature is an appendix to the data,
+     * and plaintext cannot be recovered from the signature.
+     * @param session the session's handle
+     * @param part signed data
+     * @param partOff offset of part
+     * @param partLen length of part
+     * @see Cryptoki#VerifyUpdate(long, byte[], int, int)
+     * @see NativeProvider#C_VerifyUpdate(long, byte[], int, long)
+     */
+    public void VerifyUpdate(long session, byte[] part, int partOff, int partLen) {
+        long rv = c.VerifyUpdate(session, part, partOff, partLen);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
     /**
      * Finishes a multiple-part verification operation, checking the signature.
      * @param session the session's handle
@@ -1447,6 +2081,32 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Finishes a multiple-part verification operation, checking the signature.
+     * @param session the session's handle
+     * @param signature signature to verify
+     * @see Cryptoki#VerifyFinal(long, ByteBuffer)
+     * @see NativeProvider#C_VerifyFinal(long, ByteBuffer, long)
+     */
+    public void VerifyFinal(long session, ByteBuffer signature) {
+        long rv = c.VerifyFinal(session, signature);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
+    /**
+     * Finishes a multiple-part verification operation, checking the signature.
+     * @param session the session's handle
+     * @param signature signature to verify
+     * @param signatureOff offset of signature
+     * @param signatureLen length of signature
+     * @see Cryptoki#VerifyFinal(long, byte[], int, int)
+     * @see NativeProvider#C_VerifyFinal(long, byte[], int, long)
+     */
+    public void VerifyFinal(long session, byte[] signature, int signatureOff, int signatureLen) {
+        long rv = c.VerifyFinal(session, signature, signatureOff, signatureLen);
+        if (rv != CKR.OK) throw new CKRException(rv);
+    }
+
     /**
      * Verifies a signature in a single-part operation, where the signature is an appendix to the data,
      * and plaintext cannot be recovered from the signature.
@@ -1652,6 +2312,7 @@ public class CryptokiE {
      */
     public void GenerateKey(long session, CKM mechanism, CKA[] templ, LongRef key) {
         long rv = c.GenerateKey(session, mechanism, templ, key);
+        objectsCreated(session, rv, sessionObject(templ), key);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -1684,6 +2345,8 @@ public class CryptokiE {
     public void GenerateKeyPair(long session, CKM mechanism, CKA[] publicKeyTemplate, CKA[] privateKeyTemplate,
             LongRef publicKey, LongRef privateKey) {
         long rv = c.GenerateKeyPair(session, mechanism, publicKeyTemplate, privateKeyTemplate, publicKey, privateKey);
+        objectsCreated(session, rv,
+                sessionObject(publicKeyTemplate) || sessionObject(privateKeyTemplate), publicKey, privateKey);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -1734,6 +2397,7 @@ public class CryptokiE {
      */
     public void UnwrapKey(long session, CKM mechanism, long unwrappingKey, byte[] wrappedKey, CKA[] templ, LongRef key) {
         long rv = c.UnwrapKey(session, mechanism, unwrappingKey, wrappedKey, templ, key);
+        objectsCreated(session, rv, sessionObject(templ), key);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -1766,6 +2430,7 @@ public class CryptokiE {
      */
     public void DeriveKey(long session, CKM mechanism, long baseKey, CKA[] templ, LongRef key) {
         long rv = c.DeriveKey(session, mechanism, baseKey, templ, key);
+        objectsCreated(session, rv, sessionObject(templ), key);
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
@@ -1849,6 +2514,159 @@ public class CryptokiE {
         if (rv != CKR.OK) throw new CKRException(rv);
     }
 
+    /**
+     * Output length for buf from off, 0 if buf is null for length query.
+     * @param buf output buffer or null
+     * @param off offset of output in buf
+     * @return space in buf after off
+     */
+    private static LongRef space(byte[] buf, int off) {
+        return new LongRef(buf == null ? 0 : buf.length - off);
+    }
+
+    /**
+     * @return slot of session, or -1 if GetSessionInfo fails
+     */
+    private long slotOf(long session) {
+        Long slotID = sessionSlots.get(session);
+        if (slotID == null) {
+            CK_SESSION_INFO info = new CK_SESSION_INFO();
+            if (c.GetSessionInfo(session, info) != CKR.OK) {
+                return -1;
+            }
+            slotID = info.slotID;
+            sessionSlots.put(session, slotID);
+        }
+        return slotID;
+    }
+
+    /** @return true if caches or listeners need to know of changes */
+    private boolean tracking() {
+        return objectHandleCache != null || attributeCache != null || !objectListeners.isEmpty();
+    }
+
+    /** drop cached values for slot, or all slots if slotID is -1 */
+    private void invalidateCaches(long slotID) {
+        invalidateHandles(slotID);
+        for (ObjectListener l : objectListeners) {
+            l.objectsChanged(slotID);
+        }
+        AttributeCache cache = attributeCache;
+        if (cache != null) {
+            if (slotID == -1) {
+                cache.invalidateAll();
+            } else {
+                cache.invalidate(slotID);
+            }
+        }
+    }
+
+    /** drop FindObjects results for slot, or all slots if slotID is -1 */
+    private void invalidateHandles(long slotID) {
+        ObjectHandleCache cache = objectHandleCache;
+        if (cache != null) {
+            if (slotID == -1) {
+                cache.invalidateAll();
+            } else {
+                cache.invalidate(slotID);
+            }
+        }
+    }
+
+    /** cryptoki finalized or initialized, all sessions are gone */
+    private void resetCaches() {
+        sessionSlots.clear();
+        writers.clear();
+        invalidateCaches(-1);
+    }
+
+    private void sessionOpened(long session, long slotID) {
+        if (tracking()) {
+            sessionSlots.put(session, slotID);
+        }
+    }
+
+    private void sessionClosed(long session) {
+        Long slotID = sessionSlots.remove(session);
+        if (writers.remove(session)) {
+            // session objects created by session are destroyed and their handles may be reused
+            invalidateCaches(slotID == null ? -1 : slotID);
+        }
+    }
+
+    private void allSessionsClosed(long slotID) {
+        sessionSlots.values().removeIf(s -> s == slotID);
+        writers.removeIf(s -> !sessionSlots.containsKey(s));
+        invalidateCaches(slotID);
+    }
+
+    /** login state changed, which changes the private objects that can be found */
+    private void loginChanged(long session) {
+        if (tracking()) {
+            // private objects and their cached values are only visible when logged in
+            invalidateCaches(slotOf(session));
+        }
+    }
+
+    /** @return true if templ creates a session object, CKA_TOKEN is missing or false */
+    private static boolean sessionObject(CKA[] templ) {
+        if (templ != null) {
+            for (CKA a : templ) {
+                if (a != null && a.type == CKA.TOKEN) {
+                    return !Boolean.TRUE.equals(a.getValueBool());
+                }
+            }
+        }
+        return true;
+    }
+
+    /** objects may have been created using session, handles of objects are valid if rv is OK,
+     * session is only tracked as a writer when sessionObject is true */
+    private void objectsCreated(long session, long rv, boolean sessionObject, LongRef... objects) {
+        if (!tracking()) {
+            return;
+        }
+        if (sessionObject) {
+            writers.add(session);
+        }
+        long slotID = slotOf(session);
+        invalidateHandles(slotID);
+        if (rv == CKR.OK) {
+            for (LongRef object : objects) {
+                // a new object may reuse the handle of a destroyed one
+                invalidateAttributes(slotID, object.value());
+                for (ObjectListener l : objectListeners) {
+                    l.objectChanged(slotID, object.value());
+                }
+            }
+        }
+    }
+
+    /** object may have been changed or destroyed using session */
+    private void objectChanged(long session, long object) {
+        if (!tracking()) {
+            return;
+        }
+        long slotID = slotOf(session);
+        invalidateHandles(slotID);
+        invalidateAttributes(slotID, object);
+        for (ObjectListener l : objectListeners) {
+            l.objectChanged(slotID, object);
+        }
+    }
+
+    /** drop cached attributes of object, or all cached attributes if slotID is -1 */
+    private void invalidateAttributes(long slotID, long object) {
+        AttributeCache cache = attributeCache;
+        if (cache != null) {
+            if (slotID == -1) {
+                cache.invalidateAll();
+            } else {
+                cache.invalidate(slotID, object);
+            }
+        }
+    }
+
     /**
      * Resize buf to specified length. If buf already size 'newSize', then return buf, else return resized buf.
      * @param buf buf
@@ -1890,6 +2708,60 @@ public class CryptokiE {
         return attributeLengthStrategy;
     }
 
+    /**
+     * Set a cache of {@link #FindObjects(long, CKA...)} results.
+     *
+     * @param objectHandleCache cache to use, or null to always search the token
+     */
+    public void setObjectHandleCache(ObjectHandleCache objectHandleCache) {
+        this.objectHandleCache = objectHandleCache;
+    }
+
+    /**
+     * Get the cache of {@link #FindObjects(long, CKA...)} results.
+     *
+     * @return cache, or null if not set
+     */
+    public ObjectHandleCache getObjectHandleCache() {
+        return objectHandleCache;
+    }
+
+    /**
+     * Add a listener told of objects created, changed or destroyed through this CryptokiE.
+     *
+     * @param listener listener to add
+     */
+    public void addObjectListener(ObjectListener listener) {
+        objectListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with {@link #addObjectListener(ObjectListener)}.
+     *
+     * @param listener listener to remove
+     */
+    public void removeObjectListener(ObjectListener listener) {
+        objectListeners.remove(listener);
+    }
+
+    /**
+     * Set a cache of immutable attribute values read with {@link #GetAttributeValue(long, long, long...)}.
+     *
+     * @param attributeCache cache to use, or null to always read the token
+     */
+    public void setAttributeCache(AttributeCache attributeCache) {
+        this.attributeCache = attributeCache;
+    }
+
+    /**
+     * Get the cache of immutable attribute values.
+     *
+     * @return cache, or null if not set
+     */
+    public AttributeCache getAttributeCache() {
+        return attributeCache;
+    }
+
     /**
      * Set the mode to use for getting attribute values.
      *
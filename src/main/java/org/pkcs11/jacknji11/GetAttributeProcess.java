@@ -54,6 +54,11 @@ class GetAttributeProcess {
      */
     private final long object;
 
+    /**
+     * Strategy told the lengths of attributes returned.
+     */
+    private final AttributeLengthStrategy attributeLengthStrategy;
+
     /**
      * Array of entries with fetch state.
      */
@@ -191,6 +196,7 @@ class GetAttributeProcess {
         this.cryptoki = cryptoki;
         this.session = session;
         this.object = object;
+        this.attributeLengthStrategy = attributeLengthStrategy;
         this.batchMode = batchMode;
         this.entries = new Entry[types.length];
         for (int i = 0; i < types.length; i++) {
@@ -357,9 +363,11 @@ class GetAttributeProcess {
             if (cka.ulValueLen == 0 || (cka.ulValueLen > 0 && cka.pValue != null)) {
                 // attribute is now fetched
                 entry.setCka(cka);
+                attributeLengthStrategy.lengthObserved(cka.type, (int) cka.ulValueLen);
             } else if (cka.ulValueLen > 0) {
                 // pValue is null but attribute size is now known
                 entry.setKnownLength((int) cka.ulValueLen);
+                attributeLengthStrategy.lengthObserved(cka.type, (int) cka.ulValueLen);
             }
         }
     }
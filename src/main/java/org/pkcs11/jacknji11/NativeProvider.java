@@ -21,6 +21,8 @@
 
 package org.pkcs11.jacknji11;
 
+import java.nio.ByteBuffer;
+
 /**
  * Native interface for PKCS#11 functions.
  * This interface allows for pluggable providers to do any native
@@ -2125,4 +2127,594 @@ which should simply return the value CKR_FUNCTION_NOT_PARALLEL.
 {@link CKR#SESSION_CLOSED}
      */
     long C_CancelFunction(long hSession);
+
+    // ByteBuffer overloads of the data functions.  Buffers are read and written
+    // from their position and positions are not changed.  The default methods
+    // copy through heap arrays to the byte[] functions.  Providers override them
+    // to pass direct buffers to the library without copying, heap buffers are
+    // handled by Cryptoki using the byte[] functions.
+
+    /**
+     * Same as {@link #C_Encrypt(long, byte[], long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pData the plaintext data, direct buffer
+     * @param ulDataLen bytes of plaintext
+     * @param pEncryptedData gets ciphertext, direct buffer or null for length query
+     * @param pulEncryptedDataLen gets c-text size
+     * @return {@link CKR} return code
+     */
+    default long C_Encrypt(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pEncryptedData, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, pulEncryptedDataLen);
+        byte[] out = NioBuf.newOut(pEncryptedData, pulEncryptedDataLen);
+        long rv = C_Encrypt(hSession, NioBuf.copyIn(pData, ulDataLen), ulDataLen, out, pulEncryptedDataLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pEncryptedData, out, pulEncryptedDataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_EncryptUpdate(long, byte[], long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pPart the plaintext data, direct buffer
+     * @param ulPartLen plaintext data len
+     * @param pEncryptedPart gets ciphertext, direct buffer or null for length query
+     * @param pulEncryptedPartLen gets c-text size
+     * @return {@link CKR} return code
+     */
+    default long C_EncryptUpdate(long hSession, ByteBuffer pPart, long ulPartLen, ByteBuffer pEncryptedPart, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, pulEncryptedPartLen);
+        byte[] out = NioBuf.newOut(pEncryptedPart, pulEncryptedPartLen);
+        long rv = C_EncryptUpdate(hSession, NioBuf.copyIn(pPart, ulPartLen), ulPartLen, out, pulEncryptedPartLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pEncryptedPart, out, pulEncryptedPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_EncryptFinal(long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pLastEncryptedPart last c-text, direct buffer or null for length query
+     * @param pulLastEncryptedPartLen gets last size
+     * @return {@link CKR} return code
+     */
+    default long C_EncryptFinal(long hSession, ByteBuffer pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        NioBuf.clamp(pLastEncryptedPart, pulLastEncryptedPartLen);
+        byte[] out = NioBuf.newOut(pLastEncryptedPart, pulLastEncryptedPartLen);
+        long rv = C_EncryptFinal(hSession, out, pulLastEncryptedPartLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pLastEncryptedPart, out, pulLastEncryptedPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Decrypt(long, byte[], long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pEncryptedData ciphertext, direct buffer
+     * @param ulEncryptedDataLen ciphertext length
+     * @param pData gets plaintext, direct buffer or null for length query
+     * @param pulDataLen gets p-text size
+     * @return {@link CKR} return code
+     */
+    default long C_Decrypt(long hSession, ByteBuffer pEncryptedData, long ulEncryptedDataLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, ulEncryptedDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        byte[] out = NioBuf.newOut(pData, pulDataLen);
+        long rv = C_Decrypt(hSession, NioBuf.copyIn(pEncryptedData, ulEncryptedDataLen), ulEncryptedDataLen, out, pulDataLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pData, out, pulDataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_DecryptUpdate(long, byte[], long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pEncryptedPart encrypted data, direct buffer
+     * @param ulEncryptedPartLen input length
+     * @param pData gets plaintext, direct buffer or null for length query
+     * @param pulDataLen gets p-text size
+     * @return {@link CKR} return code
+     */
+    default long C_DecryptUpdate(long hSession, ByteBuffer pEncryptedPart, long ulEncryptedPartLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, ulEncryptedPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        byte[] out = NioBuf.newOut(pData, pulDataLen);
+        long rv = C_DecryptUpdate(hSession, NioBuf.copyIn(pEncryptedPart, ulEncryptedPartLen), ulEncryptedPartLen, out, pulDataLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pData, out, pulDataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_DecryptFinal(long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pLastPart gets plaintext, direct buffer or null for length query
+     * @param pulLastPartLen gets p-text size
+     * @return {@link CKR} return code
+     */
+    default long C_DecryptFinal(long hSession, ByteBuffer pLastPart, LongRef pulLastPartLen) {
+        NioBuf.clamp(pLastPart, pulLastPartLen);
+        byte[] out = NioBuf.newOut(pLastPart, pulLastPartLen);
+        long rv = C_DecryptFinal(hSession, out, pulLastPartLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pLastPart, out, pulLastPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Digest(long, byte[], long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pData data to be digested, direct buffer
+     * @param ulDataLen bytes of data to digest
+     * @param pDigest gets the message digest, direct buffer or null for length query
+     * @param pulDigestLen gets digest length
+     * @return {@link CKR} return code
+     */
+    default long C_Digest(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pDigest, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, pulDigestLen);
+        byte[] out = NioBuf.newOut(pDigest, pulDigestLen);
+        long rv = C_Digest(hSession, NioBuf.copyIn(pData, ulDataLen), ulDataLen, out, pulDigestLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pDigest, out, pulDigestLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_DigestUpdate(long, byte[], long)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pPart data to be digested, direct buffer
+     * @param ulPartLen bytes of data to be digested
+     * @return {@link CKR} return code
+     */
+    default long C_DigestUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_DigestUpdate(hSession, NioBuf.copyIn(pPart, ulPartLen), ulPartLen);
+    }
+
+    /**
+     * Same as {@link #C_DigestFinal(long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pDigest gets the message digest, direct buffer or null for length query
+     * @param pulDigestLen gets byte count of digest
+     * @return {@link CKR} return code
+     */
+    default long C_DigestFinal(long hSession, ByteBuffer pDigest, LongRef pulDigestLen) {
+        NioBuf.clamp(pDigest, pulDigestLen);
+        byte[] out = NioBuf.newOut(pDigest, pulDigestLen);
+        long rv = C_DigestFinal(hSession, out, pulDigestLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pDigest, out, pulDigestLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Sign(long, byte[], long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pData the data to sign, direct buffer
+     * @param ulDataLen count of bytes to sign
+     * @param pSignature gets the signature, direct buffer or null for length query
+     * @param pulSignatureLen gets signature length
+     * @return {@link CKR} return code
+     */
+    default long C_Sign(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        byte[] out = NioBuf.newOut(pSignature, pulSignatureLen);
+        long rv = C_Sign(hSession, NioBuf.copyIn(pData, ulDataLen), ulDataLen, out, pulSignatureLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pSignature, out, pulSignatureLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_SignUpdate(long, byte[], long)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pPart the data to sign, direct buffer
+     * @param ulPartLen count of bytes to sign
+     * @return {@link CKR} return code
+     */
+    default long C_SignUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_SignUpdate(hSession, NioBuf.copyIn(pPart, ulPartLen), ulPartLen);
+    }
+
+    /**
+     * Same as {@link #C_SignFinal(long, byte[], LongRef)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pSignature gets the signature, direct buffer or null for length query
+     * @param pulSignatureLen gets signature length
+     * @return {@link CKR} return code
+     */
+    default long C_SignFinal(long hSession, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        byte[] out = NioBuf.newOut(pSignature, pulSignatureLen);
+        long rv = C_SignFinal(hSession, out, pulSignatureLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pSignature, out, pulSignatureLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Verify(long, byte[], long, byte[], long)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pData signed data, direct buffer
+     * @param ulDataLen length of signed data
+     * @param pSignature signature, direct buffer
+     * @param ulSignatureLen signature length
+     * @return {@link CKR} return code
+     */
+    default long C_Verify(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen) || !NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_Verify(hSession, NioBuf.copyIn(pData, ulDataLen), ulDataLen, NioBuf.copyIn(pSignature, ulSignatureLen), ulSignatureLen);
+    }
+
+    /**
+     * Same as {@link #C_VerifyUpdate(long, byte[], long)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pPart signed data, direct buffer
+     * @param ulPartLen length of signed data
+     * @return {@link CKR} return code
+     */
+    default long C_VerifyUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_VerifyUpdate(hSession, NioBuf.copyIn(pPart, ulPartLen), ulPartLen);
+    }
+
+    /**
+     * Same as {@link #C_VerifyFinal(long, byte[], long)} using direct buffers.
+     * @param hSession the session's handle
+     * @param pSignature signature to verify, direct buffer
+     * @param ulSignatureLen signature length
+     * @return {@link CKR} return code
+     */
+    default long C_VerifyFinal(long hSession, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_VerifyFinal(hSession, NioBuf.copyIn(pSignature, ulSignatureLen), ulSignatureLen);
+    }
+
+    // byte[] overloads of the data functions with offsets.  Input is read from
+    // pIn[inOff] and output written from pOut[outOff], output length is limited
+    // to the space left in pOut after outOff.  Invalid offsets or lengths return
+    // CKR_ARGUMENTS_BAD.  The default methods copy ranges at non-zero offsets and
+    // call the byte[] functions, providers that pin arrays override them.
+
+    /**
+     * Same as {@link #C_Encrypt(long, byte[], long, byte[], LongRef)} with offsets into the arrays.
+     * @param hSession the session's handle
+     * @param pData the plaintext data
+     * @param dataOff offset of data in pData
+     * @param ulDataLen bytes of plaintext
+     * @param pEncryptedData gets ciphertext or null for length query
+     * @param encryptedDataOff offset in pEncryptedData to write output
+     * @param pulEncryptedDataLen gets c-text size
+     * @return {@link CKR} return code
+     */
+    default long C_Encrypt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pEncryptedData, int encryptedDataOff, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pEncryptedData, encryptedDataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, encryptedDataOff, pulEncryptedDataLen);
+        byte[] out = NioBuf.newOut(pEncryptedData, encryptedDataOff, pulEncryptedDataLen);
+        long rv = C_Encrypt(hSession, NioBuf.copyIn(pData, dataOff, ulDataLen), ulDataLen, out, pulEncryptedDataLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pEncryptedData, encryptedDataOff, out, pulEncryptedDataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_EncryptUpdate(long, byte[], long, byte[], LongRef)} with offsets into the arrays.
+     * @param hSession the session's handle
+     * @param pPart the plaintext data
+     * @param partOff offset of data in pPart
+     * @param ulPartLen plaintext data len
+     * @param pEncryptedPart gets ciphertext or null for length query
+     * @param encryptedPartOff offset in pEncryptedPart to write output
+     * @param pulEncryptedPartLen gets c-text size
+     * @return {@link CKR} return code
+     */
+    default long C_EncryptUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen, byte[] pEncryptedPart, int encryptedPartOff, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen) || !NioBuf.fits(pEncryptedPart, encryptedPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, encryptedPartOff, pulEncryptedPartLen);
+        byte[] out = NioBuf.newOut(pEncryptedPart, encryptedPartOff, pulEncryptedPartLen);
+        long rv = C_EncryptUpdate(hSession, NioBuf.copyIn(pPart, partOff, ulPartLen), ulPartLen, out, pulEncryptedPartLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pEncryptedPart, encryptedPartOff, out, pulEncryptedPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_EncryptFinal(long, byte[], LongRef)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pLastEncryptedPart last c-text or null for length query
+     * @param lastEncryptedPartOff offset in pLastEncryptedPart to write output
+     * @param pulLastEncryptedPartLen gets last size
+     * @return {@link CKR} return code
+     */
+    default long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, int lastEncryptedPartOff, LongRef pulLastEncryptedPartLen) {
+        if (!NioBuf.fits(pLastEncryptedPart, lastEncryptedPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pLastEncryptedPart, lastEncryptedPartOff, pulLastEncryptedPartLen);
+        byte[] out = NioBuf.newOut(pLastEncryptedPart, lastEncryptedPartOff, pulLastEncryptedPartLen);
+        long rv = C_EncryptFinal(hSession, out, pulLastEncryptedPartLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pLastEncryptedPart, lastEncryptedPartOff, out, pulLastEncryptedPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Decrypt(long, byte[], long, byte[], LongRef)} with offsets into the arrays.
+     * @param hSession the session's handle
+     * @param pEncryptedData ciphertext
+     * @param encryptedDataOff offset of data in pEncryptedData
+     * @param ulEncryptedDataLen ciphertext length
+     * @param pData gets plaintext or null for length query
+     * @param dataOff offset in pData to write output
+     * @param pulDataLen gets p-text size
+     * @return {@link CKR} return code
+     */
+    default long C_Decrypt(long hSession, byte[] pEncryptedData, int encryptedDataOff, long ulEncryptedDataLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, encryptedDataOff, ulEncryptedDataLen) || !NioBuf.fits(pData, dataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, dataOff, pulDataLen);
+        byte[] out = NioBuf.newOut(pData, dataOff, pulDataLen);
+        long rv = C_Decrypt(hSession, NioBuf.copyIn(pEncryptedData, encryptedDataOff, ulEncryptedDataLen), ulEncryptedDataLen, out, pulDataLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pData, dataOff, out, pulDataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_DecryptUpdate(long, byte[], long, byte[], LongRef)} with offsets into the arrays.
+     * @param hSession the session's handle
+     * @param pEncryptedPart encrypted data
+     * @param encryptedPartOff offset of data in pEncryptedPart
+     * @param ulEncryptedPartLen input length
+     * @param pData gets plaintext or null for length query
+     * @param dataOff offset in pData to write output
+     * @param pulDataLen gets p-text size
+     * @return {@link CKR} return code
+     */
+    default long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, int encryptedPartOff, long ulEncryptedPartLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, encryptedPartOff, ulEncryptedPartLen) || !NioBuf.fits(pData, dataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, dataOff, pulDataLen);
+        byte[] out = NioBuf.newOut(pData, dataOff, pulDataLen);
+        long rv = C_DecryptUpdate(hSession, NioBuf.copyIn(pEncryptedPart, encryptedPartOff, ulEncryptedPartLen), ulEncryptedPartLen, out, pulDataLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pData, dataOff, out, pulDataLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_DecryptFinal(long, byte[], LongRef)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pLastPart gets plaintext or null for length query
+     * @param lastPartOff offset in pLastPart to write output
+     * @param pulLastPartLen gets p-text size
+     * @return {@link CKR} return code
+     */
+    default long C_DecryptFinal(long hSession, byte[] pLastPart, int lastPartOff, LongRef pulLastPartLen) {
+        if (!NioBuf.fits(pLastPart, lastPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pLastPart, lastPartOff, pulLastPartLen);
+        byte[] out = NioBuf.newOut(pLastPart, lastPartOff, pulLastPartLen);
+        long rv = C_DecryptFinal(hSession, out, pulLastPartLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pLastPart, lastPartOff, out, pulLastPartLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Digest(long, byte[], long, byte[], LongRef)} with offsets into the arrays.
+     * @param hSession the session's handle
+     * @param pData data to be digested
+     * @param dataOff offset of data in pData
+     * @param ulDataLen bytes of data to digest
+     * @param pDigest gets the message digest or null for length query
+     * @param digestOff offset in pDigest to write output
+     * @param pulDigestLen gets digest length
+     * @return {@link CKR} return code
+     */
+    default long C_Digest(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pDigest, digestOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, digestOff, pulDigestLen);
+        byte[] out = NioBuf.newOut(pDigest, digestOff, pulDigestLen);
+        long rv = C_Digest(hSession, NioBuf.copyIn(pData, dataOff, ulDataLen), ulDataLen, out, pulDigestLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pDigest, digestOff, out, pulDigestLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_DigestUpdate(long, byte[], long)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pPart data to be digested
+     * @param partOff offset of data in pPart
+     * @param ulPartLen bytes of data to be digested
+     * @return {@link CKR} return code
+     */
+    default long C_DigestUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_DigestUpdate(hSession, NioBuf.copyIn(pPart, partOff, ulPartLen), ulPartLen);
+    }
+
+    /**
+     * Same as {@link #C_DigestFinal(long, byte[], LongRef)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pDigest gets the message digest or null for length query
+     * @param digestOff offset in pDigest to write output
+     * @param pulDigestLen gets byte count of digest
+     * @return {@link CKR} return code
+     */
+    default long C_DigestFinal(long hSession, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pDigest, digestOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, digestOff, pulDigestLen);
+        byte[] out = NioBuf.newOut(pDigest, digestOff, pulDigestLen);
+        long rv = C_DigestFinal(hSession, out, pulDigestLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pDigest, digestOff, out, pulDigestLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Sign(long, byte[], long, byte[], LongRef)} with offsets into the arrays.
+     * @param hSession the session's handle
+     * @param pData the data to sign
+     * @param dataOff offset of data in pData
+     * @param ulDataLen count of bytes to sign
+     * @param pSignature gets the signature or null for length query
+     * @param signatureOff offset in pSignature to write output
+     * @param pulSignatureLen gets signature length
+     * @return {@link CKR} return code
+     */
+    default long C_Sign(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pSignature, signatureOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, signatureOff, pulSignatureLen);
+        byte[] out = NioBuf.newOut(pSignature, signatureOff, pulSignatureLen);
+        long rv = C_Sign(hSession, NioBuf.copyIn(pData, dataOff, ulDataLen), ulDataLen, out, pulSignatureLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pSignature, signatureOff, out, pulSignatureLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_SignUpdate(long, byte[], long)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pPart the data to sign
+     * @param partOff offset of data in pPart
+     * @param ulPartLen count of bytes to sign
+     * @return {@link CKR} return code
+     */
+    default long C_SignUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_SignUpdate(hSession, NioBuf.copyIn(pPart, partOff, ulPartLen), ulPartLen);
+    }
+
+    /**
+     * Same as {@link #C_SignFinal(long, byte[], LongRef)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pSignature gets the signature or null for length query
+     * @param signatureOff offset in pSignature to write output
+     * @param pulSignatureLen gets signature length
+     * @return {@link CKR} return code
+     */
+    default long C_SignFinal(long hSession, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pSignature, signatureOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, signatureOff, pulSignatureLen);
+        byte[] out = NioBuf.newOut(pSignature, signatureOff, pulSignatureLen);
+        long rv = C_SignFinal(hSession, out, pulSignatureLen);
+        if (rv == CKR.OK) {
+            NioBuf.copyOut(pSignature, signatureOff, out, pulSignatureLen.value);
+        }
+        return rv;
+    }
+
+    /**
+     * Same as {@link #C_Verify(long, byte[], long, byte[], long)} with offsets into the arrays.
+     * @param hSession the session's handle
+     * @param pData signed data
+     * @param dataOff offset of data in pData
+     * @param ulDataLen length of signed data
+     * @param pSignature signature
+     * @param signatureOff offset of data in pSignature
+     * @param ulSignatureLen signature length
+     * @return {@link CKR} return code
+     */
+    default long C_Verify(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pSignature, signatureOff, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_Verify(hSession, NioBuf.copyIn(pData, dataOff, ulDataLen), ulDataLen, NioBuf.copyIn(pSignature, signatureOff, ulSignatureLen), ulSignatureLen);
+    }
+
+    /**
+     * Same as {@link #C_VerifyUpdate(long, byte[], long)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pPart signed data
+     * @param partOff offset of data in pPart
+     * @param ulPartLen length of signed data
+     * @return {@link CKR} return code
+     */
+    default long C_VerifyUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_VerifyUpdate(hSession, NioBuf.copyIn(pPart, partOff, ulPartLen), ulPartLen);
+    }
+
+    /**
+     * Same as {@link #C_VerifyFinal(long, byte[], long)} with an offset into the array.
+     * @param hSession the session's handle
+     * @param pSignature signature to verify
+     * @param signatureOff offset of data in pSignature
+     * @param ulSignatureLen signature length
+     * @return {@link CKR} return code
+     */
+    default long C_VerifyFinal(long hSession, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, signatureOff, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_VerifyFinal(hSession, NioBuf.copyIn(pSignature, signatureOff, ulSignatureLen), ulSignatureLen);
+    }
 }
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Creates the default {@link NativeProvider} used by {@link Cryptoki} and {@link C}.
+ * <p>
+ * The provider is chosen with system property <code>jacknji11.provider</code>
+ * or environment variable <code>JACKNJI11_PROVIDER</code>.  The value is one of
+ * <code>JNA</code> (default), <code>JNADirect</code>, <code>JNALP64</code>,
+ * <code>JFFI</code>, <code>JNI</code>, <code>FFM</code>, the class name of a
+ * provider with a (String library) constructor, or <code>auto</code>.
+ * <p>
+ * With <code>auto</code>, the first provider that can bind the library
+ * returned by {@link C#getLibraryName()} is used, in the order JNI, FFM,
+ * JFFI, JNALP64, JNADirect, JNA.  Set <code>jacknji11.provider.calibrate=true</code>
+ * to instead time each available provider over a short loop of C_GetInfo and
+ * C_GetSlotList round trips and use the fastest.  Calibration runs in a
+ * separate java process (see {@link #main(String[])}) that calls C_Initialize,
+ * so the calls are served by the token, and only the chosen provider is
+ * created in this process, so no other provider loads its native library.
+ * If the process fails or times out, the first available provider is used.
+ * <p>
+ * When {@link Cryptoki} creates its provider, the chosen provider and
+ * calibration results are reported by {@link NativeProviderMetrics#getProvider()}
+ * and {@link NativeProviderMetrics#getCalibration()}.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class NativeProviderFactory {
+    private static final Log log = LogFactory.getLog(NativeProviderFactory.class);
+
+    public static final String PROVIDER_PROPERTY = "jacknji11.provider";
+    public static final String PROVIDER_ENV = "JACKNJI11_PROVIDER";
+    public static final String CALIBRATE_PROPERTY = "jacknji11.provider.calibrate";
+    public static final String AUTO = "auto";
+    /** Time allowed for the calibration process, including C_Initialize. */
+    public static final long CALIBRATE_TIMEOUT_MILLIS = 60000;
+    /** Start of each result line printed by {@link #main(String[])}. */
+    private static final String CALIBRATION_PREFIX = "jacknji11.calibration ";
+
+    /** Known providers in order of preference when not calibrating. */
+    private static final String[][] PROVIDERS = {
+        {"JNI", "org.pkcs11.jacknji11.jni.JNI"},
+        {"FFM", "org.pkcs11.jacknji11.ffm.FFM"},
+        {"JFFI", "org.pkcs11.jacknji11.jffi.JFFI"},
+        {"JNALP64", "org.pkcs11.jacknji11.jna.JNALP64"},
+        {"JNADirect", "org.pkcs11.jacknji11.jna.JNADirect"},
+        {"JNA", "org.pkcs11.jacknji11.jna.JNA"},
+    };
+
+    /** Calibration of each provider stops at the round limit or time limit, whichever comes first. */
+    private static final int WARMUP_ROUNDS = 5000;
+    private static final long WARMUP_NANOS = 30000000L;
+    private static final int ROUNDS = 2000;
+    private static final long ROUNDS_NANOS = 20000000L;
+
+    private NativeProviderFactory() {
+    }
+
+    /**
+     * @return provider configured by <code>jacknji11.provider</code> for the
+     * library returned by {@link C#getLibraryName()}
+     */
+    public static NativeProvider create() {
+        return create((NativeProviderMetrics) null);
+    }
+
+    /**
+     * @param metrics if not null, gets calibration results of <code>auto</code>
+     * @return provider configured by <code>jacknji11.provider</code>
+     */
+    static NativeProvider create(NativeProviderMetrics metrics) {
+        String name = System.getProperty(PROVIDER_PROPERTY);
+        if (name == null || name.length() == 0) {
+            name = System.getenv(PROVIDER_ENV);
+        }
+        if (name == null || name.length() == 0) {
+            name = "JNA";
+        }
+        String library = C.getLibraryName();
+        if (AUTO.equalsIgnoreCase(name)) {
+            Map<String, Long> calibration = new LinkedHashMap<String, Long>();
+            NativeProvider provider = select(library, Boolean.getBoolean(CALIBRATE_PROPERTY), calibration);
+            if (metrics != null) {
+                metrics.setCalibration(Collections.unmodifiableMap(calibration));
+            }
+            return provider;
+        }
+        return create(name, library);
+    }
+
+    /**
+     * @param name provider name such as <code>JFFI</code>, or class name
+     * @param library cryptoki library name or path
+     * @return new provider
+     * @throws IllegalArgumentException if name is not a known provider
+     * @throws IllegalStateException if the provider cannot bind the library
+     */
+    public static NativeProvider create(String name, String library) {
+        String className = name;
+        for (String[] p : PROVIDERS) {
+            if (p[0].equalsIgnoreCase(name)) {
+                className = p[1];
+            }
+        }
+        Class<?> cls;
+        try {
+            cls = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown provider " + name, e);
+        }
+        if (!NativeProvider.class.isAssignableFrom(cls)) {
+            throw new IllegalArgumentException(className + " is not a NativeProvider");
+        }
+        try {
+            return (NativeProvider) cls.getConstructor(String.class).newInstance(library);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Could not create provider " + name, cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create provider " + name, e);
+        }
+    }
+
+    /**
+     * Known providers whose classes are present.  Providers are not created,
+     * so native libraries are not loaded and the cryptoki library may still
+     * fail to bind.
+     * @return provider names in order of preference
+     */
+    public static List<String> discover() {
+        List<String> result = new ArrayList<String>();
+        for (String[] p : PROVIDERS) {
+            try {
+                Class.forName(p[1], false, NativeProviderFactory.class.getClassLoader());
+                result.add(p[0]);
+            } catch (ClassNotFoundException e) {
+                log.debug("Provider " + p[0] + " not available: " + e);
+            } catch (LinkageError e) {
+                log.debug("Provider " + p[0] + " not available: " + e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Chooses a provider for library.
+     * @param library cryptoki library name or path
+     * @param calibrate if true, time each available provider and use the fastest,
+     * else use the first available
+     * @return chosen provider
+     * @throws IllegalStateException if no provider can bind library
+     */
+    public static NativeProvider select(String library, boolean calibrate) {
+        return select(library, calibrate, new LinkedHashMap<String, Long>());
+    }
+
+    /**
+     * Chooses a provider for library.  When calibrating, providers are timed
+     * by {@link #calibrateProcess(String)} and created fastest first, so only
+     * the chosen provider is created in this process.
+     * @param library cryptoki library name or path
+     * @param calibrate if true, time each available provider and use the fastest,
+     * else use the first available
+     * @param calibration gets nanoseconds per round trip by provider name
+     * @return chosen provider
+     * @throws IllegalStateException if no provider can bind library
+     */
+    static NativeProvider select(String library, boolean calibrate, final Map<String, Long> calibration) {
+        List<String> names = discover();
+        if (calibrate) {
+            try {
+                calibration.putAll(calibrateProcess(library));
+            } catch (IOException e) {
+                log.warn("Calibration failed, using first available provider", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Calibration interrupted, using first available provider");
+            }
+            // stable sort, providers that were not timed keep their order after the timed ones
+            Collections.sort(names, (a, b) -> Long.compare(nanos(calibration, a), nanos(calibration, b)));
+        }
+        for (String name : names) {
+            NativeProvider provider = tryCreate(name, library);
+            if (provider != null) {
+                log.info("Using provider " + name + " for " + library
+                    + (calibrate ? ", round trip ns " + calibration : ""));
+                return provider;
+            }
+        }
+        throw new IllegalStateException("No provider available for " + library);
+    }
+
+    private static long nanos(Map<String, Long> calibration, String name) {
+        Long nanos = calibration.get(name);
+        return nanos == null ? Long.MAX_VALUE : nanos;
+    }
+
+    /**
+     * Runs {@link #main(String[])} in a new java process with the class path,
+     * <code>java.library.path</code> and <code>jacknji11.*</code> and
+     * <code>jna.*</code> system properties of this process.
+     * @param library cryptoki library name or path
+     * @return nanoseconds per round trip by provider name, empty if no provider could bind library
+     * @throws IOException if the process fails or does not finish within
+     * {@link #CALIBRATE_TIMEOUT_MILLIS}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static Map<String, Long> calibrateProcess(String library) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.equals("java.library.path") || key.startsWith("jacknji11.") || key.startsWith("jna.")) {
+                cmd.add("-D" + key + "=" + System.getProperty(key));
+            }
+        }
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(NativeProviderFactory.class.getName());
+        cmd.add(library);
+        // output goes to a file so that logging by the process cannot fill a pipe and block it
+        File out = File.createTempFile("jacknji11-calibrate", ".log");
+        try {
+            Process process = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(out).start();
+            if (!process.waitFor(CALIBRATE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("Calibration did not finish within " + CALIBRATE_TIMEOUT_MILLIS + "ms");
+            }
+            List<String> lines = Files.readAllLines(out.toPath(), Charset.defaultCharset());
+            if (process.exitValue() != 0) {
+                throw new IOException("Calibration exited with " + process.exitValue() + ": " + lines);
+            }
+            Map<String, Long> result = new LinkedHashMap<String, Long>();
+            for (String line : lines) {
+                if (line.startsWith(CALIBRATION_PREFIX)) {
+                    String[] fields = line.substring(CALIBRATION_PREFIX.length()).split(" ");
+                    result.put(fields[0], Long.parseLong(fields[1]));
+                }
+            }
+            return result;
+        } finally {
+            if (!out.delete()) {
+                out.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Calibrates each available provider for a library and prints a line with
+     * the nanoseconds per round trip of each.  The library is initialized with
+     * the first provider that binds it and finalized at the end.  Used by
+     * <code>auto</code> with calibration, and can be run directly to compare
+     * providers:
+     * <pre>
+     * java -cp jacknji11.jar:... org.pkcs11.jacknji11.NativeProviderFactory /usr/lib/softhsm/libsofthsm2.so
+     * </pre>
+     * @param args cryptoki library name or path
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: NativeProviderFactory <cryptoki library>");
+            System.exit(2);
+        }
+        NativeProvider initialized = null;
+        try {
+            for (String name : discover()) {
+                NativeProvider provider = tryCreate(name, args[0]);
+                if (provider == null) {
+                    continue;
+                }
+                if (initialized == null) {
+                    long rv = provider.C_Initialize(new CK_C_INITIALIZE_ARGS(null, null, null, null,
+                        CK_C_INITIALIZE_ARGS.CKF_OS_LOCKING_OK));
+                    if (rv != CKR.OK && rv != CKR.CRYPTOKI_ALREADY_INITIALIZED) {
+                        throw new CKRException(rv);
+                    }
+                    initialized = provider;
+                }
+                try {
+                    System.out.println(CALIBRATION_PREFIX + name + " " + calibrate(provider));
+                } catch (RuntimeException e) {
+                    log.debug("Provider " + name + " failed calibration", e);
+                } catch (LinkageError e) {
+                    log.debug("Provider " + name + " failed calibration", e);
+                }
+            }
+        } finally {
+            if (initialized != null) {
+                initialized.C_Finalize(new NativePointer(0));
+            }
+        }
+    }
+
+    /**
+     * Times C_GetInfo and C_GetSlotList round trips after a warmup.  The library
+     * should already be initialized, otherwise the calls return
+     * CKR_CRYPTOKI_NOT_INITIALIZED and only the cost of the binding is measured.
+     * Takes at most about 50ms.
+     * @param provider provider
+     * @return average nanoseconds per call
+     */
+    public static long calibrate(NativeProvider provider) {
+        CK_INFO info = new CK_INFO();
+        LongRef count = new LongRef();
+        roundTrips(provider, info, count, WARMUP_ROUNDS, WARMUP_NANOS);
+        long start = System.nanoTime();
+        int n = roundTrips(provider, info, count, ROUNDS, ROUNDS_NANOS);
+        return (System.nanoTime() - start) / (2 * n);
+    }
+
+    /** @return number of round trips done before reaching max or maxNanos */
+    private static int roundTrips(NativeProvider provider, CK_INFO info, LongRef count, int max, long maxNanos) {
+        long end = System.nanoTime() + maxNanos;
+        int i = 0;
+        while (i < max) {
+            provider.C_GetInfo(info);
+            count.value = 0;
+            provider.C_GetSlotList(false, null, count);
+            i++;
+            if (System.nanoTime() - end > 0) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static NativeProvider tryCreate(String name, String library) {
+        try {
+            return create(name, library);
+        } catch (RuntimeException e) {
+            log.debug("Provider " + name + " not available: " + e);
+        } catch (LinkageError e) {
+            log.debug("Provider " + name + " not available: " + e);
+        }
+        return null;
+    }
+}
@@ -23,6 +23,7 @@ package org.pkcs11.jacknji11;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -40,6 +41,10 @@ import static java.util.Collections.synchronizedMap;
  * the constants from this class to access the metrics by method name.
  * <p>
  * The measurements are done using System.currentTimeMillis() and therefore are limited to the precision of the system clock.
+ * <p>
+ * The intercepted provider is reported by {@link #getProvider()}, and if it was chosen by
+ * {@link NativeProviderFactory} with calibration, the round trip times of all candidates by
+ * {@link #getCalibration()}.
  *
  * @author Tomasz Wysocki
  */
@@ -118,6 +123,16 @@ public class NativeProviderMetrics {
      */
     private final Map<String, Entry> entries = new ConcurrentHashMap<>();
 
+    /**
+     * Class name of the intercepted provider.
+     */
+    private volatile String provider;
+
+    /**
+     * Nanoseconds per round trip of each candidate provider measured by {@link NativeProviderFactory}.
+     */
+    private volatile Map<String, Long> calibration = Collections.emptyMap();
+
     /**
      * Entry for a method in the {@link NativeProvider}.
      * <p>
@@ -316,6 +331,25 @@ public class NativeProviderMetrics {
         return getEntry(key).getExceptions(exceptionClass);
     }
 
+    /**
+     * Get the simple class name of the provider being measured.
+     *
+     * @return provider name, null if no provider has been intercepted
+     */
+    public String getProvider() {
+        return provider;
+    }
+
+    /**
+     * Get the round trip time of each provider tried when {@link Cryptoki} created its
+     * provider with <code>jacknji11.provider=auto</code> and calibration enabled.
+     *
+     * @return nanoseconds per call by provider name, empty if there was no calibration
+     */
+    public Map<String, Long> getCalibration() {
+        return calibration;
+    }
+
     /**
      * Intercept given instance of NativeProvider by creating a proxy
      * that will call the original methods and measure counts, duration and exceptions.
@@ -324,6 +358,7 @@ public class NativeProviderMetrics {
      * @return the intercepted instance of NativeProvider (proxy)
      */
     NativeProvider intercept(NativeProvider nativeProvider) {
+        identify(nativeProvider);
         return (NativeProvider) Proxy.newProxyInstance(
                 nativeProvider.getClass().getClassLoader(),
                 new Class[]{NativeProvider.class},
@@ -331,6 +366,26 @@ public class NativeProviderMetrics {
         );
     }
 
+    /**
+     * Set calibration results of the provider chosen by {@link NativeProviderFactory}.
+     *
+     * @param calibration nanoseconds per call by provider name
+     */
+    void setCalibration(Map<String, Long> calibration) {
+        this.calibration = calibration;
+    }
+
+    /**
+     * Record the provider name without intercepting calls.
+     *
+     * @param nativeProvider the instance of NativeProvider
+     * @return nativeProvider
+     */
+    NativeProvider identify(NativeProvider nativeProvider) {
+        provider = nativeProvider.getClass().getSimpleName();
+        return nativeProvider;
+    }
+
     /**
      * Catch all methods from NativeProvider starting with C_ and call {@link #handleCryptokiMethod(NativeProvider, Method, Object[])}.
      *
@@ -386,6 +441,10 @@ public class NativeProviderMetrics {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
+        sb.append("Provider: ").append(provider).append("\n");
+        if (!calibration.isEmpty()) {
+            sb.append("Calibration (ns/call): ").append(calibration).append("\n");
+        }
         for (Map.Entry<String, Entry> entry : entries.entrySet()) {
             sb.append(entry.getKey()).append(":\n");
             sb.append(entry.getValue());
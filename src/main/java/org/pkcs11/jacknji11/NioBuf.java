@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010-2011 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Buffer utils for the ByteBuffer and byte[] offset overloads of {@link NativeProvider}
+ * data functions.  Providers pass direct buffers to the library by address.  Heap buffers
+ * are handled by {@link Cryptoki} using the byte[] offset functions, with the backing
+ * array passed as-is, or copied if the buffer is read-only.
+ * <p>
+ * Data is always read or written from the buffer position.  None of these methods
+ * change buffer position or limit.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class NioBuf {
+
+    /**
+     * @param bufs buffers
+     * @return true if all bufs are null or direct
+     */
+    public static boolean isDirect(ByteBuffer... bufs) {
+        for (ByteBuffer buf : bufs) {
+            if (buf != null && !buf.isDirect()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param buf buffer or null
+     * @param len number of bytes to be read from buf
+     * @return true if buf is null, or len bytes are remaining in buf
+     */
+    public static boolean fits(ByteBuffer buf, long len) {
+        return buf == null || (len >= 0 && len <= buf.remaining());
+    }
+
+    /**
+     * @param buf array or null
+     * @param off offset of data in buf
+     * @param len number of bytes to be read from buf
+     * @return true if buf is null, or off and len are within buf
+     */
+    public static boolean fits(byte[] buf, int off, long len) {
+        return buf == null || (off >= 0 && len >= 0 && off <= buf.length && len <= buf.length - off);
+    }
+
+    /**
+     * Limit output length so the library does not write past buf limit.
+     * @param buf output buffer or null for length query
+     * @param len output length to be passed to library
+     */
+    public static void clamp(ByteBuffer buf, LongRef len) {
+        if (buf != null && len.value > buf.remaining()) {
+            len.value = buf.remaining();
+        }
+    }
+
+    /**
+     * Limit output length so the library does not write past the end of buf.
+     * @param buf output array or null for length query
+     * @param off offset in buf where output is written, must be checked with
+     * {@link #fits(byte[], int, long)}
+     * @param len output length to be passed to library
+     */
+    public static void clamp(byte[] buf, int off, LongRef len) {
+        if (buf != null && len.value > buf.length - off) {
+            len.value = buf.length - off;
+        }
+    }
+
+    /**
+     * Input bytes from buf position to limit, starting at {@link #offset(ByteBuffer)}.
+     * @param buf buffer or null
+     * @return backing array of a writable heap buffer, else copy of remaining bytes
+     */
+    public static byte[] in(ByteBuffer buf) {
+        if (buf == null) {
+            return null;
+        }
+        if (buf.hasArray()) {
+            return buf.array();
+        }
+        byte[] result = new byte[buf.remaining()];
+        buf.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * Output array for buf, written from {@link #offset(ByteBuffer)}.
+     * @param buf buffer or null
+     * @return backing array of a writable heap buffer, else new array for remaining bytes
+     */
+    public static byte[] out(ByteBuffer buf) {
+        if (buf == null) {
+            return null;
+        }
+        if (buf.hasArray()) {
+            return buf.array();
+        }
+        return new byte[buf.remaining()];
+    }
+
+    /**
+     * @param buf buffer or null
+     * @return offset of buf position in the array returned by {@link #in(ByteBuffer)}
+     * or {@link #out(ByteBuffer)}
+     */
+    public static int offset(ByteBuffer buf) {
+        return buf != null && buf.hasArray() ? buf.arrayOffset() + buf.position() : 0;
+    }
+
+    /**
+     * Copy output from array returned by {@link #out(ByteBuffer)} into buf at position.
+     * @param buf buffer or null
+     * @param out array returned from {@link #out(ByteBuffer)}
+     * @param len number of bytes written to out
+     */
+    public static void copyOut(ByteBuffer buf, byte[] out, long len) {
+        if (buf == null || (buf.hasArray() && buf.array() == out)) {
+            return;
+        }
+        ByteBuffer dup = buf.duplicate();
+        dup.put(out, 0, (int) Math.max(0, Math.min(len, out.length)));
+    }
+
+    /**
+     * Copy input bytes from buf position.
+     * @param buf buffer or null
+     * @param len number of bytes to copy, must be checked with {@link #fits(ByteBuffer, long)}
+     * @return new array with len bytes from buf, or null if buf is null
+     */
+    public static byte[] copyIn(ByteBuffer buf, long len) {
+        if (buf == null) {
+            return null;
+        }
+        byte[] result = new byte[(int) len];
+        buf.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * Output array to be copied back to buf with {@link #copyOut(ByteBuffer, byte[], long)}.
+     * @param buf output buffer or null for length query
+     * @param len output length, must be checked with {@link #clamp(ByteBuffer, LongRef)}
+     * @return new array of len bytes, or null if buf is null
+     */
+    public static byte[] newOut(ByteBuffer buf, LongRef len) {
+        return buf == null ? null : new byte[(int) Math.max(0, len.value)];
+    }
+
+    /**
+     * Input bytes from buf offset.
+     * @param buf array or null
+     * @param off offset of data in buf
+     * @param len number of bytes, must be checked with {@link #fits(byte[], int, long)}
+     * @return buf if off is 0, else new array with len bytes from off
+     */
+    public static byte[] copyIn(byte[] buf, int off, long len) {
+        if (buf == null || off == 0) {
+            return buf;
+        }
+        return Arrays.copyOfRange(buf, off, off + (int) len);
+    }
+
+    /**
+     * Output array to be copied back to buf with {@link #copyOut(byte[], int, byte[], long)}.
+     * @param buf output array or null for length query
+     * @param off offset in buf where output is written
+     * @param len output length, must be checked with {@link #clamp(byte[], int, LongRef)}
+     * @return buf if off is 0, else new array of len bytes
+     */
+    public static byte[] newOut(byte[] buf, int off, LongRef len) {
+        if (buf == null || off == 0) {
+            return buf;
+        }
+        return new byte[(int) Math.max(0, len.value)];
+    }
+
+    /**
+     * Copy output from array returned by {@link #newOut(byte[], int, LongRef)} into buf at off.
+     * @param buf output array or null
+     * @param off offset in buf where output is written
+     * @param out array returned from {@link #newOut(byte[], int, LongRef)}
+     * @param len number of bytes written to out
+     */
+    public static void copyOut(byte[] buf, int off, byte[] out, long len) {
+        if (buf == null || buf == out) {
+            return;
+        }
+        System.arraycopy(out, 0, buf, off, (int) Math.max(0, Math.min(len, out.length)));
+    }
+
+    /**
+     * Advance position of in to limit and out by len.
+     * @param in input buffer or null
+     * @param out output buffer or null
+     * @param len bytes written to out
+     */
+    public static void advance(ByteBuffer in, ByteBuffer out, long len) {
+        // cast to Buffer so java 9+ covariant overrides are not linked
+        if (in != null) {
+            ((Buffer) in).position(in.limit());
+        }
+        if (out != null) {
+            ((Buffer) out).position(out.position() + (int) Math.min(len, out.remaining()));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link CryptokiE#FindObjects(long, CKA...)} results keyed by slot
+ * and search template, set with {@link CryptokiE#setObjectHandleCache(ObjectHandleCache)}.
+ * A cached lookup is a hash probe with no call to the token.
+ * <p>
+ * Results for a slot are dropped when objects are created, copied, changed,
+ * generated or destroyed through the same CryptokiE, on login and logout,
+ * when a session that created objects is closed (its session objects are
+ * gone), and on slot events if the cache is added as a
+ * {@link SlotEventWatcher.Listener}.  Changes made by other applications or
+ * other CryptokiE instances are only seen once an entry expires after
+ * ttlMillis.  When there are more than maxSize entries, expired entries and
+ * then arbitrary entries are removed.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class ObjectHandleCache implements SlotEventWatcher.Listener {
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    public static final long DEFAULT_TTL_MILLIS = 60000;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    /** incremented when a slot is invalidated so a lookup in progress is not cached */
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<Long, AtomicLong>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Cache with default size and TTL. */
+    public ObjectHandleCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param maxSize maximum number of templates cached
+     * @param ttlMillis time a result is cached
+     */
+    public ObjectHandleCache(int maxSize, long ttlMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid maxSize " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1000000L;
+    }
+
+    /** @return number of lookups found in cache */
+    public long getHits() { return hits.get(); }
+    /** @return number of lookups not found in cache */
+    public long getMisses() { return misses.get(); }
+    /** @return number of cached templates */
+    public int size() { return entries.size(); }
+
+    /**
+     * @param slotID slot
+     * @param templ search template
+     * @return cached handles, or null if not cached
+     */
+    long[] get(long slotID, CKA[] templ) {
+        Entry e = entries.get(new Key(slotID, templ));
+        if (e == null || System.nanoTime() - e.created >= ttlNanos) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.handles.clone();
+    }
+
+    /** @return current generation of slot, pass to {@link #put(long, long, CKA[], long[])} */
+    long generation(long slotID) {
+        return generations.computeIfAbsent(slotID, k -> new AtomicLong()).get();
+    }
+
+    /**
+     * Caches handles found with templ unless the slot was invalidated since generation.
+     */
+    void put(long slotID, long generation, CKA[] templ, long[] handles) {
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        Key key = new Key(slotID, templ);
+        entries.put(key, new Entry(handles.clone()));
+        if (generation(slotID) != generation) {
+            // invalidated while searching
+            entries.remove(key);
+        }
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        entries.values().removeIf(e -> now - e.created >= ttlNanos);
+        Iterator<Key> it = entries.keySet().iterator();
+        while (entries.size() >= maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Drops all results for slot.
+     * @param slotID slot
+     */
+    public void invalidate(long slotID) {
+        generations.computeIfAbsent(slotID, k -> new AtomicLong()).incrementAndGet();
+        entries.keySet().removeIf(k -> k.slotID == slotID);
+    }
+
+    /**
+     * Drops all results.
+     */
+    public void invalidateAll() {
+        for (AtomicLong g : generations.values()) {
+            g.incrementAndGet();
+        }
+        entries.clear();
+    }
+
+    /** Drops results for the slot when its token is inserted or removed. */
+    public void slotEvent(long slotID, boolean tokenPresent) {
+        invalidate(slotID);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ObjectHandleCache size=%d hits=%d misses=%d", entries.size(), hits.get(), misses.get());
+    }
+
+    /** slot and template, compared by attribute types and values */
+    private static final class Key {
+        final long slotID;
+        final long[] types;
+        final byte[][] values;
+        final int hash;
+
+        Key(long slotID, CKA[] templ) {
+            this.slotID = slotID;
+            this.types = new long[templ.length];
+            this.values = new byte[templ.length][];
+            int h = Long.hashCode(slotID);
+            for (int i = 0; i < templ.length; i++) {
+                types[i] = templ[i].type;
+                byte[] v = templ[i].pValue;
+                int len = v == null ? 0 : (int) Math.min(templ[i].ulValueLen, v.length);
+                values[i] = v == null ? null : Arrays.copyOf(v, len);
+                h = 31 * h + Long.hashCode(types[i]);
+                h = 31 * h + Arrays.hashCode(values[i]);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return slotID == k.slotID && Arrays.equals(types, k.types) && Arrays.deepEquals(values, k.values);
+        }
+    }
+
+    /** cached result */
+    private static final class Entry {
+        final long[] handles;
+        final long created = System.nanoTime();
+
+        Entry(long[] handles) {
+            this.handles = handles;
+        }
+    }
+}
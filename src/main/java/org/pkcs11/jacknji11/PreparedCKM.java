@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.pkcs11.jacknji11;
+
+import java.io.Closeable;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * CK_MECHANISM which is marshalled to native memory once when constructed
+ * and then passed as-is by every provider on each *Init call.  Use for high
+ * rate operations which repeat the same mechanism and params, e.g.
+ * SHA256_RSA_PKCS_PSS with the same CK_RSA_PKCS_PSS_PARAMS for every sign.
+ * <p>
+ * The CK_MECHANISM struct and the param bytes are held in a single block of
+ * native memory.  Instances are immutable and safe to share between threads.
+ * The public fields inherited from {@link CKM} must not be modified.
+ * <p>
+ * {@link #close()} frees the native memory immediately rather than waiting
+ * for GC.  It must only be called once no thread is still using the mechanism.
+ * After close, {@link #getAddress()} and any *Init call using the mechanism
+ * throw IllegalStateException.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class PreparedCKM extends CKM implements Closeable {
+    private static final int UL = NativeLong.SIZE;
+    private static final int PTR = Native.POINTER_SIZE;
+    /** offset of param bytes, struct is packed to match JNA_CKM (ALIGN_NONE) */
+    private static final int PARAM_OFFSET = (UL + PTR + UL + 7) & ~7;
+
+    private final Memory memory;
+    private volatile long address;
+
+    /**
+     * Prepared CK_MECHANISM.
+     * @param mechanism CKM_? mechanism.  Use one of the public static final long fields in {@link CKM}.
+     * @param param param for mechanism, may be null
+     */
+    public PreparedCKM(long mechanism, byte[] param) {
+        this(mechanism, param, new Memory(PARAM_OFFSET + (param != null ? param.length : 0)));
+    }
+
+    /**
+     * Prepared CK_MECHANISM using default (possibly no) params.
+     * @param mechanism CKM_? mechanism.  Use one of the public static final long fields in {@link CKM}.
+     */
+    public PreparedCKM(long mechanism) {
+        this(mechanism, CKM.DEFAULT_PARAMS.get(mechanism));
+    }
+
+    private PreparedCKM(long mechanism, byte[] param, Memory memory) {
+        super(mechanism, null, 0);
+        this.memory = memory;
+        int len = param != null ? param.length : 0;
+        memory.clear();
+        if (len > 0) {
+            memory.write(PARAM_OFFSET, param, 0, len);
+            pParameter = memory.share(PARAM_OFFSET, len);
+        }
+        ulParameterLen = len;
+        memory.setNativeLong(0, new NativeLong(mechanism));
+        memory.setPointer(UL, pParameter);
+        memory.setNativeLong(UL + PTR, new NativeLong(len));
+        address = Pointer.nativeValue(memory);
+    }
+
+    /**
+     * @return address of native CK_MECHANISM struct
+     * @throws IllegalStateException if closed
+     */
+    public long getAddress() {
+        long result = address;
+        if (result == 0) {
+            throw new IllegalStateException("PreparedCKM is closed");
+        }
+        return result;
+    }
+
+    /** @return true if native memory has been freed */
+    public boolean isClosed() {
+        return address == 0;
+    }
+
+    /** Free native memory.  Safe to call more than once. */
+    @Override
+    public synchronized void close() {
+        if (address != 0) {
+            address = 0;
+            memory.close();
+        }
+    }
+
+    /** @return string */
+    @Override
+    public String toString() {
+        return isClosed() ? String.format("mechanism=0x%08x{%s} closed", mechanism, L2S(mechanism)) : super.toString();
+    }
+}
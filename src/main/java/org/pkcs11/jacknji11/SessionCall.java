@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+/**
+ * Operation run with a session by {@link SessionPool#execute(SessionCall)}
+ * and {@link ThreadSessionCache#execute(SessionCall)}.  The operation may be
+ * run again with a new session if the first session was lost, so it must
+ * not depend on state left in the session by earlier calls.
+ * <pre>
+ * byte[] sig = pool.execute(session -&gt; {
+ *     ce.SignInit(session, mechanism, key);
+ *     return ce.Sign(session, data);
+ * });
+ * </pre>
+ *
+ * @param <T> result type
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public interface SessionCall<T> {
+    /**
+     * @param session session to use
+     * @return result
+     */
+    T call(long session);
+}
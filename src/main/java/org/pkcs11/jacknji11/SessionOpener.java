@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Opens sessions on a slot, logged in as the normal user if there is a PIN,
+ * and closes them ignoring errors.  Shared by {@link SessionPool} and
+ * {@link ThreadSessionCache}, along with reading session limits from
+ * {@link CK_TOKEN_INFO}.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+class SessionOpener {
+    private static final Log log = LogFactory.getLog(SessionOpener.class);
+
+    final CryptokiE ce;
+    final long slotID;
+    final long flags;
+    private final byte[] pin;
+
+    /**
+     * @param ce cryptoki
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     * @param flags session flags, CKF_SERIAL_SESSION is always added
+     */
+    SessionOpener(CryptokiE ce, long slotID, byte[] pin, long flags) {
+        this.ce = ce;
+        this.slotID = slotID;
+        this.pin = pin == null ? null : pin.clone();
+        this.flags = flags | CK_SESSION_INFO.CKF_SERIAL_SESSION;
+    }
+
+    /**
+     * @param info token info
+     * @param flags session flags, ulMaxRwSessionCount also applies if CKF_RW_SESSION is set
+     * @return maximum number of sessions from token info, Integer.MAX_VALUE if the token has no limit
+     */
+    static int maxSessions(CK_TOKEN_INFO info, long flags) {
+        long max = limit(info.ulMaxSessionCount);
+        if ((flags & CK_SESSION_INFO.CKF_RW_SESSION) != 0) {
+            max = Math.min(max, limit(info.ulMaxRwSessionCount));
+        }
+        return (int) Math.min(max, Integer.MAX_VALUE);
+    }
+
+    private static boolean unavailable(long ul) {
+        // CK_UNAVAILABLE_INFORMATION with 4 or 8 byte CK_ULONG
+        return ul == CK.UNAVAILABLE_INFORMATION || ul == 0xffffffffL;
+    }
+
+    private static long limit(long ul) {
+        return ul == CK.EFFECTIVELY_INFINITE || unavailable(ul) ? Long.MAX_VALUE : ul;
+    }
+
+    /** @return new session, logged in if there is a PIN */
+    long open() {
+        long session = ce.OpenSession(slotID, flags, null, null);
+        if (pin != null) {
+            try {
+                ce.LoginUser(session, pin);
+            } catch (RuntimeException e) {
+                close(session);
+                throw e;
+            }
+        }
+        if (log.isDebugEnabled()) log.debug("Opened session " + session + " on slot " + slotID);
+        return session;
+    }
+
+    /**
+     * Checks session with GetSessionInfo and logs in again if there is a PIN
+     * and the session is no longer logged in.
+     * @return true if the session can be used
+     */
+    boolean check(long session) {
+        try {
+            CK_SESSION_INFO info = new CK_SESSION_INFO();
+            ce.GetSessionInfo(session, info);
+            if (pin != null && info.state != CKS.RO_USER_FUNCTIONS && info.state != CKS.RW_USER_FUNCTIONS) {
+                if (log.isDebugEnabled()) log.debug("Session " + session + " on slot " + slotID + " logged out, logging in");
+                ce.LoginUser(session, pin);
+            }
+            return true;
+        } catch (CKRException e) {
+            log.debug("Session " + session + " on slot " + slotID + " failed check", e);
+            return false;
+        }
+    }
+
+    /** closes session, errors are logged and ignored */
+    void close(long session) {
+        try {
+            ce.CloseSession(session);
+            if (log.isDebugEnabled()) log.debug("Closed session " + session + " on slot " + slotID);
+        } catch (CKRException e) {
+            log.debug("Error closing session " + session + " on slot " + slotID, e);
+        }
+    }
+}
@@ -0,0 +1,668 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Pool of open sessions on one slot, logged in as the normal user if a PIN
+ * is given.  Opening a session and logging in can take several milliseconds
+ * on a network HSM, the pool keeps between minSize and maxSize sessions open
+ * so that each operation only pays for the cryptographic call.
+ * <pre>
+ * SessionPool pool = new SessionPool(ce, slotID, pin, 2, 16, 5000);
+ * try (SessionPool.Lease lease = pool.borrow()) {
+ *     ce.SignInit(lease.getSession(), mechanism, key);
+ *     return ce.Sign(lease.getSession(), data);
+ * }
+ * </pre>
+ * A lease must be closed by the thread that borrowed it once it has no
+ * operation in progress.  Call {@link Lease#invalidate()} before closing if
+ * the session should not be reused, for example after an unexpected error.
+ * <p>
+ * {@link #execute(SessionCall)} borrows a session, runs an operation and
+ * recovers if the session was lost (see {@link CryptokiE#isSessionLost(long)}),
+ * for example when the HSM restarts.  The first thread to see the failure
+ * discards all sessions opened before it and opens and logs in a new one,
+ * other threads wait for that and then retry.  The operation is retried once.
+ * <p>
+ * Network HSMs may drop sessions that are idle for too long.
+ * {@link #startMaintenance(long)} checks idle sessions in the background with
+ * {@link #maintain()}, so that stale sessions are replaced before they are
+ * borrowed and at least minSize logged in sessions are kept open.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SessionPool implements Closeable {
+    private static final Log log = LogFactory.getLog(SessionPool.class);
+
+    public static final int DEFAULT_MIN_SIZE = 1;
+    public static final int DEFAULT_MAX_SIZE = 8;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+    private final SessionOpener opener;
+    private final long slotID;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWaitMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    /** idle sessions, most recently returned first */
+    private final Deque<Long> idle = new ArrayDeque<Long>();
+    /** number of open sessions, idle and leased */
+    private int size;
+    private boolean closed;
+    /** incremented when sessions are lost, sessions from older generations are not reused */
+    private int generation;
+    /** held while recovering so only one thread re-opens and logs in */
+    private final Object recovery = new Object();
+    /** runs maintain() if started */
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * Pool with default sizes of RW sessions.
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     */
+    public SessionPool(CryptokiE ce, long slotID, byte[] pin) {
+        this(ce, slotID, pin, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Pool of RW sessions.
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     * @param minSize number of sessions opened now and kept open
+     * @param maxSize maximum number of open sessions
+     * @param maxWaitMillis maximum time {@link #borrow()} waits for a session
+     */
+    public SessionPool(CryptokiE ce, long slotID, byte[] pin, int minSize, int maxSize, long maxWaitMillis) {
+        this(ce, slotID, pin, CK_SESSION_INFO.CKF_RW_SESSION | CK_SESSION_INFO.CKF_SERIAL_SESSION,
+            minSize, maxSize, maxWaitMillis);
+    }
+
+    /**
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     * @param flags session flags from {@link CK_SESSION_INFO}, CKF_SERIAL_SESSION is always added
+     * @param minSize number of sessions opened now and kept open
+     * @param maxSize maximum number of open sessions
+     * @param maxWaitMillis maximum time {@link #borrow()} waits for a session
+     * @throws CKRException if the initial sessions cannot be opened
+     */
+    public SessionPool(CryptokiE ce, long slotID, byte[] pin, long flags, int minSize, int maxSize, long maxWaitMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size min=" + minSize + " max=" + maxSize);
+        }
+        this.opener = new SessionOpener(ce, slotID, pin, flags);
+        this.slotID = slotID;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        try {
+            for (int i = 0; i < minSize; i++) {
+                long session = opener.open();
+                lock.lock();
+                try {
+                    size++;
+                    idle.addLast(session);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** @return slot */
+    public long getSlotID() { return slotID; }
+    /** @return session flags */
+    public long getFlags() { return opener.flags; }
+    /** @return minimum number of open sessions */
+    public int getMinSize() { return minSize; }
+    /** @return maximum number of open sessions */
+    public int getMaxSize() { return maxSize; }
+
+    /** @return number of open sessions, idle and leased */
+    public int getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return number of idle sessions */
+    public int getIdle() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Borrows a session, waiting up to maxWaitMillis if maxSize sessions are leased.
+     * @return lease, must be closed
+     * @throws CKRException with {@link CKR#SESSION_COUNT} if no session became available,
+     * or the error from opening a new session
+     */
+    public Lease borrow() {
+        return borrow(maxWaitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a session, waiting up to timeout if maxSize sessions are leased.
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return lease, must be closed
+     * @throws CKRException with {@link CKR#SESSION_COUNT} if no session became available,
+     * {@link CKR#FUNCTION_CANCELED} if interrupted, or the error from opening a new session
+     * @throws IllegalStateException if the pool is closed
+     */
+    public Lease borrow(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        int gen;
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("SessionPool is closed");
+                }
+                Long session = idle.pollFirst();
+                if (session != null) {
+                    return new Lease(session, generation);
+                }
+                if (size < maxSize) {
+                    size++;
+                    gen = generation;
+                    break;
+                }
+                if (nanos <= 0) {
+                    throw new CKRException("No session available in pool for slot " + slotID, CKR.SESSION_COUNT);
+                }
+                try {
+                    nanos = available.awaitNanos(nanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CKRException("Interrupted waiting for session", CKR.FUNCTION_CANCELED);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // open outside the lock, slot already reserved by size++
+        try {
+            return new Lease(opener.open(), gen);
+        } catch (RuntimeException e) {
+            unreserve();
+            throw e;
+        }
+    }
+
+    /** releases a slot reserved with size++ when the session could not be opened */
+    private void unreserve() {
+        lock.lock();
+        try {
+            size--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens one more idle session unless the pool is full or closed.
+     * @return true if a session was opened
+     * @throws CKRException if the session cannot be opened
+     */
+    boolean grow() {
+        int gen;
+        lock.lock();
+        try {
+            if (closed || size >= maxSize) {
+                return false;
+            }
+            size++;
+            gen = generation;
+        } finally {
+            lock.unlock();
+        }
+        long session;
+        try {
+            session = opener.open();
+        } catch (RuntimeException e) {
+            unreserve();
+            throw e;
+        }
+        release(session, false, gen);
+        return true;
+    }
+
+    /** @return cryptoki used by the pool */
+    CryptokiE getCryptoki() {
+        return opener.ce;
+    }
+
+    /**
+     * Runs call with a borrowed session.  If it fails because the session was
+     * lost, sessions are recovered and call is run once more with a new session.
+     * Only use for operations that are safe to repeat, such as a complete
+     * sign or GenerateRandom.
+     * @param call operation to run
+     * @param <T> result type
+     * @return result of call
+     * @throws CKRException from call, from opening a new session, or
+     * {@link CKR#SESSION_COUNT} if no session became available
+     */
+    public <T> T execute(SessionCall<T> call) {
+        for (int attempt = 0; ; attempt++) {
+            CKRException lost;
+            int gen;
+            Lease lease = borrow();
+            try {
+                return call.call(lease.getSession());
+            } catch (CKRException e) {
+                if (!CryptokiE.isSessionLost(e.getCKR())) {
+                    throw e;
+                }
+                lost = e;
+                gen = lease.generation;
+                lease.invalidate();
+            } finally {
+                lease.close();
+            }
+            if (attempt > 0) {
+                throw lost;
+            }
+            recover(gen);
+        }
+    }
+
+    /**
+     * Reads the same attributes of many objects using up to parallelism
+     * sessions at once, see {@link CryptokiE#GetAttributeValues(long, long[], long...)}.
+     * The first object is read on the calling thread so that the lengths
+     * learned from it are used for the rest, which are split between
+     * parallelism threads.  Each share is run with {@link #execute(SessionCall)}
+     * so lost sessions are recovered.
+     * @param objects object handles
+     * @param parallelism number of sessions used at once, at most max size
+     * @param types {@link CKA} attribute types to get
+     * @return attribute values and errors of each object
+     * @throws CKRException if sessions are lost and cannot be recovered, or
+     * {@link CKR#SESSION_COUNT} if no session became available
+     */
+    public AttributeValues getAttributeValues(final long[] objects, int parallelism, long... types) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        final CryptokiE ce = opener.ce;
+        final AttributeValues result = new AttributeValues(objects, types);
+        if (objects.length == 0) {
+            return result;
+        }
+        final AttributeLengthStrategy strategy = ce.bulkLengthStrategy();
+        int threads = Math.min(Math.min(parallelism, maxSize), objects.length - 1);
+        if (threads <= 1) {
+            read(result, 0, objects.length, strategy);
+            return result;
+        }
+        read(result, 0, 1, strategy);
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "jacknji11-attributes-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            int remaining = objects.length - 1;
+            for (int i = 0; i < threads; i++) {
+                final int from = 1 + (int) ((long) remaining * i / threads);
+                final int to = 1 + (int) ((long) remaining * (i + 1) / threads);
+                futures.add(executor.submit(() -> read(result, from, to, strategy)));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CKRException("Interrupted reading attributes", CKR.FUNCTION_CANCELED);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new CKRException(e.getCause().toString(), CKR.GENERAL_ERROR);
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void read(final AttributeValues result, final int from, final int to, final AttributeLengthStrategy strategy) {
+        execute(session -> {
+            opener.ce.getAttributeValues(session, result, from, to, strategy);
+            return null;
+        });
+    }
+
+    /**
+     * Discards all sessions opened in generation failedGeneration and opens
+     * and logs in one new session.  If another thread has already recovered
+     * that generation, returns once it has finished.
+     */
+    private void recover(int failedGeneration) {
+        synchronized (recovery) {
+            List<Long> stale;
+            boolean reserved;
+            int gen;
+            lock.lock();
+            try {
+                if (failedGeneration != generation || closed) {
+                    return;
+                }
+                gen = ++generation;
+                stale = takeIdle();
+                reserved = size < maxSize;
+                if (reserved) {
+                    size++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            log.info("Sessions lost on slot " + slotID + ", closing " + stale.size() + " idle sessions and logging in again");
+            for (long session : stale) {
+                opener.close(session);
+            }
+            if (reserved) {
+                long session;
+                try {
+                    session = opener.open();
+                } catch (RuntimeException e) {
+                    unreserve();
+                    throw e;
+                }
+                release(session, false, gen);
+            }
+        }
+    }
+
+    /**
+     * Discards all sessions, for example when the token has been removed.
+     * Idle sessions are closed now and leased sessions when they are
+     * returned.  New sessions are opened when needed.
+     * @see SlotEventWatcher
+     */
+    public void reset() {
+        List<Long> stale;
+        lock.lock();
+        try {
+            generation++;
+            stale = takeIdle();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Reset sessions on slot " + slotID + ", closing " + stale.size() + " idle sessions");
+        for (long session : stale) {
+            opener.close(session);
+        }
+    }
+
+    /** removes all idle sessions from the pool, must hold lock */
+    private List<Long> takeIdle() {
+        List<Long> taken = new ArrayList<Long>(idle);
+        size -= idle.size();
+        idle.clear();
+        available.signalAll();
+        return taken;
+    }
+
+    /**
+     * Checks each idle session with GetSessionInfo, logs in again any that
+     * have been logged out and closes any that fail, then opens sessions
+     * until there are minSize.  Sessions are checked oldest first, one at a
+     * time, so the others can be borrowed meanwhile.
+     * @return number of sessions closed
+     */
+    public int maintain() {
+        int checks = getIdle();
+        int evicted = 0;
+        for (int i = 0; i < checks; i++) {
+            Long session;
+            int gen;
+            lock.lock();
+            try {
+                session = closed ? null : idle.pollLast();
+                gen = generation;
+            } finally {
+                lock.unlock();
+            }
+            if (session == null) {
+                break;
+            }
+            boolean ok = opener.check(session);
+            if (!ok) {
+                evicted++;
+            }
+            release(session, !ok, gen);
+        }
+        if (evicted > 0) {
+            log.info("Closed " + evicted + " stale sessions on slot " + slotID);
+        }
+        try {
+            while (getSize() < minSize && grow()) {
+                // opened another
+            }
+        } catch (CKRException e) {
+            log.warn("Could not open session on slot " + slotID, e);
+        }
+        return evicted;
+    }
+
+    /**
+     * Runs {@link #maintain()} every intervalMillis on a daemon thread until the pool is closed.
+     * @param intervalMillis time between runs, shorter than the HSM's idle session timeout
+     * @throws IllegalStateException if already started or the pool is closed
+     */
+    public void startMaintenance(long intervalMillis) {
+        lock.lock();
+        try {
+            if (closed || maintenance != null) {
+                throw new IllegalStateException(closed ? "SessionPool is closed" : "Maintenance already started");
+            }
+            maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "jacknji11-pool-slot-" + slotID);
+                t.setDaemon(true);
+                return t;
+            });
+            maintenance.scheduleWithFixedDelay(() -> {
+                try {
+                    maintain();
+                } catch (RuntimeException e) {
+                    log.warn("Error maintaining sessions on slot " + slotID, e);
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes idle sessions and stops maintenance.  Leased sessions are closed
+     * when they are returned.
+     */
+    public void close() {
+        List<Long> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            if (maintenance != null) {
+                maintenance.shutdown();
+            }
+            toClose = takeIdle();
+        } finally {
+            lock.unlock();
+        }
+        for (long session : toClose) {
+            opener.close(session);
+        }
+        // wait for a running maintain() to give back the session it is checking
+        if (maintenance != null) {
+            try {
+                maintenance.awaitTermination(maxWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void release(long session, boolean invalid, int gen) {
+        boolean close;
+        lock.lock();
+        try {
+            close = closed || invalid || gen != generation;
+            if (close) {
+                size--;
+            } else {
+                idle.addFirst(session);
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (close) {
+            opener.close(session);
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("SessionPool slot=%d size=%d idle=%d min=%d max=%d%s",
+                slotID, size, idle.size(), minSize, maxSize, closed ? " closed" : "");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A session borrowed from the pool, returned by {@link #close()}.
+     */
+    public final class Lease implements Closeable {
+        private final long session;
+        private final int generation;
+        private TrackedSession tracked;
+        private boolean invalid;
+        private boolean returned;
+
+        private Lease(long session, int generation) {
+            this.session = session;
+            this.generation = generation;
+        }
+
+        /**
+         * @return session handle
+         * @throws IllegalStateException if the lease has been closed
+         */
+        public long getSession() {
+            if (returned) {
+                throw new IllegalStateException("Lease has been closed");
+            }
+            return session;
+        }
+
+        /**
+         * Use the session through a {@link TrackedSession} so that any
+         * operation left active is terminated when the lease is closed and the
+         * session can be reused.
+         * @return tracked session for this lease
+         * @throws IllegalStateException if the lease has been closed
+         */
+        public TrackedSession getTracked() {
+            getSession();
+            if (tracked == null) {
+                tracked = new TrackedSession(opener.ce, session);
+            }
+            return tracked;
+        }
+
+        /** @return the pool this lease is from */
+        public SessionPool getPool() {
+            return SessionPool.this;
+        }
+
+        /**
+         * Session will be closed rather than returned to the pool.
+         */
+        public void invalidate() {
+            invalid = true;
+        }
+
+        /**
+         * Returns the session to the pool, terminating any operation left
+         * active through {@link #getTracked()}.  Safe to call more than once.
+         */
+        public void close() {
+            if (!returned) {
+                returned = true;
+                if (tracked != null && !invalid && !tracked.isIdle() && !tracked.terminate()) {
+                    invalid = true;
+                }
+                release(session, invalid, generation);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Lease session=" + session + " slot=" + slotID + (returned ? " closed" : "");
+        }
+    }
+}
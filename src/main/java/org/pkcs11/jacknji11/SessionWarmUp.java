@@ -0,0 +1,220 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Fills session pools at startup using several threads, since opening and
+ * logging in sessions one at a time can take seconds on a network HSM.
+ * Runs in three phases, each timed:
+ * <ol>
+ * <li>login - one session per slot is opened and logged in, slots in parallel,
+ * skipping pools that already have a session
+ * <li>sessions - the remaining sessions are opened in parallel
+ * <li>keys - keys are found by label and class, private keys by default, in each slot
+ * </ol>
+ * <pre>
+ * SessionWarmUp.Report report = SessionWarmUp.run(pools, 64, 16, "signing-key");
+ * long key = report.getKey(slotID, "signing-key");
+ * </pre>
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SessionWarmUp {
+    private static final Log log = LogFactory.getLog(SessionWarmUp.class);
+
+    private SessionWarmUp() {
+    }
+
+    /**
+     * Opens sessions in each pool until it has the given number of sessions or is full, and finds private keys.
+     * @param pools pools to fill
+     * @param sessions number of sessions wanted in each pool
+     * @param parallelism number of threads opening sessions
+     * @param keyLabels CKA_LABEL of private keys to find in each slot
+     * @return timings and keys found
+     * @throws CKRException the first error opening a session or finding a key
+     */
+    public static Report run(List<SessionPool> pools, int sessions, int parallelism, String... keyLabels) {
+        return run(pools, sessions, parallelism, CKO.PRIVATE_KEY, keyLabels);
+    }
+
+    /**
+     * Opens sessions in each pool until it has the given number of sessions or is full, and finds keys.
+     * @param pools pools to fill
+     * @param sessions number of sessions wanted in each pool
+     * @param parallelism number of threads opening sessions
+     * @param keyClass CKA_CLASS of keys to find, such as {@link CKO#SECRET_KEY}
+     * @param keyLabels CKA_LABEL of keys to find in each slot
+     * @return timings and keys found
+     * @throws CKRException the first error opening a session or finding a key
+     */
+    public static Report run(List<SessionPool> pools, int sessions, int parallelism, final long keyClass,
+            String... keyLabels) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "jacknji11-warmup-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Report report = new Report();
+            final AtomicInteger opened = new AtomicInteger();
+
+            // login once per slot before opening the rest, so they do not all race to login,
+            // a pool with sessions has already logged in
+            long start = System.nanoTime();
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final SessionPool pool : pools) {
+                if (pool.getSize() == 0 && sessions > 0) {
+                    tasks.add(() -> grow(pool, opened));
+                }
+            }
+            invokeAll(executor, tasks);
+            report.loginNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            tasks.clear();
+            for (final SessionPool pool : pools) {
+                for (int i = pool.getSize(); i < Math.min(sessions, pool.getMaxSize()); i++) {
+                    tasks.add(() -> grow(pool, opened));
+                }
+            }
+            invokeAll(executor, tasks);
+            report.sessionsNanos = System.nanoTime() - start;
+            report.sessionsOpened = opened.get();
+
+            start = System.nanoTime();
+            List<Callable<Void>> finds = new ArrayList<Callable<Void>>();
+            for (final SessionPool pool : pools) {
+                final CryptokiE ce = pool.getCryptoki();
+                final Map<String, Long> keys = Collections.synchronizedMap(new HashMap<String, Long>());
+                report.keys.put(pool.getSlotID(), keys);
+                for (final String label : keyLabels) {
+                    finds.add(() -> {
+                        long[] found = pool.execute(session -> ce.FindObjects(session,
+                            new CKA(CKA.CLASS, keyClass), new CKA(CKA.LABEL, label)));
+                        if (found.length > 0) {
+                            keys.put(label, found[0]);
+                        }
+                        return null;
+                    });
+                }
+            }
+            invokeAll(executor, finds);
+            report.keysNanos = System.nanoTime() - start;
+            log.info(report);
+            return report;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Void grow(SessionPool pool, AtomicInteger opened) {
+        if (pool.grow()) {
+            opened.incrementAndGet();
+        }
+        return null;
+    }
+
+    /** runs all tasks and throws the first error once all have finished */
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) {
+        List<Future<Void>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CKRException("Interrupted during warm up", CKR.FUNCTION_CANCELED);
+        }
+        for (Future<Void> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CKRException("Interrupted during warm up", CKR.FUNCTION_CANCELED);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new CKRException(e.getCause().toString(), CKR.GENERAL_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Timings of each phase and keys found.
+     */
+    public static final class Report {
+        private long loginNanos;
+        private long sessionsNanos;
+        private long keysNanos;
+        private int sessionsOpened;
+        private final Map<Long, Map<String, Long>> keys = new HashMap<Long, Map<String, Long>>();
+
+        private Report() {
+        }
+
+        /** @return time to open and login the first session in each slot */
+        public long getLoginMillis() { return loginNanos / 1000000; }
+        /** @return time to open the remaining sessions */
+        public long getSessionsMillis() { return sessionsNanos / 1000000; }
+        /** @return time to find keys */
+        public long getKeysMillis() { return keysNanos / 1000000; }
+        /** @return total time */
+        public long getTotalMillis() { return (loginNanos + sessionsNanos + keysNanos) / 1000000; }
+        /** @return number of sessions opened */
+        public int getSessionsOpened() { return sessionsOpened; }
+
+        /**
+         * @param slotID slot
+         * @param label key label
+         * @return handle of key in slot, or {@link CK#INVALID_HANDLE} if not found
+         */
+        public long getKey(long slotID, String label) {
+            Map<String, Long> slotKeys = keys.get(slotID);
+            Long key = slotKeys == null ? null : slotKeys.get(label);
+            return key == null ? CK.INVALID_HANDLE : key;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Warm up opened %d sessions in %dms: login %dms, sessions %dms, keys %dms",
+                sessionsOpened, getTotalMillis(), getLoginMillis(), getSessionsMillis(), getKeysMillis());
+        }
+    }
+}
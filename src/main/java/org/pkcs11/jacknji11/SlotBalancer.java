@@ -0,0 +1,384 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Spreads operations on a key over several slots that hold the same key
+ * material, such as partitions of an HSM cluster.  Each slot is given as a
+ * {@link SessionPool}.  Keys are found by template in each slot, and each
+ * operation goes to the healthy slot with the fewest operations in progress,
+ * ties broken by the lowest average latency.
+ * <pre>
+ * SlotBalancer lb = new SlotBalancer(ce, Arrays.asList(pool1, pool2, pool3));
+ * SlotBalancer.Key key = lb.findKey("signing-key");
+ * byte[] sig = lb.sign(key, new CKM(CKM.SHA256_RSA_PKCS), data);
+ * </pre>
+ * If an operation fails with a device or lost session error (see
+ * {@link #isSlotFailure(long)}) the slot is taken out of rotation for
+ * retryMillis and the operation is tried on the next slot.  When every slot
+ * is out of rotation, all slots are tried.  A slot that did not have the key
+ * is looked up again after retryMillis, so keys created later are used.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotBalancer {
+    private static final Log log = LogFactory.getLog(SlotBalancer.class);
+
+    public static final long DEFAULT_RETRY_MILLIS = 5000;
+    /** handle of a key not yet looked up in a slot */
+    private static final long UNRESOLVED = CK.INVALID_HANDLE;
+    /** handle of a key that was not in a slot at {@link Key#absentAt} */
+    private static final long ABSENT = -1;
+
+    private final CryptokiE ce;
+    private final Slot[] slots;
+    private final long retryNanos;
+    /** start of search for ties, so equal slots take turns */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param ce cryptoki
+     * @param pools one pool per slot
+     */
+    public SlotBalancer(CryptokiE ce, List<SessionPool> pools) {
+        this(ce, pools, DEFAULT_RETRY_MILLIS);
+    }
+
+    /**
+     * @param ce cryptoki
+     * @param pools one pool per slot
+     * @param retryMillis time a failed slot is out of rotation
+     */
+    public SlotBalancer(CryptokiE ce, List<SessionPool> pools, long retryMillis) {
+        if (pools.isEmpty()) {
+            throw new IllegalArgumentException("No slots");
+        }
+        this.ce = ce;
+        this.slots = new Slot[pools.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(pools.get(i));
+        }
+        this.retryNanos = retryMillis * 1000000L;
+    }
+
+    /**
+     * Returns true for errors that take a slot out of rotation: lost sessions
+     * ({@link CryptokiE#isSessionLost(long)}), DEVICE_ERROR, DEVICE_MEMORY and
+     * GENERAL_ERROR.
+     * @param ckr CKR value
+     * @return true if the slot should not be used for a while
+     */
+    public static boolean isSlotFailure(long ckr) {
+        return CryptokiE.isSessionLost(ckr) || ckr == CKR.DEVICE_ERROR
+            || ckr == CKR.DEVICE_MEMORY || ckr == CKR.GENERAL_ERROR;
+    }
+
+    /**
+     * Finds a key with matching label in each slot.
+     * @param label CKA_LABEL of key
+     * @return key
+     * @throws CKRException with {@link CKR#KEY_HANDLE_INVALID} if no slot has the key
+     */
+    public Key findKey(String label) {
+        return findKey(new CKA(CKA.LABEL, label));
+    }
+
+    /**
+     * Finds a key matching templ in each slot.  Slots that fail are looked
+     * up again when they are next used.  If more than one object matches in
+     * a slot, the first is used.
+     * @param templ attributes to match such as CKA_LABEL or CKA_ID
+     * @return key
+     * @throws CKRException with {@link CKR#KEY_HANDLE_INVALID} if no slot has the key,
+     * or the error of a failed slot if no other slot has the key
+     */
+    public Key findKey(CKA... templ) {
+        Key key = new Key(templ, slots.length);
+        boolean found = false;
+        CKRException failure = null;
+        for (int i = 0; i < slots.length; i++) {
+            try {
+                found |= key.resolve(i) != ABSENT;
+            } catch (CKRException e) {
+                if (!isSlotFailure(e.getCKR())) {
+                    throw e;
+                }
+                // not known whether the slot has the key
+                slots[i].failed(e);
+                failure = e;
+            }
+        }
+        if (!found) {
+            throw failure != null ? failure : new CKRException("Key not found in any slot", CKR.KEY_HANDLE_INVALID);
+        }
+        return key;
+    }
+
+    /**
+     * Signs data on the least busy slot.
+     * @param key key
+     * @param mechanism signing mechanism
+     * @param data data to sign
+     * @return signature
+     */
+    public byte[] sign(Key key, final CKM mechanism, final byte[] data) {
+        return execute(key, (session, handle) -> ce.Sign(session, mechanism, handle, data));
+    }
+
+    /**
+     * Encrypts data on the least busy slot.
+     * @param key key
+     * @param mechanism encryption mechanism
+     * @param data data to encrypt
+     * @return encrypted data
+     */
+    public byte[] encrypt(Key key, final CKM mechanism, final byte[] data) {
+        return execute(key, (session, handle) -> ce.Encrypt(session, mechanism, handle, data));
+    }
+
+    /**
+     * Decrypts data on the least busy slot.
+     * @param key key
+     * @param mechanism decryption mechanism
+     * @param encryptedData data to decrypt
+     * @return decrypted data
+     */
+    public byte[] decrypt(Key key, final CKM mechanism, final byte[] encryptedData) {
+        return execute(key, (session, handle) -> ce.Decrypt(session, mechanism, handle, encryptedData));
+    }
+
+    /**
+     * Runs call on the least busy slot that has the key, trying other slots
+     * if it fails with {@link #isSlotFailure(long)}.  Lost sessions are first
+     * recovered by {@link SessionPool#execute(SessionCall)}.  Only use for
+     * operations that are safe to repeat.
+     * @param key key
+     * @param call operation to run with a session and the key handle in its slot
+     * @param <T> result type
+     * @return result of call
+     * @throws CKRException from the last slot tried
+     */
+    public <T> T execute(Key key, KeyCall<T> call) {
+        boolean[] tried = new boolean[slots.length];
+        CKRException last = null;
+        int index;
+        while ((index = choose(key, tried)) >= 0) {
+            tried[index] = true;
+            Slot slot = slots[index];
+            long handle;
+            try {
+                handle = key.resolve(index);
+            } catch (CKRException e) {
+                if (!isSlotFailure(e.getCKR())) {
+                    throw e;
+                }
+                slot.failed(e);
+                last = e;
+                continue;
+            }
+            if (handle == ABSENT) {
+                continue;
+            }
+            slot.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                T result = slot.pool.execute(session -> call.call(session, handle));
+                slot.succeeded(System.nanoTime() - start);
+                return result;
+            } catch (CKRException e) {
+                if (e.getCKR() == CKR.KEY_HANDLE_INVALID || e.getCKR() == CKR.OBJECT_HANDLE_INVALID) {
+                    // key may have been recreated, look it up again next time
+                    key.handles.compareAndSet(index, handle, UNRESOLVED);
+                }
+                if (!isSlotFailure(e.getCKR())) {
+                    throw e;
+                }
+                slot.failed(e);
+                last = e;
+            } finally {
+                slot.outstanding.decrementAndGet();
+            }
+        }
+        throw last != null ? last : new CKRException("Key not found in any slot", CKR.KEY_HANDLE_INVALID);
+    }
+
+    /** @return index of least busy untried slot that may have the key, healthy slots first, or -1 */
+    private int choose(Key key, boolean[] tried) {
+        long now = System.nanoTime();
+        int start = (next.getAndIncrement() & 0x7fffffff) % slots.length;
+        int best = -1;
+        boolean bestHealthy = false;
+        for (int n = 0; n < slots.length; n++) {
+            int i = (start + n) % slots.length;
+            if (tried[i] || key.isAbsent(i, now)) {
+                continue;
+            }
+            Slot s = slots[i];
+            boolean healthy = s.isHealthy(now);
+            if (best < 0 || (healthy && !bestHealthy)) {
+                best = i;
+                bestHealthy = healthy;
+                continue;
+            }
+            if (healthy != bestHealthy) {
+                continue;
+            }
+            Slot b = slots[best];
+            int o = s.outstanding.get();
+            int bo = b.outstanding.get();
+            if (o < bo || (o == bo && s.latency < b.latency)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param slotID slot
+     * @return true if slot is in rotation, false if it failed within retryMillis
+     * @throws IllegalArgumentException if slot is not in this balancer
+     */
+    public boolean isHealthy(long slotID) {
+        for (Slot s : slots) {
+            if (s.pool.getSlotID() == slotID) {
+                return s.isHealthy(System.nanoTime());
+            }
+        }
+        throw new IllegalArgumentException("Slot " + slotID + " not in balancer");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SlotBalancer");
+        long now = System.nanoTime();
+        for (Slot s : slots) {
+            sb.append(String.format(" [slot=%d outstanding=%d latency=%dus%s]", s.pool.getSlotID(),
+                s.outstanding.get(), s.latency / 1000, s.isHealthy(now) ? "" : " down"));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Operation run by {@link SlotBalancer#execute(Key, KeyCall)}.
+     * @param <T> result type
+     */
+    public interface KeyCall<T> {
+        /**
+         * @param session session in the chosen slot
+         * @param key handle of the key in the chosen slot
+         * @return result
+         */
+        T call(long session, long key);
+    }
+
+    /**
+     * Key found in the slots of a balancer, holds its handle in each slot.
+     */
+    public final class Key {
+        private final CKA[] templ;
+        private final AtomicLongArray handles;
+        /** System.nanoTime() when the key was not found in each slot */
+        private final AtomicLongArray absentAt;
+
+        private Key(CKA[] templ, int slotCount) {
+            this.templ = templ;
+            this.handles = new AtomicLongArray(slotCount);
+            this.absentAt = new AtomicLongArray(slotCount);
+        }
+
+        /** @return true if key was not in slot index within retryMillis */
+        private boolean isAbsent(int index, long now) {
+            return handles.get(index) == ABSENT && now - absentAt.get(index) < retryNanos;
+        }
+
+        /** @return handle of key in slot index, looking it up if needed or if it was absent before retryMillis */
+        private long resolve(int index) {
+            long handle = handles.get(index);
+            if (handle != UNRESOLVED && (handle != ABSENT || isAbsent(index, System.nanoTime()))) {
+                return handle;
+            }
+            long[] found = slots[index].pool.execute(session -> ce.FindObjects(session, templ));
+            if (found.length > 0) {
+                handle = found[0];
+            } else {
+                handle = ABSENT;
+                absentAt.set(index, System.nanoTime());
+            }
+            handles.set(index, handle);
+            return handle;
+        }
+
+        /**
+         * @param slotID slot
+         * @return handle of key in slot, or {@link CK#INVALID_HANDLE} if not yet known or not in slot
+         */
+        public long getHandle(long slotID) {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i].pool.getSlotID() == slotID) {
+                    long handle = handles.get(i);
+                    return handle == ABSENT ? CK.INVALID_HANDLE : handle;
+                }
+            }
+            return CK.INVALID_HANDLE;
+        }
+    }
+
+    /** state of one slot */
+    private final class Slot {
+        final SessionPool pool;
+        final AtomicInteger outstanding = new AtomicInteger();
+        /** moving average of operation time in nanos, updated without locking */
+        volatile long latency;
+        /** System.nanoTime() when the slot went out of rotation */
+        volatile long failedAt;
+        volatile boolean down;
+
+        Slot(SessionPool pool) {
+            this.pool = pool;
+        }
+
+        boolean isHealthy(long now) {
+            return !down || now - failedAt >= retryNanos;
+        }
+
+        void succeeded(long nanos) {
+            long l = latency;
+            latency = l == 0 ? nanos : l + (nanos - l) / 8;
+            if (down) {
+                down = false;
+                log.info("Slot " + pool.getSlotID() + " back in rotation");
+            }
+        }
+
+        void failed(CKRException e) {
+            failedAt = System.nanoTime();
+            down = true;
+            log.warn("Slot " + pool.getSlotID() + " out of rotation for " + retryNanos / 1000000 + "ms", e);
+        }
+    }
+}
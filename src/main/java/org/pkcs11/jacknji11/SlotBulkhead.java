@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.io.Closeable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of operations running at once on a slot so that a burst
+ * of callers waits in turn rather than failing with
+ * {@link CKR#SESSION_COUNT} when the token runs out of sessions.  The limit
+ * is ulMaxSessionCount (ulMaxRwSessionCount for RW sessions) from
+ * {@link CK_TOKEN_INFO}, less reservedSessions, capped at maxConcurrency and
+ * at least 1.  The session counts in token info are not used since they
+ * include this application's own pooled sessions and change over time, so
+ * pass the number of sessions kept open outside the bulkhead (such as a
+ * login session) as reservedSessions.  Callers over the limit wait in
+ * arrival order for up to maxWaitMillis.
+ * <pre>
+ * SlotBulkhead bulkhead = new SlotBulkhead(ce, slotID);
+ * byte[] sig = bulkhead.execute(() -&gt; pool.execute(session -&gt; ce.Sign(session, mechanism, key, data)));
+ * </pre>
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotBulkhead {
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+    private final long slotID;
+    private final int limit;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+
+    /**
+     * Bulkhead for RW sessions with default concurrency and wait.
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     */
+    public SlotBulkhead(CryptokiE ce, long slotID) {
+        this(ce, slotID, CK_SESSION_INFO.CKF_RW_SESSION, DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param flags session flags from {@link CK_SESSION_INFO} that operations use
+     * @param maxConcurrency maximum operations at once if the token allows more
+     * @param maxWaitMillis maximum time {@link #enter()} waits
+     */
+    public SlotBulkhead(CryptokiE ce, long slotID, long flags, int maxConcurrency, long maxWaitMillis) {
+        this(ce, slotID, flags, maxConcurrency, maxWaitMillis, 0);
+    }
+
+    /**
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param flags session flags from {@link CK_SESSION_INFO} that operations use
+     * @param maxConcurrency maximum operations at once if the token allows more
+     * @param maxWaitMillis maximum time {@link #enter()} waits
+     * @param reservedSessions sessions kept open on the token outside of the bulkhead
+     */
+    public SlotBulkhead(CryptokiE ce, long slotID, long flags, int maxConcurrency, long maxWaitMillis, int reservedSessions) {
+        this(slotID, limit(ce.GetTokenInfo(slotID), flags, maxConcurrency, reservedSessions), maxWaitMillis);
+    }
+
+    /**
+     * Bulkhead with a fixed limit, no token info is read.
+     * @param slotID slot
+     * @param limit maximum operations at once
+     * @param maxWaitMillis maximum time {@link #enter()} waits
+     */
+    public SlotBulkhead(long slotID, int limit, long maxWaitMillis) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid limit " + limit);
+        }
+        this.slotID = slotID;
+        this.limit = limit;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(limit, true);
+    }
+
+    /** @return max sessions from token info less reservedSessions, capped at maxConcurrency, at least 1 */
+    static int limit(CK_TOKEN_INFO info, long flags, int maxConcurrency, int reservedSessions) {
+        long free = (long) SessionOpener.maxSessions(info, flags) - Math.max(0, reservedSessions);
+        return (int) Math.max(1, Math.min(maxConcurrency, free));
+    }
+
+    /** @return slot */
+    public long getSlotID() { return slotID; }
+    /** @return maximum operations at once */
+    public int getLimit() { return limit; }
+    /** @return operations running now */
+    public int getActive() { return limit - permits.availablePermits(); }
+    /** @return estimate of callers waiting to enter */
+    public int getQueueDepth() { return permits.getQueueLength(); }
+
+    /**
+     * Waits up to maxWaitMillis for a turn.
+     * @return permit, must be closed when the operation is done
+     * @throws CKRException with {@link CKR#SESSION_COUNT} on timeout
+     * or {@link CKR#FUNCTION_CANCELED} if interrupted
+     */
+    public Permit enter() {
+        return enter(maxWaitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits up to timeout for a turn.
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return permit, must be closed when the operation is done
+     * @throws CKRException with {@link CKR#SESSION_COUNT} on timeout
+     * or {@link CKR#FUNCTION_CANCELED} if interrupted
+     */
+    public Permit enter(long timeout, TimeUnit unit) {
+        try {
+            if (!permits.tryAcquire(timeout, unit)) {
+                throw new CKRException("Timed out waiting for slot " + slotID + " with "
+                    + permits.getQueueLength() + " waiting", CKR.SESSION_COUNT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CKRException("Interrupted waiting for slot " + slotID, CKR.FUNCTION_CANCELED);
+        }
+        return new Permit();
+    }
+
+    /**
+     * Runs op once there is a turn, waiting up to maxWaitMillis.
+     * @param op operation
+     * @param <T> result type
+     * @return result of op
+     * @throws CKRException from op, or as for {@link #enter()}
+     */
+    public <T> T execute(Supplier<T> op) {
+        Permit p = enter();
+        try {
+            return op.get();
+        } finally {
+            p.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SlotBulkhead slot=%d limit=%d active=%d queued=%d",
+            slotID, limit, getActive(), getQueueDepth());
+    }
+
+    /**
+     * A turn to run an operation on the slot, given back by {@link #close()}.
+     */
+    public final class Permit implements Closeable {
+        private boolean closed;
+
+        private Permit() {
+        }
+
+        /**
+         * Gives back the turn.  Safe to call more than once.
+         */
+        public void close() {
+            if (!closed) {
+                closed = true;
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Daemon thread that waits for token insertion and removal and tells
+ * listeners, so that sessions and cached lookups for a slot can be dropped
+ * as soon as its token goes rather than when requests start failing.
+ * <pre>
+ * SlotEventWatcher watcher = new SlotEventWatcher(ce);
+ * watcher.addListener((slotID, present) -&gt; {
+ *     if (slotID == pool.getSlotID()) {
+ *         pool.reset();
+ *     }
+ * });
+ * watcher.start();
+ * </pre>
+ * By default the thread blocks in C_WaitForSlotEvent.  If the module does not
+ * support blocking, or the watcher is created with blocking false, it calls
+ * C_WaitForSlotEvent with {@link #CKF_DONT_BLOCK} every pollMillis, and if that
+ * is not supported either, compares CKF_TOKEN_PRESENT from C_GetSlotInfo for
+ * all slots every pollMillis.
+ * <p>
+ * A thread blocked in C_WaitForSlotEvent only returns when there is an event
+ * or cryptoki is finalized, so {@link #close()} stops the thread once one of
+ * those happens.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotEventWatcher implements Closeable {
+    private static final Log log = LogFactory.getLog(SlotEventWatcher.class);
+
+    /** C_WaitForSlotEvent flag to return CKR_NO_EVENT rather than block */
+    public static final long CKF_DONT_BLOCK = 0x00000001;
+    public static final long DEFAULT_POLL_MILLIS = 1000;
+
+    /**
+     * Receives slot events on the watcher thread.
+     */
+    public interface Listener {
+        /**
+         * @param slotID slot with the event
+         * @param tokenPresent true if a token is now in the slot, false if removed
+         */
+        void slotEvent(long slotID, boolean tokenPresent);
+    }
+
+    private final CryptokiE ce;
+    private final boolean blocking;
+    private final long pollMillis;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    /** last known CKF_TOKEN_PRESENT per slot, used by polling slot info */
+    private final Map<Long, Boolean> present = new HashMap<Long, Boolean>();
+    private boolean polled;
+    private Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Watcher that blocks in C_WaitForSlotEvent if the module supports it.
+     * @param ce cryptoki, must already be initialized
+     */
+    public SlotEventWatcher(CryptokiE ce) {
+        this(ce, true, DEFAULT_POLL_MILLIS);
+    }
+
+    /**
+     * @param ce cryptoki, must already be initialized
+     * @param blocking true to block in C_WaitForSlotEvent, false to poll
+     * @param pollMillis time between polls
+     */
+    public SlotEventWatcher(CryptokiE ce, boolean blocking, long pollMillis) {
+        this.ce = ce;
+        this.blocking = blocking;
+        this.pollMillis = pollMillis;
+    }
+
+    /** @param listener listener to add */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** @param listener listener to remove */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts the watcher thread.
+     * @throws IllegalStateException if already started or closed
+     */
+    public synchronized void start() {
+        if (thread != null || closed) {
+            throw new IllegalStateException(closed ? "SlotEventWatcher is closed" : "SlotEventWatcher already started");
+        }
+        thread = new Thread(this::run, "jacknji11-slot-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the watcher thread, see class comment for blocking waits.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        long flags = blocking ? 0 : CKF_DONT_BLOCK;
+        boolean pollSlots = false;
+        LongRef slot = new LongRef();
+        while (!closed) {
+            try {
+                if (pollSlots) {
+                    pollSlotInfo();
+                    Thread.sleep(pollMillis);
+                    continue;
+                }
+                try {
+                    ce.WaitForSlotEvent(flags, slot, null);
+                } catch (CKRException e) {
+                    if (e.getCKR() == CKR.NO_EVENT) {
+                        Thread.sleep(pollMillis);
+                        continue;
+                    } else if (e.getCKR() == CKR.FUNCTION_NOT_SUPPORTED && flags == 0) {
+                        log.info("C_WaitForSlotEvent blocking not supported, polling every " + pollMillis + "ms");
+                        flags = CKF_DONT_BLOCK;
+                        continue;
+                    } else if (e.getCKR() == CKR.FUNCTION_NOT_SUPPORTED) {
+                        log.info("C_WaitForSlotEvent not supported, polling slot info every " + pollMillis + "ms");
+                        pollSlots = true;
+                        pollSlotInfo();
+                        continue;
+                    } else if (e.getCKR() == CKR.CRYPTOKI_NOT_INITIALIZED) {
+                        // cryptoki finalized
+                        break;
+                    }
+                    throw e;
+                }
+                publish(slot.value(), tokenPresent(slot.value()));
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                if (closed) {
+                    break;
+                }
+                log.warn("Error waiting for slot event, retrying in " + pollMillis + "ms", e);
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+        if (log.isDebugEnabled()) log.debug("Slot event watcher stopped");
+    }
+
+    private boolean tokenPresent(long slotID) {
+        return (ce.GetSlotInfo(slotID).flags & CK_SLOT_INFO.CKF_TOKEN_PRESENT) != 0;
+    }
+
+    /** publishes changes in CKF_TOKEN_PRESENT since the last poll, the first poll only records */
+    private void pollSlotInfo() {
+        for (long slotID : ce.GetSlotList(false)) {
+            boolean now = tokenPresent(slotID);
+            Boolean before = present.put(slotID, now);
+            if (polled && (before == null ? now : before != now)) {
+                publish(slotID, now);
+            }
+        }
+        polled = true;
+    }
+
+    private void publish(long slotID, boolean tokenPresent) {
+        if (log.isDebugEnabled()) log.debug("Slot " + slotID + (tokenPresent ? " token inserted" : " token removed"));
+        for (Listener l : listeners) {
+            try {
+                l.slotEvent(slotID, tokenPresent);
+            } catch (RuntimeException e) {
+                log.warn("Error in slot event listener", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.io.Closeable;
+
+/**
+ * Separate pools of read-only and read-write sessions on one slot.  Tokens
+ * often allow far fewer RW sessions (ulMaxRwSessionCount) than sessions in
+ * total, so operations that only use keys, such as sign and decrypt, go to
+ * the RO pool and only operations that change token objects, such as
+ * creating, generating, modifying or destroying them, use an RW session.
+ * <pre>
+ * SlotSessions sessions = new SlotSessions(ce, slotID, pin);
+ * byte[] sig = sessions.sign(new CKM(CKM.SHA256_RSA_PKCS), key, data);
+ * long aes = sessions.generateKey(new CKM(CKM.AES_KEY_GEN), templ);
+ * </pre>
+ * Both pools log in with the same PIN.  Lost sessions are recovered as in
+ * {@link SessionPool#execute(SessionCall)}.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotSessions implements Closeable {
+    public static final int DEFAULT_MAX_RO = SessionPool.DEFAULT_MAX_SIZE;
+    public static final int DEFAULT_MAX_RW = 2;
+
+    private final SessionPool readOnly;
+    private final SessionPool readWrite;
+
+    /**
+     * Pools with default maximum sizes, capped by the token's limits.
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     */
+    public SlotSessions(CryptokiE ce, long slotID, byte[] pin) {
+        this(ce, slotID, pin, DEFAULT_MAX_RO, DEFAULT_MAX_RW, SessionPool.DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Pools capped by the token's limits.  The RW pool gets up to maxRw of
+     * ulMaxRwSessionCount and the RO pool up to maxRo of what is left of
+     * ulMaxSessionCount.  One RO session is opened now, RW sessions when
+     * first needed.
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     * @param maxRo maximum number of RO sessions
+     * @param maxRw maximum number of RW sessions
+     * @param maxWaitMillis maximum time to wait for a session
+     */
+    public SlotSessions(CryptokiE ce, long slotID, byte[] pin, int maxRo, int maxRw, long maxWaitMillis) {
+        CK_TOKEN_INFO info = ce.GetTokenInfo(slotID);
+        int rw = Math.max(1, Math.min(maxRw, SessionOpener.maxSessions(info, CK_SESSION_INFO.CKF_RW_SESSION)));
+        int ro = Math.max(1, (int) Math.min(maxRo, (long) SessionOpener.maxSessions(info, 0) - rw));
+        this.readOnly = new SessionPool(ce, slotID, pin, CK_SESSION_INFO.CKF_SERIAL_SESSION, 1, ro, maxWaitMillis);
+        try {
+            this.readWrite = new SessionPool(ce, slotID, pin,
+                CK_SESSION_INFO.CKF_RW_SESSION | CK_SESSION_INFO.CKF_SERIAL_SESSION, 0, rw, maxWaitMillis);
+        } catch (RuntimeException e) {
+            readOnly.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param readOnly pool of RO sessions
+     * @param readWrite pool of RW sessions
+     * @throws IllegalArgumentException if readWrite does not open RW sessions or the pools are for different slots
+     */
+    public SlotSessions(SessionPool readOnly, SessionPool readWrite) {
+        if ((readWrite.getFlags() & CK_SESSION_INFO.CKF_RW_SESSION) == 0) {
+            throw new IllegalArgumentException("readWrite pool does not open RW sessions");
+        }
+        if (readOnly.getSlotID() != readWrite.getSlotID()) {
+            throw new IllegalArgumentException("Pools are for slots " + readOnly.getSlotID() + " and " + readWrite.getSlotID());
+        }
+        this.readOnly = readOnly;
+        this.readWrite = readWrite;
+    }
+
+    /** @return slot */
+    public long getSlotID() { return readOnly.getSlotID(); }
+    /** @return pool of RO sessions */
+    public SessionPool getReadOnly() { return readOnly; }
+    /** @return pool of RW sessions */
+    public SessionPool getReadWrite() { return readWrite; }
+
+    /**
+     * @param rw true for an RW session
+     * @return lease from the RO or RW pool, must be closed
+     * @see SessionPool#borrow()
+     */
+    public SessionPool.Lease borrow(boolean rw) {
+        return (rw ? readWrite : readOnly).borrow();
+    }
+
+    /**
+     * Runs call with an RO session.
+     * @see SessionPool#execute(SessionCall)
+     */
+    public <T> T execute(SessionCall<T> call) {
+        return readOnly.execute(call);
+    }
+
+    /**
+     * Runs call with an RW session.
+     * @see SessionPool#execute(SessionCall)
+     */
+    public <T> T executeReadWrite(SessionCall<T> call) {
+        return readWrite.execute(call);
+    }
+
+    /** @see CryptokiE#Sign(long, CKM, long, byte[]) */
+    public byte[] sign(CKM mechanism, long key, byte[] data) {
+        return readOnly.execute(session -> readOnly.getCryptoki().Sign(session, mechanism, key, data));
+    }
+
+    /** @see CryptokiE#Encrypt(long, CKM, long, byte[]) */
+    public byte[] encrypt(CKM mechanism, long key, byte[] data) {
+        return readOnly.execute(session -> readOnly.getCryptoki().Encrypt(session, mechanism, key, data));
+    }
+
+    /** @see CryptokiE#Decrypt(long, CKM, long, byte[]) */
+    public byte[] decrypt(CKM mechanism, long key, byte[] encryptedData) {
+        return readOnly.execute(session -> readOnly.getCryptoki().Decrypt(session, mechanism, key, encryptedData));
+    }
+
+    /** @see CryptokiE#FindObjects(long, CKA...) */
+    public long[] findObjects(CKA... templ) {
+        return readOnly.execute(session -> readOnly.getCryptoki().FindObjects(session, templ));
+    }
+
+    /**
+     * Not repeated if the session is lost since the object may have been created.
+     * @see CryptokiE#CreateObject(long, CKA...)
+     */
+    public long createObject(CKA... templ) {
+        return once(session -> readWrite.getCryptoki().CreateObject(session, templ));
+    }
+
+    /**
+     * Not repeated if the session is lost since the key may have been created.
+     * @see CryptokiE#GenerateKey(long, CKM, CKA...)
+     */
+    public long generateKey(CKM mechanism, CKA... templ) {
+        return once(session -> readWrite.getCryptoki().GenerateKey(session, mechanism, templ));
+    }
+
+    /**
+     * Not repeated if the session is lost since the keys may have been created.
+     * @see CryptokiE#GenerateKeyPair(long, CKM, CKA[], CKA[], LongRef, LongRef)
+     */
+    public void generateKeyPair(CKM mechanism, CKA[] publicKeyTemplate, CKA[] privateKeyTemplate,
+            LongRef publicKey, LongRef privateKey) {
+        once(session -> {
+            readWrite.getCryptoki().GenerateKeyPair(session, mechanism,
+                publicKeyTemplate, privateKeyTemplate, publicKey, privateKey);
+            return null;
+        });
+    }
+
+    /** @see CryptokiE#SetAttributeValue(long, long, CKA...) */
+    public void setAttributeValue(long object, CKA... templ) {
+        readWrite.execute(session -> {
+            readWrite.getCryptoki().SetAttributeValue(session, object, templ);
+            return null;
+        });
+    }
+
+    /**
+     * Not repeated if the session is lost since the object may have been destroyed.
+     * @see CryptokiE#DestroyObject(long, long)
+     */
+    public void destroyObject(long object) {
+        once(session -> {
+            readWrite.getCryptoki().DestroyObject(session, object);
+            return null;
+        });
+    }
+
+    /**
+     * Runs call once with an RW session.  If the session was lost it is
+     * closed rather than returned to the pool, as in {@link SessionPool#execute(SessionCall)}.
+     */
+    private <T> T once(SessionCall<T> call) {
+        try (SessionPool.Lease lease = readWrite.borrow()) {
+            try {
+                return call.call(lease.getSession());
+            } catch (CKRException e) {
+                if (CryptokiE.isSessionLost(e.getCKR())) {
+                    lease.invalidate();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Closes both pools.
+     */
+    public void close() {
+        readOnly.close();
+        readWrite.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SlotSessions ro=[" + readOnly + "] rw=[" + readWrite + "]";
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * One session per thread on a slot, opened on first use by each thread and
+ * logged in as the normal user if a PIN is given.  Once a thread has its
+ * session, {@link #getSession()} is a thread local read with no locking.
+ * <pre>
+ * ThreadSessionCache sessions = new ThreadSessionCache(ce, slotID, pin);
+ * long session = sessions.getSession();
+ * ce.SignInit(session, mechanism, key);
+ * byte[] sig = ce.Sign(session, data);
+ * </pre>
+ * The session is shared by all code running on a thread, so a thread must
+ * finish one multi-part operation before starting another.
+ * <p>
+ * Sessions of threads that have died, and stale sessions from before
+ * {@link #reset()} or a recovery, are closed when a new session is opened or
+ * by {@link #reclaim()}.  The number of open sessions is capped at
+ * the token's ulMaxSessionCount (ulMaxRwSessionCount for RW sessions) unless
+ * a lower limit is given; a thread that needs a new session when the cap is
+ * reached gets CKRException with {@link CKR#SESSION_COUNT}.
+ * <p>
+ * {@link #execute(SessionCall)} runs an operation with the thread's session
+ * and recovers if the session was lost (see {@link CryptokiE#isSessionLost(long)}).
+ * The first thread to see the failure marks all current sessions as stale and
+ * opens and logs in a new one, other threads wait for that.  The operation is
+ * retried once.  Each thread opens a new session on its next call, and its
+ * stale session is closed either by that thread or by {@link #reclaim()},
+ * whichever is first.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class ThreadSessionCache implements Closeable {
+    private static final Log log = LogFactory.getLog(ThreadSessionCache.class);
+
+    private final SessionOpener opener;
+    private final int maxSessions;
+    private final ThreadLocal<Entry> local = new ThreadLocal<Entry>();
+    private final Set<Entry> entries = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+    /** incremented when sessions are lost, sessions from older generations are not used */
+    private final AtomicInteger generation = new AtomicInteger();
+    /** held while recovering so only one thread re-opens and logs in */
+    private final Object recovery = new Object();
+    private volatile boolean closed;
+
+    /**
+     * RW sessions capped by the token's session limits.
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     */
+    public ThreadSessionCache(CryptokiE ce, long slotID, byte[] pin) {
+        this(ce, slotID, pin, CK_SESSION_INFO.CKF_RW_SESSION, 0);
+    }
+
+    /**
+     * @param ce cryptoki, must already be initialized
+     * @param slotID slot
+     * @param pin user PIN, or null to not login
+     * @param flags session flags from {@link CK_SESSION_INFO}, CKF_SERIAL_SESSION is always added
+     * @param maxSessions maximum number of sessions, or 0 to use the token's limit
+     */
+    public ThreadSessionCache(CryptokiE ce, long slotID, byte[] pin, long flags, int maxSessions) {
+        this.opener = new SessionOpener(ce, slotID, pin, flags);
+        int tokenMax = SessionOpener.maxSessions(ce.GetTokenInfo(slotID), opener.flags);
+        this.maxSessions = maxSessions > 0 ? Math.min(maxSessions, tokenMax) : tokenMax;
+    }
+
+    /** @return slot */
+    public long getSlotID() { return opener.slotID; }
+    /** @return maximum number of open sessions */
+    public int getMaxSessions() { return maxSessions; }
+    /** @return number of open sessions */
+    public int getSize() { return size.get(); }
+
+    /**
+     * @return session of the current thread, opened if the thread does not have one
+     * @throws CKRException with {@link CKR#SESSION_COUNT} if the cap is reached,
+     * or the error from opening the session
+     * @throws IllegalStateException if the cache is closed
+     */
+    public long getSession() {
+        return entry().session;
+    }
+
+    private Entry entry() {
+        Entry e = local.get();
+        if (e != null && !e.closed.get()) {
+            if (e.generation == generation.get()) {
+                return e;
+            }
+            close(e);
+        }
+        return open();
+    }
+
+    /**
+     * Runs call with the current thread's session.  If it fails because the
+     * session was lost, sessions are recovered and call is run once more with
+     * a new session.  Only use for operations that are safe to repeat, such
+     * as a complete sign or GenerateRandom.
+     * @param call operation to run
+     * @param <T> result type
+     * @return result of call
+     * @throws CKRException from call or from opening a new session
+     */
+    public <T> T execute(SessionCall<T> call) {
+        Entry e = entry();
+        try {
+            return call.call(e.session);
+        } catch (CKRException ex) {
+            if (!CryptokiE.isSessionLost(ex.getCKR())) {
+                throw ex;
+            }
+            recover(e.generation);
+        }
+        return call.call(entry().session);
+    }
+
+    /**
+     * Marks sessions opened in generation failedGeneration as stale, then closes
+     * the current thread's session and opens and logs in a new one.  Other
+     * threads replace their stale sessions on their next call.  If another
+     * thread has already recovered that generation, returns once it has finished.
+     */
+    private void recover(int failedGeneration) {
+        synchronized (recovery) {
+            if (closed || !generation.compareAndSet(failedGeneration, failedGeneration + 1)) {
+                return;
+            }
+            log.info("Sessions lost on slot " + opener.slotID + ", logging in again");
+            entry();
+        }
+    }
+
+    /**
+     * Closes the current thread's session, for example after an error that
+     * leaves it unusable.  The next {@link #getSession()} opens a new one.
+     */
+    public void invalidate() {
+        Entry e = local.get();
+        if (e != null) {
+            local.remove();
+            close(e);
+        }
+    }
+
+    /**
+     * Marks the sessions of all threads as stale, for example when the token
+     * has been removed.  Each thread opens a new session when it next needs
+     * one.  Stale sessions are closed by their thread or by {@link #reclaim()}.
+     * @see SlotEventWatcher
+     */
+    public void reset() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Closes sessions of threads that are no longer alive and stale sessions
+     * from before {@link #reset()} or a recovery.
+     * @return number of sessions closed
+     */
+    public int reclaim() {
+        int gen = generation.get();
+        int n = 0;
+        for (Entry e : entries) {
+            Thread t = e.owner.get();
+            // close() only succeeds once, so this cannot race the owner replacing its stale session
+            if ((t == null || !t.isAlive() || e.generation != gen) && close(e)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Closes all sessions.  Threads must not use their session after this.
+     */
+    public void close() {
+        closed = true;
+        for (Entry e : entries) {
+            close(e);
+        }
+    }
+
+    private Entry open() {
+        int gen = generation.get();
+        if (closed) {
+            throw new IllegalStateException("ThreadSessionCache is closed");
+        }
+        reclaim();
+        while (true) {
+            int n = size.get();
+            if (n >= maxSessions) {
+                if (reclaim() == 0) {
+                    throw new CKRException("All " + maxSessions + " sessions in use on slot " + opener.slotID, CKR.SESSION_COUNT);
+                }
+            } else if (size.compareAndSet(n, n + 1)) {
+                break;
+            }
+        }
+        long session;
+        try {
+            session = opener.open();
+        } catch (RuntimeException ex) {
+            size.decrementAndGet();
+            throw ex;
+        }
+        Entry e = new Entry(Thread.currentThread(), session, gen);
+        entries.add(e);
+        local.set(e);
+        if (closed) {
+            // raced with close()
+            close(e);
+            throw new IllegalStateException("ThreadSessionCache is closed");
+        }
+        return e;
+    }
+
+    /** @return true if this call closed the session */
+    private boolean close(Entry e) {
+        if (!e.closed.compareAndSet(false, true)) {
+            return false;
+        }
+        entries.remove(e);
+        size.decrementAndGet();
+        opener.close(e.session);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ThreadSessionCache slot=%d size=%d max=%d%s",
+            opener.slotID, size.get(), maxSessions, closed ? " closed" : "");
+    }
+
+    /** a thread's session */
+    private static final class Entry {
+        final WeakReference<Thread> owner;
+        final long session;
+        final int generation;
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Entry(Thread owner, long session, int generation) {
+            this.owner = new WeakReference<Thread>(owner);
+            this.session = session;
+            this.generation = generation;
+        }
+    }
+}
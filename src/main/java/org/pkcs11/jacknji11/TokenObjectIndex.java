@@ -0,0 +1,380 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * In-memory index of the objects on one slot by handle, CKA_LABEL and CKA_ID,
+ * so that finding a key is a hash lookup rather than a search of a token
+ * with thousands of objects.
+ * <pre>
+ * TokenObjectIndex index = new TokenObjectIndex(pool);
+ * long key = index.findByLabel("signing-key", CKO.PRIVATE_KEY).get(0).getHandle();
+ * </pre>
+ * The first lookup lists all objects with FindObjects and reads their class,
+ * key type, label, ID and usage flags with
+ * {@link SessionPool#getAttributeValues(long[], int, long...)}.  The index
+ * listens to the pool's CryptokiE, objects created, changed or destroyed
+ * through it are read again before the next lookup.  Login, logout,
+ * InitToken, closing a session that created session objects and slot events (if
+ * the index is added as a {@link SlotEventWatcher.Listener}) cause a full
+ * refresh before the next lookup.  Changes made by other applications are
+ * only seen after {@link #refresh()}.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class TokenObjectIndex implements SlotEventWatcher.Listener, CryptokiE.ObjectListener, Closeable {
+    private static final Log log = LogFactory.getLog(TokenObjectIndex.class);
+
+    /** attributes read for each object */
+    static final long[] TYPES = {
+        CKA.CLASS, CKA.KEY_TYPE, CKA.LABEL, CKA.ID, CKA.TOKEN, CKA.PRIVATE,
+        CKA.ENCRYPT, CKA.DECRYPT, CKA.SIGN, CKA.VERIFY, CKA.WRAP, CKA.UNWRAP, CKA.DERIVE,
+    };
+
+    private final SessionPool pool;
+    private final int parallelism;
+    /** current index, replaced on full refresh, null until first lookup */
+    private volatile Index index;
+    /** full refresh needed before next lookup */
+    private volatile boolean stale = true;
+    /** objects to read again before next lookup */
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    /** held while refreshing so only one thread reads the token */
+    final Object refresh = new Object();
+
+    /**
+     * Index of objects in the pool's slot, read with one session.
+     * @param pool sessions to read objects with
+     */
+    public TokenObjectIndex(SessionPool pool) {
+        this(pool, 1);
+    }
+
+    /**
+     * Index of objects in the pool's slot.
+     * @param pool sessions to read objects with
+     * @param parallelism number of sessions used at once for a full refresh
+     */
+    public TokenObjectIndex(SessionPool pool, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.pool = pool;
+        this.parallelism = parallelism;
+        pool.getCryptoki().addObjectListener(this);
+    }
+
+    /** @return slot indexed */
+    public long getSlotID() { return pool.getSlotID(); }
+
+    /**
+     * @param handle object handle
+     * @return object, or null if not found
+     */
+    public Entry get(long handle) {
+        return current().byHandle.get(handle);
+    }
+
+    /**
+     * @param label CKA_LABEL
+     * @return objects with label, empty if none
+     */
+    public List<Entry> findByLabel(String label) {
+        List<Entry> found = current().byLabel.get(label);
+        return found == null ? Collections.<Entry>emptyList() : found;
+    }
+
+    /**
+     * @param label CKA_LABEL
+     * @param objectClass {@link CKO} class
+     * @return objects of class with label, empty if none
+     */
+    public List<Entry> findByLabel(String label, long objectClass) {
+        return filter(findByLabel(label), objectClass);
+    }
+
+    /**
+     * @param id CKA_ID
+     * @return objects with id, empty if none
+     */
+    public List<Entry> findById(byte[] id) {
+        List<Entry> found = current().byId.get(Hex.b2s(id));
+        return found == null ? Collections.<Entry>emptyList() : found;
+    }
+
+    /**
+     * @param id CKA_ID
+     * @param objectClass {@link CKO} class
+     * @return objects of class with id, empty if none
+     */
+    public List<Entry> findById(byte[] id, long objectClass) {
+        return filter(findById(id), objectClass);
+    }
+
+    /** @return number of objects indexed */
+    public int size() {
+        return current().byHandle.size();
+    }
+
+    private static List<Entry> filter(List<Entry> entries, long objectClass) {
+        List<Entry> result = new ArrayList<Entry>();
+        for (Entry e : entries) {
+            if (e.objectClass != null && e.objectClass == objectClass) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /** @return index with pending changes applied */
+    private Index current() {
+        Index current = index;
+        if (stale || current == null) {
+            refreshIfStale();
+        } else if (!dirty.isEmpty()) {
+            update();
+        }
+        return index;
+    }
+
+    /**
+     * Lists and reads all objects in the slot again.
+     * @throws CKRException if objects could not be listed
+     */
+    public void refresh() {
+        synchronized (refresh) {
+            // changes from now on are applied by the next lookup
+            stale = false;
+            dirty.clear();
+            long start = System.nanoTime();
+            Index next = new Index();
+            try {
+                long[] handles = pool.execute(session -> pool.getCryptoki().FindObjects(session, new CKA[0]));
+                AttributeValues values = pool.getAttributeValues(handles, parallelism, TYPES);
+                for (int i = 0; i < values.size(); i++) {
+                    if (values.get(i) != null) {
+                        next.add(new Entry(handles[i], values.get(i)));
+                    }
+                }
+            } catch (RuntimeException e) {
+                stale = true;
+                throw e;
+            }
+            index = next;
+            if (log.isDebugEnabled()) log.debug(String.format("Indexed %d objects on slot %d in %dms",
+                next.byHandle.size(), pool.getSlotID(), (System.nanoTime() - start) / 1000000));
+        }
+    }
+
+    /** full refresh unless another thread did it while this one waited */
+    private void refreshIfStale() {
+        synchronized (refresh) {
+            if (stale || index == null) {
+                refresh();
+            }
+        }
+    }
+
+    /**
+     * Reads changed objects again.  Objects that are no longer valid are
+     * removed, other errors leave the object to be read again next lookup.
+     * @throws CKRException the first error reading an object other than OBJECT_HANDLE_INVALID
+     */
+    private void update() {
+        synchronized (refresh) {
+            if (stale || index == null) {
+                refresh();
+                return;
+            }
+            List<Long> changed = new ArrayList<Long>(dirty);
+            if (changed.isEmpty()) {
+                return;
+            }
+            dirty.removeAll(changed);
+            long[] handles = new long[changed.size()];
+            for (int i = 0; i < handles.length; i++) {
+                handles[i] = changed.get(i);
+            }
+            AttributeValues values;
+            try {
+                values = pool.getAttributeValues(handles, 1, TYPES);
+            } catch (RuntimeException e) {
+                dirty.addAll(changed);
+                throw e;
+            }
+            CKRException error = null;
+            for (int i = 0; i < handles.length; i++) {
+                if (values.get(i) != null) {
+                    index.remove(handles[i]);
+                    index.add(new Entry(handles[i], values.get(i)));
+                } else if (values.getError(i).getCKR() == CKR.OBJECT_HANDLE_INVALID) {
+                    // destroyed
+                    index.remove(handles[i]);
+                } else {
+                    dirty.add(handles[i]);
+                    if (error == null) {
+                        error = values.getError(i);
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    public void objectChanged(long slotID, long object) {
+        if (slotID == pool.getSlotID() || slotID == -1) {
+            dirty.add(object);
+        }
+    }
+
+    public void objectsChanged(long slotID) {
+        if (slotID == pool.getSlotID() || slotID == -1) {
+            stale = true;
+        }
+    }
+
+    /** Refreshes before the next lookup when the token is inserted or removed. */
+    public void slotEvent(long slotID, boolean tokenPresent) {
+        objectsChanged(slotID);
+    }
+
+    /** Stops listening to changes made through the pool's CryptokiE. */
+    public void close() {
+        pool.getCryptoki().removeObjectListener(this);
+    }
+
+    @Override
+    public String toString() {
+        Index current = index;
+        return String.format("TokenObjectIndex slot=%d objects=%d stale=%b dirty=%d",
+            pool.getSlotID(), current == null ? 0 : current.byHandle.size(), stale, dirty.size());
+    }
+
+    /** objects by handle, label and hex ID, changed only while holding refresh */
+    private static final class Index {
+        final Map<Long, Entry> byHandle = new ConcurrentHashMap<Long, Entry>();
+        final Map<String, List<Entry>> byLabel = new ConcurrentHashMap<String, List<Entry>>();
+        final Map<String, List<Entry>> byId = new ConcurrentHashMap<String, List<Entry>>();
+
+        void add(Entry e) {
+            byHandle.put(e.handle, e);
+            if (e.label != null) {
+                byLabel.compute(e.label, (k, list) -> with(list, e));
+            }
+            if (e.id != null) {
+                byId.compute(Hex.b2s(e.id), (k, list) -> with(list, e));
+            }
+        }
+
+        void remove(long handle) {
+            Entry e = byHandle.remove(handle);
+            if (e == null) {
+                return;
+            }
+            if (e.label != null) {
+                byLabel.computeIfPresent(e.label, (k, list) -> without(list, e));
+            }
+            if (e.id != null) {
+                byId.computeIfPresent(Hex.b2s(e.id), (k, list) -> without(list, e));
+            }
+        }
+
+        /** lists are replaced rather than changed so lookups need no lock */
+        private static List<Entry> with(List<Entry> list, Entry e) {
+            List<Entry> result = list == null ? new ArrayList<Entry>(1) : new ArrayList<Entry>(list);
+            result.add(e);
+            return Collections.unmodifiableList(result);
+        }
+
+        private static List<Entry> without(List<Entry> list, Entry e) {
+            List<Entry> result = new ArrayList<Entry>(list);
+            result.remove(e);
+            return result.isEmpty() ? null : Collections.unmodifiableList(result);
+        }
+    }
+
+    /**
+     * Identifying attributes of an object.  Attributes the object does not
+     * have are null.
+     */
+    public static final class Entry {
+        private final long handle;
+        private final Long objectClass;
+        private final Long keyType;
+        private final String label;
+        private final byte[] id;
+        private final CKA[] values;
+
+        Entry(long handle, CKA[] values) {
+            this.handle = handle;
+            this.values = values;
+            this.objectClass = values[0].getValueLong();
+            this.keyType = values[1].getValueLong();
+            this.label = values[2].getValueStr();
+            this.id = values[3].getValue();
+        }
+
+        /** @return object handle */
+        public long getHandle() { return handle; }
+        /** @return CKA_CLASS, see {@link CKO} */
+        public Long getObjectClass() { return objectClass; }
+        /** @return CKA_KEY_TYPE, see {@link CKK} */
+        public Long getKeyType() { return keyType; }
+        /** @return CKA_LABEL */
+        public String getLabel() { return label; }
+        /** @return CKA_ID */
+        public byte[] getId() { return id == null ? null : id.clone(); }
+
+        /**
+         * @param type one of CKA_TOKEN, CKA_PRIVATE, CKA_ENCRYPT, CKA_DECRYPT, CKA_SIGN,
+         * CKA_VERIFY, CKA_WRAP, CKA_UNWRAP or CKA_DERIVE
+         * @return true if the object has the attribute set to CK_TRUE
+         */
+        public boolean is(long type) {
+            for (int i = 4; i < TYPES.length; i++) {
+                if (TYPES[i] == type) {
+                    return Boolean.TRUE.equals(values[i].getValueBool());
+                }
+            }
+            throw new IllegalArgumentException("Attribute not indexed: " + CKA.L2S(type));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("handle=%d class=%s keyType=%s label=%s id=%s", handle,
+                objectClass == null ? null : CKO.L2S(objectClass), keyType == null ? null : CKK.L2S(keyType),
+                label, id == null ? null : Hex.b2s(id));
+        }
+    }
+}
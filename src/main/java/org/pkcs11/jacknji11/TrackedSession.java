@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.util.EnumSet;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Session that remembers which operations (find, encrypt, decrypt, digest,
+ * sign, verify) are active, so that an operation left active by an error
+ * between its Init and Final calls can be ended with {@link #terminate()}
+ * rather than the next user of the session getting
+ * {@link CKR#OPERATION_ACTIVE}.  Methods call the same methods of
+ * {@link CryptokiE} with the session.  An operation ends when its Final or
+ * single part call succeeds, or fails with anything but
+ * {@link CKR#BUFFER_TOO_SMALL}, as in PKCS#11.
+ * <p>
+ * {@link SessionPool.Lease#getTracked()} returns a tracked session that is
+ * terminated when the lease is closed.  Like a lease, a tracked session is
+ * for use by one thread at a time.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class TrackedSession {
+    private static final Log log = LogFactory.getLog(TrackedSession.class);
+
+    /** operations that can be active in a session */
+    public enum Operation { FIND, ENCRYPT, DECRYPT, DIGEST, SIGN, VERIFY }
+
+    private final CryptokiE ce;
+    private final long session;
+    private final EnumSet<Operation> active = EnumSet.noneOf(Operation.class);
+
+    /**
+     * @param ce cryptoki
+     * @param session session handle
+     */
+    public TrackedSession(CryptokiE ce, long session) {
+        this.ce = ce;
+        this.session = session;
+    }
+
+    /** @return session handle */
+    public long getSession() { return session; }
+
+    /** @return operations active now */
+    public EnumSet<Operation> getActive() { return EnumSet.copyOf(active); }
+
+    /** @return true if no operation is active */
+    public boolean isIdle() { return active.isEmpty(); }
+
+    /**
+     * Ends all active operations.  A find is ended with FindObjectsFinal, other
+     * operations with their Final function, which ends the operation whether it
+     * succeeds or fails.  PKCS#11 2.x has no C_SessionCancel.
+     * @return true if the session has no active operation and can be reused,
+     * false if the session failed and should be closed
+     */
+    public boolean terminate() {
+        for (Operation op : getActive()) {
+            try {
+                switch (op) {
+                case FIND: ce.FindObjectsFinal(session); break;
+                case ENCRYPT: ce.EncryptFinal(session); break;
+                case DECRYPT: ce.DecryptFinal(session); break;
+                case DIGEST: ce.DigestFinal(session); break;
+                case SIGN: ce.SignFinal(session); break;
+                case VERIFY: ce.VerifyFinal(session, new byte[0]); break;
+                }
+            } catch (CKRException e) {
+                long ckr = e.getCKR();
+                if (CryptokiE.isSessionLost(ckr) || ckr == CKR.DEVICE_ERROR || ckr == CKR.GENERAL_ERROR) {
+                    log.debug("Could not terminate " + op + " on session " + session, e);
+                    active.clear();
+                    return false;
+                }
+                // any other error from Final still ends the operation
+            }
+            if (log.isDebugEnabled()) log.debug("Terminated " + op + " on session " + session);
+            active.remove(op);
+        }
+        return true;
+    }
+
+    /** call Init and mark op active */
+    private void begin(Operation op, Runnable init) {
+        init.run();
+        active.add(op);
+    }
+
+    /** call single part or Final function that ends op */
+    private <T> T end(Operation op, Supplier<T> call) {
+        try {
+            T result = call.get();
+            active.remove(op);
+            return result;
+        } catch (CKRException e) {
+            if (e.getCKR() != CKR.BUFFER_TOO_SMALL) {
+                active.remove(op);
+            }
+            throw e;
+        }
+    }
+
+    /** call Update function, op ends if it fails */
+    private <T> T update(Operation op, Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (CKRException e) {
+            if (e.getCKR() != CKR.BUFFER_TOO_SMALL) {
+                active.remove(op);
+            }
+            throw e;
+        }
+    }
+
+    /** @see CryptokiE#FindObjectsInit(long, CKA...) */
+    public void FindObjectsInit(CKA... templ) {
+        begin(Operation.FIND, () -> ce.FindObjectsInit(session, templ));
+    }
+
+    /** @see CryptokiE#FindObjects(long, int) */
+    public long[] FindObjects(int maxObjects) {
+        return ce.FindObjects(session, maxObjects);
+    }
+
+    /** @see CryptokiE#FindObjectsFinal(long) */
+    public void FindObjectsFinal() {
+        end(Operation.FIND, () -> { ce.FindObjectsFinal(session); return null; });
+    }
+
+    /** @see CryptokiE#EncryptInit(long, CKM, long) */
+    public void EncryptInit(CKM mechanism, long key) {
+        begin(Operation.ENCRYPT, () -> ce.EncryptInit(session, mechanism, key));
+    }
+
+    /** @see CryptokiE#Encrypt(long, byte[]) */
+    public byte[] Encrypt(byte[] data) {
+        return end(Operation.ENCRYPT, () -> ce.Encrypt(session, data));
+    }
+
+    /** @see CryptokiE#EncryptUpdate(long, byte[]) */
+    public byte[] EncryptUpdate(byte[] part) {
+        return update(Operation.ENCRYPT, () -> ce.EncryptUpdate(session, part));
+    }
+
+    /** @see CryptokiE#EncryptFinal(long) */
+    public byte[] EncryptFinal() {
+        return end(Operation.ENCRYPT, () -> ce.EncryptFinal(session));
+    }
+
+    /** @see CryptokiE#DecryptInit(long, CKM, long) */
+    public void DecryptInit(CKM mechanism, long key) {
+        begin(Operation.DECRYPT, () -> ce.DecryptInit(session, mechanism, key));
+    }
+
+    /** @see CryptokiE#Decrypt(long, byte[]) */
+    public byte[] Decrypt(byte[] encryptedData) {
+        return end(Operation.DECRYPT, () -> ce.Decrypt(session, encryptedData));
+    }
+
+    /** @see CryptokiE#DecryptUpdate(long, byte[]) */
+    public byte[] DecryptUpdate(byte[] encryptedPart) {
+        return update(Operation.DECRYPT, () -> ce.DecryptUpdate(session, encryptedPart));
+    }
+
+    /** @see CryptokiE#DecryptFinal(long) */
+    public byte[] DecryptFinal() {
+        return end(Operation.DECRYPT, () -> ce.DecryptFinal(session));
+    }
+
+    /** @see CryptokiE#DigestInit(long, CKM) */
+    public void DigestInit(CKM mechanism) {
+        begin(Operation.DIGEST, () -> ce.DigestInit(session, mechanism));
+    }
+
+    /** @see CryptokiE#Digest(long, byte[]) */
+    public byte[] Digest(byte[] data) {
+        return end(Operation.DIGEST, () -> ce.Digest(session, data));
+    }
+
+    /** @see CryptokiE#DigestUpdate(long, byte[]) */
+    public void DigestUpdate(byte[] part) {
+        update(Operation.DIGEST, () -> { ce.DigestUpdate(session, part); return null; });
+    }
+
+    /** @see CryptokiE#DigestFinal(long) */
+    public byte[] DigestFinal() {
+        return end(Operation.DIGEST, () -> ce.DigestFinal(session));
+    }
+
+    /** @see CryptokiE#SignInit(long, CKM, long) */
+    public void SignInit(CKM mechanism, long key) {
+        begin(Operation.SIGN, () -> ce.SignInit(session, mechanism, key));
+    }
+
+    /** @see CryptokiE#Sign(long, byte[]) */
+    public byte[] Sign(byte[] data) {
+        return end(Operation.SIGN, () -> ce.Sign(session, data));
+    }
+
+    /** @see CryptokiE#SignUpdate(long, byte[]) */
+    public void SignUpdate(byte[] part) {
+        update(Operation.SIGN, () -> { ce.SignUpdate(session, part); return null; });
+    }
+
+    /** @see CryptokiE#SignFinal(long) */
+    public byte[] SignFinal() {
+        return end(Operation.SIGN, () -> ce.SignFinal(session));
+    }
+
+    /** @see CryptokiE#VerifyInit(long, CKM, long) */
+    public void VerifyInit(CKM mechanism, long key) {
+        begin(Operation.VERIFY, () -> ce.VerifyInit(session, mechanism, key));
+    }
+
+    /** @see CryptokiE#Verify(long, byte[], byte[]) */
+    public void Verify(byte[] data, byte[] signature) {
+        end(Operation.VERIFY, () -> { ce.Verify(session, data, signature); return null; });
+    }
+
+    /** @see CryptokiE#VerifyUpdate(long, byte[]) */
+    public void VerifyUpdate(byte[] part) {
+        update(Operation.VERIFY, () -> { ce.VerifyUpdate(session, part); return null; });
+    }
+
+    /** @see CryptokiE#VerifyFinal(long, byte[]) */
+    public void VerifyFinal(byte[] signature) {
+        end(Operation.VERIFY, () -> { ce.VerifyFinal(session, signature); return null; });
+    }
+
+    @Override
+    public String toString() {
+        return "TrackedSession session=" + session + " active=" + active;
+    }
+}
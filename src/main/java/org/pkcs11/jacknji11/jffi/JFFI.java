@@ -21,12 +21,23 @@
 
 package org.pkcs11.jacknji11.jffi;
 
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.kenai.jffi.MemoryIO;
+
 import jnr.ffi.Address;
+import jnr.ffi.LibraryLoader;
+import jnr.ffi.LibraryOption;
+import jnr.ffi.Memory;
 import jnr.ffi.Pointer;
-import jnr.ffi.byref.NativeLongByReference;
 
+import org.pkcs11.jacknji11.C;
 import org.pkcs11.jacknji11.CKA;
 import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.CKR;
 import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS;
 import org.pkcs11.jacknji11.CK_INFO;
 import org.pkcs11.jacknji11.CK_MECHANISM_INFO;
@@ -37,438 +48,954 @@ import org.pkcs11.jacknji11.CK_TOKEN_INFO;
 import org.pkcs11.jacknji11.LongRef;
 import org.pkcs11.jacknji11.NativePointer;
 import org.pkcs11.jacknji11.NativeProvider;
+import org.pkcs11.jacknji11.NioBuf;
+import org.pkcs11.jacknji11.PreparedCKM;
 import org.pkcs11.jacknji11.ULong;
 
 /**
  * JFFI PKCS#11 Provider.  Does mapping between jacknji11 structs and JFFI
- * structs and calls through to {@link JFFINative}.
+ * structs and calls through to {@link JFFINative} which is bound to the
+ * cryptoki library with jnr-ffi.  CK_ULONG out-params use a per-thread block
+ * of direct memory, templates are leased from the per-thread
+ * {@link org.pkcs11.jacknji11.jna.TemplateArena}, a {@link PreparedCKM} is
+ * passed without copying, and the byte[] buffers of the data functions are
+ * pinned rather than copied.
+ * <p>
+ * The per-thread out-params are read as soon as the native call returns,
+ * so a CK_NOTIFY callback must not call back into the provider on the same
+ * thread while a call is in progress.
+ *
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
 public class JFFI implements NativeProvider {
+    private static final jnr.ffi.Runtime RUNTIME = JFFIStruct.RUNTIME;
+    private static final int UL = RUNTIME.longSize();
+
+    /** per-thread CK_ULONG out-params */
+    private static final ThreadLocal<Slots> SLOTS = new ThreadLocal<Slots>() {
+        @Override
+        protected Slots initialValue() {
+            return new Slots();
+        }
+    };
+
+    /**
+     * Direct memory for the CK_ULONG out-params of a single call, at most
+     * 2 are used (C_GenerateKeyPair).
+     */
+    static final class Slots {
+        private final Pointer[] slot = new Pointer[2];
+
+        Slots() {
+            Pointer memory = Memory.allocateDirect(RUNTIME, 2 * UL, true);
+            slot[0] = memory.slice(0, UL);
+            slot[1] = memory.slice(UL, UL);
+        }
+
+        /** @return slot i after setting it to value */
+        Pointer in(int i, long value) {
+            slot[i].putNativeLong(0, value);
+            return slot[i];
+        }
+    }
+
+    private final JFFINative jffiNative;
+    /** Mutex callbacks referenced by the library until C_Finalize. */
+    private volatile JFFI_CK_C_INITIALIZE_ARGS initArgs;
+    /** Notify callbacks referenced by the library until the session is closed. */
+    private final Map<Long, Notify> notifies = new ConcurrentHashMap<Long, Notify>();
 
     {
         // set ULong size
-        ULong.ULONG_SIZE = jnr.ffi.Runtime.getSystemRuntime().longSize() == 4
-            ? ULong.ULongSize.ULONG4 : ULong.ULongSize.ULONG8;
+        ULong.ULONG_SIZE = UL == 4 ? ULong.ULongSize.ULONG4 : ULong.ULongSize.ULONG8;
+    }
+
+    public JFFI() {
+        this(C.getLibraryName());
+    }
+
+    /**
+     * @param customLibrary library name or path
+     */
+    public JFFI(String customLibrary) {
+        this(LibraryLoader.create(JFFINative.class)
+            .option(LibraryOption.IgnoreError, true)
+            .failImmediately()
+            .load(customLibrary));
+    }
+
+    /**
+     * @param jffiNative cryptoki library already loaded by jnr-ffi
+     */
+    public JFFI(JFFINative jffiNative) {
+        this.jffiNative = jffiNative;
     }
 
     public long C_Initialize(CK_C_INITIALIZE_ARGS pInitArgs) {
-        return JFFINative.C_Initialize(new JFFI_CK_C_INITIALIZE_ARGS(pInitArgs));
+        JFFI_CK_C_INITIALIZE_ARGS jffi_pInitArgs = pInitArgs == null ? null : new JFFI_CK_C_INITIALIZE_ARGS(pInitArgs);
+        long rv = jffiNative.C_Initialize(jffi_pInitArgs);
+        if (rv == CKR.OK) {
+            initArgs = jffi_pInitArgs;
+        }
+        return rv;
     }
 
     public long C_Finalize(NativePointer pReserved) {
-        return JFFINative.C_Finalize(Address.valueOf(pReserved.getAddress()));
+        long rv = jffiNative.C_Finalize(Address.valueOf(pReserved.getAddress()));
+        if (rv == CKR.OK) {
+            notifies.clear();
+            initArgs = null;
+        }
+        return rv;
     }
 
     public long C_GetInfo(CK_INFO pInfo) {
         JFFI_CK_INFO jffi_pInfo = new JFFI_CK_INFO().readFrom(pInfo);
-        long rv = JFFINative.C_GetInfo(jffi_pInfo);
+        long rv = jffiNative.C_GetInfo(jffi_pInfo);
         jffi_pInfo.writeTo(pInfo);
         return rv;
     }
 
     public long C_GetSlotList(boolean tokenPresent, long[] pSlotList, LongRef pulCount) {
-        NativeLongByReference jffi_pulCount = NLP(pulCount.value);
-        long rv = JFFINative.C_GetSlotList(tokenPresent, pSlotList, jffi_pulCount);
-        pulCount.value = jffi_pulCount.getValue().longValue();
+        Pointer jffi_pSlotList = ulongs(pSlotList);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulCount = slots.in(0, pulCount.value);
+        long rv = jffiNative.C_GetSlotList(tokenPresent, jffi_pSlotList, jffi_pulCount);
+        pulCount.value = jffi_pulCount.getNativeLong(0);
+        if (rv == CKR.OK) {
+            read(jffi_pSlotList, pSlotList, pulCount.value);
+        }
         return rv;
     }
 
     public long C_GetSlotInfo(long slotID, CK_SLOT_INFO pInfo) {
         JFFI_CK_SLOT_INFO jffi_pInfo = new JFFI_CK_SLOT_INFO().readFrom(pInfo);
-        long rv = JFFINative.C_GetSlotInfo(slotID, jffi_pInfo);
+        long rv = jffiNative.C_GetSlotInfo(slotID, jffi_pInfo);
         jffi_pInfo.writeTo(pInfo);
         return rv;
     }
 
     public long C_GetTokenInfo(long slotID, CK_TOKEN_INFO pInfo) {
         JFFI_CK_TOKEN_INFO jffi_pInfo = new JFFI_CK_TOKEN_INFO().readFrom(pInfo);
-        long rv = JFFINative.C_GetTokenInfo(slotID, jffi_pInfo);
+        long rv = jffiNative.C_GetTokenInfo(slotID, jffi_pInfo);
         jffi_pInfo.writeTo(pInfo);
         return rv;
     }
 
     public long C_WaitForSlotEvent(long flags, LongRef pSlot, NativePointer pReserved) {
-        NativeLongByReference jffi_pSlot = NLP(pSlot.value);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pSlot = slots.in(0, pSlot.value);
         Address jffi_pReserved = Address.valueOf(pReserved.getAddress());
-        long rv = JFFINative.C_WaitForSlotEvent(flags, jffi_pSlot, jffi_pReserved);
-        pSlot.value = jffi_pSlot.getValue().longValue();
+        long rv = jffiNative.C_WaitForSlotEvent(flags, jffi_pSlot, jffi_pReserved);
+        pSlot.value = jffi_pSlot.getNativeLong(0);
         pReserved.setAddress(jffi_pReserved.address());
         return rv;
     }
 
     public long C_GetMechanismList(long slotID, long[] pMechanismList, LongRef pulCount) {
-        NativeLongByReference jffi_pulCount = NLP(pulCount.value);
-        long rv = JFFINative.C_GetMechanismList(slotID, pMechanismList, jffi_pulCount);
-        pulCount.value = jffi_pulCount.getValue().longValue();
+        Pointer jffi_pMechanismList = ulongs(pMechanismList);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulCount = slots.in(0, pulCount.value);
+        long rv = jffiNative.C_GetMechanismList(slotID, jffi_pMechanismList, jffi_pulCount);
+        pulCount.value = jffi_pulCount.getNativeLong(0);
+        if (rv == CKR.OK) {
+            read(jffi_pMechanismList, pMechanismList, pulCount.value);
+        }
         return rv;
     }
 
     public long C_GetMechanismInfo(long slotID, long type, CK_MECHANISM_INFO pInfo) {
         JFFI_CK_MECHANISM_INFO jffi_pInfo = new JFFI_CK_MECHANISM_INFO().readFrom(pInfo);
-        long rv = JFFINative.C_GetMechanismInfo(slotID, type, jffi_pInfo);
+        long rv = jffiNative.C_GetMechanismInfo(slotID, type, jffi_pInfo);
         jffi_pInfo.writeTo(pInfo);
         return rv;
     }
 
     public long C_InitToken(long slotID, byte[] pPin, long ulPinLen, byte[] pLabel32) {
-        return JFFINative.C_InitToken(slotID, pPin, ulPinLen, pLabel32);
+        return jffiNative.C_InitToken(slotID, pPin, ulPinLen, pLabel32);
     }
 
     public long C_InitPIN(long hSession, byte[] pPin, long ulPinLen) {
-        return JFFINative.C_InitPIN(hSession, pPin, ulPinLen);
+        return jffiNative.C_InitPIN(hSession, pPin, ulPinLen);
     }
 
     public long C_SetPIN(long hSession, byte[] pOldPin, long ulOldLen, byte[] pNewPin, long ulNewLen) {
-        return JFFINative.C_SetPIN(hSession, pOldPin, ulOldLen, pNewPin, ulNewLen);
+        return jffiNative.C_SetPIN(hSession, pOldPin, ulOldLen, pNewPin, ulNewLen);
     }
 
     public long C_OpenSession(long slotID, long flags, NativePointer application, final CK_NOTIFY notify, LongRef phSession) {
         Address jffi_application = Address.valueOf(application.getAddress());
-        JFFI_CK_NOTIFY jffi_notify = new JFFI_CK_NOTIFY() {
-            public long invoke(long hSession, long event, Pointer pApplication) {
-                return notify.invoke(hSession, event, new NativePointer(pApplication.address()));
-            }
-        };
-        NativeLongByReference jffi_phSession = NLP(phSession.value);
-//        long rv = JFFINative.C_OpenSession(slotID, flags, jffi_application, jffi_notify, jffi_phSession);
-long rv = JFFINative.C_OpenSession(slotID, flags, jffi_application, null, jffi_phSession);
-        application.setAddress(jffi_application.address());
-        phSession.value = jffi_phSession.getValue().longValue();
+        JFFI_CK_NOTIFY jffi_notify = null;
+        if (notify != null) {
+            jffi_notify = new JFFI_CK_NOTIFY() {
+                public long invoke(long hSession, long event, Pointer pApplication) {
+                    try {
+                        return notify.invoke(hSession, event, new NativePointer(pApplication == null ? 0 : pApplication.address()));
+                    } catch (Throwable t) {
+                        // exceptions must not propagate into native code
+                        return CKR.GENERAL_ERROR;
+                    }
+                }
+            };
+        }
+        Slots slots = SLOTS.get();
+        Pointer jffi_phSession = slots.in(0, phSession.value);
+        long rv = jffiNative.C_OpenSession(slotID, flags, jffi_application, jffi_notify, jffi_phSession);
+        phSession.value = jffi_phSession.getNativeLong(0);
+        if (jffi_notify != null && rv == CKR.OK) {
+            // notify callback must stay reachable until the session is closed
+            notifies.put(phSession.value, new Notify(slotID, jffi_notify));
+        }
         return rv;
     }
 
     public long C_CloseSession(long hSession) {
-        return JFFINative.C_CloseSession(hSession);
+        long rv = jffiNative.C_CloseSession(hSession);
+        if (rv == CKR.OK) {
+            notifies.remove(hSession);
+        }
+        return rv;
     }
 
     public long C_CloseAllSessions(long slotID) {
-        return JFFINative.C_CloseAllSessions(slotID);
+        long rv = jffiNative.C_CloseAllSessions(slotID);
+        if (rv == CKR.OK) {
+            Iterator<Notify> it = notifies.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().slotID == slotID) {
+                    it.remove();
+                }
+            }
+        }
+        return rv;
     }
 
     public long C_GetSessionInfo(long hSession, CK_SESSION_INFO pInfo) {
         JFFI_CK_SESSION_INFO jffi_pInfo = new JFFI_CK_SESSION_INFO().readFrom(pInfo);
-        long rv = JFFINative.C_GetSessionInfo(hSession, jffi_pInfo);
+        long rv = jffiNative.C_GetSessionInfo(hSession, jffi_pInfo);
         jffi_pInfo.writeTo(pInfo);
         return rv;
     }
 
     public long C_GetOperationState(long hSession, byte[] pOperationState, LongRef pulOperationStateLen) {
-        NativeLongByReference jffi_pulOperationStateLen = NLP(pulOperationStateLen.value);
-        long rv = JFFINative.C_GetOperationState(hSession, pOperationState, jffi_pulOperationStateLen);
-        pulOperationStateLen.value = jffi_pulOperationStateLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulOperationStateLen = slots.in(0, pulOperationStateLen.value);
+        long rv = jffiNative.C_GetOperationState(hSession, pOperationState, jffi_pulOperationStateLen);
+        pulOperationStateLen.value = jffi_pulOperationStateLen.getNativeLong(0);
         return rv;
     }
 
     public long C_SetOperationState(long hSession, byte[] pOperationState, long ulOperationStateLen, long hEncryptionKey,
             long hAuthenticationKey) {
-        return JFFINative.C_SetOperationState(hSession, pOperationState, ulOperationStateLen,
+        return jffiNative.C_SetOperationState(hSession, pOperationState, ulOperationStateLen,
             hEncryptionKey, hAuthenticationKey);
     }
 
     public long C_Login(long hSession, long userType, byte[] pPin, long ulPinLen) {
-        return JFFINative.C_Login(hSession, userType, pPin, ulPinLen);
+        return jffiNative.C_Login(hSession, userType, pPin, ulPinLen);
     }
 
     public long C_Logout(long hSession) {
-        return JFFINative.C_Logout(hSession);
+        return jffiNative.C_Logout(hSession);
     }
 
     public long C_CreateObject(long hSession, CKA[] pTemplate, long ulCount, LongRef phObject) {
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        NativeLongByReference jffi_phObject = NLP(phObject.value);
-        long rv = JFFINative.C_CreateObject(hSession, jffi_pTemplate, ulCount, jffi_phObject);
-        phObject.value = jffi_phObject.getValue().longValue();
-        return rv;
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+            Pointer jffi_phObject = slots.in(0, phObject.value);
+            long rv = jffiNative.C_CreateObject(hSession, jffi_pTemplate.getPointer(), ulCount, jffi_phObject);
+            phObject.value = jffi_phObject.getNativeLong(0);
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
     public long C_CopyObject(long hSession, long hObject, CKA[] pTemplate, long ulCount, LongRef phNewObject) {
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        NativeLongByReference jffi_phNewObject = NLP(phNewObject.value);
-        long rv = JFFINative.C_CopyObject(hSession, hObject, jffi_pTemplate, ulCount, jffi_phNewObject);
-        phNewObject.value = jffi_phNewObject.getValue().longValue();
-        return rv;
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+            Pointer jffi_phNewObject = slots.in(0, phNewObject.value);
+            long rv = jffiNative.C_CopyObject(hSession, hObject, jffi_pTemplate.getPointer(), ulCount, jffi_phNewObject);
+            phNewObject.value = jffi_phNewObject.getNativeLong(0);
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
     public long C_DestroyObject(long hSession, long hObject) {
-        return JFFINative.C_DestroyObject(hSession, hObject);
+        return jffiNative.C_DestroyObject(hSession, hObject);
     }
 
     public long C_GetObjectSize(long hSession, long hObject, LongRef pulSize) {
-        NativeLongByReference jffi_pulSize = NLP(pulSize.value);
-        long rv = JFFINative.C_GetObjectSize(hSession, hObject, jffi_pulSize);
-        pulSize.value = jffi_pulSize.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSize = slots.in(0, pulSize.value);
+        long rv = jffiNative.C_GetObjectSize(hSession, hObject, jffi_pulSize);
+        pulSize.value = jffi_pulSize.getNativeLong(0);
         return rv;
     }
 
     public long C_GetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        long rv = JFFINative.C_GetAttributeValue(hSession, hObject, jffi_pTemplate, ulCount);
-        Template.update(jffi_pTemplate, pTemplate);
-        return rv;
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            long rv = jffiNative.C_GetAttributeValue(hSession, hObject, jffi_pTemplate.getPointer(), ulCount);
+            jffi_pTemplate.update();
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
     public long C_SetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        long rv = JFFINative.C_SetAttributeValue(hSession, hObject, jffi_pTemplate, ulCount);
-        return rv;
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            long rv = jffiNative.C_SetAttributeValue(hSession, hObject, jffi_pTemplate.getPointer(), ulCount);
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
     public long C_FindObjectsInit(long hSession, CKA[] pTemplate, long ulCount) {
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        long rv = JFFINative.C_FindObjectsInit(hSession, jffi_pTemplate, ulCount);
-        return rv;
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            long rv = jffiNative.C_FindObjectsInit(hSession, jffi_pTemplate.getPointer(), ulCount);
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
     public long C_FindObjects(long hSession, long[] phObject, long ulMaxObjectCount, LongRef pulObjectCount) {
-        NativeLongByReference jffi_pulObjectCount = NLP(pulObjectCount.value);
-        long rv = JFFINative.C_FindObjects(hSession, phObject, ulMaxObjectCount, jffi_pulObjectCount);
-        pulObjectCount.value = jffi_pulObjectCount.getValue().longValue();
+        Pointer jffi_phObject = ulongs(phObject);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulObjectCount = slots.in(0, pulObjectCount.value);
+        long rv = jffiNative.C_FindObjects(hSession, jffi_phObject, ulMaxObjectCount, jffi_pulObjectCount);
+        pulObjectCount.value = jffi_pulObjectCount.getNativeLong(0);
+        if (rv == CKR.OK) {
+            read(jffi_phObject, phObject, pulObjectCount.value);
+        }
         return rv;
     }
 
     public long C_FindObjectsFinal(long hSession) {
-        return JFFINative.C_FindObjectsFinal(hSession);
+        return jffiNative.C_FindObjectsFinal(hSession);
     }
 
     public long C_EncryptInit(long hSession, CKM pMechanism, long hKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        return JFFINative.C_EncryptInit(hSession, jffi_pMechanism, hKey);
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        return jffiNative.C_EncryptInit(hSession, jffi_pMechanism, hKey);
     }
 
     public long C_Encrypt(long hSession, byte[] pData, long ulDataLen, byte[] pEncryptedData, LongRef pulEncryptedDataLen) {
-        NativeLongByReference jffi_pulEncryptedDataLen = NLP(pulEncryptedDataLen.value);
-        long rv = JFFINative.C_Encrypt(hSession, pData, ulDataLen, pEncryptedData, jffi_pulEncryptedDataLen);
-        pulEncryptedDataLen.value = jffi_pulEncryptedDataLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptedDataLen = slots.in(0, pulEncryptedDataLen.value);
+        long rv = jffiNative.C_Encrypt(hSession, pData, ulDataLen, pEncryptedData, jffi_pulEncryptedDataLen);
+        pulEncryptedDataLen.value = jffi_pulEncryptedDataLen.getNativeLong(0);
         return rv;
     }
 
     public long C_EncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
-        NativeLongByReference jffi_pulEncryptedPartLen = NLP(pulEncryptedPartLen.value);
-        long rv = JFFINative.C_EncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jffi_pulEncryptedPartLen);
-        pulEncryptedPartLen.value = jffi_pulEncryptedPartLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptedPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = jffiNative.C_EncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jffi_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = jffi_pulEncryptedPartLen.getNativeLong(0);
         return rv;
     }
 
     public long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
-        NativeLongByReference jffi_pulLastEncryptedPartLen = NLP(pulLastEncryptedPartLen.value);
-        long rv = JFFINative.C_EncryptFinal(hSession, pLastEncryptedPart, jffi_pulLastEncryptedPartLen);
-        pulLastEncryptedPartLen.value = jffi_pulLastEncryptedPartLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulLastEncryptedPartLen = slots.in(0, pulLastEncryptedPartLen.value);
+        long rv = jffiNative.C_EncryptFinal(hSession, pLastEncryptedPart, jffi_pulLastEncryptedPartLen);
+        pulLastEncryptedPartLen.value = jffi_pulLastEncryptedPartLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DecryptInit(long hSession, CKM pMechanism, long hKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        return JFFINative.C_DecryptInit(hSession, jffi_pMechanism, hKey);
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        return jffiNative.C_DecryptInit(hSession, jffi_pMechanism, hKey);
     }
 
     public long C_Decrypt(long hSession, byte[] pEncryptedData, long ulEncryptedDataLen, byte[] pData, LongRef pulDataLen) {
-        NativeLongByReference jffi_pulDataLen = NLP(pulDataLen.value);
-        long rv = JFFINative.C_Decrypt(hSession, pEncryptedData, ulEncryptedDataLen, pData, jffi_pulDataLen);
-        pulDataLen.value= jffi_pulDataLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = jffiNative.C_Decrypt(hSession, pEncryptedData, ulEncryptedDataLen, pData, jffi_pulDataLen);
+        pulDataLen.value= jffi_pulDataLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pData, LongRef pulDataLen) {
-        NativeLongByReference jffi_pulDataLen = NLP(pulDataLen.value);
-        long rv = JFFINative.C_DecryptUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pData, jffi_pulDataLen);
-        pulDataLen.value = jffi_pulDataLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = jffiNative.C_DecryptUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pData, jffi_pulDataLen);
+        pulDataLen.value = jffi_pulDataLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DecryptFinal(long hSession, byte[] pLastPart, LongRef pulLastPartLen) {
-        NativeLongByReference jffi_pulLastPartLen = NLP(pulLastPartLen.value);
-        long rv = JFFINative.C_DecryptFinal(hSession, pLastPart, jffi_pulLastPartLen);
-        pulLastPartLen.value = jffi_pulLastPartLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulLastPartLen = slots.in(0, pulLastPartLen.value);
+        long rv = jffiNative.C_DecryptFinal(hSession, pLastPart, jffi_pulLastPartLen);
+        pulLastPartLen.value = jffi_pulLastPartLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DigestInit(long hSession, CKM pMechanism) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        return JFFINative.C_DigestInit(hSession, jffi_pMechanism);
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        return jffiNative.C_DigestInit(hSession, jffi_pMechanism);
     }
 
     public long C_Digest(long hSession, byte[] pData, long ulDataLen, byte[] pDigest, LongRef pulDigestLen) {
-        NativeLongByReference jffi_pulDigestLen = NLP(pulDigestLen.value);
-        long rv = JFFINative.C_Digest(hSession, pData, ulDataLen, pDigest, jffi_pulDigestLen);
-        pulDigestLen.value = jffi_pulDigestLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = jffiNative.C_Digest(hSession, pData, ulDataLen, pDigest, jffi_pulDigestLen);
+        pulDigestLen.value = jffi_pulDigestLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DigestUpdate(long hSession, byte[] pPart, long ulPartLen) {
-        return JFFINative.C_DigestUpdate(hSession, pPart, ulPartLen);
+        return jffiNative.C_DigestUpdate(hSession, pPart, ulPartLen);
     }
 
     public long C_DigestKey(long hSession, long hKey) {
-        return JFFINative.C_DigestKey(hSession, hKey);
+        return jffiNative.C_DigestKey(hSession, hKey);
     }
 
     public long C_DigestFinal(long hSession, byte[] pDigest, LongRef pulDigestLen) {
-        NativeLongByReference jffi_pulDigestLen = NLP(pulDigestLen.value);
-        long rv = JFFINative.C_DigestFinal(hSession, pDigest, jffi_pulDigestLen);
-        pulDigestLen.value = jffi_pulDigestLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = jffiNative.C_DigestFinal(hSession, pDigest, jffi_pulDigestLen);
+        pulDigestLen.value = jffi_pulDigestLen.getNativeLong(0);
         return rv;
     }
 
     public long C_SignInit(long hSession, CKM pMechanism, long hKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        return JFFINative.C_SignInit(hSession, jffi_pMechanism, hKey);
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        return jffiNative.C_SignInit(hSession, jffi_pMechanism, hKey);
     }
 
     public long C_Sign(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, LongRef pulSignatureLen) {
-        NativeLongByReference jffi_pulSignatureLen = NLP(pulSignatureLen.value);
-        long rv = JFFINative.C_Sign(hSession, pData, ulDataLen, pSignature, jffi_pulSignatureLen);
-        pulSignatureLen.value = jffi_pulSignatureLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = jffiNative.C_Sign(hSession, pData, ulDataLen, pSignature, jffi_pulSignatureLen);
+        pulSignatureLen.value = jffi_pulSignatureLen.getNativeLong(0);
         return rv;
     }
 
     public long C_SignUpdate(long hSession, byte[] pPart, long ulPartLen) {
-        return JFFINative.C_SignUpdate(hSession, pPart, ulPartLen);
+        return jffiNative.C_SignUpdate(hSession, pPart, ulPartLen);
     }
 
     public long C_SignFinal(long hSession, byte[] pSignature, LongRef pulSignatureLen) {
-        NativeLongByReference jffi_pulSignatureLen = NLP(pulSignatureLen.value);
-        long rv = JFFINative.C_SignFinal(hSession, pSignature, jffi_pulSignatureLen);
-        pulSignatureLen.value = jffi_pulSignatureLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = jffiNative.C_SignFinal(hSession, pSignature, jffi_pulSignatureLen);
+        pulSignatureLen.value = jffi_pulSignatureLen.getNativeLong(0);
         return rv;
     }
 
     public long C_SignRecoverInit(long hSession, CKM pMechanism, long hKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        return JFFINative.C_SignRecoverInit(hSession, jffi_pMechanism, hKey);
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        return jffiNative.C_SignRecoverInit(hSession, jffi_pMechanism, hKey);
     }
 
     public long C_SignRecover(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, LongRef pulSignatureLen) {
-        NativeLongByReference jffi_pulSignatureLen = NLP(pulSignatureLen.value);
-        long rv = JFFINative.C_SignRecover(hSession, pData, ulDataLen, pSignature, jffi_pulSignatureLen);
-        pulSignatureLen.value = jffi_pulSignatureLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = jffiNative.C_SignRecover(hSession, pData, ulDataLen, pSignature, jffi_pulSignatureLen);
+        pulSignatureLen.value = jffi_pulSignatureLen.getNativeLong(0);
         return rv;
     }
 
     public long C_VerifyInit(long hSession, CKM pMechanism, long hKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        return JFFINative.C_VerifyInit(hSession, jffi_pMechanism, hKey);
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        return jffiNative.C_VerifyInit(hSession, jffi_pMechanism, hKey);
     }
 
     public long C_Verify(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, long ulSignatureLen) {
-        return JFFINative.C_Verify(hSession, pData, ulDataLen, pSignature, ulSignatureLen);
+        return jffiNative.C_Verify(hSession, pData, ulDataLen, pSignature, ulSignatureLen);
     }
 
     public long C_VerifyUpdate(long hSession, byte[] pPart, long ulPartLen) {
-        return JFFINative.C_VerifyUpdate(hSession, pPart, ulPartLen);
+        return jffiNative.C_VerifyUpdate(hSession, pPart, ulPartLen);
     }
 
     public long C_VerifyFinal(long hSession, byte[] pSignature, long ulSignatureLen) {
-        return JFFINative.C_VerifyFinal(hSession, pSignature, ulSignatureLen);
+        return jffiNative.C_VerifyFinal(hSession, pSignature, ulSignatureLen);
     }
 
     public long C_VerifyRecoverInit(long hSession, CKM pMechanism, long hKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        return JFFINative.C_VerifyRecoverInit(hSession, jffi_pMechanism, hKey);
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        return jffiNative.C_VerifyRecoverInit(hSession, jffi_pMechanism, hKey);
     }
 
     public long C_VerifyRecover(long hSession, byte[] pSignature, long ulSignatureLen, byte[] pData, LongRef pulDataLen) {
-        NativeLongByReference jffi_pulDataLen = NLP(pulDataLen.value);
-        long rv = JFFINative.C_VerifyRecover(hSession, pSignature, ulSignatureLen, pData, jffi_pulDataLen);
-        pulDataLen.value = jffi_pulDataLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = jffiNative.C_VerifyRecover(hSession, pSignature, ulSignatureLen, pData, jffi_pulDataLen);
+        pulDataLen.value = jffi_pulDataLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DigestEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
-        NativeLongByReference jffi_pulEncryptedPartLen = NLP(pulEncryptedPartLen.value);
-        long rv = JFFINative.C_DigestEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jffi_pulEncryptedPartLen);
-        pulEncryptedPartLen.value = jffi_pulEncryptedPartLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptedPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = jffiNative.C_DigestEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jffi_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = jffi_pulEncryptedPartLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DecryptDigestUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, LongRef pulPartLen) {
-        NativeLongByReference jffi_pulPartLen = NLP(pulPartLen.value);
-        long rv = JFFINative.C_DecryptDigestUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, jffi_pulPartLen);
-        pulPartLen.value = jffi_pulPartLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulPartLen = slots.in(0, pulPartLen.value);
+        long rv = jffiNative.C_DecryptDigestUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, jffi_pulPartLen);
+        pulPartLen.value = jffi_pulPartLen.getNativeLong(0);
         return rv;
     }
 
     public long C_SignEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
-        NativeLongByReference jffi_pulEncryptPartLen = NLP(pulEncryptedPartLen.value);
-        long rv = JFFINative.C_SignEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jffi_pulEncryptPartLen);
-        pulEncryptedPartLen.value = jffi_pulEncryptPartLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = jffiNative.C_SignEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jffi_pulEncryptPartLen);
+        pulEncryptedPartLen.value = jffi_pulEncryptPartLen.getNativeLong(0);
         return rv;
     }
 
     public long C_DecryptVerifyUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, LongRef pulPartLen) {
-        NativeLongByReference jffi_pulPartLen = NLP(pulPartLen.value);
-        long rv = JFFINative.C_DecryptVerifyUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, jffi_pulPartLen);
-        pulPartLen.value = jffi_pulPartLen.getValue().longValue();
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulPartLen = slots.in(0, pulPartLen.value);
+        long rv = jffiNative.C_DecryptVerifyUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, jffi_pulPartLen);
+        pulPartLen.value = jffi_pulPartLen.getNativeLong(0);
         return rv;
     }
 
     public long C_GenerateKey(long hSession, CKM pMechanism, CKA[] pTemplate, long ulCount, LongRef phKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        NativeLongByReference jffi_phKey = NLP(phKey.value);
-        long rv = JFFINative.C_GenerateKey(hSession, jffi_pMechanism, jffi_pTemplate, ulCount, jffi_phKey);
-        phKey.value = jffi_phKey.getValue().longValue();
-        return rv;
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+            Pointer jffi_phKey = slots.in(0, phKey.value);
+            long rv = jffiNative.C_GenerateKey(hSession, jffi_pMechanism, jffi_pTemplate.getPointer(), ulCount, jffi_phKey);
+            phKey.value = jffi_phKey.getNativeLong(0);
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
 
     public long C_GenerateKeyPair(long hSession, CKM pMechanism, CKA[] pPublicKeyTemplate, long ulPublicKeyAttributeCount,
             CKA[] pPrivateKeyTemplate, long ulPrivateKeyAttributeCount, LongRef phPublicKey, LongRef phPrivateKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        Pointer jffi_pPublicKeyTemplate = Template.templ(pPublicKeyTemplate);
-        Pointer jffi_pPrivateKeyTemplate = Template.templ(pPrivateKeyTemplate);
-        NativeLongByReference jffi_phPublicKey = NLP(phPublicKey.value);
-        NativeLongByReference jffi_phPrivateKey = NLP(phPrivateKey.value);
-        long rv = JFFINative.C_GenerateKeyPair(hSession, jffi_pMechanism, jffi_pPublicKeyTemplate, ulPublicKeyAttributeCount,
-            jffi_pPrivateKeyTemplate, ulPrivateKeyAttributeCount, jffi_phPublicKey, jffi_phPrivateKey);
-        phPublicKey.value = jffi_phPublicKey.getValue().longValue();
-        phPrivateKey.value = jffi_phPrivateKey.getValue().longValue();
-        return rv;
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        Template jffi_pPublicKeyTemplate = new Template(pPublicKeyTemplate);
+        try {
+            Template jffi_pPrivateKeyTemplate = new Template(pPrivateKeyTemplate);
+            try {
+                Slots slots = SLOTS.get();
+                Pointer jffi_phPublicKey = slots.in(0, phPublicKey.value);
+                Pointer jffi_phPrivateKey = slots.in(1, phPrivateKey.value);
+                long rv = jffiNative.C_GenerateKeyPair(hSession, jffi_pMechanism, jffi_pPublicKeyTemplate.getPointer(), ulPublicKeyAttributeCount,
+                    jffi_pPrivateKeyTemplate.getPointer(), ulPrivateKeyAttributeCount, jffi_phPublicKey, jffi_phPrivateKey);
+                phPublicKey.value = jffi_phPublicKey.getNativeLong(0);
+                phPrivateKey.value = jffi_phPrivateKey.getNativeLong(0);
+                return rv;
+            } finally {
+                jffi_pPrivateKeyTemplate.release();
+            }
+        } finally {
+            jffi_pPublicKeyTemplate.release();
+        }
     }
 
     public long C_WrapKey(long hSession, CKM pMechanism, long hWrappingKey, long hKey, byte[] pWrappedKey, LongRef pulWrappedKeyLen) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        NativeLongByReference jffi_pulWrappedKeyLen = NLP(pulWrappedKeyLen.value);
-        long rv = JFFINative.C_WrapKey(hSession, jffi_pMechanism, hWrappingKey, hKey, pWrappedKey, jffi_pulWrappedKeyLen);
-        pulWrappedKeyLen.value = jffi_pulWrappedKeyLen.getValue().longValue();
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulWrappedKeyLen = slots.in(0, pulWrappedKeyLen.value);
+        long rv = jffiNative.C_WrapKey(hSession, jffi_pMechanism, hWrappingKey, hKey, pWrappedKey, jffi_pulWrappedKeyLen);
+        pulWrappedKeyLen.value = jffi_pulWrappedKeyLen.getNativeLong(0);
         return rv;
     }
 
     public long C_UnwrapKey(long hSession, CKM pMechanism, long hUnwrappingKey, byte[] pWrappedKey, long ulWrappedKeyLen,
             CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        NativeLongByReference jffi_phKey = NLP(phKey.value);
-        long rv = JFFINative.C_UnwrapKey(hSession, jffi_pMechanism, hUnwrappingKey, pWrappedKey, ulWrappedKeyLen,
-            jffi_pTemplate, ulAttributeCount, jffi_phKey);
-        phKey.value = jffi_phKey.getValue().longValue();
-        return rv;
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+            Pointer jffi_phKey = slots.in(0, phKey.value);
+            long rv = jffiNative.C_UnwrapKey(hSession, jffi_pMechanism, hUnwrappingKey, pWrappedKey, ulWrappedKeyLen,
+                jffi_pTemplate.getPointer(), ulAttributeCount, jffi_phKey);
+            phKey.value = jffi_phKey.getNativeLong(0);
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
     public long C_DeriveKey(long hSession, CKM pMechanism, long hBaseKey, CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
-        JFFI_CKM jffi_pMechanism = new JFFI_CKM().readFrom(pMechanism);
-        Pointer jffi_pTemplate = Template.templ(pTemplate);
-        NativeLongByReference jffi_phKey = NLP(phKey.value);
-        long rv = JFFINative.C_DeriveKey(hSession, jffi_pMechanism, hBaseKey, jffi_pTemplate, ulAttributeCount, jffi_phKey);
-        phKey.value = jffi_phKey.getValue().longValue();
-        return rv;
+        JFFI_CKM jffi_pMechanism = JFFI_CKM.of(pMechanism);
+        Template jffi_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+            Pointer jffi_phKey = slots.in(0, phKey.value);
+            long rv = jffiNative.C_DeriveKey(hSession, jffi_pMechanism, hBaseKey, jffi_pTemplate.getPointer(), ulAttributeCount, jffi_phKey);
+            phKey.value = jffi_phKey.getNativeLong(0);
+            return rv;
+        } finally {
+            jffi_pTemplate.release();
+        }
     }
 
     public long C_SeedRandom(long hSession, byte[] pSeed, long ulSeedLen) {
-        return JFFINative.C_SeedRandom(hSession, pSeed, ulSeedLen);
+        return jffiNative.C_SeedRandom(hSession, pSeed, ulSeedLen);
     }
 
     public long C_GenerateRandom(long hSession, byte[] pRandomData, long ulRandomLen) {
-        return JFFINative.C_GenerateRandom(hSession, pRandomData, ulRandomLen);
+        return jffiNative.C_GenerateRandom(hSession, pRandomData, ulRandomLen);
     }
 
     public long C_GetFunctionStatus(long hSession) {
-        return JFFINative.C_GetFunctionStatus(hSession);
+        return jffiNative.C_GetFunctionStatus(hSession);
     }
 
     public long C_CancelFunction(long hSession) {
-        return JFFINative.C_CancelFunction(hSession);
+        return jffiNative.C_CancelFunction(hSession);
     }
 
-    private static NativeLongByReference NLP(long l) { return new NativeLongByReference(l); }
+    public long C_Encrypt(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pEncryptedData, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, pulEncryptedDataLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptedDataLen = slots.in(0, pulEncryptedDataLen.value);
+        long rv = jffiNative.C_Encrypt(hSession, addr(pData), ulDataLen, addr(pEncryptedData), jffi_pulEncryptedDataLen);
+        pulEncryptedDataLen.value = jffi_pulEncryptedDataLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_EncryptUpdate(long hSession, ByteBuffer pPart, long ulPartLen, ByteBuffer pEncryptedPart, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, pulEncryptedPartLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptedPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = jffiNative.C_EncryptUpdate(hSession, addr(pPart), ulPartLen, addr(pEncryptedPart), jffi_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = jffi_pulEncryptedPartLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_EncryptFinal(long hSession, ByteBuffer pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        NioBuf.clamp(pLastEncryptedPart, pulLastEncryptedPartLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulLastEncryptedPartLen = slots.in(0, pulLastEncryptedPartLen.value);
+        long rv = jffiNative.C_EncryptFinal(hSession, addr(pLastEncryptedPart), jffi_pulLastEncryptedPartLen);
+        pulLastEncryptedPartLen.value = jffi_pulLastEncryptedPartLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Decrypt(long hSession, ByteBuffer pEncryptedData, long ulEncryptedDataLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, ulEncryptedDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = jffiNative.C_Decrypt(hSession, addr(pEncryptedData), ulEncryptedDataLen, addr(pData), jffi_pulDataLen);
+        pulDataLen.value = jffi_pulDataLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_DecryptUpdate(long hSession, ByteBuffer pEncryptedPart, long ulEncryptedPartLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, ulEncryptedPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = jffiNative.C_DecryptUpdate(hSession, addr(pEncryptedPart), ulEncryptedPartLen, addr(pData), jffi_pulDataLen);
+        pulDataLen.value = jffi_pulDataLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_DecryptFinal(long hSession, ByteBuffer pLastPart, LongRef pulLastPartLen) {
+        NioBuf.clamp(pLastPart, pulLastPartLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulLastPartLen = slots.in(0, pulLastPartLen.value);
+        long rv = jffiNative.C_DecryptFinal(hSession, addr(pLastPart), jffi_pulLastPartLen);
+        pulLastPartLen.value = jffi_pulLastPartLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Digest(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pDigest, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, pulDigestLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = jffiNative.C_Digest(hSession, addr(pData), ulDataLen, addr(pDigest), jffi_pulDigestLen);
+        pulDigestLen.value = jffi_pulDigestLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_DigestUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_DigestUpdate(hSession, addr(pPart), ulPartLen);
+    }
+
+    public long C_DigestFinal(long hSession, ByteBuffer pDigest, LongRef pulDigestLen) {
+        NioBuf.clamp(pDigest, pulDigestLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = jffiNative.C_DigestFinal(hSession, addr(pDigest), jffi_pulDigestLen);
+        pulDigestLen.value = jffi_pulDigestLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Sign(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = jffiNative.C_Sign(hSession, addr(pData), ulDataLen, addr(pSignature), jffi_pulSignatureLen);
+        pulSignatureLen.value = jffi_pulSignatureLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_SignUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_SignUpdate(hSession, addr(pPart), ulPartLen);
+    }
+
+    public long C_SignFinal(long hSession, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = jffiNative.C_SignFinal(hSession, addr(pSignature), jffi_pulSignatureLen);
+        pulSignatureLen.value = jffi_pulSignatureLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Verify(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen) || !NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_Verify(hSession, addr(pData), ulDataLen, addr(pSignature), ulSignatureLen);
+    }
+
+    public long C_VerifyUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_VerifyUpdate(hSession, addr(pPart), ulPartLen);
+    }
+
+    public long C_VerifyFinal(long hSession, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_VerifyFinal(hSession, addr(pSignature), ulSignatureLen);
+    }
+
+    public long C_Encrypt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pEncryptedData, int encryptedDataOff, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pEncryptedData, encryptedDataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, encryptedDataOff, pulEncryptedDataLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptedDataLen = slots.in(0, pulEncryptedDataLen.value);
+        long rv = jffiNative.C_Encrypt(hSession, wrap(pData, dataOff), ulDataLen, wrap(pEncryptedData, encryptedDataOff), jffi_pulEncryptedDataLen);
+        pulEncryptedDataLen.value = jffi_pulEncryptedDataLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_EncryptUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen, byte[] pEncryptedPart, int encryptedPartOff, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen) || !NioBuf.fits(pEncryptedPart, encryptedPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, encryptedPartOff, pulEncryptedPartLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulEncryptedPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = jffiNative.C_EncryptUpdate(hSession, wrap(pPart, partOff), ulPartLen, wrap(pEncryptedPart, encryptedPartOff), jffi_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = jffi_pulEncryptedPartLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, int lastEncryptedPartOff, LongRef pulLastEncryptedPartLen) {
+        if (!NioBuf.fits(pLastEncryptedPart, lastEncryptedPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pLastEncryptedPart, lastEncryptedPartOff, pulLastEncryptedPartLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulLastEncryptedPartLen = slots.in(0, pulLastEncryptedPartLen.value);
+        long rv = jffiNative.C_EncryptFinal(hSession, wrap(pLastEncryptedPart, lastEncryptedPartOff), jffi_pulLastEncryptedPartLen);
+        pulLastEncryptedPartLen.value = jffi_pulLastEncryptedPartLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Decrypt(long hSession, byte[] pEncryptedData, int encryptedDataOff, long ulEncryptedDataLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, encryptedDataOff, ulEncryptedDataLen) || !NioBuf.fits(pData, dataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, dataOff, pulDataLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = jffiNative.C_Decrypt(hSession, wrap(pEncryptedData, encryptedDataOff), ulEncryptedDataLen, wrap(pData, dataOff), jffi_pulDataLen);
+        pulDataLen.value = jffi_pulDataLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, int encryptedPartOff, long ulEncryptedPartLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, encryptedPartOff, ulEncryptedPartLen) || !NioBuf.fits(pData, dataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, dataOff, pulDataLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = jffiNative.C_DecryptUpdate(hSession, wrap(pEncryptedPart, encryptedPartOff), ulEncryptedPartLen, wrap(pData, dataOff), jffi_pulDataLen);
+        pulDataLen.value = jffi_pulDataLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_DecryptFinal(long hSession, byte[] pLastPart, int lastPartOff, LongRef pulLastPartLen) {
+        if (!NioBuf.fits(pLastPart, lastPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pLastPart, lastPartOff, pulLastPartLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulLastPartLen = slots.in(0, pulLastPartLen.value);
+        long rv = jffiNative.C_DecryptFinal(hSession, wrap(pLastPart, lastPartOff), jffi_pulLastPartLen);
+        pulLastPartLen.value = jffi_pulLastPartLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Digest(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pDigest, digestOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, digestOff, pulDigestLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = jffiNative.C_Digest(hSession, wrap(pData, dataOff), ulDataLen, wrap(pDigest, digestOff), jffi_pulDigestLen);
+        pulDigestLen.value = jffi_pulDigestLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_DigestUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_DigestUpdate(hSession, wrap(pPart, partOff), ulPartLen);
+    }
+
+    public long C_DigestFinal(long hSession, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pDigest, digestOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, digestOff, pulDigestLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = jffiNative.C_DigestFinal(hSession, wrap(pDigest, digestOff), jffi_pulDigestLen);
+        pulDigestLen.value = jffi_pulDigestLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Sign(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pSignature, signatureOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, signatureOff, pulSignatureLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = jffiNative.C_Sign(hSession, wrap(pData, dataOff), ulDataLen, wrap(pSignature, signatureOff), jffi_pulSignatureLen);
+        pulSignatureLen.value = jffi_pulSignatureLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_SignUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_SignUpdate(hSession, wrap(pPart, partOff), ulPartLen);
+    }
+
+    public long C_SignFinal(long hSession, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pSignature, signatureOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, signatureOff, pulSignatureLen);
+        Slots slots = SLOTS.get();
+        Pointer jffi_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = jffiNative.C_SignFinal(hSession, wrap(pSignature, signatureOff), jffi_pulSignatureLen);
+        pulSignatureLen.value = jffi_pulSignatureLen.getNativeLong(0);
+        return rv;
+    }
+
+    public long C_Verify(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pSignature, signatureOff, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_Verify(hSession, wrap(pData, dataOff), ulDataLen, wrap(pSignature, signatureOff), ulSignatureLen);
+    }
+
+    public long C_VerifyUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_VerifyUpdate(hSession, wrap(pPart, partOff), ulPartLen);
+    }
+
+    public long C_VerifyFinal(long hSession, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, signatureOff, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jffiNative.C_VerifyFinal(hSession, wrap(pSignature, signatureOff), ulSignatureLen);
+    }
+
+    private static final class Notify {
+        final long slotID;
+        final JFFI_CK_NOTIFY callback;
+
+        Notify(long slotID, JFFI_CK_NOTIFY callback) {
+            this.slotID = slotID;
+            this.callback = callback;
+        }
+    }
+
+    /** @return direct memory for a CK_ULONG[] the same length as array, or null */
+    private static Pointer ulongs(long[] array) {
+        return array == null ? null : Memory.allocateDirect(RUNTIME, Math.max(1, array.length) * UL);
+    }
+
+    /** copies count CK_ULONG values from p into array */
+    private static void read(Pointer p, long[] array, long count) {
+        if (p == null) {
+            return;
+        }
+        int n = (int) Math.min(count, array.length);
+        for (int i = 0; i < n; i++) {
+            array[i] = p.getNativeLong(i * UL);
+        }
+    }
+
+    private static Address addr(ByteBuffer buf) {
+        if (buf == null) {
+            return Address.valueOf(0);
+        }
+        if (!buf.isDirect()) {
+            throw new IllegalArgumentException("ByteBuffer must be direct");
+        }
+        return Address.valueOf(MemoryIO.getInstance().getDirectBufferAddress(buf) + buf.position());
+    }
+    private static ByteBuffer wrap(byte[] buf, int off) { return buf == null ? null : ByteBuffer.wrap(buf, off, buf.length - off); }
 }
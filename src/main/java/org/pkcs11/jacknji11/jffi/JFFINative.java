@@ -21,87 +21,123 @@
 
 package org.pkcs11.jacknji11.jffi;
 
+import java.nio.ByteBuffer;
+
 import jnr.ffi.Address;
-import jnr.ffi.Library;
 import jnr.ffi.Pointer;
+import jnr.ffi.annotations.Direct;
 import jnr.ffi.annotations.In;
 import jnr.ffi.annotations.Out;
-import jnr.ffi.byref.NativeLongByReference;
+import jnr.ffi.annotations.Pinned;
 
 /**
- * JFFI Native class.
+ * JFFI Native interface.  Loaded by {@link JFFI} with jnr-ffi's LibraryLoader.
+ * CK_ULONG is mapped to java long (C long), CK_ULONG outputs and arrays are
+ * passed as direct {@link Pointer}s so that no boxing or copying is required,
+ * and the byte[] buffers of the data functions are pinned rather than copied.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFINative {
-    static {
-        Library.loadLibrary(JFFINative.class, "cryptoki");
-    }
+public interface JFFINative {
+
+    long C_Initialize(@In @Direct JFFI_CK_C_INITIALIZE_ARGS pInitArgs);
+    long C_Finalize(@In Address pReserved);
+    long C_GetInfo(@Out @Direct JFFI_CK_INFO pInfo);
+    long C_GetSlotList(@In boolean tokenPresent, @Out Pointer pSlotList, @In @Out Pointer pulCount);
+    long C_GetSlotInfo(@In long slotID, @Out @Direct JFFI_CK_SLOT_INFO pInfo);
+    long C_GetTokenInfo(@In long slotID, @Out @Direct JFFI_CK_TOKEN_INFO pInfo);
+    long C_WaitForSlotEvent(@In long flags, @In @Out Pointer pSlot, @In Address pReserved);
+    long C_GetMechanismList(@In long slotID, @Out Pointer pMechanismList, @In @Out Pointer pulCount);
+    long C_GetMechanismInfo(@In long slotID, @In long type, @Out @Direct JFFI_CK_MECHANISM_INFO pInfo);
+    long C_InitToken(@In long slotID, @In byte[] pPin, @In long ulPinLen, @In byte[] pLabel32);
+    long C_InitPIN(@In long hSession, @In byte[] pPin, @In long ulPinLen);
+    long C_SetPIN(@In long hSession, @In byte[] pOldPin, @In long ulOldLen, @In byte[] pNewPin, @In long ulNewLen);
+    long C_OpenSession(@In long slotID, @In long flags, @In Address application, @In JFFI_CK_NOTIFY notify, @In @Out Pointer phSession);
+    long C_CloseSession(@In long hSession);
+    long C_CloseAllSessions(@In long slotID);
+    long C_GetSessionInfo(@In long hSession, @Out @Direct JFFI_CK_SESSION_INFO pInfo);
+    long C_GetOperationState(@In long hSession, @Out byte[] pOperationState, @In @Out Pointer pulOperationStateLen);
+    long C_SetOperationState(@In long hSession, @In byte[] pOperationState, @In long ulOperationStateLen, @In long hEncryptionKey, @In long hAuthenticationKey);
+    long C_Login(@In long hSession, @In long userType, @In byte[] pPin, @In long ulPinLen);
+    long C_Logout(@In long hSession);
+    long C_CreateObject(@In long hSession, @In Pointer pTemplate, @In long ulCount, @In @Out Pointer phObject);
+    long C_CopyObject(@In long hSession, @In long hObject, @In Pointer pTemplate, @In long ulCount, @In @Out Pointer phNewObject);
+    long C_DestroyObject(@In long hSession, @In long hObject);
+    long C_GetObjectSize(@In long hSession, @In long hObject, @In @Out Pointer pulSize);
+    long C_GetAttributeValue(@In long hSession, @In long hObject, @In @Out Pointer pTemplate, @In long ulCount);
+    long C_SetAttributeValue(@In long hSession, @In long hObject, @In Pointer pTemplate, @In long ulCount);
+    long C_FindObjectsInit(@In long hSession, @In Pointer pTemplate, @In long ulCount);
+    long C_FindObjects(@In long hSession, @Out Pointer phObject, @In long ulMaxObjectCount, @In @Out Pointer pulObjectCount);
+    long C_FindObjectsFinal(@In long hSession);
+    long C_EncryptInit(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hKey);
+    long C_Encrypt(@In long hSession, @In @Pinned byte[] pData, @In long ulDataLen, @Out @Pinned byte[] pEncryptedData, @In @Out Pointer pulEncryptedDataLen);
+    long C_EncryptUpdate(@In long hSession, @In @Pinned byte[] pPart, @In long ulPartLen, @Out @Pinned byte[] pEncryptedPart, @In @Out Pointer pulEncryptedPartLen);
+    long C_EncryptFinal(@In long hSession, @Out @Pinned byte[] pLastEncryptedPart, @In @Out Pointer pulLastEncryptedPartLen);
+    long C_DecryptInit(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hKey);
+    long C_Decrypt(@In long hSession, @In @Pinned byte[] pEncryptedData, @In long ulEncryptedDataLen, @Out @Pinned byte[] pData, @In @Out Pointer pulDataLen);
+    long C_DecryptUpdate(@In long hSession, @In @Pinned byte[] pEncryptedPart, @In long ulEncryptedPartLen, @Out @Pinned byte[] pData, @In @Out Pointer pulDataLen);
+    long C_DecryptFinal(@In long hSession, @Out @Pinned byte[] pLastPart, @In @Out Pointer pulLastPartLen);
+    long C_DigestInit(@In long hSession, @In @Direct JFFI_CKM pMechanism);
+    long C_Digest(@In long hSession, @In @Pinned byte[] pData, @In long ulDataLen, @Out @Pinned byte[] pDigest, @In @Out Pointer pulDigestLen);
+    long C_DigestUpdate(@In long hSession, @In @Pinned byte[] pPart, @In long ulPartLen);
+    long C_DigestKey(@In long hSession, @In long hKey);
+    long C_DigestFinal(@In long hSession, @Out @Pinned byte[] pDigest, @In @Out Pointer pulDigestLen);
+    long C_SignInit(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hKey);
+    long C_Sign(@In long hSession, @In @Pinned byte[] pData, @In long ulDataLen, @Out @Pinned byte[] pSignature, @In @Out Pointer pulSignatureLen);
+    long C_SignUpdate(@In long hSession, @In @Pinned byte[] pPart, @In long ulPartLen);
+    long C_SignFinal(@In long hSession, @Out @Pinned byte[] pSignature, @In @Out Pointer pulSignatureLen);
+    long C_SignRecoverInit(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hKey);
+    long C_SignRecover(@In long hSession, @In @Pinned byte[] pData, @In long ulDataLen, @Out @Pinned byte[] pSignature, @In @Out Pointer pulSignatureLen);
+    long C_VerifyInit(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hKey);
+    long C_Verify(@In long hSession, @In @Pinned byte[] pData, @In long ulDataLen, @In @Pinned byte[] pSignature, @In long ulSignatureLen);
+    long C_VerifyUpdate(@In long hSession, @In @Pinned byte[] pPart, @In long ulPartLen);
+    long C_VerifyFinal(@In long hSession, @In @Pinned byte[] pSignature, @In long ulSignatureLen);
+    long C_VerifyRecoverInit(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hKey);
+    long C_VerifyRecover(@In long hSession, @In @Pinned byte[] pSignature, @In long ulSignatureLen, @Out @Pinned byte[] pData, @In @Out Pointer pulDataLen);
+    long C_DigestEncryptUpdate(@In long hSession, @In @Pinned byte[] pPart, @In long ulPartLen, @Out @Pinned byte[] pEncryptedPart, @In @Out Pointer pulEncryptedPartLen);
+    long C_DecryptDigestUpdate(@In long hSession, @In @Pinned byte[] pEncryptedPart, @In long ulEncryptedPartLen, @Out @Pinned byte[] pPart, @In @Out Pointer pulPartLen);
+    long C_SignEncryptUpdate(@In long hSession, @In @Pinned byte[] pPart, @In long ulPartLen, @Out @Pinned byte[] pEncryptedPart, @In @Out Pointer pulEncryptedPartLen);
+    long C_DecryptVerifyUpdate(@In long hSession, @In @Pinned byte[] pEncryptedPart, @In long ulEncryptedPartLen, @Out @Pinned byte[] pPart, @In @Out Pointer pulPartLen);
+    long C_GenerateKey(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In Pointer pTemplate, @In long ulCount, @In @Out Pointer phKey);
+    long C_GenerateKeyPair(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In Pointer pPublicKeyTemplate, @In long ulPublicKeyAttributeCount, @In Pointer pPrivateKeyTemplate, @In long ulPrivateKeyAttributeCount, @In @Out Pointer phPublicKey, @In @Out Pointer phPrivateKey);
+    long C_WrapKey(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hWrappingKey, @In long hKey, @Out byte[] pWrappedKey, @In @Out Pointer pulWrappedKeyLen);
+    long C_UnwrapKey(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hUnwrappingKey, @In byte[] pWrappedKey, @In long ulWrappedKeyLen, @In Pointer pTemplate, @In long ulAttributeCount, @In @Out Pointer phKey);
+    long C_DeriveKey(@In long hSession, @In @Direct JFFI_CKM pMechanism, @In long hBaseKey, @In Pointer pTemplate, @In long ulAttributeCount, @In @Out Pointer phKey);
+    long C_SeedRandom(@In long hSession, @In byte[] pSeed, @In long ulSeedLen);
+    long C_GenerateRandom(@In long hSession, @Out byte[] pRandomData, @In long ulRandomLen);
+    long C_GetFunctionStatus(@In long hSession);
+    long C_CancelFunction(@In long hSession);
+
+    // data functions with direct buffer addresses
+    long C_Encrypt(@In long hSession, @In Address pData, @In long ulDataLen, @In Address pEncryptedData, @In @Out Pointer pulEncryptedDataLen);
+    long C_EncryptUpdate(@In long hSession, @In Address pPart, @In long ulPartLen, @In Address pEncryptedPart, @In @Out Pointer pulEncryptedPartLen);
+    long C_EncryptFinal(@In long hSession, @In Address pLastEncryptedPart, @In @Out Pointer pulLastEncryptedPartLen);
+    long C_Decrypt(@In long hSession, @In Address pEncryptedData, @In long ulEncryptedDataLen, @In Address pData, @In @Out Pointer pulDataLen);
+    long C_DecryptUpdate(@In long hSession, @In Address pEncryptedPart, @In long ulEncryptedPartLen, @In Address pData, @In @Out Pointer pulDataLen);
+    long C_DecryptFinal(@In long hSession, @In Address pLastPart, @In @Out Pointer pulLastPartLen);
+    long C_Digest(@In long hSession, @In Address pData, @In long ulDataLen, @In Address pDigest, @In @Out Pointer pulDigestLen);
+    long C_DigestUpdate(@In long hSession, @In Address pPart, @In long ulPartLen);
+    long C_DigestFinal(@In long hSession, @In Address pDigest, @In @Out Pointer pulDigestLen);
+    long C_Sign(@In long hSession, @In Address pData, @In long ulDataLen, @In Address pSignature, @In @Out Pointer pulSignatureLen);
+    long C_SignUpdate(@In long hSession, @In Address pPart, @In long ulPartLen);
+    long C_SignFinal(@In long hSession, @In Address pSignature, @In @Out Pointer pulSignatureLen);
+    long C_Verify(@In long hSession, @In Address pData, @In long ulDataLen, @In Address pSignature, @In long ulSignatureLen);
+    long C_VerifyUpdate(@In long hSession, @In Address pPart, @In long ulPartLen);
+    long C_VerifyFinal(@In long hSession, @In Address pSignature, @In long ulSignatureLen);
 
-    public static native int C_Initialize(@In JFFI_CK_C_INITIALIZE_ARGS pInitArgs);
-    public static native int C_Finalize(@In Address pReserved);
-    public static native int C_GetInfo(@Out JFFI_CK_INFO pInfo);
-    public static native int C_GetSlotList(@In boolean tokenPresent, @Out long[] pSlotList, @In @Out NativeLongByReference pulCount);
-    public static native int C_GetSlotInfo(@In long slotID, @Out JFFI_CK_SLOT_INFO pInfo);
-    public static native int C_GetTokenInfo(@In long slotID, @Out JFFI_CK_TOKEN_INFO pInfo);
-    public static native int C_WaitForSlotEvent(@In long flags, @Out NativeLongByReference pSlot, @In Address pReserved);
-    public static native int C_GetMechanismList(@In long slotID, @Out long[] pMechanismList, @In @Out NativeLongByReference pulCount);
-    public static native int C_GetMechanismInfo(@In long slotID, @In long type, @Out JFFI_CK_MECHANISM_INFO pInfo);
-    public static native int C_InitToken(@In long slotID, @In byte[] pPin, @In long ulPinLen, @In byte[] pLabel32);
-    public static native int C_InitPIN(@In long hSession, @In byte[] pPin, @In long ulPinLen);
-    public static native int C_SetPIN(@In long hSession, @In byte[] pOldPin, @In long ulOldLen, @In byte[] pNewPin, @In long ulNewLen);
-    public static native int C_OpenSession(@In long slotID, @In long flags, @In Address application, @In Address notify, @In @Out NativeLongByReference phSession);
-    public static native int C_CloseSession(@In long hSession);
-    public static native int C_CloseAllSessions(@In long slotID);
-    public static native int C_GetSessionInfo(@In long hSession, @Out JFFI_CK_SESSION_INFO pInfo);
-    public static native int C_GetOperationState(@In long hSession, @In byte[] pOperationState, @In @Out NativeLongByReference pulOperationStateLen);
-    public static native int C_SetOperationState(@In long hSession, @In byte[] pOperationState, @In long ulOperationStateLen, @In long hEncryptionKey, @In long hAuthenticationKey);
-    public static native int C_Login(@In long hSession, @In long userType, @In byte[] pPin, @In long ulPinLen);
-    public static native int C_Logout(@In long hSession);
-    public static native int C_CreateObject(@In long hSession, @In Pointer pTemplate, @In long ulCount, @In @Out NativeLongByReference phObject);
-    public static native int C_CopyObject(@In long hSession, long hObject, @In Pointer pTemplate, @In long ulCount, @In @Out NativeLongByReference phNewObject);
-    public static native int C_DestroyObject(@In long hSession, @In long hObject);
-    public static native int C_GetObjectSize(@In long hSession, @In long hObject, @In @Out NativeLongByReference pulSize);
-    public static native int C_GetAttributeValue(@In long hSession, @In long hObject, @In @Out Pointer pTemplate, @In long ulCount);
-    public static native int C_SetAttributeValue(@In long hSession, @In long hObject, @In Pointer pTemplate, @In long ulCount);
-    public static native int C_FindObjectsInit(@In long hSession, @In Pointer pTemplate, @In long ulCount);
-    public static native int C_FindObjects(@In long hSession, @Out long[] phObject, @In long ulMaxObjectCount, @In @Out NativeLongByReference pulObjectCount);
-    public static native int C_FindObjectsFinal(@In long hSession);
-    public static native int C_EncryptInit(@In long hSession, @In JFFI_CKM pMechanism, @In long hKey);
-    public static native int C_Encrypt(@In long hSession, @In byte[] pData, @In long ulDataLen, @In byte[] pEncryptedData, @In @Out NativeLongByReference pulEncryptedDataLen);
-    public static native int C_EncryptUpdate(@In long hSession, @In byte[] pPart, @In long ulPartLen, @Out byte[] pEncryptedPart, @In @Out NativeLongByReference pulEncryptedPartLen);
-    public static native int C_EncryptFinal(@In long hSession, @Out byte[] pLastEncryptedPart, @In @Out NativeLongByReference pulLastEncryptedPartLen);
-    public static native int C_DecryptInit(@In long hSession, @In JFFI_CKM pMechanism, @In long hKey);
-    public static native int C_Decrypt(@In long hSession, @In byte[] pEncryptedData, @In long ulEncryptedDataLen, @In byte[] pData, @In @Out NativeLongByReference pulDataLen);
-    public static native int C_DecryptUpdate(@In long hSession, @In byte[] pEncryptedPart, @In long ulEncryptedPartLen, @Out byte[] pData, @In @Out NativeLongByReference pulDataLen);
-    public static native int C_DecryptFinal(@In long hSession, @Out byte[] pLastPart, @In @Out NativeLongByReference pulLastPartLen);
-    public static native int C_DigestInit(@In long hSession, @In JFFI_CKM pMechanism);
-    public static native int C_Digest(@In long hSession, @In byte[] pData, @In long ulDataLen, @Out byte[] pDigest, @In @Out NativeLongByReference pulDigestLen);
-    public static native int C_DigestUpdate(@In long hSession, @In byte[] pPart, @In long ulPartLen);
-    public static native int C_DigestKey(@In long hSession, @In long hKey);
-    public static native int C_DigestFinal(@In long hSession, @Out byte[] pDigest, @In @Out NativeLongByReference pulDigestLen);
-    public static native int C_SignInit(@In long hSession, @In JFFI_CKM pMechanism, @In long hKey);
-    public static native int C_Sign(@In long hSession, @In byte[] pData, @In long ulDataLen, @Out byte[] pSignature, @In @Out NativeLongByReference pulSignatureLen);
-    public static native int C_SignUpdate(@In long hSession, @In byte[] pPart, @In long ulPartLen);
-    public static native int C_SignFinal(@In long hSession, @Out byte[] pSignature, @In @Out NativeLongByReference pulSignatureLen);
-    public static native int C_SignRecoverInit(@In long hSession, @In JFFI_CKM pMechanism, @In long hKey);
-    public static native int C_SignRecover(@In long hSession, @In byte[] pData, @In long ulDataLen, @Out byte[] pSignature, @In @Out NativeLongByReference pulSignatureLen);
-    public static native int C_VerifyInit(@In long hSession, @In JFFI_CKM pMechanism, @In long hKey);
-    public static native int C_Verify(@In long hSession, @In byte[] pData, @In long ulDataLen, @In byte[] pSignature, @In long ulSignatureLen);
-    public static native int C_VerifyUpdate(@In long hSession, @In byte[] pPart, @In long ulPartLen);
-    public static native int C_VerifyFinal(@In long hSession, @In byte[] pSignature, @In long ulSignatureLen);
-    public static native int C_VerifyRecoverInit(@In long hSession, @In JFFI_CKM pMechanism, @In long hKey);
-    public static native int C_VerifyRecover(@In long hSession, @In byte[] pSignature, @In long ulSignatureLen, @In byte[] pData, @In @Out NativeLongByReference pulDataLen);
-    public static native int C_DigestEncryptUpdate(@In long hSession, @In byte[] pPart, @In long ulPartLen, @Out byte[] pEncryptedPart, @In @Out NativeLongByReference pulEncryptedPartLen);
-    public static native int C_DecryptDigestUpdate(@In long hSession, @In byte[] pEncryptedPart, @In long ulEncryptedPartLen, @Out byte[] pPart, @In @Out NativeLongByReference pulPartLen);
-    public static native int C_SignEncryptUpdate(@In long hSession, @In byte[] pPart, @In long ulPartLen, @Out byte[] pEncryptedPart, @In @Out NativeLongByReference pulEncryptedPartLen);
-    public static native int C_DecryptVerifyUpdate(@In long hSession, @In byte[] pEncryptedPart, @In long ulEncryptedPartLen, @Out byte[] pPart, @In @Out NativeLongByReference pulPartLen);
-    public static native int C_GenerateKey(@In long hSession, @In JFFI_CKM pMechanism, @In Pointer pTemplate, @In long ulCount, @Out NativeLongByReference phKey);
-    public static native int C_GenerateKeyPair(@In long hSession, @In JFFI_CKM pMechanism, @In Pointer pPublicKeyTemplate, @In long ulPublicKeyAttributeCount, @In Pointer pPrivateKeyTemplate, @In long ulPrivateKeyAttributeCount, @Out NativeLongByReference phPublicKey, @Out NativeLongByReference phPrivateKey);
-    public static native int C_WrapKey(@In long hSession, @In JFFI_CKM pMechanism, @In long hWrappingKey, @In long hKey, @Out byte[] pWrappedKey, @In @Out NativeLongByReference pulWrappedKeyLen);
-    public static native int C_UnwrapKey(@In long hSession, @In JFFI_CKM pMechanism, @In long hUnwrappingKey, @In byte[] pWrappedKey, @In long ulWrappedKeyLen, @In Pointer pTemplate, @In long ulAttributeCount, @Out NativeLongByReference phKey);
-    public static native int C_DeriveKey(@In long hSession, @In JFFI_CKM pMechanism, @In long hBaseKey, @In Pointer pTemplate, @In long ulAttributeCount, @Out NativeLongByReference phKey);
-    public static native int C_SeedRandom(@In long hSession, @In byte[] pSeed, @In long ulSeedLen);
-    public static native int C_GenerateRandom(@In long hSession, @In byte[] pRandomData, @In long ulRandomLen);
-    public static native int C_GetFunctionStatus(@In long hSession);
-    public static native int C_CancelFunction(@In long hSession);
+    // data functions with heap buffers, array offset is the buffer position
+    long C_Encrypt(@In long hSession, @In @Pinned ByteBuffer pData, @In long ulDataLen, @Out @Pinned ByteBuffer pEncryptedData, @In @Out Pointer pulEncryptedDataLen);
+    long C_EncryptUpdate(@In long hSession, @In @Pinned ByteBuffer pPart, @In long ulPartLen, @Out @Pinned ByteBuffer pEncryptedPart, @In @Out Pointer pulEncryptedPartLen);
+    long C_EncryptFinal(@In long hSession, @Out @Pinned ByteBuffer pLastEncryptedPart, @In @Out Pointer pulLastEncryptedPartLen);
+    long C_Decrypt(@In long hSession, @In @Pinned ByteBuffer pEncryptedData, @In long ulEncryptedDataLen, @Out @Pinned ByteBuffer pData, @In @Out Pointer pulDataLen);
+    long C_DecryptUpdate(@In long hSession, @In @Pinned ByteBuffer pEncryptedPart, @In long ulEncryptedPartLen, @Out @Pinned ByteBuffer pData, @In @Out Pointer pulDataLen);
+    long C_DecryptFinal(@In long hSession, @Out @Pinned ByteBuffer pLastPart, @In @Out Pointer pulLastPartLen);
+    long C_Digest(@In long hSession, @In @Pinned ByteBuffer pData, @In long ulDataLen, @Out @Pinned ByteBuffer pDigest, @In @Out Pointer pulDigestLen);
+    long C_DigestUpdate(@In long hSession, @In @Pinned ByteBuffer pPart, @In long ulPartLen);
+    long C_DigestFinal(@In long hSession, @Out @Pinned ByteBuffer pDigest, @In @Out Pointer pulDigestLen);
+    long C_Sign(@In long hSession, @In @Pinned ByteBuffer pData, @In long ulDataLen, @Out @Pinned ByteBuffer pSignature, @In @Out Pointer pulSignatureLen);
+    long C_SignUpdate(@In long hSession, @In @Pinned ByteBuffer pPart, @In long ulPartLen);
+    long C_SignFinal(@In long hSession, @Out @Pinned ByteBuffer pSignature, @In @Out Pointer pulSignatureLen);
+    long C_Verify(@In long hSession, @In @Pinned ByteBuffer pData, @In long ulDataLen, @In @Pinned ByteBuffer pSignature, @In long ulSignatureLen);
+    long C_VerifyUpdate(@In long hSession, @In @Pinned ByteBuffer pPart, @In long ulPartLen);
+    long C_VerifyFinal(@In long hSession, @In @Pinned ByteBuffer pSignature, @In long ulSignatureLen);
 }
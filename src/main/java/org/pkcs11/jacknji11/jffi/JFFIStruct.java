@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.pkcs11.jacknji11.jffi;
+
+import jnr.ffi.Runtime;
+import jnr.ffi.Struct;
+
+/**
+ * Base for JFFI cryptoki structs.  Cryptoki structs are packed to 1 byte
+ * on Windows and use natural alignment elsewhere.  Structs should be passed
+ * to {@link JFFINative} as {@link jnr.ffi.annotations.Direct} parameters so
+ * that they are written straight into native memory rather than copied.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public abstract class JFFIStruct extends Struct {
+    /** Runtime used for all JFFI structs and memory. */
+    static final Runtime RUNTIME = Runtime.getSystemRuntime();
+    private static final boolean PACKED = System.getProperty("os.name", "").startsWith("Windows");
+
+    protected JFFIStruct() {
+        super(RUNTIME, PACKED ? new Alignment(1) : new Alignment(RUNTIME.addressSize()));
+    }
+
+    /**
+     * Copies bytes into fixed length char array field, truncates if src is too long.
+     * @param field field
+     * @param src bytes, may be null
+     */
+    protected static void put(Unsigned8[] field, byte[] src) {
+        if (src != null) {
+            field[0].getMemory().put(field[0].offset(), src, 0, Math.min(src.length, field.length));
+        }
+    }
+
+    /**
+     * @param field fixed length char array field
+     * @return copy of bytes in field
+     */
+    protected static byte[] get(Unsigned8[] field) {
+        byte[] result = new byte[field.length];
+        field[0].getMemory().get(field[0].offset(), result, 0, result.length);
+        return result;
+    }
+}
@@ -21,46 +21,45 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Memory;
-import jnr.ffi.Struct;
-
-import com.sun.jna.Native;
-
 import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.PreparedCKM;
 
 /**
  * JFFI CK_MECHANISM struct wrapper.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CKM extends Struct {
-    public long mechanism;
-    public jnr.ffi.Pointer pParameter;
-    public long ulParameterLen;
+public class JFFI_CKM extends JFFIStruct {
+    public final UnsignedLong mechanism = new UnsignedLong();
+    public final Pointer pParameter = new Pointer();
+    public final UnsignedLong ulParameterLen = new UnsignedLong();
 
     public JFFI_CKM() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
     }
 
-    public JFFI_CKM readFrom(CKM ckm) {
-        mechanism = ckm.mechanism;
-        int len = ckm.bParameter != null ? ckm.bParameter.length : 0;
-        if (len > 0) {
-            pParameter = Memory.allocate(jnr.ffi.Runtime.getSystemRuntime(), len);
-            pParameter.put(0, ckm.bParameter, 0, len);
-        }
-        ulParameterLen = len;
-        return this;
+    /** view over an existing native CK_MECHANISM */
+    private JFFI_CKM(long address) {
+        useMemory(jnr.ffi.Pointer.wrap(RUNTIME, address));
     }
 
-    public JFFI_CKM readFromPointer(CKM pMechanism) {
-        mechanism = pMechanism.mechanism;
-        int len = pMechanism.pParameter != null ? Native.POINTER_SIZE : 0;
-        if (len > 0) {
-            byte[] ckmParamBytes = pMechanism.pParameter.getByteArray(0, len);
-            pParameter = Memory.allocate(jnr.ffi.Runtime.getSystemRuntime(), len);
-            pParameter.put(0, ckmParamBytes, 0, len);
+    /**
+     * @param ckm mechanism, may be null
+     * @return struct for ckm, reusing native memory of a {@link PreparedCKM}
+     */
+    public static JFFI_CKM of(CKM ckm) {
+        if (ckm == null) {
+            return null;
         }
-        ulParameterLen = len;
+        if (ckm instanceof PreparedCKM) {
+            return new JFFI_CKM(((PreparedCKM) ckm).getAddress());
+        }
+        return new JFFI_CKM().readFrom(ckm);
+    }
+
+    public JFFI_CKM readFrom(CKM ckm) {
+        mechanism.set(ckm.mechanism);
+        pParameter.set(ckm.pParameter == null ? null
+            : jnr.ffi.Pointer.wrap(RUNTIME, com.sun.jna.Pointer.nativeValue(ckm.pParameter)));
+        ulParameterLen.set(ckm.ulParameterLen);
         return this;
     }
 }
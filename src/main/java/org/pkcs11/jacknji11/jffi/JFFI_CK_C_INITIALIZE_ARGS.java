@@ -21,10 +21,9 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Struct;
 import jnr.ffi.annotations.Delegate;
-import jnr.ffi.byref.PointerByReference;
 
+import org.pkcs11.jacknji11.CKR;
 import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS;
 import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS.CK_CREATEMUTEX;
 import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS.CK_DESTROYMUTEX;
@@ -37,51 +36,97 @@ import org.pkcs11.jacknji11.NativePointerByReference;
  * JFFI wrapper for PKCS#11 CK_C_INITIALIZE_ARGS struct. Also includes JFFI mutex interface wrappers.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CK_C_INITIALIZE_ARGS extends Struct {
+public class JFFI_CK_C_INITIALIZE_ARGS extends JFFIStruct {
 
-    public JFFI_CK_CREATEMUTEX createMutex;
-    public JFFI_CK_DESTROYMUTEX destroyMutex;
-    public JFFI_CK_LOCKMUTEX lockMutex;
-    public JFFI_CK_UNLOCKMUTEX unlockMutex;
-    public long flags;
-    public jnr.ffi.Pointer pReserved;
+    public final Function<JFFI_CK_CREATEMUTEX> createMutex = function(JFFI_CK_CREATEMUTEX.class);
+    public final Function<JFFI_CK_DESTROYMUTEX> destroyMutex = function(JFFI_CK_DESTROYMUTEX.class);
+    public final Function<JFFI_CK_LOCKMUTEX> lockMutex = function(JFFI_CK_LOCKMUTEX.class);
+    public final Function<JFFI_CK_UNLOCKMUTEX> unlockMutex = function(JFFI_CK_UNLOCKMUTEX.class);
+    public final UnsignedLong flags = new UnsignedLong();
+    public final Pointer pReserved = new Pointer();
+
+    /**
+     * Callbacks referenced from native memory.  The struct must be kept
+     * reachable until C_Finalize so that they are not collected.
+     */
+    private final Object[] callbacks = new Object[4];
 
     public JFFI_CK_C_INITIALIZE_ARGS(final CK_C_INITIALIZE_ARGS args) {
-        super(jnr.ffi.Runtime.getSystemRuntime());
-        this.createMutex = new JFFI_CK_CREATEMUTEX() {
-            public long invoke(NativePointerByReference mutex) {
-                return args.createMutex.invoke(mutex);
-            }
-            public long invoke(PointerByReference mutex) {
-                return invoke(new NativePointerByReference(
-                    new NativePointer(mutex.getValue().address())));
-            }
-        };
-        this.destroyMutex = new JFFI_CK_DESTROYMUTEX() {
-            public long invoke(NativePointer mutex) {
-                return args.destroyMutex.invoke(mutex);
-            }
-            public long invoke(jnr.ffi.Pointer mutex) {
-                return invoke(new NativePointer(mutex.address()));
-            }
-        };
-        this.lockMutex = new JFFI_CK_LOCKMUTEX() {
-            public long invoke(NativePointer mutex) {
-                return args.lockMutex.invoke(mutex);
-            }
-            public long invoke(jnr.ffi.Pointer mutex) {
-                return invoke(new NativePointer(mutex.address()));
-            }
-        };
-        this.unlockMutex = new JFFI_CK_UNLOCKMUTEX() {
-            public long invoke(NativePointer mutex) {
-                return args.unlockMutex.invoke(mutex);
-            }
-            public long invoke(jnr.ffi.Pointer mutex) {
-                return invoke(new NativePointer(mutex.address()));
-            }
-        };
-        this.flags = args.flags;
+        if (args.createMutex != null) {
+            JFFI_CK_CREATEMUTEX cb = new JFFI_CK_CREATEMUTEX() {
+                public long invoke(NativePointerByReference mutex) {
+                    return args.createMutex.invoke(mutex);
+                }
+                public long invoke(jnr.ffi.Pointer ppMutex) {
+                    try {
+                        NativePointerByReference ref = new NativePointerByReference(new NativePointer(0));
+                        long rv = invoke(ref);
+                        ppMutex.putAddress(0, ref.getPointer().getAddress());
+                        return rv;
+                    } catch (Throwable t) {
+                        // exceptions must not propagate into native code
+                        return CKR.GENERAL_ERROR;
+                    }
+                }
+            };
+            callbacks[0] = cb;
+            createMutex.set(cb);
+        }
+        if (args.destroyMutex != null) {
+            JFFI_CK_DESTROYMUTEX cb = new JFFI_CK_DESTROYMUTEX() {
+                public long invoke(NativePointer mutex) {
+                    return args.destroyMutex.invoke(mutex);
+                }
+                public long invoke(jnr.ffi.Pointer mutex) {
+                    try {
+                        return invoke(new NativePointer(address(mutex)));
+                    } catch (Throwable t) {
+                        return CKR.GENERAL_ERROR;
+                    }
+                }
+            };
+            callbacks[1] = cb;
+            destroyMutex.set(cb);
+        }
+        if (args.lockMutex != null) {
+            JFFI_CK_LOCKMUTEX cb = new JFFI_CK_LOCKMUTEX() {
+                public long invoke(NativePointer mutex) {
+                    return args.lockMutex.invoke(mutex);
+                }
+                public long invoke(jnr.ffi.Pointer mutex) {
+                    try {
+                        return invoke(new NativePointer(address(mutex)));
+                    } catch (Throwable t) {
+                        return CKR.GENERAL_ERROR;
+                    }
+                }
+            };
+            callbacks[2] = cb;
+            lockMutex.set(cb);
+        }
+        if (args.unlockMutex != null) {
+            JFFI_CK_UNLOCKMUTEX cb = new JFFI_CK_UNLOCKMUTEX() {
+                public long invoke(NativePointer mutex) {
+                    return args.unlockMutex.invoke(mutex);
+                }
+                public long invoke(jnr.ffi.Pointer mutex) {
+                    try {
+                        return invoke(new NativePointer(address(mutex)));
+                    } catch (Throwable t) {
+                        return CKR.GENERAL_ERROR;
+                    }
+                }
+            };
+            callbacks[3] = cb;
+            unlockMutex.set(cb);
+        }
+        flags.set(args.flags);
+        pReserved.set(args.pReserved == null || args.pReserved.getAddress() == 0 ? null
+            : jnr.ffi.Pointer.wrap(RUNTIME, args.pReserved.getAddress()));
+    }
+
+    private static long address(jnr.ffi.Pointer p) {
+        return p == null ? 0 : p.address();
     }
 
     /**
@@ -91,11 +136,11 @@ public class JFFI_CK_C_INITIALIZE_ARGS extends Struct {
     public interface JFFI_CK_CREATEMUTEX extends CK_CREATEMUTEX {
         /**
          * Create Mutex.
-         * @param mutex mutex
+         * @param ppMutex location to write the new mutex to
          * @return {@link CKR} return code
          */
         @Delegate
-        long invoke(PointerByReference mutex);
+        long invoke(jnr.ffi.Pointer ppMutex);
     }
 
     /**
@@ -21,46 +21,36 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Struct;
-
 import org.pkcs11.jacknji11.CK_INFO;
 
 /**
  * JFFI wrapper for PKCS#11 CK_INFO struct.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CK_INFO extends Struct {
-
-    public JFFI_CK_VERSION cryptokiVersion;
-    public byte[] manufacturerID;
-    public long flags;
-    public byte[] libraryDescription;
-    public JFFI_CK_VERSION libraryVersion;
+public class JFFI_CK_INFO extends JFFIStruct {
+    public final JFFI_CK_VERSION cryptokiVersion = inner(new JFFI_CK_VERSION());
+    public final Unsigned8[] manufacturerID = array(new Unsigned8[32]);
+    public final UnsignedLong flags = new UnsignedLong();
+    public final Unsigned8[] libraryDescription = array(new Unsigned8[32]);
+    public final JFFI_CK_VERSION libraryVersion = inner(new JFFI_CK_VERSION());
 
-    /**
-     * Default constructor.
-     * need to set alignment to none since 'flags' is not
-     * correctly aligned to a 4 byte boundary
-     */
     public JFFI_CK_INFO() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
-//        setAlignType();
     }
 
     public JFFI_CK_INFO readFrom(CK_INFO info) {
-        cryptokiVersion = new JFFI_CK_VERSION().readFrom(info.cryptokiVersion);
-        manufacturerID = info.manufacturerID;
-        flags = info.flags;
-        libraryDescription = info.libraryDescription;
-        libraryVersion = new JFFI_CK_VERSION().readFrom(info.libraryVersion);
+        cryptokiVersion.readFrom(info.cryptokiVersion);
+        put(manufacturerID, info.manufacturerID);
+        flags.set(info.flags);
+        put(libraryDescription, info.libraryDescription);
+        libraryVersion.readFrom(info.libraryVersion);
         return this;
     }
 
     public CK_INFO writeTo(CK_INFO info) {
         cryptokiVersion.writeTo(info.cryptokiVersion);
-        info.manufacturerID = manufacturerID;
-        info.flags = flags;
-        info.libraryDescription = libraryDescription;
+        info.manufacturerID = get(manufacturerID);
+        info.flags = flags.get();
+        info.libraryDescription = get(libraryDescription);
         libraryVersion.writeTo(info.libraryVersion);
         return info;
     }
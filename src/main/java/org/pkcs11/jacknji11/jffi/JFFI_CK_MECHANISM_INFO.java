@@ -21,34 +21,31 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Struct;
-
 import org.pkcs11.jacknji11.CK_MECHANISM_INFO;
 
 /**
- * JFFI wrapper for PKCS#11 CK_MECHANSIM_INFO struct.
+ * JFFI wrapper for PKCS#11 CK_MECHANISM_INFO struct.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CK_MECHANISM_INFO extends Struct {
-    public long ulMinKeySize;
-    public long ulMaxKeySize;
-    public long flags;
+public class JFFI_CK_MECHANISM_INFO extends JFFIStruct {
+    public final UnsignedLong ulMinKeySize = new UnsignedLong();
+    public final UnsignedLong ulMaxKeySize = new UnsignedLong();
+    public final UnsignedLong flags = new UnsignedLong();
 
     public JFFI_CK_MECHANISM_INFO() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
     }
 
     public JFFI_CK_MECHANISM_INFO readFrom(CK_MECHANISM_INFO info) {
-        ulMinKeySize = info.ulMinKeySize;
-        ulMaxKeySize = info.ulMaxKeySize;
-        flags = info.flags;
+        ulMinKeySize.set(info.ulMinKeySize);
+        ulMaxKeySize.set(info.ulMaxKeySize);
+        flags.set(info.flags);
         return this;
     }
 
     public CK_MECHANISM_INFO writeTo(CK_MECHANISM_INFO info) {
-        info.ulMinKeySize = ulMinKeySize;
-        info.ulMaxKeySize = ulMaxKeySize;
-        info.flags = flags;
+        info.ulMinKeySize = ulMinKeySize.get();
+        info.ulMaxKeySize = ulMaxKeySize.get();
+        info.flags = flags.get();
         return info;
     }
 }
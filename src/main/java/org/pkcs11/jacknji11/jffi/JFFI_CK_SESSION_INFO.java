@@ -21,38 +21,34 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Struct;
-
 import org.pkcs11.jacknji11.CK_SESSION_INFO;
 
 /**
  * JFFI wrapper for PKCS#11 CK_SESSION_INFO struct.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CK_SESSION_INFO extends Struct {
-    public long slotID;
-    public long state;
-    public long flags;
-    public long ulDeviceError;
+public class JFFI_CK_SESSION_INFO extends JFFIStruct {
+    public final UnsignedLong slotID = new UnsignedLong();
+    public final UnsignedLong state = new UnsignedLong();
+    public final UnsignedLong flags = new UnsignedLong();
+    public final UnsignedLong ulDeviceError = new UnsignedLong();
 
     public JFFI_CK_SESSION_INFO() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
     }
 
-
     public JFFI_CK_SESSION_INFO readFrom(CK_SESSION_INFO info) {
-        slotID = info.slotID;
-        state = info.state;
-        flags = info.flags;
-        ulDeviceError = info.ulDeviceError;
+        slotID.set(info.slotID);
+        state.set(info.state);
+        flags.set(info.flags);
+        ulDeviceError.set(info.ulDeviceError);
         return this;
     }
 
     public CK_SESSION_INFO writeTo(CK_SESSION_INFO info) {
-        info.slotID = slotID;
-        info.state = state;
-        info.flags = flags;
-        info.ulDeviceError = ulDeviceError;
+        info.slotID = slotID.get();
+        info.state = state.get();
+        info.flags = flags.get();
+        info.ulDeviceError = ulDeviceError.get();
         return info;
     }
 }
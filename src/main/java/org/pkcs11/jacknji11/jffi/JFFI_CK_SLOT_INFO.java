@@ -21,39 +21,35 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Struct;
-
 import org.pkcs11.jacknji11.CK_SLOT_INFO;
 
 /**
  * JFFI wrapper for PKCS#11 CK_SLOT_INFO struct.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CK_SLOT_INFO extends Struct {
-    public byte[] slotDescription;
-    public byte[] manufacturerID;
-    public long flags;
-    public JFFI_CK_VERSION hardwareVersion;
-    public JFFI_CK_VERSION firmwareVersion;
+public class JFFI_CK_SLOT_INFO extends JFFIStruct {
+    public final Unsigned8[] slotDescription = array(new Unsigned8[64]);
+    public final Unsigned8[] manufacturerID = array(new Unsigned8[32]);
+    public final UnsignedLong flags = new UnsignedLong();
+    public final JFFI_CK_VERSION hardwareVersion = inner(new JFFI_CK_VERSION());
+    public final JFFI_CK_VERSION firmwareVersion = inner(new JFFI_CK_VERSION());
 
     public JFFI_CK_SLOT_INFO() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
     }
 
-
     public JFFI_CK_SLOT_INFO readFrom(CK_SLOT_INFO info) {
-        slotDescription = info.slotDescription;
-        manufacturerID = info.manufacturerID;
-        flags = info.flags;
-        hardwareVersion = new JFFI_CK_VERSION().readFrom(info.hardwareVersion);
-        firmwareVersion = new JFFI_CK_VERSION().readFrom(info.firmwareVersion);
+        put(slotDescription, info.slotDescription);
+        put(manufacturerID, info.manufacturerID);
+        flags.set(info.flags);
+        hardwareVersion.readFrom(info.hardwareVersion);
+        firmwareVersion.readFrom(info.firmwareVersion);
         return this;
     }
 
     public CK_SLOT_INFO writeTo(CK_SLOT_INFO info) {
-        info.slotDescription = slotDescription;
-        info.manufacturerID = manufacturerID;
-        info.flags = flags;
+        info.slotDescription = get(slotDescription);
+        info.manufacturerID = get(manufacturerID);
+        info.flags = flags.get();
         hardwareVersion.writeTo(info.hardwareVersion);
         firmwareVersion.writeTo(info.firmwareVersion);
         return info;
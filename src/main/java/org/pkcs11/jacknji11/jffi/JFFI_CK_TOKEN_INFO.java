@@ -21,80 +21,76 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Struct;
-
 import org.pkcs11.jacknji11.CK_TOKEN_INFO;
 
 /**
  * JFFI wrapper for PKCS#11 CK_TOKEN_INFO struct.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CK_TOKEN_INFO extends Struct {
-    public byte[] label;
-    public byte[] manufacturerID;
-    public byte[] model;
-    public byte[] serialNumber;
-    public long flags;
-    public long ulMaxSessionCount;
-    public long ulSessionCount;
-    public long ulMaxRwSessionCount;
-    public long ulRwSessionCount;
-    public long ulMaxPinLen;
-    public long ulMinPinLen;
-    public long ulTotalPublicMemory;
-    public long ulFreePublicMemory;
-    public long ulTotalPrivateMemory;
-    public long ulFreePrivateMemory;
-    public JFFI_CK_VERSION hardwareVersion;
-    public JFFI_CK_VERSION firmwareVersion;
-    public byte[] utcTime;
+public class JFFI_CK_TOKEN_INFO extends JFFIStruct {
+    public final Unsigned8[] label = array(new Unsigned8[32]);
+    public final Unsigned8[] manufacturerID = array(new Unsigned8[32]);
+    public final Unsigned8[] model = array(new Unsigned8[16]);
+    public final Unsigned8[] serialNumber = array(new Unsigned8[16]);
+    public final UnsignedLong flags = new UnsignedLong();
+    public final UnsignedLong ulMaxSessionCount = new UnsignedLong();
+    public final UnsignedLong ulSessionCount = new UnsignedLong();
+    public final UnsignedLong ulMaxRwSessionCount = new UnsignedLong();
+    public final UnsignedLong ulRwSessionCount = new UnsignedLong();
+    public final UnsignedLong ulMaxPinLen = new UnsignedLong();
+    public final UnsignedLong ulMinPinLen = new UnsignedLong();
+    public final UnsignedLong ulTotalPublicMemory = new UnsignedLong();
+    public final UnsignedLong ulFreePublicMemory = new UnsignedLong();
+    public final UnsignedLong ulTotalPrivateMemory = new UnsignedLong();
+    public final UnsignedLong ulFreePrivateMemory = new UnsignedLong();
+    public final JFFI_CK_VERSION hardwareVersion = inner(new JFFI_CK_VERSION());
+    public final JFFI_CK_VERSION firmwareVersion = inner(new JFFI_CK_VERSION());
+    public final Unsigned8[] utcTime = array(new Unsigned8[16]);
 
     public JFFI_CK_TOKEN_INFO() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
     }
 
-
     public JFFI_CK_TOKEN_INFO readFrom(CK_TOKEN_INFO info) {
-        label = info.label;
-        manufacturerID = info.manufacturerID;
-        model = info.model;
-        serialNumber = info.serialNumber;
-        flags = info.flags;
-        ulMaxSessionCount = info.ulMaxSessionCount;
-        ulSessionCount = info.ulSessionCount;
-        ulMaxRwSessionCount = info.ulMaxRwSessionCount;
-        ulRwSessionCount = info.ulRwSessionCount;
-        ulMaxPinLen = info.ulMaxPinLen;
-        ulMinPinLen = info.ulMinPinLen;
-        ulTotalPublicMemory = info.ulTotalPublicMemory;
-        ulFreePublicMemory = info.ulFreePublicMemory;
-        ulTotalPrivateMemory = info.ulTotalPrivateMemory;
-        ulFreePrivateMemory = info.ulFreePrivateMemory;
-        hardwareVersion = new JFFI_CK_VERSION().readFrom(info.hardwareVersion);
-        firmwareVersion = new JFFI_CK_VERSION().readFrom(info.firmwareVersion);
-        utcTime = info.utcTime;
+        put(label, info.label);
+        put(manufacturerID, info.manufacturerID);
+        put(model, info.model);
+        put(serialNumber, info.serialNumber);
+        flags.set(info.flags);
+        ulMaxSessionCount.set(info.ulMaxSessionCount);
+        ulSessionCount.set(info.ulSessionCount);
+        ulMaxRwSessionCount.set(info.ulMaxRwSessionCount);
+        ulRwSessionCount.set(info.ulRwSessionCount);
+        ulMaxPinLen.set(info.ulMaxPinLen);
+        ulMinPinLen.set(info.ulMinPinLen);
+        ulTotalPublicMemory.set(info.ulTotalPublicMemory);
+        ulFreePublicMemory.set(info.ulFreePublicMemory);
+        ulTotalPrivateMemory.set(info.ulTotalPrivateMemory);
+        ulFreePrivateMemory.set(info.ulFreePrivateMemory);
+        hardwareVersion.readFrom(info.hardwareVersion);
+        firmwareVersion.readFrom(info.firmwareVersion);
+        put(utcTime, info.utcTime);
         return this;
     }
 
     public CK_TOKEN_INFO writeTo(CK_TOKEN_INFO info) {
-        info.label = label;
-        info.manufacturerID = manufacturerID;
-        info.model = model;
-        info.serialNumber = serialNumber;
-        info.flags = flags;
-        info.ulMaxSessionCount = ulMaxSessionCount;
-        info.ulSessionCount = ulSessionCount;
-        info.ulMaxRwSessionCount = ulMaxRwSessionCount;
-        info.ulRwSessionCount = ulRwSessionCount;
-        info.ulMaxPinLen = ulMaxPinLen;
-        info.ulMinPinLen = ulMinPinLen;
-        info.ulTotalPublicMemory = ulTotalPublicMemory;
-        info.ulFreePublicMemory = ulFreePublicMemory;
-        info.ulTotalPrivateMemory = ulTotalPrivateMemory;
-        info.ulFreePrivateMemory = ulFreePrivateMemory;
+        info.label = get(label);
+        info.manufacturerID = get(manufacturerID);
+        info.model = get(model);
+        info.serialNumber = get(serialNumber);
+        info.flags = flags.get();
+        info.ulMaxSessionCount = ulMaxSessionCount.get();
+        info.ulSessionCount = ulSessionCount.get();
+        info.ulMaxRwSessionCount = ulMaxRwSessionCount.get();
+        info.ulRwSessionCount = ulRwSessionCount.get();
+        info.ulMaxPinLen = ulMaxPinLen.get();
+        info.ulMinPinLen = ulMinPinLen.get();
+        info.ulTotalPublicMemory = ulTotalPublicMemory.get();
+        info.ulFreePublicMemory = ulFreePublicMemory.get();
+        info.ulTotalPrivateMemory = ulTotalPrivateMemory.get();
+        info.ulFreePrivateMemory = ulFreePrivateMemory.get();
         hardwareVersion.writeTo(info.hardwareVersion);
         firmwareVersion.writeTo(info.firmwareVersion);
-        info.utcTime = utcTime;
+        info.utcTime = get(utcTime);
         return info;
     }
 }
@@ -21,8 +21,6 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Struct;
-
 import org.pkcs11.jacknji11.CK_VERSION;
 
 /**
@@ -30,22 +28,22 @@ import org.pkcs11.jacknji11.CK_VERSION;
  * wrapping 2 bytes, but we have.
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CK_VERSION extends Struct {
-    public byte major;
-    public byte minor;
+public class JFFI_CK_VERSION extends JFFIStruct {
+    public final Unsigned8 major = new Unsigned8();
+    public final Unsigned8 minor = new Unsigned8();
 
     public JFFI_CK_VERSION() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
     }
 
     public JFFI_CK_VERSION readFrom(CK_VERSION version) {
-        major = version.major;
-        minor = version.minor;
+        major.set(version.major);
+        minor.set(version.minor);
         return this;
     }
+
     public CK_VERSION writeTo(CK_VERSION version) {
-        version.major = major;
-        version.minor = minor;
+        version.major = (byte) major.get();
+        version.minor = (byte) minor.get();
         return version;
     }
 }
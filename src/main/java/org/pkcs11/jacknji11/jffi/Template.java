@@ -21,64 +21,51 @@
 
 package org.pkcs11.jacknji11.jffi;
 
-import jnr.ffi.Memory;
 import jnr.ffi.Pointer;
-import jnr.ffi.Runtime;
 
 import org.pkcs11.jacknji11.CKA;
 
 /**
- * JFFI Wrapper for CK_ATTRIBUTE[].
+ * JFFI Wrapper for CK_ATTRIBUTE[].  The array and all attribute values are
+ * laid out by {@link org.pkcs11.jacknji11.jna.Template} in one block leased
+ * from the per-thread {@link org.pkcs11.jacknji11.jna.TemplateArena}, this
+ * class exposes that block as a jnr-ffi {@link Pointer}.  Callers must call
+ * {@link #release()} once the native call has completed.
  *
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
 public class Template {
+    private final org.pkcs11.jacknji11.jna.Template template;
+    private final Pointer pointer;
 
-    public static Pointer templ(CKA[] cka) {
-        if (cka == null) {
-            return null;
-        }
-        Runtime runtime = Runtime.getSystemRuntime();
-        Pointer result = Memory.allocate(runtime, cka.length * (runtime.longSize() + runtime.addressSize() + runtime.longSize()));
-
-        int offset = 0;
-        for (int i = 0; i < cka.length; i++) {
-            // type
-            result.putLong(offset, cka[i].type);
-            offset += runtime.longSize();
-
-            // pValue
-            if (cka[i].pValue != null) {
-                Pointer pValue = Memory.allocate(runtime, cka[i].pValue.length);
-                pValue.put(0, cka[i].pValue, 0, cka[i].pValue.length);
-            }
-            offset += runtime.addressSize();
-
-            // ulValueLen
-            result.putLong(offset, cka[i].ulValueLen);
-            offset += runtime.longSize();
-        }
-
-        return result;
+    /**
+     * Leases memory from the current thread's arena and writes CKA[] values.
+     * @param list template, may be null
+     */
+    public Template(CKA[] list) {
+        template = new org.pkcs11.jacknji11.jna.Template(list);
+        long address = com.sun.jna.Pointer.nativeValue(template.getPointer());
+        pointer = address == 0 ? null : Pointer.wrap(JFFIStruct.RUNTIME, address);
     }
 
-    public static void update(Pointer templ, CKA[] cka) {
-        if (cka == null) {
-            return;
-        }
-        Runtime runtime = Runtime.getSystemRuntime();
-        int offset = 0;
-        for (int i = 0; i < cka.length; i++) {
-            // read ulValueLen (skip type, pValue)
-            long ulValueLen = templ.getLong(offset + runtime.longSize() + runtime.addressSize());
-            cka[i].ulValueLen = ulValueLen;
+    /**
+     * @return pointer to CK_ATTRIBUTE[], null if list was null or empty
+     */
+    public Pointer getPointer() {
+        return pointer;
+    }
 
-            // pValue
-            Pointer pValue = templ.getPointer(offset + runtime.longSize());
-            pValue.put(0, cka[i].pValue, 0, cka[i].pValue.length);
+    /**
+     * Reads updated native memory and modifies values in list.
+     */
+    public void update() {
+        template.update();
+    }
 
-            // update offset (skip type, pValue, ulValueLen)
-            offset += runtime.longSize() + runtime.addressSize() + runtime.longSize();
-        }
+    /**
+     * Hands the native memory back to the arena.  Safe to call more than once.
+     */
+    public void release() {
+        template.release();
     }
 }
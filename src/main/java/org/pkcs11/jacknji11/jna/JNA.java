@@ -21,9 +21,12 @@
 
 package org.pkcs11.jacknji11.jna;
 
+import java.nio.ByteBuffer;
+
 import org.pkcs11.jacknji11.C;
 import org.pkcs11.jacknji11.CKA;
 import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.CKR;
 import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS;
 import org.pkcs11.jacknji11.CK_INFO;
 import org.pkcs11.jacknji11.CK_MECHANISM_INFO;
@@ -34,8 +37,10 @@ import org.pkcs11.jacknji11.CK_TOKEN_INFO;
 import org.pkcs11.jacknji11.LongRef;
 import org.pkcs11.jacknji11.NativePointer;
 import org.pkcs11.jacknji11.NativeProvider;
+import org.pkcs11.jacknji11.NioBuf;
 import org.pkcs11.jacknji11.ULong;
 
+import com.sun.jna.Native;
 import com.sun.jna.NativeLong;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.NativeLongByReference;
@@ -199,20 +204,28 @@ public class JNA implements NativeProvider {
 
     public long C_CreateObject(long hSession, CKA[] pTemplate, long ulCount, LongRef phObject) {
         Template jna_pTemplate = new Template(pTemplate);
-        NativeLongByReference jna_phObject = NLP(phObject.value);
-        long rv = jnaNative.C_CreateObject(NL(hSession), jna_pTemplate, NL(ulCount), jna_phObject);
-        jna_pTemplate.update();
-        phObject.value = jna_phObject.getValue().longValue();
-        return rv;
+        try {
+            NativeLongByReference jna_phObject = NLP(phObject.value);
+            long rv = jnaNative.C_CreateObject(NL(hSession), jna_pTemplate, NL(ulCount), jna_phObject);
+            jna_pTemplate.update();
+            phObject.value = jna_phObject.getValue().longValue();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
     public long C_CopyObject(long hSession, long hObject, CKA[] pTemplate, long ulCount, LongRef phNewObject) {
         Template jna_pTemplate = new Template(pTemplate);
-        NativeLongByReference jna_phNewObject = NLP(phNewObject.value);
-        long rv = jnaNative.C_CopyObject(NL(hSession), NL(hObject), jna_pTemplate, NL(ulCount), jna_phNewObject);
-        jna_pTemplate.update();
-        phNewObject.value = jna_phNewObject.getValue().longValue();
-        return rv;
+        try {
+            NativeLongByReference jna_phNewObject = NLP(phNewObject.value);
+            long rv = jnaNative.C_CopyObject(NL(hSession), NL(hObject), jna_pTemplate, NL(ulCount), jna_phNewObject);
+            jna_pTemplate.update();
+            phNewObject.value = jna_phNewObject.getValue().longValue();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
     public long C_DestroyObject(long hSession, long hObject) {
@@ -228,23 +241,35 @@ public class JNA implements NativeProvider {
 
     public long C_GetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
         Template jna_pTemplate = new Template(pTemplate);
-        long rv = jnaNative.C_GetAttributeValue(NL(hSession), NL(hObject), jna_pTemplate, NL(ulCount));
-        jna_pTemplate.update();
-        return rv;
+        try {
+            long rv = jnaNative.C_GetAttributeValue(NL(hSession), NL(hObject), jna_pTemplate, NL(ulCount));
+            jna_pTemplate.update();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
     public long C_SetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
         Template jna_pTemplate = new Template(pTemplate);
-        long rv = jnaNative.C_SetAttributeValue(NL(hSession), NL(hObject), jna_pTemplate, NL(ulCount));
-        jna_pTemplate.update();
-        return rv;
+        try {
+            long rv = jnaNative.C_SetAttributeValue(NL(hSession), NL(hObject), jna_pTemplate, NL(ulCount));
+            jna_pTemplate.update();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
     public long C_FindObjectsInit(long hSession, CKA[] pTemplate, long ulCount) {
         Template jna_pTemplate = new Template(pTemplate);
-        long rv = jnaNative.C_FindObjectsInit(NL(hSession), jna_pTemplate, NL(ulCount));
-        jna_pTemplate.update();
-        return rv;
+        try {
+            long rv = jnaNative.C_FindObjectsInit(NL(hSession), jna_pTemplate, NL(ulCount));
+            jna_pTemplate.update();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
     public long C_FindObjects(long hSession, long[] phObject, long ulMaxObjectCount, LongRef pulObjectCount) {
@@ -261,7 +286,7 @@ public class JNA implements NativeProvider {
     }
 
     public long C_EncryptInit(long hSession, CKM pMechanism, long hKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         return jnaNative.C_EncryptInit(NL(hSession), jna_pMechanism, NL(hKey));
     }
 
@@ -287,7 +312,7 @@ public class JNA implements NativeProvider {
     }
 
     public long C_DecryptInit(long hSession, CKM pMechanism, long hKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         return jnaNative.C_DecryptInit(NL(hSession), jna_pMechanism, NL(hKey));
     }
 
@@ -313,7 +338,7 @@ public class JNA implements NativeProvider {
     }
 
     public long C_DigestInit(long hSession, CKM pMechanism) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         return jnaNative.C_DigestInit(NL(hSession), jna_pMechanism);
     }
 
@@ -340,7 +365,7 @@ public class JNA implements NativeProvider {
     }
 
     public long C_SignInit(long hSession, CKM pMechanism, long hKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         return jnaNative.C_SignInit(NL(hSession), jna_pMechanism, NL(hKey));
     }
 
@@ -363,7 +388,7 @@ public class JNA implements NativeProvider {
     }
 
     public long C_SignRecoverInit(long hSession, CKM pMechanism, long hKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         return jnaNative.C_SignRecoverInit(NL(hSession), jna_pMechanism, NL(hKey));
     }
 
@@ -375,7 +400,7 @@ public class JNA implements NativeProvider {
     }
 
     public long C_VerifyInit(long hSession, CKM pMechanism, long hKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         return jnaNative.C_VerifyInit(NL(hSession), jna_pMechanism, NL(hKey));
     }
 
@@ -392,7 +417,7 @@ public class JNA implements NativeProvider {
     }
 
     public long C_VerifyRecoverInit(long hSession, CKM pMechanism, long hKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         return jnaNative.C_VerifyRecoverInit(NL(hSession), jna_pMechanism, NL(hKey));
     }
 
@@ -432,31 +457,43 @@ public class JNA implements NativeProvider {
     }
 
     public long C_GenerateKey(long hSession, CKM pMechanism, CKA[] pTemplate, long ulCount, LongRef phKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         Template jna_pTemplate = new Template(pTemplate);
-        NativeLongByReference jna_phKey = NLP(phKey.value);
-        long rv = jnaNative.C_GenerateKey(NL(hSession), jna_pMechanism, jna_pTemplate, NL(ulCount), jna_phKey);
-        phKey.value = jna_phKey.getValue().longValue();
-        return rv;
+        try {
+            NativeLongByReference jna_phKey = NLP(phKey.value);
+            long rv = jnaNative.C_GenerateKey(NL(hSession), jna_pMechanism, jna_pTemplate, NL(ulCount), jna_phKey);
+            phKey.value = jna_phKey.getValue().longValue();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
 
     public long C_GenerateKeyPair(long hSession, CKM pMechanism, CKA[] pPublicKeyTemplate, long ulPublicKeyAttributeCount,
             CKA[] pPrivateKeyTemplate, long ulPrivateKeyAttributeCount, LongRef phPublicKey, LongRef phPrivateKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         Template jna_pPublicKeyTemplate = new Template(pPublicKeyTemplate);
-        Template jna_pPrivateKeyTemplate = new Template(pPrivateKeyTemplate);
-        NativeLongByReference jna_phPublicKey = NLP(phPublicKey.value);
-        NativeLongByReference jna_phPrivateKey = NLP(phPrivateKey.value);
-        long rv = jnaNative.C_GenerateKeyPair(NL(hSession), jna_pMechanism, jna_pPublicKeyTemplate, NL(ulPublicKeyAttributeCount),
-            jna_pPrivateKeyTemplate, NL(ulPrivateKeyAttributeCount), jna_phPublicKey, jna_phPrivateKey);
-        phPublicKey.value = jna_phPublicKey.getValue().longValue();
-        phPrivateKey.value = jna_phPrivateKey.getValue().longValue();
-        return rv;
+        try {
+            Template jna_pPrivateKeyTemplate = new Template(pPrivateKeyTemplate);
+            try {
+                NativeLongByReference jna_phPublicKey = NLP(phPublicKey.value);
+                NativeLongByReference jna_phPrivateKey = NLP(phPrivateKey.value);
+                long rv = jnaNative.C_GenerateKeyPair(NL(hSession), jna_pMechanism, jna_pPublicKeyTemplate, NL(ulPublicKeyAttributeCount),
+                    jna_pPrivateKeyTemplate, NL(ulPrivateKeyAttributeCount), jna_phPublicKey, jna_phPrivateKey);
+                phPublicKey.value = jna_phPublicKey.getValue().longValue();
+                phPrivateKey.value = jna_phPrivateKey.getValue().longValue();
+                return rv;
+            } finally {
+                jna_pPrivateKeyTemplate.release();
+            }
+        } finally {
+            jna_pPublicKeyTemplate.release();
+        }
     }
 
     public long C_WrapKey(long hSession, CKM pMechanism, long hWrappingKey, long hKey, byte[] pWrappedKey, LongRef pulWrappedKeyLen) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         NativeLongByReference jna_pulWrappedKeyLen = NLP(pulWrappedKeyLen.value);
         long rv = jnaNative.C_WrapKey(NL(hSession), jna_pMechanism, NL(hWrappingKey), NL(hKey), pWrappedKey, jna_pulWrappedKeyLen);
         pulWrappedKeyLen.value = jna_pulWrappedKeyLen.getValue().longValue();
@@ -465,22 +502,30 @@ public class JNA implements NativeProvider {
 
     public long C_UnwrapKey(long hSession, CKM pMechanism, long hUnwrappingKey, byte[] pWrappedKey, long ulWrappedKeyLen,
             CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         Template jna_pTemplate = new Template(pTemplate);
-        NativeLongByReference jna_phKey = NLP(phKey.value);
-        long rv = jnaNative.C_UnwrapKey(NL(hSession), jna_pMechanism, NL(hUnwrappingKey), pWrappedKey, NL(ulWrappedKeyLen),
-            jna_pTemplate, NL(ulAttributeCount), jna_phKey);
-        phKey.value = jna_phKey.getValue().longValue();
-        return rv;
+        try {
+            NativeLongByReference jna_phKey = NLP(phKey.value);
+            long rv = jnaNative.C_UnwrapKey(NL(hSession), jna_pMechanism, NL(hUnwrappingKey), pWrappedKey, NL(ulWrappedKeyLen),
+                jna_pTemplate, NL(ulAttributeCount), jna_phKey);
+            phKey.value = jna_phKey.getValue().longValue();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
     public long C_DeriveKey(long hSession, CKM pMechanism, long hBaseKey, CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
-        JNA_CKM jna_pMechanism = new JNA_CKM().readFrom(pMechanism);
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
         Template jna_pTemplate = new Template(pTemplate);
-        NativeLongByReference jna_phKey = NLP(phKey.value);
-        long rv = jnaNative.C_DeriveKey(NL(hSession), jna_pMechanism, NL(hBaseKey), jna_pTemplate, NL(ulAttributeCount), jna_phKey);
-        phKey.value = jna_phKey.getValue().longValue();
-        return rv;
+        try {
+            NativeLongByReference jna_phKey = NLP(phKey.value);
+            long rv = jnaNative.C_DeriveKey(NL(hSession), jna_pMechanism, NL(hBaseKey), jna_pTemplate, NL(ulAttributeCount), jna_phKey);
+            phKey.value = jna_phKey.getValue().longValue();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
     }
 
     public long C_SeedRandom(long hSession, byte[] pSeed, long ulSeedLen) {
@@ -499,6 +544,156 @@ public class JNA implements NativeProvider {
         return jnaNative.C_CancelFunction(NL(hSession));
     }
 
+    public long C_Encrypt(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pEncryptedData, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, pulEncryptedDataLen);
+        NativeLongByReference jna_pulEncryptedDataLen = NLP(pulEncryptedDataLen.value);
+        long rv = jnaNative.C_Encrypt(NL(hSession), ptr(pData), NL(ulDataLen), ptr(pEncryptedData), jna_pulEncryptedDataLen);
+        pulEncryptedDataLen.value = jna_pulEncryptedDataLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_EncryptUpdate(long hSession, ByteBuffer pPart, long ulPartLen, ByteBuffer pEncryptedPart, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, pulEncryptedPartLen);
+        NativeLongByReference jna_pulEncryptedPartLen = NLP(pulEncryptedPartLen.value);
+        long rv = jnaNative.C_EncryptUpdate(NL(hSession), ptr(pPart), NL(ulPartLen), ptr(pEncryptedPart), jna_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = jna_pulEncryptedPartLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_EncryptFinal(long hSession, ByteBuffer pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        NioBuf.clamp(pLastEncryptedPart, pulLastEncryptedPartLen);
+        NativeLongByReference jna_pulLastEncryptedPartLen = NLP(pulLastEncryptedPartLen.value);
+        long rv = jnaNative.C_EncryptFinal(NL(hSession), ptr(pLastEncryptedPart), jna_pulLastEncryptedPartLen);
+        pulLastEncryptedPartLen.value = jna_pulLastEncryptedPartLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_Decrypt(long hSession, ByteBuffer pEncryptedData, long ulEncryptedDataLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, ulEncryptedDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        NativeLongByReference jna_pulDataLen = NLP(pulDataLen.value);
+        long rv = jnaNative.C_Decrypt(NL(hSession), ptr(pEncryptedData), NL(ulEncryptedDataLen), ptr(pData), jna_pulDataLen);
+        pulDataLen.value = jna_pulDataLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_DecryptUpdate(long hSession, ByteBuffer pEncryptedPart, long ulEncryptedPartLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, ulEncryptedPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        NativeLongByReference jna_pulDataLen = NLP(pulDataLen.value);
+        long rv = jnaNative.C_DecryptUpdate(NL(hSession), ptr(pEncryptedPart), NL(ulEncryptedPartLen), ptr(pData), jna_pulDataLen);
+        pulDataLen.value = jna_pulDataLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_DecryptFinal(long hSession, ByteBuffer pLastPart, LongRef pulLastPartLen) {
+        NioBuf.clamp(pLastPart, pulLastPartLen);
+        NativeLongByReference jna_pulLastPartLen = NLP(pulLastPartLen.value);
+        long rv = jnaNative.C_DecryptFinal(NL(hSession), ptr(pLastPart), jna_pulLastPartLen);
+        pulLastPartLen.value = jna_pulLastPartLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_Digest(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pDigest, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, pulDigestLen);
+        NativeLongByReference jna_pulDigestLen = NLP(pulDigestLen.value);
+        long rv = jnaNative.C_Digest(NL(hSession), ptr(pData), NL(ulDataLen), ptr(pDigest), jna_pulDigestLen);
+        pulDigestLen.value = jna_pulDigestLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_DigestUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jnaNative.C_DigestUpdate(NL(hSession), ptr(pPart), NL(ulPartLen));
+    }
+
+    public long C_DigestFinal(long hSession, ByteBuffer pDigest, LongRef pulDigestLen) {
+        NioBuf.clamp(pDigest, pulDigestLen);
+        NativeLongByReference jna_pulDigestLen = NLP(pulDigestLen.value);
+        long rv = jnaNative.C_DigestFinal(NL(hSession), ptr(pDigest), jna_pulDigestLen);
+        pulDigestLen.value = jna_pulDigestLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_Sign(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        NativeLongByReference jna_pulSignatureLen = NLP(pulSignatureLen.value);
+        long rv = jnaNative.C_Sign(NL(hSession), ptr(pData), NL(ulDataLen), ptr(pSignature), jna_pulSignatureLen);
+        pulSignatureLen.value = jna_pulSignatureLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_SignUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jnaNative.C_SignUpdate(NL(hSession), ptr(pPart), NL(ulPartLen));
+    }
+
+    public long C_SignFinal(long hSession, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        NativeLongByReference jna_pulSignatureLen = NLP(pulSignatureLen.value);
+        long rv = jnaNative.C_SignFinal(NL(hSession), ptr(pSignature), jna_pulSignatureLen);
+        pulSignatureLen.value = jna_pulSignatureLen.getValue().longValue();
+        return rv;
+    }
+
+    public long C_Verify(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen) || !NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jnaNative.C_Verify(NL(hSession), ptr(pData), NL(ulDataLen), ptr(pSignature), NL(ulSignatureLen));
+    }
+
+    public long C_VerifyUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jnaNative.C_VerifyUpdate(NL(hSession), ptr(pPart), NL(ulPartLen));
+    }
+
+    public long C_VerifyFinal(long hSession, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return jnaNative.C_VerifyFinal(NL(hSession), ptr(pSignature), NL(ulSignatureLen));
+    }
+
+    private static Pointer ptr(ByteBuffer buf) { return buf == null ? null : new Pointer(address(buf)); }
+
+    /**
+     * Native address of buf position.
+     * @param buf direct buffer or null
+     * @return address of buf position, or 0 if buf is null
+     * @throws IllegalArgumentException if buf is not direct
+     */
+    static long address(ByteBuffer buf) {
+        if (buf == null) {
+            return 0;
+        }
+        if (!buf.isDirect()) {
+            throw new IllegalArgumentException("ByteBuffer must be direct");
+        }
+        return Pointer.nativeValue(Native.getDirectBufferPointer(buf)) + buf.position();
+    }
     private static NativeLong NL(long l) { return new NativeLong(l); }
     private static NativeLongByReference NLP(long l) { return new NativeLongByReference(new NativeLong(l)); }
 }
@@ -19,43 +19,28 @@
  * THE SOFTWARE.
  */
 
-package org.pkcs11.jacknji11.jffi;
+package org.pkcs11.jacknji11.jna;
 
-import jnr.ffi.Memory;
-import jnr.ffi.Struct;
-
-import org.pkcs11.jacknji11.CKA;
+import org.pkcs11.jacknji11.C;
 
 /**
- * JFFI CK_ATTRIBUTE wrapper.
+ * JNA PKCS#11 provider using JNA direct mapping.  Marshalling is the same
+ * as {@link JNA}, but calls go straight to static native methods registered
+ * with {@link com.sun.jna.Native#register(Class, com.sun.jna.NativeLibrary)}
+ * avoiding the per-call proxy and reflection used by interface mapping.
+ * <p>
+ * Use with {@link org.pkcs11.jacknji11.Cryptoki#Cryptoki(org.pkcs11.jacknji11.NativeProvider)}
+ * or by setting {@link C#NATIVE} before first use.
+ *
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
-public class JFFI_CKA extends Struct {
-    public long type;
-    public jnr.ffi.Pointer pValue;
-    public long ulValueLen;
-
-    public JFFI_CKA() {
-        super(jnr.ffi.Runtime.getSystemRuntime());
-    }
+public class JNADirect extends JNA {
 
-    public JFFI_CKA readFrom(CKA cka) {
-        type = cka.type;
-        int len = cka.pValue != null ? cka.pValue.length : 0;
-        if (len > 0) {
-            pValue = Memory.allocate(jnr.ffi.Runtime.getSystemRuntime(), len);
-            pValue.put(0, cka.pValue, 0, len);
-        }
-        ulValueLen = len;
-        return this;
+    public JNADirect() {
+        this(C.getLibraryName());
     }
 
-    public CKA writeTo(CKA cka) {
-        cka.type = (int) type;
-        cka.ulValueLen = (int) ulValueLen;
-        if (cka.ulValueLen > 0) {
-            pValue.get(0, cka.pValue, 0, (int) cka.ulValueLen);
-        }
-        return cka;
+    public JNADirect(String customLibrary) {
+        super(new JNADirectNative(customLibrary));
     }
 }
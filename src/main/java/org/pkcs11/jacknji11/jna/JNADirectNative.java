@@ -0,0 +1,555 @@
+/*
+ * Copyright 2010-2011 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.pkcs11.jacknji11.jna;
+
+import java.nio.ByteBuffer;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.NativeLongByReference;
+
+/**
+ * {@link JNANativeI} implementation that calls through to JNA direct mapped
+ * static native methods rather than the reflective interface proxy created
+ * by {@link Native#load(String, Class)}.  Direct mapping binds the native
+ * methods of a class to a single library, so only one cryptoki library can
+ * be used per class loader.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class JNADirectNative implements JNANativeI {
+    private static String libraryName;
+
+    /**
+     * Static natives registered against the cryptoki library.
+     */
+    static class Direct {
+        public static native int C_Initialize(JNA_CK_C_INITIALIZE_ARGS pInitArgs);
+        public static native int C_Finalize(Pointer pReserved);
+        public static native int C_GetInfo(JNA_CK_INFO pInfo);
+        public static native int C_GetSlotList(byte tokenPresent, LongArray pSlotList, NativeLongByReference pulCount);
+        public static native int C_GetSlotInfo(NativeLong slotID, JNA_CK_SLOT_INFO pInfo);
+        public static native int C_GetTokenInfo(NativeLong slotID, JNA_CK_TOKEN_INFO pInfo);
+        public static native int C_WaitForSlotEvent(NativeLong flags, NativeLongByReference pSlot, Pointer pReserved);
+        public static native int C_GetMechanismList(NativeLong slotID, LongArray pMechanismList, NativeLongByReference pulCount);
+        public static native int C_GetMechanismInfo(NativeLong slotID, NativeLong type, JNA_CK_MECHANISM_INFO pInfo);
+        public static native int C_InitToken(NativeLong slotID, byte[] pPin, NativeLong ulPinLen, byte[] pLabel32);
+        public static native int C_InitPIN(NativeLong hSession, byte[] pPin, NativeLong ulPinLen);
+        public static native int C_SetPIN(NativeLong hSession, byte[] pOldPin, NativeLong ulOldLen, byte[] pNewPin, NativeLong ulNewLen);
+        public static native int C_OpenSession(NativeLong slotID, NativeLong flags, Pointer application, JNA_CK_NOTIFY notify, NativeLongByReference phSession);
+        public static native int C_CloseSession(NativeLong hSession);
+        public static native int C_CloseAllSessions(NativeLong slotID);
+        public static native int C_GetSessionInfo(NativeLong hSession, JNA_CK_SESSION_INFO pInfo);
+        public static native int C_GetOperationState(NativeLong hSession, byte[] pOperationState, NativeLongByReference pulOperationStateLen);
+        public static native int C_SetOperationState(NativeLong hSession, byte[] pOperationState, NativeLong ulOperationStateLen, NativeLong hEncryptionKey, NativeLong hAuthenticationKey);
+        public static native int C_Login(NativeLong hSession, NativeLong userType, byte[] pPin, NativeLong ulPinLen);
+        public static native int C_Logout(NativeLong hSession);
+        public static native int C_CreateObject(NativeLong hSession, Template pTemplate, NativeLong ulCount, NativeLongByReference phObject);
+        public static native int C_CopyObject(NativeLong hSession, NativeLong hObject, Template pTemplate, NativeLong ulCount, NativeLongByReference phNewObject);
+        public static native int C_DestroyObject(NativeLong hSession, NativeLong hObject);
+        public static native int C_GetObjectSize(NativeLong hSession, NativeLong hObject, NativeLongByReference pulSize);
+        public static native int C_GetAttributeValue(NativeLong hSession, NativeLong hObject, Template pTemplate, NativeLong ulCount);
+        public static native int C_SetAttributeValue(NativeLong hSession, NativeLong hObject, Template pTemplate, NativeLong ulCount);
+        public static native int C_FindObjectsInit(NativeLong hSession, Template pTemplate, NativeLong ulCount);
+        public static native int C_FindObjects(NativeLong hSession, LongArray phObject, NativeLong ulMaxObjectCount, NativeLongByReference pulObjectCount);
+        public static native int C_FindObjectsFinal(NativeLong hSession);
+        public static native int C_EncryptInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey);
+        public static native int C_Encrypt(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pEncryptedData, NativeLongByReference pulEncryptedDataLen);
+        public static native int C_EncryptUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen, byte[] pEncryptedPart, NativeLongByReference pulEncryptedPartLen);
+        public static native int C_EncryptFinal(NativeLong hSession, byte[] pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen);
+        public static native int C_DecryptInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey);
+        public static native int C_Decrypt(NativeLong hSession, byte[] pEncryptedData, NativeLong ulEncryptedDataLen, byte[] pData, NativeLongByReference pulDataLen);
+        public static native int C_DecryptUpdate(NativeLong hSession, byte[] pEncryptedPart, NativeLong ulEncryptedPartLen, byte[] pData, NativeLongByReference pulDataLen);
+        public static native int C_DecryptFinal(NativeLong hSession, byte[] pLastPart, NativeLongByReference pulLastPartLen);
+        public static native int C_DigestInit(NativeLong hSession, JNA_CKM pMechanism);
+        public static native int C_Digest(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pDigest, NativeLongByReference pulDigestLen);
+        public static native int C_DigestUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen);
+        public static native int C_DigestKey(NativeLong hSession, NativeLong hKey);
+        public static native int C_DigestFinal(NativeLong hSession, byte[] pDigest, NativeLongByReference pulDigestLen);
+        public static native int C_SignInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey);
+        public static native int C_Sign(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pSignature, NativeLongByReference pulSignatureLen);
+        public static native int C_SignUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen);
+        public static native int C_SignFinal(NativeLong hSession, byte[] pSignature, NativeLongByReference pulSignatureLen);
+        public static native int C_SignRecoverInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey);
+        public static native int C_SignRecover(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pSignature, NativeLongByReference pulSignatureLen);
+        public static native int C_VerifyInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey);
+        public static native int C_Verify(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pSignature, NativeLong ulSignatureLen);
+        public static native int C_VerifyUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen);
+        public static native int C_VerifyFinal(NativeLong hSession, byte[] pSignature, NativeLong ulSignatureLen);
+        public static native int C_VerifyRecoverInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey);
+        public static native int C_VerifyRecover(NativeLong hSession, byte[] pSignature, NativeLong ulSignatureLen, byte[] pData, NativeLongByReference pulDataLen);
+        public static native int C_DigestEncryptUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen, byte[] pEncryptedPart, NativeLongByReference pulEncryptedPartLen);
+        public static native int C_DecryptDigestUpdate(NativeLong hSession, byte[] pEncryptedPart, NativeLong ulEncryptedPartLen, byte[] pPart, NativeLongByReference pulPartLen);
+        public static native int C_SignEncryptUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen, byte[] pEncryptedPart, NativeLongByReference pulEncryptedPartLen);
+        public static native int C_DecryptVerifyUpdate(NativeLong hSession, byte[] pEncryptedPart, NativeLong ulEncryptedPartLen, byte[] pPart, NativeLongByReference pulPartLen);
+        public static native int C_GenerateKey(NativeLong hSession, JNA_CKM pMechanism, Template pTemplate, NativeLong ulCount, NativeLongByReference phKey);
+        public static native int C_GenerateKeyPair(NativeLong hSession, JNA_CKM pMechanism, Template pPublicKeyTemplate, NativeLong ulPublicKeyAttributeCount, Template pPrivateKeyTemplate, NativeLong ulPrivateKeyAttributeCount, NativeLongByReference phPublicKey, NativeLongByReference phPrivateKey);
+        public static native int C_WrapKey(NativeLong hSession, JNA_CKM pMechanism, NativeLong hWrappingKey, NativeLong hKey, byte[] pWrappedKey, NativeLongByReference pulWrappedKeyLen);
+        public static native int C_UnwrapKey(NativeLong hSession, JNA_CKM pMechanism, NativeLong hUnwrappingKey, byte[] pWrappedKey, NativeLong ulWrappedKeyLen, Template pTemplate, NativeLong ulAttributeCount, NativeLongByReference phKey);
+        public static native int C_DeriveKey(NativeLong hSession, JNA_CKM pMechanism, NativeLong hBaseKey, Template pTemplate, NativeLong ulAttributeCount, NativeLongByReference phKey);
+        public static native int C_SeedRandom(NativeLong hSession, byte[] pSeed, NativeLong ulSeedLen);
+        public static native int C_GenerateRandom(NativeLong hSession, byte[] pRandom, NativeLong ulRandomLen);
+        public static native int C_GetFunctionStatus(NativeLong hSession);
+        public static native int C_CancelFunction(NativeLong hSession);
+
+        public static native int C_Encrypt(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pEncryptedData, NativeLongByReference pulEncryptedDataLen);
+        public static native int C_EncryptUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen, Pointer pEncryptedPart, NativeLongByReference pulEncryptedPartLen);
+        public static native int C_EncryptFinal(NativeLong hSession, Pointer pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen);
+        public static native int C_Decrypt(NativeLong hSession, Pointer pEncryptedData, NativeLong ulEncryptedDataLen, Pointer pData, NativeLongByReference pulDataLen);
+        public static native int C_DecryptUpdate(NativeLong hSession, Pointer pEncryptedPart, NativeLong ulEncryptedPartLen, Pointer pData, NativeLongByReference pulDataLen);
+        public static native int C_DecryptFinal(NativeLong hSession, Pointer pLastPart, NativeLongByReference pulLastPartLen);
+        public static native int C_Digest(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pDigest, NativeLongByReference pulDigestLen);
+        public static native int C_DigestUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen);
+        public static native int C_DigestFinal(NativeLong hSession, Pointer pDigest, NativeLongByReference pulDigestLen);
+        public static native int C_Sign(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pSignature, NativeLongByReference pulSignatureLen);
+        public static native int C_SignUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen);
+        public static native int C_SignFinal(NativeLong hSession, Pointer pSignature, NativeLongByReference pulSignatureLen);
+        public static native int C_Verify(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pSignature, NativeLong ulSignatureLen);
+        public static native int C_VerifyUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen);
+        public static native int C_VerifyFinal(NativeLong hSession, Pointer pSignature, NativeLong ulSignatureLen);
+
+        // data functions with heap buffers, array offset is the buffer position
+        public static native int C_Encrypt(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pEncryptedData, NativeLongByReference pulEncryptedDataLen);
+        public static native int C_EncryptUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen, ByteBuffer pEncryptedPart, NativeLongByReference pulEncryptedPartLen);
+        public static native int C_EncryptFinal(NativeLong hSession, ByteBuffer pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen);
+        public static native int C_Decrypt(NativeLong hSession, ByteBuffer pEncryptedData, NativeLong ulEncryptedDataLen, ByteBuffer pData, NativeLongByReference pulDataLen);
+        public static native int C_DecryptUpdate(NativeLong hSession, ByteBuffer pEncryptedPart, NativeLong ulEncryptedPartLen, ByteBuffer pData, NativeLongByReference pulDataLen);
+        public static native int C_DecryptFinal(NativeLong hSession, ByteBuffer pLastPart, NativeLongByReference pulLastPartLen);
+        public static native int C_Digest(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pDigest, NativeLongByReference pulDigestLen);
+        public static native int C_DigestUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen);
+        public static native int C_DigestFinal(NativeLong hSession, ByteBuffer pDigest, NativeLongByReference pulDigestLen);
+        public static native int C_Sign(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pSignature, NativeLongByReference pulSignatureLen);
+        public static native int C_SignUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen);
+        public static native int C_SignFinal(NativeLong hSession, ByteBuffer pSignature, NativeLongByReference pulSignatureLen);
+        public static native int C_Verify(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pSignature, NativeLong ulSignatureLen);
+        public static native int C_VerifyUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen);
+        public static native int C_VerifyFinal(NativeLong hSession, ByteBuffer pSignature, NativeLong ulSignatureLen);
+    }
+
+    /**
+     * Registers the direct mapped methods against the given library.  Subsequent calls
+     * with the same library return a new instance sharing the registration.
+     * @param customLibrary library name or path
+     * @throws IllegalStateException if a different library was already registered
+     */
+    public JNADirectNative(String customLibrary) {
+        synchronized (JNADirectNative.class) {
+            if (libraryName == null) {
+                Native.register(Direct.class, NativeLibrary.getInstance(customLibrary));
+                libraryName = customLibrary;
+            } else if (!libraryName.equals(customLibrary)) {
+                throw new IllegalStateException("JNA direct mapping already registered to library "
+                    + libraryName + ", cannot register " + customLibrary);
+            }
+        }
+    }
+
+    public int C_Initialize(JNA_CK_C_INITIALIZE_ARGS pInitArgs) {
+        return Direct.C_Initialize(pInitArgs);
+    }
+
+    public int C_Finalize(Pointer pReserved) {
+        return Direct.C_Finalize(pReserved);
+    }
+
+    public int C_GetInfo(JNA_CK_INFO pInfo) {
+        return Direct.C_GetInfo(pInfo);
+    }
+
+    public int C_GetSlotList(byte tokenPresent, LongArray pSlotList, NativeLongByReference pulCount) {
+        return Direct.C_GetSlotList(tokenPresent, pSlotList, pulCount);
+    }
+
+    public int C_GetSlotInfo(NativeLong slotID, JNA_CK_SLOT_INFO pInfo) {
+        return Direct.C_GetSlotInfo(slotID, pInfo);
+    }
+
+    public int C_GetTokenInfo(NativeLong slotID, JNA_CK_TOKEN_INFO pInfo) {
+        return Direct.C_GetTokenInfo(slotID, pInfo);
+    }
+
+    public int C_WaitForSlotEvent(NativeLong flags, NativeLongByReference pSlot, Pointer pReserved) {
+        return Direct.C_WaitForSlotEvent(flags, pSlot, pReserved);
+    }
+
+    public int C_GetMechanismList(NativeLong slotID, LongArray pMechanismList, NativeLongByReference pulCount) {
+        return Direct.C_GetMechanismList(slotID, pMechanismList, pulCount);
+    }
+
+    public int C_GetMechanismInfo(NativeLong slotID, NativeLong type, JNA_CK_MECHANISM_INFO pInfo) {
+        return Direct.C_GetMechanismInfo(slotID, type, pInfo);
+    }
+
+    public int C_InitToken(NativeLong slotID, byte[] pPin, NativeLong ulPinLen, byte[] pLabel32) {
+        return Direct.C_InitToken(slotID, pPin, ulPinLen, pLabel32);
+    }
+
+    public int C_InitPIN(NativeLong hSession, byte[] pPin, NativeLong ulPinLen) {
+        return Direct.C_InitPIN(hSession, pPin, ulPinLen);
+    }
+
+    public int C_SetPIN(NativeLong hSession, byte[] pOldPin, NativeLong ulOldLen, byte[] pNewPin, NativeLong ulNewLen) {
+        return Direct.C_SetPIN(hSession, pOldPin, ulOldLen, pNewPin, ulNewLen);
+    }
+
+    public int C_OpenSession(NativeLong slotID, NativeLong flags, Pointer application, JNA_CK_NOTIFY notify, NativeLongByReference phSession) {
+        return Direct.C_OpenSession(slotID, flags, application, notify, phSession);
+    }
+
+    public int C_CloseSession(NativeLong hSession) {
+        return Direct.C_CloseSession(hSession);
+    }
+
+    public int C_CloseAllSessions(NativeLong slotID) {
+        return Direct.C_CloseAllSessions(slotID);
+    }
+
+    public int C_GetSessionInfo(NativeLong hSession, JNA_CK_SESSION_INFO pInfo) {
+        return Direct.C_GetSessionInfo(hSession, pInfo);
+    }
+
+    public int C_GetOperationState(NativeLong hSession, byte[] pOperationState, NativeLongByReference pulOperationStateLen) {
+        return Direct.C_GetOperationState(hSession, pOperationState, pulOperationStateLen);
+    }
+
+    public int C_SetOperationState(NativeLong hSession, byte[] pOperationState, NativeLong ulOperationStateLen, NativeLong hEncryptionKey, NativeLong hAuthenticationKey) {
+        return Direct.C_SetOperationState(hSession, pOperationState, ulOperationStateLen, hEncryptionKey, hAuthenticationKey);
+    }
+
+    public int C_Login(NativeLong hSession, NativeLong userType, byte[] pPin, NativeLong ulPinLen) {
+        return Direct.C_Login(hSession, userType, pPin, ulPinLen);
+    }
+
+    public int C_Logout(NativeLong hSession) {
+        return Direct.C_Logout(hSession);
+    }
+
+    public int C_CreateObject(NativeLong hSession, Template pTemplate, NativeLong ulCount, NativeLongByReference phObject) {
+        return Direct.C_CreateObject(hSession, pTemplate, ulCount, phObject);
+    }
+
+    public int C_CopyObject(NativeLong hSession, NativeLong hObject, Template pTemplate, NativeLong ulCount, NativeLongByReference phNewObject) {
+        return Direct.C_CopyObject(hSession, hObject, pTemplate, ulCount, phNewObject);
+    }
+
+    public int C_DestroyObject(NativeLong hSession, NativeLong hObject) {
+        return Direct.C_DestroyObject(hSession, hObject);
+    }
+
+    public int C_GetObjectSize(NativeLong hSession, NativeLong hObject, NativeLongByReference pulSize) {
+        return Direct.C_GetObjectSize(hSession, hObject, pulSize);
+    }
+
+    public int C_GetAttributeValue(NativeLong hSession, NativeLong hObject, Template pTemplate, NativeLong ulCount) {
+        return Direct.C_GetAttributeValue(hSession, hObject, pTemplate, ulCount);
+    }
+
+    public int C_SetAttributeValue(NativeLong hSession, NativeLong hObject, Template pTemplate, NativeLong ulCount) {
+        return Direct.C_SetAttributeValue(hSession, hObject, pTemplate, ulCount);
+    }
+
+    public int C_FindObjectsInit(NativeLong hSession, Template pTemplate, NativeLong ulCount) {
+        return Direct.C_FindObjectsInit(hSession, pTemplate, ulCount);
+    }
+
+    public int C_FindObjects(NativeLong hSession, LongArray phObject, NativeLong ulMaxObjectCount, NativeLongByReference pulObjectCount) {
+        return Direct.C_FindObjects(hSession, phObject, ulMaxObjectCount, pulObjectCount);
+    }
+
+    public int C_FindObjectsFinal(NativeLong hSession) {
+        return Direct.C_FindObjectsFinal(hSession);
+    }
+
+    public int C_EncryptInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey) {
+        return Direct.C_EncryptInit(hSession, pMechanism, hKey);
+    }
+
+    public int C_Encrypt(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pEncryptedData, NativeLongByReference pulEncryptedDataLen) {
+        return Direct.C_Encrypt(hSession, pData, ulDataLen, pEncryptedData, pulEncryptedDataLen);
+    }
+
+    public int C_EncryptUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen, byte[] pEncryptedPart, NativeLongByReference pulEncryptedPartLen) {
+        return Direct.C_EncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+    }
+
+    public int C_EncryptFinal(NativeLong hSession, byte[] pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen) {
+        return Direct.C_EncryptFinal(hSession, pLastEncryptedPart, pulLastEncryptedPartLen);
+    }
+
+    public int C_DecryptInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey) {
+        return Direct.C_DecryptInit(hSession, pMechanism, hKey);
+    }
+
+    public int C_Decrypt(NativeLong hSession, byte[] pEncryptedData, NativeLong ulEncryptedDataLen, byte[] pData, NativeLongByReference pulDataLen) {
+        return Direct.C_Decrypt(hSession, pEncryptedData, ulEncryptedDataLen, pData, pulDataLen);
+    }
+
+    public int C_DecryptUpdate(NativeLong hSession, byte[] pEncryptedPart, NativeLong ulEncryptedPartLen, byte[] pData, NativeLongByReference pulDataLen) {
+        return Direct.C_DecryptUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pData, pulDataLen);
+    }
+
+    public int C_DecryptFinal(NativeLong hSession, byte[] pLastPart, NativeLongByReference pulLastPartLen) {
+        return Direct.C_DecryptFinal(hSession, pLastPart, pulLastPartLen);
+    }
+
+    public int C_DigestInit(NativeLong hSession, JNA_CKM pMechanism) {
+        return Direct.C_DigestInit(hSession, pMechanism);
+    }
+
+    public int C_Digest(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pDigest, NativeLongByReference pulDigestLen) {
+        return Direct.C_Digest(hSession, pData, ulDataLen, pDigest, pulDigestLen);
+    }
+
+    public int C_DigestUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen) {
+        return Direct.C_DigestUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_DigestKey(NativeLong hSession, NativeLong hKey) {
+        return Direct.C_DigestKey(hSession, hKey);
+    }
+
+    public int C_DigestFinal(NativeLong hSession, byte[] pDigest, NativeLongByReference pulDigestLen) {
+        return Direct.C_DigestFinal(hSession, pDigest, pulDigestLen);
+    }
+
+    public int C_SignInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey) {
+        return Direct.C_SignInit(hSession, pMechanism, hKey);
+    }
+
+    public int C_Sign(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pSignature, NativeLongByReference pulSignatureLen) {
+        return Direct.C_Sign(hSession, pData, ulDataLen, pSignature, pulSignatureLen);
+    }
+
+    public int C_SignUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen) {
+        return Direct.C_SignUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_SignFinal(NativeLong hSession, byte[] pSignature, NativeLongByReference pulSignatureLen) {
+        return Direct.C_SignFinal(hSession, pSignature, pulSignatureLen);
+    }
+
+    public int C_SignRecoverInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey) {
+        return Direct.C_SignRecoverInit(hSession, pMechanism, hKey);
+    }
+
+    public int C_SignRecover(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pSignature, NativeLongByReference pulSignatureLen) {
+        return Direct.C_SignRecover(hSession, pData, ulDataLen, pSignature, pulSignatureLen);
+    }
+
+    public int C_VerifyInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey) {
+        return Direct.C_VerifyInit(hSession, pMechanism, hKey);
+    }
+
+    public int C_Verify(NativeLong hSession, byte[] pData, NativeLong ulDataLen, byte[] pSignature, NativeLong ulSignatureLen) {
+        return Direct.C_Verify(hSession, pData, ulDataLen, pSignature, ulSignatureLen);
+    }
+
+    public int C_VerifyUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen) {
+        return Direct.C_VerifyUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_VerifyFinal(NativeLong hSession, byte[] pSignature, NativeLong ulSignatureLen) {
+        return Direct.C_VerifyFinal(hSession, pSignature, ulSignatureLen);
+    }
+
+    public int C_VerifyRecoverInit(NativeLong hSession, JNA_CKM pMechanism, NativeLong hKey) {
+        return Direct.C_VerifyRecoverInit(hSession, pMechanism, hKey);
+    }
+
+    public int C_VerifyRecover(NativeLong hSession, byte[] pSignature, NativeLong ulSignatureLen, byte[] pData, NativeLongByReference pulDataLen) {
+        return Direct.C_VerifyRecover(hSession, pSignature, ulSignatureLen, pData, pulDataLen);
+    }
+
+    public int C_DigestEncryptUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen, byte[] pEncryptedPart, NativeLongByReference pulEncryptedPartLen) {
+        return Direct.C_DigestEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+    }
+
+    public int C_DecryptDigestUpdate(NativeLong hSession, byte[] pEncryptedPart, NativeLong ulEncryptedPartLen, byte[] pPart, NativeLongByReference pulPartLen) {
+        return Direct.C_DecryptDigestUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, pulPartLen);
+    }
+
+    public int C_SignEncryptUpdate(NativeLong hSession, byte[] pPart, NativeLong ulPartLen, byte[] pEncryptedPart, NativeLongByReference pulEncryptedPartLen) {
+        return Direct.C_SignEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+    }
+
+    public int C_DecryptVerifyUpdate(NativeLong hSession, byte[] pEncryptedPart, NativeLong ulEncryptedPartLen, byte[] pPart, NativeLongByReference pulPartLen) {
+        return Direct.C_DecryptVerifyUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, pulPartLen);
+    }
+
+    public int C_GenerateKey(NativeLong hSession, JNA_CKM pMechanism, Template pTemplate, NativeLong ulCount, NativeLongByReference phKey) {
+        return Direct.C_GenerateKey(hSession, pMechanism, pTemplate, ulCount, phKey);
+    }
+
+    public int C_GenerateKeyPair(NativeLong hSession, JNA_CKM pMechanism, Template pPublicKeyTemplate, NativeLong ulPublicKeyAttributeCount, Template pPrivateKeyTemplate, NativeLong ulPrivateKeyAttributeCount, NativeLongByReference phPublicKey, NativeLongByReference phPrivateKey) {
+        return Direct.C_GenerateKeyPair(hSession, pMechanism, pPublicKeyTemplate, ulPublicKeyAttributeCount, pPrivateKeyTemplate, ulPrivateKeyAttributeCount, phPublicKey, phPrivateKey);
+    }
+
+    public int C_WrapKey(NativeLong hSession, JNA_CKM pMechanism, NativeLong hWrappingKey, NativeLong hKey, byte[] pWrappedKey, NativeLongByReference pulWrappedKeyLen) {
+        return Direct.C_WrapKey(hSession, pMechanism, hWrappingKey, hKey, pWrappedKey, pulWrappedKeyLen);
+    }
+
+    public int C_UnwrapKey(NativeLong hSession, JNA_CKM pMechanism, NativeLong hUnwrappingKey, byte[] pWrappedKey, NativeLong ulWrappedKeyLen, Template pTemplate, NativeLong ulAttributeCount, NativeLongByReference phKey) {
+        return Direct.C_UnwrapKey(hSession, pMechanism, hUnwrappingKey, pWrappedKey, ulWrappedKeyLen, pTemplate, ulAttributeCount, phKey);
+    }
+
+    public int C_DeriveKey(NativeLong hSession, JNA_CKM pMechanism, NativeLong hBaseKey, Template pTemplate, NativeLong ulAttributeCount, NativeLongByReference phKey) {
+        return Direct.C_DeriveKey(hSession, pMechanism, hBaseKey, pTemplate, ulAttributeCount, phKey);
+    }
+
+    public int C_SeedRandom(NativeLong hSession, byte[] pSeed, NativeLong ulSeedLen) {
+        return Direct.C_SeedRandom(hSession, pSeed, ulSeedLen);
+    }
+
+    public int C_GenerateRandom(NativeLong hSession, byte[] pRandom, NativeLong ulRandomLen) {
+        return Direct.C_GenerateRandom(hSession, pRandom, ulRandomLen);
+    }
+
+    public int C_GetFunctionStatus(NativeLong hSession) {
+        return Direct.C_GetFunctionStatus(hSession);
+    }
+
+    public int C_CancelFunction(NativeLong hSession) {
+        return Direct.C_CancelFunction(hSession);
+    }
+
+    public int C_Encrypt(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pEncryptedData, NativeLongByReference pulEncryptedDataLen) {
+        return Direct.C_Encrypt(hSession, pData, ulDataLen, pEncryptedData, pulEncryptedDataLen);
+    }
+
+    public int C_EncryptUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen, Pointer pEncryptedPart, NativeLongByReference pulEncryptedPartLen) {
+        return Direct.C_EncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+    }
+
+    public int C_EncryptFinal(NativeLong hSession, Pointer pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen) {
+        return Direct.C_EncryptFinal(hSession, pLastEncryptedPart, pulLastEncryptedPartLen);
+    }
+
+    public int C_Decrypt(NativeLong hSession, Pointer pEncryptedData, NativeLong ulEncryptedDataLen, Pointer pData, NativeLongByReference pulDataLen) {
+        return Direct.C_Decrypt(hSession, pEncryptedData, ulEncryptedDataLen, pData, pulDataLen);
+    }
+
+    public int C_DecryptUpdate(NativeLong hSession, Pointer pEncryptedPart, NativeLong ulEncryptedPartLen, Pointer pData, NativeLongByReference pulDataLen) {
+        return Direct.C_DecryptUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pData, pulDataLen);
+    }
+
+    public int C_DecryptFinal(NativeLong hSession, Pointer pLastPart, NativeLongByReference pulLastPartLen) {
+        return Direct.C_DecryptFinal(hSession, pLastPart, pulLastPartLen);
+    }
+
+    public int C_Digest(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pDigest, NativeLongByReference pulDigestLen) {
+        return Direct.C_Digest(hSession, pData, ulDataLen, pDigest, pulDigestLen);
+    }
+
+    public int C_DigestUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen) {
+        return Direct.C_DigestUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_DigestFinal(NativeLong hSession, Pointer pDigest, NativeLongByReference pulDigestLen) {
+        return Direct.C_DigestFinal(hSession, pDigest, pulDigestLen);
+    }
+
+    public int C_Sign(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pSignature, NativeLongByReference pulSignatureLen) {
+        return Direct.C_Sign(hSession, pData, ulDataLen, pSignature, pulSignatureLen);
+    }
+
+    public int C_SignUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen) {
+        return Direct.C_SignUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_SignFinal(NativeLong hSession, Pointer pSignature, NativeLongByReference pulSignatureLen) {
+        return Direct.C_SignFinal(hSession, pSignature, pulSignatureLen);
+    }
+
+    public int C_Verify(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pSignature, NativeLong ulSignatureLen) {
+        return Direct.C_Verify(hSession, pData, ulDataLen, pSignature, ulSignatureLen);
+    }
+
+    public int C_VerifyUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen) {
+        return Direct.C_VerifyUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_VerifyFinal(NativeLong hSession, Pointer pSignature, NativeLong ulSignatureLen) {
+        return Direct.C_VerifyFinal(hSession, pSignature, ulSignatureLen);
+    }
+
+    public int C_Encrypt(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pEncryptedData, NativeLongByReference pulEncryptedDataLen) {
+        return Direct.C_Encrypt(hSession, pData, ulDataLen, pEncryptedData, pulEncryptedDataLen);
+    }
+
+    public int C_EncryptUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen, ByteBuffer pEncryptedPart, NativeLongByReference pulEncryptedPartLen) {
+        return Direct.C_EncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, pulEncryptedPartLen);
+    }
+
+    public int C_EncryptFinal(NativeLong hSession, ByteBuffer pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen) {
+        return Direct.C_EncryptFinal(hSession, pLastEncryptedPart, pulLastEncryptedPartLen);
+    }
+
+    public int C_Decrypt(NativeLong hSession, ByteBuffer pEncryptedData, NativeLong ulEncryptedDataLen, ByteBuffer pData, NativeLongByReference pulDataLen) {
+        return Direct.C_Decrypt(hSession, pEncryptedData, ulEncryptedDataLen, pData, pulDataLen);
+    }
+
+    public int C_DecryptUpdate(NativeLong hSession, ByteBuffer pEncryptedPart, NativeLong ulEncryptedPartLen, ByteBuffer pData, NativeLongByReference pulDataLen) {
+        return Direct.C_DecryptUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pData, pulDataLen);
+    }
+
+    public int C_DecryptFinal(NativeLong hSession, ByteBuffer pLastPart, NativeLongByReference pulLastPartLen) {
+        return Direct.C_DecryptFinal(hSession, pLastPart, pulLastPartLen);
+    }
+
+    public int C_Digest(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pDigest, NativeLongByReference pulDigestLen) {
+        return Direct.C_Digest(hSession, pData, ulDataLen, pDigest, pulDigestLen);
+    }
+
+    public int C_DigestUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen) {
+        return Direct.C_DigestUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_DigestFinal(NativeLong hSession, ByteBuffer pDigest, NativeLongByReference pulDigestLen) {
+        return Direct.C_DigestFinal(hSession, pDigest, pulDigestLen);
+    }
+
+    public int C_Sign(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pSignature, NativeLongByReference pulSignatureLen) {
+        return Direct.C_Sign(hSession, pData, ulDataLen, pSignature, pulSignatureLen);
+    }
+
+    public int C_SignUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen) {
+        return Direct.C_SignUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_SignFinal(NativeLong hSession, ByteBuffer pSignature, NativeLongByReference pulSignatureLen) {
+        return Direct.C_SignFinal(hSession, pSignature, pulSignatureLen);
+    }
+
+    public int C_Verify(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pSignature, NativeLong ulSignatureLen) {
+        return Direct.C_Verify(hSession, pData, ulDataLen, pSignature, ulSignatureLen);
+    }
+
+    public int C_VerifyUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen) {
+        return Direct.C_VerifyUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public int C_VerifyFinal(NativeLong hSession, ByteBuffer pSignature, NativeLong ulSignatureLen) {
+        return Direct.C_VerifyFinal(hSession, pSignature, ulSignatureLen);
+    }
+}
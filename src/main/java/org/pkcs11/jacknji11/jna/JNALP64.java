@@ -0,0 +1,835 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.pkcs11.jacknji11.jna;
+
+import java.nio.ByteBuffer;
+
+import org.pkcs11.jacknji11.C;
+import org.pkcs11.jacknji11.CKA;
+import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.CKR;
+import org.pkcs11.jacknji11.CK_MECHANISM_INFO;
+import org.pkcs11.jacknji11.CK_NOTIFY;
+import org.pkcs11.jacknji11.CK_SESSION_INFO;
+import org.pkcs11.jacknji11.CK_SLOT_INFO;
+import org.pkcs11.jacknji11.CK_TOKEN_INFO;
+import org.pkcs11.jacknji11.LongRef;
+import org.pkcs11.jacknji11.NativePointer;
+import org.pkcs11.jacknji11.NioBuf;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * JNA PKCS#11 provider using JNA direct mapping specialised for LP64
+ * platforms (64-bit Linux, macOS) where CK_ULONG and pointers are the same
+ * size as a java long.  Handles and lengths are passed as long rather than
+ * boxed in {@link NativeLong}, pointers are passed as long addresses, and
+ * CK_ULONG out-params use a per-thread block of native memory rather than a
+ * new {@link com.sun.jna.ptr.NativeLongByReference} per call.  Functions that
+ * take no CK_ULONG (C_Initialize, C_GetInfo) are inherited from {@link JNADirect}.
+ * <p>
+ * The per-thread out-params are read as soon as the native call returns,
+ * so a CK_NOTIFY callback must not call back into the provider on the same
+ * thread while a call is in progress.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class JNALP64 extends JNADirect {
+    private static String libraryName;
+
+    /** per-thread CK_ULONG out-params */
+    private static final ThreadLocal<Slots> SLOTS = new ThreadLocal<Slots>() {
+        @Override
+        protected Slots initialValue() {
+            return new Slots();
+        }
+    };
+
+    /**
+     * Native memory for the CK_ULONG out-params of a single call, at most
+     * 2 are used (C_GenerateKeyPair).
+     */
+    static final class Slots {
+        private final Memory memory = new Memory(2 * 8);
+        private final long address = Pointer.nativeValue(memory);
+
+        /** @return address of slot i after setting it to value */
+        long in(int i, long value) {
+            memory.setLong(i * 8, value);
+            return address + i * 8;
+        }
+
+        /** @return value of slot i */
+        long out(int i) {
+            return memory.getLong(i * 8);
+        }
+    }
+
+    /**
+     * Static natives registered against the cryptoki library, CK_ULONG, CK_RV
+     * and pointers are all mapped to long.
+     */
+    static class LP64 {
+        public static native long C_Finalize(long pReserved);
+        public static native long C_GetSlotList(byte tokenPresent, LongArray pSlotList, long pulCount);
+        public static native long C_GetSlotInfo(long slotID, JNA_CK_SLOT_INFO pInfo);
+        public static native long C_GetTokenInfo(long slotID, JNA_CK_TOKEN_INFO pInfo);
+        public static native long C_WaitForSlotEvent(long flags, long pSlot, long pReserved);
+        public static native long C_GetMechanismList(long slotID, LongArray pMechanismList, long pulCount);
+        public static native long C_GetMechanismInfo(long slotID, long type, JNA_CK_MECHANISM_INFO pInfo);
+        public static native long C_InitToken(long slotID, byte[] pPin, long ulPinLen, byte[] pLabel32);
+        public static native long C_InitPIN(long hSession, byte[] pPin, long ulPinLen);
+        public static native long C_SetPIN(long hSession, byte[] pOldPin, long ulOldLen, byte[] pNewPin, long ulNewLen);
+        public static native long C_OpenSession(long slotID, long flags, long application, JNA_CK_NOTIFY notify, long phSession);
+        public static native long C_CloseSession(long hSession);
+        public static native long C_CloseAllSessions(long slotID);
+        public static native long C_GetSessionInfo(long hSession, JNA_CK_SESSION_INFO pInfo);
+        public static native long C_GetOperationState(long hSession, byte[] pOperationState, long pulOperationStateLen);
+        public static native long C_SetOperationState(long hSession, byte[] pOperationState, long ulOperationStateLen, long hEncryptionKey, long hAuthenticationKey);
+        public static native long C_Login(long hSession, long userType, byte[] pPin, long ulPinLen);
+        public static native long C_Logout(long hSession);
+        public static native long C_CreateObject(long hSession, Template pTemplate, long ulCount, long phObject);
+        public static native long C_CopyObject(long hSession, long hObject, Template pTemplate, long ulCount, long phNewObject);
+        public static native long C_DestroyObject(long hSession, long hObject);
+        public static native long C_GetObjectSize(long hSession, long hObject, long pulSize);
+        public static native long C_GetAttributeValue(long hSession, long hObject, Template pTemplate, long ulCount);
+        public static native long C_SetAttributeValue(long hSession, long hObject, Template pTemplate, long ulCount);
+        public static native long C_FindObjectsInit(long hSession, Template pTemplate, long ulCount);
+        public static native long C_FindObjects(long hSession, LongArray phObject, long ulMaxObjectCount, long pulObjectCount);
+        public static native long C_FindObjectsFinal(long hSession);
+        public static native long C_EncryptInit(long hSession, JNA_CKM pMechanism, long hKey);
+        public static native long C_Encrypt(long hSession, byte[] pData, long ulDataLen, byte[] pEncryptedData, long pulEncryptedDataLen);
+        public static native long C_EncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, long pulEncryptedPartLen);
+        public static native long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, long pulLastEncryptedPartLen);
+        public static native long C_DecryptInit(long hSession, JNA_CKM pMechanism, long hKey);
+        public static native long C_Decrypt(long hSession, byte[] pEncryptedData, long ulEncryptedDataLen, byte[] pData, long pulDataLen);
+        public static native long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pData, long pulDataLen);
+        public static native long C_DecryptFinal(long hSession, byte[] pLastPart, long pulLastPartLen);
+        public static native long C_DigestInit(long hSession, JNA_CKM pMechanism);
+        public static native long C_Digest(long hSession, byte[] pData, long ulDataLen, byte[] pDigest, long pulDigestLen);
+        public static native long C_DigestUpdate(long hSession, byte[] pPart, long ulPartLen);
+        public static native long C_DigestKey(long hSession, long hKey);
+        public static native long C_DigestFinal(long hSession, byte[] pDigest, long pulDigestLen);
+        public static native long C_SignInit(long hSession, JNA_CKM pMechanism, long hKey);
+        public static native long C_Sign(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, long pulSignatureLen);
+        public static native long C_SignUpdate(long hSession, byte[] pPart, long ulPartLen);
+        public static native long C_SignFinal(long hSession, byte[] pSignature, long pulSignatureLen);
+        public static native long C_SignRecoverInit(long hSession, JNA_CKM pMechanism, long hKey);
+        public static native long C_SignRecover(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, long pulSignatureLen);
+        public static native long C_VerifyInit(long hSession, JNA_CKM pMechanism, long hKey);
+        public static native long C_Verify(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, long ulSignatureLen);
+        public static native long C_VerifyUpdate(long hSession, byte[] pPart, long ulPartLen);
+        public static native long C_VerifyFinal(long hSession, byte[] pSignature, long ulSignatureLen);
+        public static native long C_VerifyRecoverInit(long hSession, JNA_CKM pMechanism, long hKey);
+        public static native long C_VerifyRecover(long hSession, byte[] pSignature, long ulSignatureLen, byte[] pData, long pulDataLen);
+        public static native long C_DigestEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, long pulEncryptedPartLen);
+        public static native long C_DecryptDigestUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, long pulPartLen);
+        public static native long C_SignEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, long pulEncryptedPartLen);
+        public static native long C_DecryptVerifyUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, long pulPartLen);
+        public static native long C_GenerateKey(long hSession, JNA_CKM pMechanism, Template pTemplate, long ulCount, long phKey);
+        public static native long C_GenerateKeyPair(long hSession, JNA_CKM pMechanism, Template pPublicKeyTemplate, long ulPublicKeyAttributeCount, Template pPrivateKeyTemplate, long ulPrivateKeyAttributeCount, long phPublicKey, long phPrivateKey);
+        public static native long C_WrapKey(long hSession, JNA_CKM pMechanism, long hWrappingKey, long hKey, byte[] pWrappedKey, long pulWrappedKeyLen);
+        public static native long C_UnwrapKey(long hSession, JNA_CKM pMechanism, long hUnwrappingKey, byte[] pWrappedKey, long ulWrappedKeyLen, Template pTemplate, long ulAttributeCount, long phKey);
+        public static native long C_DeriveKey(long hSession, JNA_CKM pMechanism, long hBaseKey, Template pTemplate, long ulAttributeCount, long phKey);
+        public static native long C_SeedRandom(long hSession, byte[] pSeed, long ulSeedLen);
+        public static native long C_GenerateRandom(long hSession, byte[] pRandom, long ulRandomLen);
+        public static native long C_GetFunctionStatus(long hSession);
+        public static native long C_CancelFunction(long hSession);
+        public static native long C_Encrypt(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pEncryptedData, long pulEncryptedDataLen);
+        public static native long C_EncryptUpdate(long hSession, ByteBuffer pPart, long ulPartLen, ByteBuffer pEncryptedPart, long pulEncryptedPartLen);
+        public static native long C_EncryptFinal(long hSession, ByteBuffer pLastEncryptedPart, long pulLastEncryptedPartLen);
+        public static native long C_Decrypt(long hSession, ByteBuffer pEncryptedData, long ulEncryptedDataLen, ByteBuffer pData, long pulDataLen);
+        public static native long C_DecryptUpdate(long hSession, ByteBuffer pEncryptedPart, long ulEncryptedPartLen, ByteBuffer pData, long pulDataLen);
+        public static native long C_DecryptFinal(long hSession, ByteBuffer pLastPart, long pulLastPartLen);
+        public static native long C_Digest(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pDigest, long pulDigestLen);
+        public static native long C_DigestUpdate(long hSession, ByteBuffer pPart, long ulPartLen);
+        public static native long C_DigestFinal(long hSession, ByteBuffer pDigest, long pulDigestLen);
+        public static native long C_Sign(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long pulSignatureLen);
+        public static native long C_SignUpdate(long hSession, ByteBuffer pPart, long ulPartLen);
+        public static native long C_SignFinal(long hSession, ByteBuffer pSignature, long pulSignatureLen);
+        public static native long C_Verify(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long ulSignatureLen);
+        public static native long C_VerifyUpdate(long hSession, ByteBuffer pPart, long ulPartLen);
+        public static native long C_VerifyFinal(long hSession, ByteBuffer pSignature, long ulSignatureLen);
+    }
+
+    public JNALP64() {
+        this(C.getLibraryName());
+    }
+
+    /**
+     * @param customLibrary library name or path
+     * @throws UnsupportedOperationException if CK_ULONG is not 8 bytes on this platform
+     * @throws IllegalStateException if a different library was already registered
+     */
+    public JNALP64(String customLibrary) {
+        super(check(customLibrary));
+        synchronized (JNALP64.class) {
+            if (libraryName == null) {
+                Native.register(LP64.class, NativeLibrary.getInstance(customLibrary));
+                libraryName = customLibrary;
+            }
+        }
+    }
+
+    private static String check(String customLibrary) {
+        if (NativeLong.SIZE != 8 || Native.POINTER_SIZE != 8) {
+            throw new UnsupportedOperationException("JNALP64 requires 8 byte CK_ULONG and pointers, use JNADirect on this platform");
+        }
+        return customLibrary;
+    }
+
+    public long C_Finalize(NativePointer pReserved) {
+        return LP64.C_Finalize(pReserved.getAddress());
+    }
+
+    public long C_GetSlotList(boolean tokenPresent, long[] pSlotList, LongRef pulCount) {
+        LongArray jna_pSlotList = new LongArray(pSlotList);
+        Slots slots = SLOTS.get();
+        long jna_pulCount = slots.in(0, pulCount.value);
+        long rv = LP64.C_GetSlotList(tokenPresent ? (byte)1 : (byte)0, jna_pSlotList, jna_pulCount);
+        jna_pSlotList.update();
+        pulCount.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_GetSlotInfo(long slotID, CK_SLOT_INFO pInfo) {
+        JNA_CK_SLOT_INFO jna_pInfo = new JNA_CK_SLOT_INFO().readFrom(pInfo);
+        long rv = LP64.C_GetSlotInfo(slotID, jna_pInfo);
+        jna_pInfo.writeTo(pInfo);
+        return rv;
+    }
+
+    public long C_GetTokenInfo(long slotID, CK_TOKEN_INFO pInfo) {
+        JNA_CK_TOKEN_INFO jna_pInfo = new JNA_CK_TOKEN_INFO().readFrom(pInfo);
+        long rv = LP64.C_GetTokenInfo(slotID, jna_pInfo);
+        jna_pInfo.writeTo(pInfo);
+        return rv;
+    }
+
+    public long C_WaitForSlotEvent(long flags, LongRef pSlot, NativePointer pReserved) {
+        Slots slots = SLOTS.get();
+        long jna_pSlot = slots.in(0, pSlot.value);
+        long jna_pReserved = pReserved.getAddress();
+        long rv = LP64.C_WaitForSlotEvent(flags, jna_pSlot, jna_pReserved);
+        pSlot.value = slots.out(0);
+        pReserved.setAddress(jna_pReserved);
+        return rv;
+    }
+
+    public long C_GetMechanismList(long slotID, long[] pMechanismList, LongRef pulCount) {
+        LongArray jna_pMechanismList = new LongArray(pMechanismList);
+        Slots slots = SLOTS.get();
+        long jna_pulCount = slots.in(0, pulCount.value);
+        long rv = LP64.C_GetMechanismList(slotID, jna_pMechanismList, jna_pulCount);
+        jna_pMechanismList.update();
+        pulCount.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_GetMechanismInfo(long slotID, long type, CK_MECHANISM_INFO pInfo) {
+        JNA_CK_MECHANISM_INFO jna_pInfo = new JNA_CK_MECHANISM_INFO().readFrom(pInfo);
+        long rv = LP64.C_GetMechanismInfo(slotID, type, jna_pInfo);
+        jna_pInfo.writeTo(pInfo);
+        return rv;
+    }
+
+    public long C_InitToken(long slotID, byte[] pPin, long ulPinLen, byte[] pLabel32) {
+        return LP64.C_InitToken(slotID, pPin, ulPinLen, pLabel32);
+    }
+
+    public long C_InitPIN(long hSession, byte[] pPin, long ulPinLen) {
+        return LP64.C_InitPIN(hSession, pPin, ulPinLen);
+    }
+
+    public long C_SetPIN(long hSession, byte[] pOldPin, long ulOldLen, byte[] pNewPin, long ulNewLen) {
+        return LP64.C_SetPIN(hSession, pOldPin, ulOldLen, pNewPin, ulNewLen);
+    }
+
+    public long C_OpenSession(long slotID, long flags, NativePointer application, final CK_NOTIFY notify, LongRef phSession) {
+        long jna_application = application.getAddress();
+        final JNA_CK_NOTIFY jna_notify;
+        if (notify == null) {
+            jna_notify = null;
+        } else {
+            jna_notify = new JNA_CK_NOTIFY() {
+                public NativeLong invoke(NativeLong hSession, NativeLong event, Pointer pApplication) {
+                    return new NativeLong(notify.invoke(hSession.longValue(), event.longValue(), new NativePointer(Pointer.nativeValue(pApplication))));
+                }
+            };
+        }
+        Slots slots = SLOTS.get();
+        long jna_phSession = slots.in(0, phSession.value);
+        long rv = LP64.C_OpenSession(slotID, flags, jna_application, jna_notify, jna_phSession);
+        phSession.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_CloseSession(long hSession) {
+        return LP64.C_CloseSession(hSession);
+    }
+
+    public long C_CloseAllSessions(long slotID) {
+        return LP64.C_CloseAllSessions(slotID);
+    }
+
+    public long C_GetSessionInfo(long hSession, CK_SESSION_INFO pInfo) {
+        JNA_CK_SESSION_INFO jna_pInfo = new JNA_CK_SESSION_INFO().readFrom(pInfo);
+        long rv = LP64.C_GetSessionInfo(hSession, jna_pInfo);
+        jna_pInfo.writeTo(pInfo);
+        return rv;
+    }
+
+    public long C_GetOperationState(long hSession, byte[] pOperationState, LongRef pulOperationStateLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulOperationStateLen = slots.in(0, pulOperationStateLen.value);
+        long rv = LP64.C_GetOperationState(hSession, pOperationState, jna_pulOperationStateLen);
+        pulOperationStateLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_SetOperationState(long hSession, byte[] pOperationState, long ulOperationStateLen, long hEncryptionKey,
+            long hAuthenticationKey) {
+        return LP64.C_SetOperationState(hSession, pOperationState, ulOperationStateLen,
+            hEncryptionKey, hAuthenticationKey);
+    }
+
+    public long C_Login(long hSession, long userType, byte[] pPin, long ulPinLen) {
+        return LP64.C_Login(hSession, userType, pPin, ulPinLen);
+    }
+
+    public long C_Logout(long hSession) {
+        return LP64.C_Logout(hSession);
+    }
+
+    public long C_CreateObject(long hSession, CKA[] pTemplate, long ulCount, LongRef phObject) {
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+        long jna_phObject = slots.in(0, phObject.value);
+            long rv = LP64.C_CreateObject(hSession, jna_pTemplate, ulCount, jna_phObject);
+            jna_pTemplate.update();
+            phObject.value = slots.out(0);
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_CopyObject(long hSession, long hObject, CKA[] pTemplate, long ulCount, LongRef phNewObject) {
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+        long jna_phNewObject = slots.in(0, phNewObject.value);
+            long rv = LP64.C_CopyObject(hSession, hObject, jna_pTemplate, ulCount, jna_phNewObject);
+            jna_pTemplate.update();
+            phNewObject.value = slots.out(0);
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_DestroyObject(long hSession, long hObject) {
+        return LP64.C_DestroyObject(hSession, hObject);
+    }
+
+    public long C_GetObjectSize(long hSession, long hObject, LongRef pulSize) {
+        Slots slots = SLOTS.get();
+        long jna_pulSize = slots.in(0, pulSize.value);
+        long rv = LP64.C_GetObjectSize(hSession, hObject, jna_pulSize);
+        pulSize.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_GetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            long rv = LP64.C_GetAttributeValue(hSession, hObject, jna_pTemplate, ulCount);
+            jna_pTemplate.update();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_SetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            long rv = LP64.C_SetAttributeValue(hSession, hObject, jna_pTemplate, ulCount);
+            jna_pTemplate.update();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_FindObjectsInit(long hSession, CKA[] pTemplate, long ulCount) {
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            long rv = LP64.C_FindObjectsInit(hSession, jna_pTemplate, ulCount);
+            jna_pTemplate.update();
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_FindObjects(long hSession, long[] phObject, long ulMaxObjectCount, LongRef pulObjectCount) {
+        LongArray jna_phObject = new LongArray(phObject);
+        Slots slots = SLOTS.get();
+        long jna_pulObjectCOunt = slots.in(0, pulObjectCount.value);
+        long rv = LP64.C_FindObjects(hSession, jna_phObject, ulMaxObjectCount, jna_pulObjectCOunt);
+        jna_phObject.update();
+        pulObjectCount.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_FindObjectsFinal(long hSession) {
+        return LP64.C_FindObjectsFinal(hSession);
+    }
+
+    public long C_EncryptInit(long hSession, CKM pMechanism, long hKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        return LP64.C_EncryptInit(hSession, jna_pMechanism, hKey);
+    }
+
+    public long C_Encrypt(long hSession, byte[] pData, long ulDataLen, byte[] pEncryptedData, LongRef pulEncryptedDataLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulEncryptedDataLen = slots.in(0, pulEncryptedDataLen.value);
+        long rv = LP64.C_Encrypt(hSession, pData, ulDataLen, pEncryptedData, jna_pulEncryptedDataLen);
+        pulEncryptedDataLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_EncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulEncryptedPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = LP64.C_EncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jna_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulLastEncryptedPartLen = slots.in(0, pulLastEncryptedPartLen.value);
+        long rv = LP64.C_EncryptFinal(hSession, pLastEncryptedPart, jna_pulLastEncryptedPartLen);
+        pulLastEncryptedPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DecryptInit(long hSession, CKM pMechanism, long hKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        return LP64.C_DecryptInit(hSession, jna_pMechanism, hKey);
+    }
+
+    public long C_Decrypt(long hSession, byte[] pEncryptedData, long ulEncryptedDataLen, byte[] pData, LongRef pulDataLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = LP64.C_Decrypt(hSession, pEncryptedData, ulEncryptedDataLen, pData, jna_pulDataLen);
+        pulDataLen.value= slots.out(0);
+        return rv;
+    }
+
+    public long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pData, LongRef pulDataLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = LP64.C_DecryptUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pData, jna_pulDataLen);
+        pulDataLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DecryptFinal(long hSession, byte[] pLastPart, LongRef pulLastPartLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulLastPartLen = slots.in(0, pulLastPartLen.value);
+        long rv = LP64.C_DecryptFinal(hSession, pLastPart, jna_pulLastPartLen);
+        pulLastPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DigestInit(long hSession, CKM pMechanism) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        return LP64.C_DigestInit(hSession, jna_pMechanism);
+    }
+
+    public long C_Digest(long hSession, byte[] pData, long ulDataLen, byte[] pDigest, LongRef pulDigestLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = LP64.C_Digest(hSession, pData, ulDataLen, pDigest, jna_pulDigestLen);
+        pulDigestLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DigestUpdate(long hSession, byte[] pPart, long ulPartLen) {
+        return LP64.C_DigestUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public long C_DigestKey(long hSession, long hKey) {
+        return LP64.C_DigestKey(hSession, hKey);
+    }
+
+    public long C_DigestFinal(long hSession, byte[] pDigest, LongRef pulDigestLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = LP64.C_DigestFinal(hSession, pDigest, jna_pulDigestLen);
+        pulDigestLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_SignInit(long hSession, CKM pMechanism, long hKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        return LP64.C_SignInit(hSession, jna_pMechanism, hKey);
+    }
+
+    public long C_Sign(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, LongRef pulSignatureLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = LP64.C_Sign(hSession, pData, ulDataLen, pSignature, jna_pulSignatureLen);
+        pulSignatureLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_SignUpdate(long hSession, byte[] pPart, long ulPartLen) {
+        return LP64.C_SignUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public long C_SignFinal(long hSession, byte[] pSignature, LongRef pulSignatureLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = LP64.C_SignFinal(hSession, pSignature, jna_pulSignatureLen);
+        pulSignatureLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_SignRecoverInit(long hSession, CKM pMechanism, long hKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        return LP64.C_SignRecoverInit(hSession, jna_pMechanism, hKey);
+    }
+
+    public long C_SignRecover(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, LongRef pulSignatureLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = LP64.C_SignRecover(hSession, pData, ulDataLen, pSignature, jna_pulSignatureLen);
+        pulSignatureLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_VerifyInit(long hSession, CKM pMechanism, long hKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        return LP64.C_VerifyInit(hSession, jna_pMechanism, hKey);
+    }
+
+    public long C_Verify(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, long ulSignatureLen) {
+        return LP64.C_Verify(hSession, pData, ulDataLen, pSignature, ulSignatureLen);
+    }
+
+    public long C_VerifyUpdate(long hSession, byte[] pPart, long ulPartLen) {
+        return LP64.C_VerifyUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public long C_VerifyFinal(long hSession, byte[] pSignature, long ulSignatureLen) {
+        return LP64.C_VerifyFinal(hSession, pSignature, ulSignatureLen);
+    }
+
+    public long C_VerifyRecoverInit(long hSession, CKM pMechanism, long hKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        return LP64.C_VerifyRecoverInit(hSession, jna_pMechanism, hKey);
+    }
+
+    public long C_VerifyRecover(long hSession, byte[] pSignature, long ulSignatureLen, byte[] pData, LongRef pulDataLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = LP64.C_VerifyRecover(hSession, pSignature, ulSignatureLen, pData, jna_pulDataLen);
+        pulDataLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DigestEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulEncryptedPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = LP64.C_DigestEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jna_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DecryptDigestUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, LongRef pulPartLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulPartLen = slots.in(0, pulPartLen.value);
+        long rv = LP64.C_DecryptDigestUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, jna_pulPartLen);
+        pulPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_SignEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulEncryptPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = LP64.C_SignEncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jna_pulEncryptPartLen);
+        pulEncryptedPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DecryptVerifyUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, LongRef pulPartLen) {
+        Slots slots = SLOTS.get();
+        long jna_pulPartLen = slots.in(0, pulPartLen.value);
+        long rv = LP64.C_DecryptVerifyUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pPart, jna_pulPartLen);
+        pulPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_GenerateKey(long hSession, CKM pMechanism, CKA[] pTemplate, long ulCount, LongRef phKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+        long jna_phKey = slots.in(0, phKey.value);
+            long rv = LP64.C_GenerateKey(hSession, jna_pMechanism, jna_pTemplate, ulCount, jna_phKey);
+            phKey.value = slots.out(0);
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_GenerateKeyPair(long hSession, CKM pMechanism, CKA[] pPublicKeyTemplate, long ulPublicKeyAttributeCount,
+            CKA[] pPrivateKeyTemplate, long ulPrivateKeyAttributeCount, LongRef phPublicKey, LongRef phPrivateKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        Template jna_pPublicKeyTemplate = new Template(pPublicKeyTemplate);
+        try {
+            Template jna_pPrivateKeyTemplate = new Template(pPrivateKeyTemplate);
+            try {
+                Slots slots = SLOTS.get();
+                long jna_phPublicKey = slots.in(0, phPublicKey.value);
+                long jna_phPrivateKey = slots.in(1, phPrivateKey.value);
+                long rv = LP64.C_GenerateKeyPair(hSession, jna_pMechanism, jna_pPublicKeyTemplate, ulPublicKeyAttributeCount,
+                    jna_pPrivateKeyTemplate, ulPrivateKeyAttributeCount, jna_phPublicKey, jna_phPrivateKey);
+                phPublicKey.value = slots.out(0);
+                phPrivateKey.value = slots.out(1);
+                return rv;
+            } finally {
+                jna_pPrivateKeyTemplate.release();
+            }
+        } finally {
+            jna_pPublicKeyTemplate.release();
+        }
+    }
+
+    public long C_WrapKey(long hSession, CKM pMechanism, long hWrappingKey, long hKey, byte[] pWrappedKey, LongRef pulWrappedKeyLen) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        Slots slots = SLOTS.get();
+        long jna_pulWrappedKeyLen = slots.in(0, pulWrappedKeyLen.value);
+        long rv = LP64.C_WrapKey(hSession, jna_pMechanism, hWrappingKey, hKey, pWrappedKey, jna_pulWrappedKeyLen);
+        pulWrappedKeyLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_UnwrapKey(long hSession, CKM pMechanism, long hUnwrappingKey, byte[] pWrappedKey, long ulWrappedKeyLen,
+            CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+        long jna_phKey = slots.in(0, phKey.value);
+            long rv = LP64.C_UnwrapKey(hSession, jna_pMechanism, hUnwrappingKey, pWrappedKey, ulWrappedKeyLen,
+                jna_pTemplate, ulAttributeCount, jna_phKey);
+            phKey.value = slots.out(0);
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_DeriveKey(long hSession, CKM pMechanism, long hBaseKey, CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
+        JNA_CKM jna_pMechanism = JNA_CKM.of(pMechanism);
+        Template jna_pTemplate = new Template(pTemplate);
+        try {
+            Slots slots = SLOTS.get();
+        long jna_phKey = slots.in(0, phKey.value);
+            long rv = LP64.C_DeriveKey(hSession, jna_pMechanism, hBaseKey, jna_pTemplate, ulAttributeCount, jna_phKey);
+            phKey.value = slots.out(0);
+            return rv;
+        } finally {
+            jna_pTemplate.release();
+        }
+    }
+
+    public long C_SeedRandom(long hSession, byte[] pSeed, long ulSeedLen) {
+        return LP64.C_SeedRandom(hSession, pSeed, ulSeedLen);
+    }
+
+    public long C_GenerateRandom(long hSession, byte[] pRandomData, long ulRandomLen) {
+        return LP64.C_GenerateRandom(hSession, pRandomData, ulRandomLen);
+    }
+
+    public long C_GetFunctionStatus(long hSession) {
+        return LP64.C_GetFunctionStatus(hSession);
+    }
+
+    public long C_CancelFunction(long hSession) {
+        return LP64.C_CancelFunction(hSession);
+    }
+
+    public long C_Encrypt(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pEncryptedData, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, pulEncryptedDataLen);
+        Slots slots = SLOTS.get();
+        long jna_pulEncryptedDataLen = slots.in(0, pulEncryptedDataLen.value);
+        long rv = LP64.C_Encrypt(hSession, pData, ulDataLen, pEncryptedData, jna_pulEncryptedDataLen);
+        pulEncryptedDataLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_EncryptUpdate(long hSession, ByteBuffer pPart, long ulPartLen, ByteBuffer pEncryptedPart, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, pulEncryptedPartLen);
+        Slots slots = SLOTS.get();
+        long jna_pulEncryptedPartLen = slots.in(0, pulEncryptedPartLen.value);
+        long rv = LP64.C_EncryptUpdate(hSession, pPart, ulPartLen, pEncryptedPart, jna_pulEncryptedPartLen);
+        pulEncryptedPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_EncryptFinal(long hSession, ByteBuffer pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        NioBuf.clamp(pLastEncryptedPart, pulLastEncryptedPartLen);
+        Slots slots = SLOTS.get();
+        long jna_pulLastEncryptedPartLen = slots.in(0, pulLastEncryptedPartLen.value);
+        long rv = LP64.C_EncryptFinal(hSession, pLastEncryptedPart, jna_pulLastEncryptedPartLen);
+        pulLastEncryptedPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_Decrypt(long hSession, ByteBuffer pEncryptedData, long ulEncryptedDataLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, ulEncryptedDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        Slots slots = SLOTS.get();
+        long jna_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = LP64.C_Decrypt(hSession, pEncryptedData, ulEncryptedDataLen, pData, jna_pulDataLen);
+        pulDataLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DecryptUpdate(long hSession, ByteBuffer pEncryptedPart, long ulEncryptedPartLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, ulEncryptedPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        Slots slots = SLOTS.get();
+        long jna_pulDataLen = slots.in(0, pulDataLen.value);
+        long rv = LP64.C_DecryptUpdate(hSession, pEncryptedPart, ulEncryptedPartLen, pData, jna_pulDataLen);
+        pulDataLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DecryptFinal(long hSession, ByteBuffer pLastPart, LongRef pulLastPartLen) {
+        NioBuf.clamp(pLastPart, pulLastPartLen);
+        Slots slots = SLOTS.get();
+        long jna_pulLastPartLen = slots.in(0, pulLastPartLen.value);
+        long rv = LP64.C_DecryptFinal(hSession, pLastPart, jna_pulLastPartLen);
+        pulLastPartLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_Digest(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pDigest, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, pulDigestLen);
+        Slots slots = SLOTS.get();
+        long jna_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = LP64.C_Digest(hSession, pData, ulDataLen, pDigest, jna_pulDigestLen);
+        pulDigestLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_DigestUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return LP64.C_DigestUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public long C_DigestFinal(long hSession, ByteBuffer pDigest, LongRef pulDigestLen) {
+        NioBuf.clamp(pDigest, pulDigestLen);
+        Slots slots = SLOTS.get();
+        long jna_pulDigestLen = slots.in(0, pulDigestLen.value);
+        long rv = LP64.C_DigestFinal(hSession, pDigest, jna_pulDigestLen);
+        pulDigestLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_Sign(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        Slots slots = SLOTS.get();
+        long jna_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = LP64.C_Sign(hSession, pData, ulDataLen, pSignature, jna_pulSignatureLen);
+        pulSignatureLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_SignUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return LP64.C_SignUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public long C_SignFinal(long hSession, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        Slots slots = SLOTS.get();
+        long jna_pulSignatureLen = slots.in(0, pulSignatureLen.value);
+        long rv = LP64.C_SignFinal(hSession, pSignature, jna_pulSignatureLen);
+        pulSignatureLen.value = slots.out(0);
+        return rv;
+    }
+
+    public long C_Verify(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen) || !NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return LP64.C_Verify(hSession, pData, ulDataLen, pSignature, ulSignatureLen);
+    }
+
+    public long C_VerifyUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return LP64.C_VerifyUpdate(hSession, pPart, ulPartLen);
+    }
+
+    public long C_VerifyFinal(long hSession, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return LP64.C_VerifyFinal(hSession, pSignature, ulSignatureLen);
+    }
+}
@@ -21,6 +21,8 @@
 
 package org.pkcs11.jacknji11.jna;
 
+import java.nio.ByteBuffer;
+
 import com.sun.jna.NativeLong;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.NativeLongByReference;
@@ -98,4 +100,38 @@ public interface JNANativeI extends com.sun.jna.Library {
     public int C_GenerateRandom(NativeLong hSession, byte[] pRandom, NativeLong ulRandomLen);
     public int C_GetFunctionStatus(NativeLong hSession);
     public int C_CancelFunction(NativeLong hSession);
+
+    // data functions with direct buffer addresses
+    public int C_Encrypt(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pEncryptedData, NativeLongByReference pulEncryptedDataLen);
+    public int C_EncryptUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen, Pointer pEncryptedPart, NativeLongByReference pulEncryptedPartLen);
+    public int C_EncryptFinal(NativeLong hSession, Pointer pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen);
+    public int C_Decrypt(NativeLong hSession, Pointer pEncryptedData, NativeLong ulEncryptedDataLen, Pointer pData, NativeLongByReference pulDataLen);
+    public int C_DecryptUpdate(NativeLong hSession, Pointer pEncryptedPart, NativeLong ulEncryptedPartLen, Pointer pData, NativeLongByReference pulDataLen);
+    public int C_DecryptFinal(NativeLong hSession, Pointer pLastPart, NativeLongByReference pulLastPartLen);
+    public int C_Digest(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pDigest, NativeLongByReference pulDigestLen);
+    public int C_DigestUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen);
+    public int C_DigestFinal(NativeLong hSession, Pointer pDigest, NativeLongByReference pulDigestLen);
+    public int C_Sign(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pSignature, NativeLongByReference pulSignatureLen);
+    public int C_SignUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen);
+    public int C_SignFinal(NativeLong hSession, Pointer pSignature, NativeLongByReference pulSignatureLen);
+    public int C_Verify(NativeLong hSession, Pointer pData, NativeLong ulDataLen, Pointer pSignature, NativeLong ulSignatureLen);
+    public int C_VerifyUpdate(NativeLong hSession, Pointer pPart, NativeLong ulPartLen);
+    public int C_VerifyFinal(NativeLong hSession, Pointer pSignature, NativeLong ulSignatureLen);
+
+    // data functions with heap buffers, array offset is the buffer position
+    public int C_Encrypt(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pEncryptedData, NativeLongByReference pulEncryptedDataLen);
+    public int C_EncryptUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen, ByteBuffer pEncryptedPart, NativeLongByReference pulEncryptedPartLen);
+    public int C_EncryptFinal(NativeLong hSession, ByteBuffer pLastEncryptedPart, NativeLongByReference pulLastEncryptedPartLen);
+    public int C_Decrypt(NativeLong hSession, ByteBuffer pEncryptedData, NativeLong ulEncryptedDataLen, ByteBuffer pData, NativeLongByReference pulDataLen);
+    public int C_DecryptUpdate(NativeLong hSession, ByteBuffer pEncryptedPart, NativeLong ulEncryptedPartLen, ByteBuffer pData, NativeLongByReference pulDataLen);
+    public int C_DecryptFinal(NativeLong hSession, ByteBuffer pLastPart, NativeLongByReference pulLastPartLen);
+    public int C_Digest(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pDigest, NativeLongByReference pulDigestLen);
+    public int C_DigestUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen);
+    public int C_DigestFinal(NativeLong hSession, ByteBuffer pDigest, NativeLongByReference pulDigestLen);
+    public int C_Sign(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pSignature, NativeLongByReference pulSignatureLen);
+    public int C_SignUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen);
+    public int C_SignFinal(NativeLong hSession, ByteBuffer pSignature, NativeLongByReference pulSignatureLen);
+    public int C_Verify(NativeLong hSession, ByteBuffer pData, NativeLong ulDataLen, ByteBuffer pSignature, NativeLong ulSignatureLen);
+    public int C_VerifyUpdate(NativeLong hSession, ByteBuffer pPart, NativeLong ulPartLen);
+    public int C_VerifyFinal(NativeLong hSession, ByteBuffer pSignature, NativeLong ulSignatureLen);
 }
@@ -22,6 +22,7 @@
 package org.pkcs11.jacknji11.jna;
 
 import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.PreparedCKM;
 
 import java.util.Arrays;
 import java.util.List;
@@ -46,6 +47,23 @@ public class JNA_CKM extends Structure {
         super(ALIGN_NONE);
     }
 
+    /** view over an existing native CK_MECHANISM, not read or written by JNA */
+    private JNA_CKM(Pointer p) {
+        super(p, ALIGN_NONE);
+        setAutoSynch(false);
+    }
+
+    /**
+     * @param ckm mechanism
+     * @return struct for ckm, reusing native memory of a {@link PreparedCKM}
+     */
+    public static JNA_CKM of(CKM ckm) {
+        if (ckm instanceof PreparedCKM) {
+            return new JNA_CKM(new Pointer(((PreparedCKM) ckm).getAddress()));
+        }
+        return new JNA_CKM().readFrom(ckm);
+    }
+
     @Override
     protected List<String> getFieldOrder() {
         return Arrays.asList("mechanism", "pParameter", "ulParameterLen");
@@ -21,9 +21,6 @@
 
 package org.pkcs11.jacknji11.jna;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.pkcs11.jacknji11.CKA;
 
 import com.sun.jna.Memory;
@@ -37,13 +34,19 @@ import com.sun.jna.PointerType;
  * PKCS#11 CK_ATTRIBUTE struct).  JNA direct memory mapping doesn't seem to
  * support struct arrays, so this class is required to map the
  * list of (type, pValue, ulValueLen) into a contiguous block of memory.
+ * The array is followed by all attribute values in the same block which is
+ * leased from the per-thread {@link TemplateArena}.  Callers must call
+ * {@link #release()} once the native call has completed.
  *
  * @author Joel Hockey (joel.hockey@gmail.com)
  */
 public class Template extends PointerType {
+    private static final int CK_ATTRIBUTE_SIZE = NativeLong.SIZE + Native.POINTER_SIZE + NativeLong.SIZE;
+
     private CKA[] list;
-    private List<Memory> pValues;
     private int listLen;
+    private TemplateArena arena;
+    private Memory memory;
 
     /** Default no-arg constructor required by JNA. */
     public Template() {
@@ -58,47 +61,69 @@ public class Template extends PointerType {
     }
 
     /**
-     * Allocates JNA Memory and writes CKA[] values.
+     * Leases memory from the current thread's {@link TemplateArena} and writes CKA[] values.
      * @param list template
      */
     public Template(CKA[] list) {
+        this(list, TemplateArena.get());
+    }
+
+    /**
+     * Leases memory from arena and writes CKA[] values.
+     * @param list template
+     * @param arena arena to lease memory from
+     */
+    public Template(CKA[] list, TemplateArena arena) {
         this.list = list;
         listLen = list == null ? 0 : list.length;
         if (listLen == 0) {
             return;
         }
-        setPointer(new Memory(listLen * (NativeLong.SIZE + Native.POINTER_SIZE + NativeLong.SIZE)));
-        // Keep java references over the life time of this Template to avoid native memory being freed before use
-        pValues = new ArrayList<>();
+        long size = TemplateArena.align(listLen * CK_ATTRIBUTE_SIZE);
+        for (CKA cka : list) {
+            size += TemplateArena.align(cka.ulValueLen);
+        }
+        this.arena = arena;
+        memory = arena.acquire(size);
+        setPointer(memory);
+        try {
+            fill(list);
+        } catch (RuntimeException e) {
+            // hand the block back or the thread's arena stays leased
+            release();
+            throw e;
+        }
+    }
+
+    /** writes the CK_ATTRIBUTE array followed by the values */
+    private void fill(CKA[] list) {
         int offset = 0;
+        long valueOffset = TemplateArena.align(listLen * CK_ATTRIBUTE_SIZE);
 
         for (int i = 0; i < listLen; i++) {
             // type
             if (NativeLong.SIZE == 4) {
-                getPointer().setInt(offset, (int) list[i].type);
+                memory.setInt(offset, (int) list[i].type);
             } else {
-                getPointer().setLong(offset, list[i].type);
+                memory.setLong(offset, list[i].type);
             }
             offset += NativeLong.SIZE;
 
-            // pValue
-            Memory pValue = null;
+            // pValue, points into the same block after the array
+            Pointer pValue = null;
             if (list[i].ulValueLen > 0) {
-                pValue = new Memory(list[i].ulValueLen);
-                pValue.write(0, list[i].pValue, 0, (int) list[i].ulValueLen);
+                pValue = memory.share(valueOffset, list[i].ulValueLen);
+                memory.write(valueOffset, list[i].pValue, 0, (int) list[i].ulValueLen);
+                valueOffset += TemplateArena.align(list[i].ulValueLen);
             }
-            getPointer().setPointer(offset, pValue);
-            // We saved a "long" pointer to the memory allocated by "new Memory" above, keep the java object 
-            // reference as well to avoid it being garbage collected, which will free the native memory allocated when
-            // Memory.finalize is called
-            pValues.add(pValue);
+            memory.setPointer(offset, pValue);
             offset += Native.POINTER_SIZE;
 
             // ulValueLen
             if (NativeLong.SIZE == 4) {
-                getPointer().setInt(offset, (int) list[i].ulValueLen);
+                memory.setInt(offset, (int) list[i].ulValueLen);
             } else {
-                getPointer().setLong(offset, list[i].ulValueLen);
+                memory.setLong(offset, list[i].ulValueLen);
             }
             offset += NativeLong.SIZE;
         }
@@ -114,20 +139,23 @@ public class Template extends PointerType {
         if (listLen == 0) {
             return;
         }
+        if (memory == null) {
+            throw new IllegalStateException("Template has already been released");
+        }
         int offset = 0;
         for (CKA cka : list) {
             offset += NativeLong.SIZE; // skip type
 
             // read pValue
-            Pointer ptr = getPointer().getPointer(offset);
+            Pointer ptr = memory.getPointer(offset);
             offset += Native.POINTER_SIZE;
 
             // read ulValueLen
             int ulValueLen = 0;
             if (NativeLong.SIZE == 4) {
-                ulValueLen = getPointer().getInt(offset);
+                ulValueLen = memory.getInt(offset);
             } else {
-                ulValueLen = (int) getPointer().getLong(offset);
+                ulValueLen = (int) memory.getLong(offset);
             }
             offset += NativeLong.SIZE;
 
@@ -139,4 +167,16 @@ public class Template extends PointerType {
             cka.set();
         }
     }
+
+    /**
+     * Hands the native memory back to the arena.  The template must not be
+     * passed to native code after this.  Safe to call more than once.
+     */
+    public void release() {
+        if (memory != null) {
+            setPointer(null);
+            arena.release(memory);
+            memory = null;
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010-2011 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.pkcs11.jacknji11.jna;
+
+import com.sun.jna.Memory;
+
+/**
+ * Per-thread native memory block used by {@link Template} to lay out the
+ * CK_ATTRIBUTE array and all attribute values in one contiguous allocation.
+ * The block is reused across calls on the same thread and grows on demand
+ * up to {@link #MAX_CACHED_SIZE}.  Requests that are larger than that, or
+ * that arrive while the cached block is already leased (e.g. the two
+ * templates of C_GenerateKeyPair), get a one-off block which is freed
+ * immediately on {@link #release(Memory)} rather than waiting for the
+ * JNA cleaner.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class TemplateArena {
+    /** Largest block that will be kept for reuse by each thread. */
+    public static final int MAX_CACHED_SIZE = 64 * 1024;
+    /** Smallest block allocated for reuse, avoids regrowing for tiny templates. */
+    public static final int MIN_CACHED_SIZE = 1024;
+    /** Alignment for each attribute value within the block. */
+    static final int ALIGN = 8;
+
+    private static final ThreadLocal<TemplateArena> ARENA = new ThreadLocal<TemplateArena>() {
+        @Override
+        protected TemplateArena initialValue() {
+            return new TemplateArena();
+        }
+    };
+
+    private Memory block;
+    private boolean leased;
+    private long allocations;
+    private long leases;
+
+    /**
+     * @return arena for the current thread
+     */
+    public static TemplateArena get() {
+        return ARENA.get();
+    }
+
+    /**
+     * Rounds len up to {@link #ALIGN}.
+     * @param len length
+     * @return aligned length
+     */
+    static long align(long len) {
+        return (len + ALIGN - 1) & ~(ALIGN - 1);
+    }
+
+    /**
+     * Leases a block of at least size bytes.  Must be handed back with
+     * {@link #release(Memory)} once the native call has completed.
+     * @param size number of bytes required
+     * @return native memory
+     */
+    public Memory acquire(long size) {
+        leases++;
+        if (!leased && size <= MAX_CACHED_SIZE) {
+            if (block == null || block.size() < size) {
+                if (block != null) {
+                    block.close();
+                }
+                allocations++;
+                block = new Memory(Math.max(MIN_CACHED_SIZE, Long.highestOneBit(size - 1) << 1));
+            }
+            leased = true;
+            return block;
+        }
+        allocations++;
+        return new Memory(size);
+    }
+
+    /**
+     * Hands back memory obtained from {@link #acquire(long)}.  The cached block
+     * is kept for the next call, any other block is freed immediately.
+     * @param memory memory to release
+     */
+    public void release(Memory memory) {
+        if (memory == block) {
+            leased = false;
+        } else if (memory != null) {
+            memory.close();
+        }
+    }
+
+    /**
+     * Frees the cached block for the current thread.  It will be reallocated on next use.
+     */
+    public void clear() {
+        if (block != null && !leased) {
+            block.close();
+            block = null;
+        }
+    }
+
+    /**
+     * @return number of native allocations made by this arena
+     */
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * @return number of times memory was acquired from this arena
+     */
+    public long getLeases() {
+        return leases;
+    }
+}
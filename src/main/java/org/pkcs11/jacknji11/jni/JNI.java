@@ -21,8 +21,12 @@
 
 package org.pkcs11.jacknji11.jni;
 
+import java.nio.ByteBuffer;
+
+import org.pkcs11.jacknji11.C;
 import org.pkcs11.jacknji11.CKA;
 import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.CKR;
 import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS;
 import org.pkcs11.jacknji11.CK_INFO;
 import org.pkcs11.jacknji11.CK_MECHANISM_INFO;
@@ -33,17 +37,69 @@ import org.pkcs11.jacknji11.CK_TOKEN_INFO;
 import org.pkcs11.jacknji11.LongRef;
 import org.pkcs11.jacknji11.NativePointer;
 import org.pkcs11.jacknji11.NativeProvider;
+import org.pkcs11.jacknji11.NioBuf;
 import org.pkcs11.jacknji11.ULong;
 
+/**
+ * JNI PKCS#11 provider.  Requires libjacknji11 built from src/main/c
+ * (see the jni-linux maven profile).  The cryptoki library is loaded with
+ * dlopen and called through its C_GetFunctionList function table.  Data
+ * buffers are pinned rather than copied while no mutex or notify callbacks
+ * are registered.  The library may call those callbacks from inside any
+ * function and java must not be called while an array is pinned, so once
+ * C_Initialize is given mutex callbacks or a session is opened with a
+ * notify callback, data buffers are copied instead.  A pinned array holds
+ * off garbage collection for all threads until the call returns, use
+ * {@link #setPinArrays(boolean)} or system property jacknji11.jni.pin=false
+ * to always copy when the token is slow, such as a network HSM.
+ * <p>
+ * Set system property jacknji11.jni.library to the full path of
+ * libjacknji11 to load it from outside java.library.path.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
 public class JNI implements NativeProvider {
     static {
-        System.loadLibrary("jacknji11");
+        String path = System.getProperty("jacknji11.jni.library");
+        if (path != null && path.length() > 0) {
+            System.load(path);
+        } else {
+            System.loadLibrary("jacknji11");
+        }
         init();
+        setPinArrays(Boolean.parseBoolean(System.getProperty("jacknji11.jni.pin", "true")));
         ULong.ULONG_SIZE = ULongSize() == 4 ? ULong.ULongSize.ULONG4 : ULong.ULongSize.ULONG8;
     }
 
+    /** CK_FUNCTION_LIST_PTR of the loaded cryptoki library, read by native code */
+    private final long functionList;
+
+    public JNI() {
+        this(C.getLibraryName());
+    }
+
+    /**
+     * @param customLibrary cryptoki library file, or name such as 'cryptoki'
+     * which is mapped to platform file name such as 'libcryptoki.so'
+     */
+    public JNI(String customLibrary) {
+        if (customLibrary.indexOf('/') < 0 && customLibrary.indexOf('\\') < 0 && customLibrary.indexOf('.') < 0) {
+            customLibrary = System.mapLibraryName(customLibrary);
+        }
+        functionList = load(customLibrary);
+    }
+
     public static native void init();
     public static native int ULongSize();
+
+    /**
+     * @param pin true (default) to pin data buffers while no callbacks are
+     * registered, false to always copy them
+     */
+    public static native void setPinArrays(boolean pin);
+
+    private static native long load(String customLibrary);
+    private static native long address0(ByteBuffer buf);
     public native long C_Initialize(CK_C_INITIALIZE_ARGS pInitArgs);
     public native long C_Finalize(NativePointer pReserved);
     public native long C_GetInfo(CK_INFO pInfo);
@@ -111,4 +167,217 @@ public class JNI implements NativeProvider {
     public native long C_GenerateRandom(long hSession, byte[] pRandom, long ulRandomLen);
     public native long C_GetFunctionStatus(long hSession);
     public native long C_CancelFunction(long hSession);
+
+    public long C_Encrypt(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pEncryptedData, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, pulEncryptedDataLen);
+        return C_Encrypt0(hSession, address(pData), ulDataLen, address(pEncryptedData), pulEncryptedDataLen);
+    }
+
+    public long C_EncryptUpdate(long hSession, ByteBuffer pPart, long ulPartLen, ByteBuffer pEncryptedPart, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, pulEncryptedPartLen);
+        return C_EncryptUpdate0(hSession, address(pPart), ulPartLen, address(pEncryptedPart), pulEncryptedPartLen);
+    }
+
+    public long C_EncryptFinal(long hSession, ByteBuffer pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        NioBuf.clamp(pLastEncryptedPart, pulLastEncryptedPartLen);
+        return C_EncryptFinal0(hSession, address(pLastEncryptedPart), pulLastEncryptedPartLen);
+    }
+
+    public long C_Decrypt(long hSession, ByteBuffer pEncryptedData, long ulEncryptedDataLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, ulEncryptedDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        return C_Decrypt0(hSession, address(pEncryptedData), ulEncryptedDataLen, address(pData), pulDataLen);
+    }
+
+    public long C_DecryptUpdate(long hSession, ByteBuffer pEncryptedPart, long ulEncryptedPartLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, ulEncryptedPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        return C_DecryptUpdate0(hSession, address(pEncryptedPart), ulEncryptedPartLen, address(pData), pulDataLen);
+    }
+
+    public long C_DecryptFinal(long hSession, ByteBuffer pLastPart, LongRef pulLastPartLen) {
+        NioBuf.clamp(pLastPart, pulLastPartLen);
+        return C_DecryptFinal0(hSession, address(pLastPart), pulLastPartLen);
+    }
+
+    public long C_Digest(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pDigest, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, pulDigestLen);
+        return C_Digest0(hSession, address(pData), ulDataLen, address(pDigest), pulDigestLen);
+    }
+
+    public long C_DigestUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_DigestUpdate0(hSession, address(pPart), ulPartLen);
+    }
+
+    public long C_DigestFinal(long hSession, ByteBuffer pDigest, LongRef pulDigestLen) {
+        NioBuf.clamp(pDigest, pulDigestLen);
+        return C_DigestFinal0(hSession, address(pDigest), pulDigestLen);
+    }
+
+    public long C_Sign(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        return C_Sign0(hSession, address(pData), ulDataLen, address(pSignature), pulSignatureLen);
+    }
+
+    public long C_SignUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_SignUpdate0(hSession, address(pPart), ulPartLen);
+    }
+
+    public long C_SignFinal(long hSession, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        return C_SignFinal0(hSession, address(pSignature), pulSignatureLen);
+    }
+
+    public long C_Verify(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen) || !NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_Verify0(hSession, address(pData), ulDataLen, address(pSignature), ulSignatureLen);
+    }
+
+    public long C_VerifyUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_VerifyUpdate0(hSession, address(pPart), ulPartLen);
+    }
+
+    public long C_VerifyFinal(long hSession, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        return C_VerifyFinal0(hSession, address(pSignature), ulSignatureLen);
+    }
+
+    public long C_Encrypt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pEncryptedData, int encryptedDataOff, LongRef pulEncryptedDataLen) {
+        return C_EncryptAt(hSession, pData, dataOff, ulDataLen, pEncryptedData, encryptedDataOff, pulEncryptedDataLen);
+    }
+
+    public long C_EncryptUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen, byte[] pEncryptedPart, int encryptedPartOff, LongRef pulEncryptedPartLen) {
+        return C_EncryptUpdateAt(hSession, pPart, partOff, ulPartLen, pEncryptedPart, encryptedPartOff, pulEncryptedPartLen);
+    }
+
+    public long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, int lastEncryptedPartOff, LongRef pulLastEncryptedPartLen) {
+        return C_EncryptFinalAt(hSession, pLastEncryptedPart, lastEncryptedPartOff, pulLastEncryptedPartLen);
+    }
+
+    public long C_Decrypt(long hSession, byte[] pEncryptedData, int encryptedDataOff, long ulEncryptedDataLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        return C_DecryptAt(hSession, pEncryptedData, encryptedDataOff, ulEncryptedDataLen, pData, dataOff, pulDataLen);
+    }
+
+    public long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, int encryptedPartOff, long ulEncryptedPartLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        return C_DecryptUpdateAt(hSession, pEncryptedPart, encryptedPartOff, ulEncryptedPartLen, pData, dataOff, pulDataLen);
+    }
+
+    public long C_DecryptFinal(long hSession, byte[] pLastPart, int lastPartOff, LongRef pulLastPartLen) {
+        return C_DecryptFinalAt(hSession, pLastPart, lastPartOff, pulLastPartLen);
+    }
+
+    public long C_Digest(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        return C_DigestAt(hSession, pData, dataOff, ulDataLen, pDigest, digestOff, pulDigestLen);
+    }
+
+    public long C_DigestUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        return C_DigestUpdateAt(hSession, pPart, partOff, ulPartLen);
+    }
+
+    public long C_DigestFinal(long hSession, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        return C_DigestFinalAt(hSession, pDigest, digestOff, pulDigestLen);
+    }
+
+    public long C_Sign(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        return C_SignAt(hSession, pData, dataOff, ulDataLen, pSignature, signatureOff, pulSignatureLen);
+    }
+
+    public long C_SignUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        return C_SignUpdateAt(hSession, pPart, partOff, ulPartLen);
+    }
+
+    public long C_SignFinal(long hSession, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        return C_SignFinalAt(hSession, pSignature, signatureOff, pulSignatureLen);
+    }
+
+    public long C_Verify(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        return C_VerifyAt(hSession, pData, dataOff, ulDataLen, pSignature, signatureOff, ulSignatureLen);
+    }
+
+    public long C_VerifyUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        return C_VerifyUpdateAt(hSession, pPart, partOff, ulPartLen);
+    }
+
+    public long C_VerifyFinal(long hSession, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        return C_VerifyFinalAt(hSession, pSignature, signatureOff, ulSignatureLen);
+    }
+
+    /**
+     * Native address of buf position.
+     * @param buf direct buffer or null
+     * @return address of buf position, or 0 if buf is null
+     * @throws IllegalArgumentException if buf is not direct
+     */
+    private static long address(ByteBuffer buf) {
+        if (buf == null) {
+            return 0;
+        }
+        if (!buf.isDirect()) {
+            throw new IllegalArgumentException("ByteBuffer must be direct");
+        }
+        return address0(buf) + buf.position();
+    }
+
+    // data functions with direct buffer addresses
+    private native long C_Encrypt0(long hSession, long pData, long ulDataLen, long pEncryptedData, LongRef pulEncryptedDataLen);
+    private native long C_EncryptUpdate0(long hSession, long pPart, long ulPartLen, long pEncryptedPart, LongRef pulEncryptedPartLen);
+    private native long C_EncryptFinal0(long hSession, long pLastEncryptedPart, LongRef pulLastEncryptedPartLen);
+    private native long C_Decrypt0(long hSession, long pEncryptedData, long ulEncryptedDataLen, long pData, LongRef pulDataLen);
+    private native long C_DecryptUpdate0(long hSession, long pEncryptedPart, long ulEncryptedPartLen, long pData, LongRef pulDataLen);
+    private native long C_DecryptFinal0(long hSession, long pLastPart, LongRef pulLastPartLen);
+    private native long C_Digest0(long hSession, long pData, long ulDataLen, long pDigest, LongRef pulDigestLen);
+    private native long C_DigestUpdate0(long hSession, long pPart, long ulPartLen);
+    private native long C_DigestFinal0(long hSession, long pDigest, LongRef pulDigestLen);
+    private native long C_Sign0(long hSession, long pData, long ulDataLen, long pSignature, LongRef pulSignatureLen);
+    private native long C_SignUpdate0(long hSession, long pPart, long ulPartLen);
+    private native long C_SignFinal0(long hSession, long pSignature, LongRef pulSignatureLen);
+    private native long C_Verify0(long hSession, long pData, long ulDataLen, long pSignature, long ulSignatureLen);
+    private native long C_VerifyUpdate0(long hSession, long pPart, long ulPartLen);
+    private native long C_VerifyFinal0(long hSession, long pSignature, long ulSignatureLen);
+
+    // data functions with byte[] offsets
+    private native long C_EncryptAt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pEncryptedData, int encryptedDataOff, LongRef pulEncryptedDataLen);
+    private native long C_EncryptUpdateAt(long hSession, byte[] pPart, int partOff, long ulPartLen, byte[] pEncryptedPart, int encryptedPartOff, LongRef pulEncryptedPartLen);
+    private native long C_EncryptFinalAt(long hSession, byte[] pLastEncryptedPart, int lastEncryptedPartOff, LongRef pulLastEncryptedPartLen);
+    private native long C_DecryptAt(long hSession, byte[] pEncryptedData, int encryptedDataOff, long ulEncryptedDataLen, byte[] pData, int dataOff, LongRef pulDataLen);
+    private native long C_DecryptUpdateAt(long hSession, byte[] pEncryptedPart, int encryptedPartOff, long ulEncryptedPartLen, byte[] pData, int dataOff, LongRef pulDataLen);
+    private native long C_DecryptFinalAt(long hSession, byte[] pLastPart, int lastPartOff, LongRef pulLastPartLen);
+    private native long C_DigestAt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pDigest, int digestOff, LongRef pulDigestLen);
+    private native long C_DigestUpdateAt(long hSession, byte[] pPart, int partOff, long ulPartLen);
+    private native long C_DigestFinalAt(long hSession, byte[] pDigest, int digestOff, LongRef pulDigestLen);
+    private native long C_SignAt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, LongRef pulSignatureLen);
+    private native long C_SignUpdateAt(long hSession, byte[] pPart, int partOff, long ulPartLen);
+    private native long C_SignFinalAt(long hSession, byte[] pSignature, int signatureOff, LongRef pulSignatureLen);
+    private native long C_VerifyAt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, long ulSignatureLen);
+    private native long C_VerifyUpdateAt(long hSession, byte[] pPart, int partOff, long ulPartLen);
+    private native long C_VerifyFinalAt(long hSession, byte[] pSignature, int signatureOff, long ulSignatureLen);
 }
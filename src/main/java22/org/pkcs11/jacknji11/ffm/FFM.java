@@ -0,0 +1,1811 @@
+/*
+ * Copyright 2010-2011 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.pkcs11.jacknji11.ffm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pkcs11.jacknji11.C;
+import org.pkcs11.jacknji11.CKA;
+import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.CKR;
+import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS;
+import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS.CK_CREATEMUTEX;
+import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS.CK_DESTROYMUTEX;
+import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS.CK_LOCKMUTEX;
+import org.pkcs11.jacknji11.CK_C_INITIALIZE_ARGS.CK_UNLOCKMUTEX;
+import org.pkcs11.jacknji11.CK_INFO;
+import org.pkcs11.jacknji11.CK_MECHANISM_INFO;
+import org.pkcs11.jacknji11.CK_NOTIFY;
+import org.pkcs11.jacknji11.CK_SESSION_INFO;
+import org.pkcs11.jacknji11.CK_SLOT_INFO;
+import org.pkcs11.jacknji11.CK_TOKEN_INFO;
+import org.pkcs11.jacknji11.CK_VERSION;
+import org.pkcs11.jacknji11.LongRef;
+import org.pkcs11.jacknji11.NativePointer;
+import org.pkcs11.jacknji11.NativePointerByReference;
+import org.pkcs11.jacknji11.NativeProvider;
+import org.pkcs11.jacknji11.NioBuf;
+import org.pkcs11.jacknji11.PreparedCKM;
+import org.pkcs11.jacknji11.ULong;
+
+/**
+ * PKCS#11 provider using the Foreign Function and Memory API (java.lang.foreign, Java 22+).
+ * Downcall method handles for every C_* function are bound once when the provider
+ * is created.  Each call allocates its CK_ATTRIBUTE, CK_MECHANISM and out
+ * parameters from a confined {@link Arena} that is freed when the call returns.
+ * <p>
+ * When created with heapAccess, byte[] data for the encrypt, decrypt, digest, sign,
+ * verify, random and wrap functions is passed to the library as a {@link MemorySegment}
+ * view over the java array rather than being copied.  This uses
+ * {@link Linker.Option#critical(boolean)} which stops the garbage collector while the
+ * native call runs, so it is only suitable for libraries where these calls are short,
+ * such as software tokens.  Critical calls must not call back into java, so do not use
+ * heapAccess with mutex callbacks in {@link CK_C_INITIALIZE_ARGS} or sessions opened with
+ * a {@link CK_NOTIFY}.
+ * <p>
+ * Mechanisms are passed by address for {@link PreparedCKM}, and otherwise the CK_MECHANISM
+ * is written to the call's arena with the param copied from {@link CKM#bParameter}, so
+ * JNA is not used on the call path.  Only a {@link CKM} created with a JNA Pointer param
+ * passes the param by its raw address from {@link CKM#getParameterAddress()}.
+ * <p>
+ * This class is compiled into the Java 22 layer of the multi-release jar.  Running it
+ * prints a restricted method warning unless the JVM is started with
+ * {@code --enable-native-access}.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class FFM implements NativeProvider {
+    private static final Linker LINKER = Linker.nativeLinker();
+    /** CK_ULONG is C unsigned long, 4 bytes on Windows, 8 bytes on other 64-bit platforms. */
+    private static final ValueLayout CK_ULONG = (ValueLayout) LINKER.canonicalLayouts().get("long");
+    private static final int UL = (int) CK_ULONG.byteSize();
+    private static final int PTR = (int) ValueLayout.ADDRESS.byteSize();
+    /** Cryptoki structs are packed to 1 byte on Windows and use natural alignment elsewhere. */
+    private static final boolean PACKED = System.getProperty("os.name", "").startsWith("Windows");
+
+    // CK_ATTRIBUTE and CK_MECHANISM are both {CK_ULONG, CK_VOID_PTR, CK_ULONG}
+    private static final long TLV_PVALUE = align(UL, PTR);
+    private static final long TLV_LEN = TLV_PVALUE + PTR;
+    private static final long TLV_SIZE = align(TLV_LEN + UL, Math.max(UL, PTR));
+    private static final long CK_INFO_FLAGS = align(2 + 32, UL);
+    private static final long CK_INFO_SIZE = align(CK_INFO_FLAGS + UL + 32 + 2, UL);
+    private static final long CK_SLOT_INFO_SIZE = align(96 + UL + 4, UL);
+    private static final long CK_TOKEN_INFO_SIZE = align(96 + 11 * UL + 4 + 16, UL);
+    // CK_C_INITIALIZE_ARGS is 4 function pointers, flags, pReserved
+    private static final long INIT_ARGS_FLAGS = 4 * PTR;
+    private static final long INIT_ARGS_RESERVED = align(INIT_ARGS_FLAGS + UL, PTR);
+    private static final long INIT_ARGS_SIZE = INIT_ARGS_RESERVED + PTR;
+
+    private static final FunctionDescriptor NOTIFY = FunctionDescriptor.of(CK_ULONG, CK_ULONG, CK_ULONG, ValueLayout.ADDRESS);
+    private static final FunctionDescriptor MUTEX = FunctionDescriptor.of(CK_ULONG, ValueLayout.ADDRESS);
+    private static final MethodHandle NOTIFY_CALLBACK = findStatic("notifyCallback",
+        CK_NOTIFY.class, long.class, long.class, MemorySegment.class);
+    private static final MethodHandle CREATE_MUTEX = findStatic("createMutex", CK_CREATEMUTEX.class, MemorySegment.class);
+    private static final MethodHandle DESTROY_MUTEX = findStatic("destroyMutex", CK_DESTROYMUTEX.class, MemorySegment.class);
+    private static final MethodHandle LOCK_MUTEX = findStatic("lockMutex", CK_LOCKMUTEX.class, MemorySegment.class);
+    private static final MethodHandle UNLOCK_MUTEX = findStatic("unlockMutex", CK_UNLOCKMUTEX.class, MemorySegment.class);
+
+    private final String library;
+    private final boolean heapAccess;
+    private final SymbolLookup lookup;
+    /** Upcall stubs for C_Initialize mutex callbacks, freed by C_Finalize. */
+    private volatile Arena mutexStubs;
+    /** Upcall stubs for C_OpenSession notify callbacks, freed when the session is closed. */
+    private final Map<Long, NotifyStub> notifyStubs = new ConcurrentHashMap<>();
+
+    private final MethodHandle mhInitialize;
+    private final MethodHandle mhFinalize;
+    private final MethodHandle mhGetInfo;
+    private final MethodHandle mhGetSlotList;
+    private final MethodHandle mhGetSlotInfo;
+    private final MethodHandle mhGetTokenInfo;
+    private final MethodHandle mhWaitForSlotEvent;
+    private final MethodHandle mhGetMechanismList;
+    private final MethodHandle mhGetMechanismInfo;
+    private final MethodHandle mhInitToken;
+    private final MethodHandle mhInitPIN;
+    private final MethodHandle mhSetPIN;
+    private final MethodHandle mhOpenSession;
+    private final MethodHandle mhCloseSession;
+    private final MethodHandle mhCloseAllSessions;
+    private final MethodHandle mhGetSessionInfo;
+    private final MethodHandle mhGetOperationState;
+    private final MethodHandle mhSetOperationState;
+    private final MethodHandle mhLogin;
+    private final MethodHandle mhLogout;
+    private final MethodHandle mhCreateObject;
+    private final MethodHandle mhCopyObject;
+    private final MethodHandle mhDestroyObject;
+    private final MethodHandle mhGetObjectSize;
+    private final MethodHandle mhGetAttributeValue;
+    private final MethodHandle mhSetAttributeValue;
+    private final MethodHandle mhFindObjectsInit;
+    private final MethodHandle mhFindObjects;
+    private final MethodHandle mhFindObjectsFinal;
+    private final MethodHandle mhEncryptInit;
+    private final MethodHandle mhEncrypt;
+    private final MethodHandle mhEncryptUpdate;
+    private final MethodHandle mhEncryptFinal;
+    private final MethodHandle mhDecryptInit;
+    private final MethodHandle mhDecrypt;
+    private final MethodHandle mhDecryptUpdate;
+    private final MethodHandle mhDecryptFinal;
+    private final MethodHandle mhDigestInit;
+    private final MethodHandle mhDigest;
+    private final MethodHandle mhDigestUpdate;
+    private final MethodHandle mhDigestKey;
+    private final MethodHandle mhDigestFinal;
+    private final MethodHandle mhSignInit;
+    private final MethodHandle mhSign;
+    private final MethodHandle mhSignUpdate;
+    private final MethodHandle mhSignFinal;
+    private final MethodHandle mhSignRecoverInit;
+    private final MethodHandle mhSignRecover;
+    private final MethodHandle mhVerifyInit;
+    private final MethodHandle mhVerify;
+    private final MethodHandle mhVerifyUpdate;
+    private final MethodHandle mhVerifyFinal;
+    private final MethodHandle mhVerifyRecoverInit;
+    private final MethodHandle mhVerifyRecover;
+    private final MethodHandle mhDigestEncryptUpdate;
+    private final MethodHandle mhDecryptDigestUpdate;
+    private final MethodHandle mhSignEncryptUpdate;
+    private final MethodHandle mhDecryptVerifyUpdate;
+    private final MethodHandle mhGenerateKey;
+    private final MethodHandle mhGenerateKeyPair;
+    private final MethodHandle mhWrapKey;
+    private final MethodHandle mhUnwrapKey;
+    private final MethodHandle mhDeriveKey;
+    private final MethodHandle mhSeedRandom;
+    private final MethodHandle mhGenerateRandom;
+    private final MethodHandle mhGetFunctionStatus;
+    private final MethodHandle mhCancelFunction;
+
+    public FFM() {
+        this(C.getLibraryName());
+    }
+
+    public FFM(String customLibrary) {
+        this(customLibrary, false);
+    }
+
+    /**
+     * @param customLibrary library name or path
+     * @param heapAccess true to pass byte[] data to the library without copying, see class comment
+     */
+    public FFM(String customLibrary, boolean heapAccess) {
+        ULong.ULONG_SIZE = UL == 4 ? ULong.ULongSize.ULONG4 : ULong.ULongSize.ULONG8;
+        this.library = customLibrary;
+        this.heapAccess = heapAccess;
+        if (customLibrary.indexOf('/') >= 0 || customLibrary.indexOf('\\') >= 0) {
+            lookup = SymbolLookup.libraryLookup(Path.of(customLibrary), Arena.global());
+        } else {
+            lookup = SymbolLookup.libraryLookup(customLibrary.indexOf('.') >= 0
+                ? customLibrary : System.mapLibraryName(customLibrary), Arena.global());
+        }
+        mhInitialize = downcall("C_Initialize", false, "A");
+        mhFinalize = downcall("C_Finalize", false, "A");
+        mhGetInfo = downcall("C_GetInfo", false, "A");
+        mhGetSlotList = downcall("C_GetSlotList", false, "BAA");
+        mhGetSlotInfo = downcall("C_GetSlotInfo", false, "UA");
+        mhGetTokenInfo = downcall("C_GetTokenInfo", false, "UA");
+        mhWaitForSlotEvent = downcall("C_WaitForSlotEvent", false, "UAA");
+        mhGetMechanismList = downcall("C_GetMechanismList", false, "UAA");
+        mhGetMechanismInfo = downcall("C_GetMechanismInfo", false, "UUA");
+        mhInitToken = downcall("C_InitToken", false, "UAUA");
+        mhInitPIN = downcall("C_InitPIN", false, "UAU");
+        mhSetPIN = downcall("C_SetPIN", false, "UAUAU");
+        mhOpenSession = downcall("C_OpenSession", false, "UUAAA");
+        mhCloseSession = downcall("C_CloseSession", false, "U");
+        mhCloseAllSessions = downcall("C_CloseAllSessions", false, "U");
+        mhGetSessionInfo = downcall("C_GetSessionInfo", false, "UA");
+        mhGetOperationState = downcall("C_GetOperationState", heapAccess, "UAA");
+        mhSetOperationState = downcall("C_SetOperationState", heapAccess, "UAUUU");
+        mhLogin = downcall("C_Login", false, "UUAU");
+        mhLogout = downcall("C_Logout", false, "U");
+        mhCreateObject = downcall("C_CreateObject", false, "UAUA");
+        mhCopyObject = downcall("C_CopyObject", false, "UUAUA");
+        mhDestroyObject = downcall("C_DestroyObject", false, "UU");
+        mhGetObjectSize = downcall("C_GetObjectSize", false, "UUA");
+        mhGetAttributeValue = downcall("C_GetAttributeValue", false, "UUAU");
+        mhSetAttributeValue = downcall("C_SetAttributeValue", false, "UUAU");
+        mhFindObjectsInit = downcall("C_FindObjectsInit", false, "UAU");
+        mhFindObjects = downcall("C_FindObjects", false, "UAUA");
+        mhFindObjectsFinal = downcall("C_FindObjectsFinal", false, "U");
+        mhEncryptInit = downcall("C_EncryptInit", false, "UAU");
+        mhEncrypt = downcall("C_Encrypt", heapAccess, "UAUAA");
+        mhEncryptUpdate = downcall("C_EncryptUpdate", heapAccess, "UAUAA");
+        mhEncryptFinal = downcall("C_EncryptFinal", heapAccess, "UAA");
+        mhDecryptInit = downcall("C_DecryptInit", false, "UAU");
+        mhDecrypt = downcall("C_Decrypt", heapAccess, "UAUAA");
+        mhDecryptUpdate = downcall("C_DecryptUpdate", heapAccess, "UAUAA");
+        mhDecryptFinal = downcall("C_DecryptFinal", heapAccess, "UAA");
+        mhDigestInit = downcall("C_DigestInit", false, "UA");
+        mhDigest = downcall("C_Digest", heapAccess, "UAUAA");
+        mhDigestUpdate = downcall("C_DigestUpdate", heapAccess, "UAU");
+        mhDigestKey = downcall("C_DigestKey", false, "UU");
+        mhDigestFinal = downcall("C_DigestFinal", heapAccess, "UAA");
+        mhSignInit = downcall("C_SignInit", false, "UAU");
+        mhSign = downcall("C_Sign", heapAccess, "UAUAA");
+        mhSignUpdate = downcall("C_SignUpdate", heapAccess, "UAU");
+        mhSignFinal = downcall("C_SignFinal", heapAccess, "UAA");
+        mhSignRecoverInit = downcall("C_SignRecoverInit", false, "UAU");
+        mhSignRecover = downcall("C_SignRecover", heapAccess, "UAUAA");
+        mhVerifyInit = downcall("C_VerifyInit", false, "UAU");
+        mhVerify = downcall("C_Verify", heapAccess, "UAUAU");
+        mhVerifyUpdate = downcall("C_VerifyUpdate", heapAccess, "UAU");
+        mhVerifyFinal = downcall("C_VerifyFinal", heapAccess, "UAU");
+        mhVerifyRecoverInit = downcall("C_VerifyRecoverInit", false, "UAU");
+        mhVerifyRecover = downcall("C_VerifyRecover", heapAccess, "UAUAA");
+        mhDigestEncryptUpdate = downcall("C_DigestEncryptUpdate", heapAccess, "UAUAA");
+        mhDecryptDigestUpdate = downcall("C_DecryptDigestUpdate", heapAccess, "UAUAA");
+        mhSignEncryptUpdate = downcall("C_SignEncryptUpdate", heapAccess, "UAUAA");
+        mhDecryptVerifyUpdate = downcall("C_DecryptVerifyUpdate", heapAccess, "UAUAA");
+        mhGenerateKey = downcall("C_GenerateKey", false, "UAAUA");
+        mhGenerateKeyPair = downcall("C_GenerateKeyPair", false, "UAAUAUAA");
+        mhWrapKey = downcall("C_WrapKey", heapAccess, "UAUUAA");
+        mhUnwrapKey = downcall("C_UnwrapKey", false, "UAUAUAUA");
+        mhDeriveKey = downcall("C_DeriveKey", false, "UAUAUA");
+        mhSeedRandom = downcall("C_SeedRandom", heapAccess, "UAU");
+        mhGenerateRandom = downcall("C_GenerateRandom", heapAccess, "UAU");
+        mhGetFunctionStatus = downcall("C_GetFunctionStatus", false, "U");
+        mhCancelFunction = downcall("C_CancelFunction", false, "U");
+    }
+
+    public long C_Initialize(CK_C_INITIALIZE_ARGS pInitArgs) {
+        Arena stubs = Arena.ofShared();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pInitArgs = pInitArgs == null ? MemorySegment.NULL : initArgs(arena, stubs, pInitArgs);
+            long rv = (long) mhInitialize.invokeExact(ffm_pInitArgs);
+            if (rv == CKR.OK) {
+                // mutex callbacks must stay valid until C_Finalize
+                mutexStubs = stubs;
+                stubs = null;
+            }
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            if (stubs != null) {
+                stubs.close();
+            }
+        }
+    }
+
+    public long C_Finalize(NativePointer pReserved) {
+        try {
+            long rv = (long) mhFinalize.invokeExact(pointer(pReserved));
+            if (rv == CKR.OK) {
+                for (NotifyStub stub : notifyStubs.values()) {
+                    stub.arena.close();
+                }
+                notifyStubs.clear();
+                if (mutexStubs != null) {
+                    mutexStubs.close();
+                    mutexStubs = null;
+                }
+            }
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetInfo(CK_INFO pInfo) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pInfo = arena.allocate(CK_INFO_SIZE, 8);
+            long rv = (long) mhGetInfo.invokeExact(ffm_pInfo);
+            readVersion(ffm_pInfo, 0, pInfo.cryptokiVersion);
+            read(ffm_pInfo, 2, pInfo.manufacturerID);
+            pInfo.flags = getUL(ffm_pInfo, CK_INFO_FLAGS);
+            read(ffm_pInfo, CK_INFO_FLAGS + UL, pInfo.libraryDescription);
+            readVersion(ffm_pInfo, CK_INFO_FLAGS + UL + 32, pInfo.libraryVersion);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetSlotList(boolean tokenPresent, long[] pSlotList, LongRef pulCount) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pSlotList = ulongs(arena, pSlotList);
+            MemorySegment ffm_pulCount = ulong(arena, pulCount.value);
+            long rv = (long) mhGetSlotList.invokeExact(tokenPresent ? (byte) 1 : (byte) 0, ffm_pSlotList, ffm_pulCount);
+            read(ffm_pSlotList, pSlotList);
+            pulCount.value = getUL(ffm_pulCount, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetSlotInfo(long slotID, CK_SLOT_INFO pInfo) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pInfo = arena.allocate(CK_SLOT_INFO_SIZE, 8);
+            long rv = (long) mhGetSlotInfo.invokeExact(slotID, ffm_pInfo);
+            read(ffm_pInfo, 0, pInfo.slotDescription);
+            read(ffm_pInfo, 64, pInfo.manufacturerID);
+            pInfo.flags = getUL(ffm_pInfo, 96);
+            readVersion(ffm_pInfo, 96 + UL, pInfo.hardwareVersion);
+            readVersion(ffm_pInfo, 96 + UL + 2, pInfo.firmwareVersion);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetTokenInfo(long slotID, CK_TOKEN_INFO pInfo) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pInfo = arena.allocate(CK_TOKEN_INFO_SIZE, 8);
+            long rv = (long) mhGetTokenInfo.invokeExact(slotID, ffm_pInfo);
+            read(ffm_pInfo, 0, pInfo.label);
+            read(ffm_pInfo, 32, pInfo.manufacturerID);
+            read(ffm_pInfo, 64, pInfo.model);
+            read(ffm_pInfo, 80, pInfo.serialNumber);
+            pInfo.flags = getUL(ffm_pInfo, 96);
+            pInfo.ulMaxSessionCount = getUL(ffm_pInfo, 96 + UL);
+            pInfo.ulSessionCount = getUL(ffm_pInfo, 96 + 2 * UL);
+            pInfo.ulMaxRwSessionCount = getUL(ffm_pInfo, 96 + 3 * UL);
+            pInfo.ulRwSessionCount = getUL(ffm_pInfo, 96 + 4 * UL);
+            pInfo.ulMaxPinLen = getUL(ffm_pInfo, 96 + 5 * UL);
+            pInfo.ulMinPinLen = getUL(ffm_pInfo, 96 + 6 * UL);
+            pInfo.ulTotalPublicMemory = getUL(ffm_pInfo, 96 + 7 * UL);
+            pInfo.ulFreePublicMemory = getUL(ffm_pInfo, 96 + 8 * UL);
+            pInfo.ulTotalPrivateMemory = getUL(ffm_pInfo, 96 + 9 * UL);
+            pInfo.ulFreePrivateMemory = getUL(ffm_pInfo, 96 + 10 * UL);
+            readVersion(ffm_pInfo, 96 + 11 * UL, pInfo.hardwareVersion);
+            readVersion(ffm_pInfo, 96 + 11 * UL + 2, pInfo.firmwareVersion);
+            read(ffm_pInfo, 96 + 11 * UL + 4, pInfo.utcTime);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_WaitForSlotEvent(long flags, LongRef pSlot, NativePointer pReserved) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pSlot = ulong(arena, pSlot.value);
+            long rv = (long) mhWaitForSlotEvent.invokeExact(flags, ffm_pSlot, pointer(pReserved));
+            pSlot.value = getUL(ffm_pSlot, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetMechanismList(long slotID, long[] pMechanismList, LongRef pulCount) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pMechanismList = ulongs(arena, pMechanismList);
+            MemorySegment ffm_pulCount = ulong(arena, pulCount.value);
+            long rv = (long) mhGetMechanismList.invokeExact(slotID, ffm_pMechanismList, ffm_pulCount);
+            read(ffm_pMechanismList, pMechanismList);
+            pulCount.value = getUL(ffm_pulCount, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetMechanismInfo(long slotID, long type, CK_MECHANISM_INFO pInfo) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pInfo = arena.allocate(3 * UL, 8);
+            long rv = (long) mhGetMechanismInfo.invokeExact(slotID, type, ffm_pInfo);
+            pInfo.ulMinKeySize = getUL(ffm_pInfo, 0);
+            pInfo.ulMaxKeySize = getUL(ffm_pInfo, UL);
+            pInfo.flags = getUL(ffm_pInfo, 2 * UL);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_InitToken(long slotID, byte[] pPin, long ulPinLen, byte[] pLabel32) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhInitToken.invokeExact(slotID, in(arena, pPin), ulPinLen, in(arena, pLabel32));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_InitPIN(long hSession, byte[] pPin, long ulPinLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhInitPIN.invokeExact(hSession, in(arena, pPin), ulPinLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SetPIN(long hSession, byte[] pOldPin, long ulOldLen, byte[] pNewPin, long ulNewLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhSetPIN.invokeExact(hSession, in(arena, pOldPin), ulOldLen, in(arena, pNewPin), ulNewLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_OpenSession(long slotID, long flags, NativePointer application, CK_NOTIFY notify, LongRef phSession) {
+        Arena stubs = notify == null ? null : Arena.ofShared();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_notify = stubs == null ? MemorySegment.NULL
+                : upcall(NOTIFY_CALLBACK.bindTo(notify), NOTIFY, stubs);
+            MemorySegment ffm_phSession = ulong(arena, phSession.value);
+            long rv = (long) mhOpenSession.invokeExact(slotID, flags, pointer(application), ffm_notify, ffm_phSession);
+            phSession.value = getUL(ffm_phSession, 0);
+            if (stubs != null && rv == CKR.OK) {
+                // notify callback must stay valid until the session is closed
+                notifyStubs.put(phSession.value, new NotifyStub(slotID, stubs));
+                stubs = null;
+            }
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            if (stubs != null) {
+                stubs.close();
+            }
+        }
+    }
+
+    public long C_CloseSession(long hSession) {
+        try {
+            long rv = (long) mhCloseSession.invokeExact(hSession);
+            if (rv == CKR.OK) {
+                NotifyStub stub = notifyStubs.remove(hSession);
+                if (stub != null) {
+                    stub.arena.close();
+                }
+            }
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_CloseAllSessions(long slotID) {
+        try {
+            long rv = (long) mhCloseAllSessions.invokeExact(slotID);
+            if (rv == CKR.OK) {
+                Iterator<NotifyStub> it = notifyStubs.values().iterator();
+                while (it.hasNext()) {
+                    NotifyStub stub = it.next();
+                    if (stub.slotID == slotID) {
+                        stub.arena.close();
+                        it.remove();
+                    }
+                }
+            }
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetSessionInfo(long hSession, CK_SESSION_INFO pInfo) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pInfo = arena.allocate(4 * UL, 8);
+            long rv = (long) mhGetSessionInfo.invokeExact(hSession, ffm_pInfo);
+            pInfo.slotID = getUL(ffm_pInfo, 0);
+            pInfo.state = getUL(ffm_pInfo, UL);
+            pInfo.flags = getUL(ffm_pInfo, 2 * UL);
+            pInfo.ulDeviceError = getUL(ffm_pInfo, 3 * UL);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetOperationState(long hSession, byte[] pOperationState, LongRef pulOperationStateLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pOperationState = outView(arena, pOperationState);
+            MemorySegment ffm_pulOperationStateLen = ulong(arena, pulOperationStateLen.value);
+            long rv = (long) mhGetOperationState.invokeExact(hSession, ffm_pOperationState, ffm_pulOperationStateLen);
+            pulOperationStateLen.value = getUL(ffm_pulOperationStateLen, 0);
+            copy(ffm_pOperationState, pOperationState, pulOperationStateLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SetOperationState(long hSession, byte[] pOperationState, long ulOperationStateLen, long hEncryptionKey, long hAuthenticationKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhSetOperationState.invokeExact(hSession, view(arena, pOperationState), ulOperationStateLen, hEncryptionKey, hAuthenticationKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Login(long hSession, long userType, byte[] pPin, long ulPinLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhLogin.invokeExact(hSession, userType, in(arena, pPin), ulPinLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Logout(long hSession) {
+        try {
+            return (long) mhLogout.invokeExact(hSession);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_CreateObject(long hSession, CKA[] pTemplate, long ulCount, LongRef phObject) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            MemorySegment ffm_phObject = ulong(arena, phObject.value);
+            long rv = (long) mhCreateObject.invokeExact(hSession, ffm_pTemplate.segment, ulCount, ffm_phObject);
+            ffm_pTemplate.update();
+            phObject.value = getUL(ffm_phObject, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_CopyObject(long hSession, long hObject, CKA[] pTemplate, long ulCount, LongRef phNewObject) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            MemorySegment ffm_phNewObject = ulong(arena, phNewObject.value);
+            long rv = (long) mhCopyObject.invokeExact(hSession, hObject, ffm_pTemplate.segment, ulCount, ffm_phNewObject);
+            ffm_pTemplate.update();
+            phNewObject.value = getUL(ffm_phNewObject, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DestroyObject(long hSession, long hObject) {
+        try {
+            return (long) mhDestroyObject.invokeExact(hSession, hObject);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetObjectSize(long hSession, long hObject, LongRef pulSize) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulSize = ulong(arena, pulSize.value);
+            long rv = (long) mhGetObjectSize.invokeExact(hSession, hObject, ffm_pulSize);
+            pulSize.value = getUL(ffm_pulSize, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            long rv = (long) mhGetAttributeValue.invokeExact(hSession, hObject, ffm_pTemplate.segment, ulCount);
+            ffm_pTemplate.update();
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SetAttributeValue(long hSession, long hObject, CKA[] pTemplate, long ulCount) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            long rv = (long) mhSetAttributeValue.invokeExact(hSession, hObject, ffm_pTemplate.segment, ulCount);
+            ffm_pTemplate.update();
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_FindObjectsInit(long hSession, CKA[] pTemplate, long ulCount) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            return (long) mhFindObjectsInit.invokeExact(hSession, ffm_pTemplate.segment, ulCount);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_FindObjects(long hSession, long[] phObject, long ulMaxObjectCount, LongRef pulObjectCount) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_phObject = ulongs(arena, phObject);
+            MemorySegment ffm_pulObjectCount = ulong(arena, pulObjectCount.value);
+            long rv = (long) mhFindObjects.invokeExact(hSession, ffm_phObject, ulMaxObjectCount, ffm_pulObjectCount);
+            read(ffm_phObject, phObject);
+            pulObjectCount.value = getUL(ffm_pulObjectCount, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_FindObjectsFinal(long hSession) {
+        try {
+            return (long) mhFindObjectsFinal.invokeExact(hSession);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_EncryptInit(long hSession, CKM pMechanism, long hKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhEncryptInit.invokeExact(hSession, mechanism(arena, pMechanism), hKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Encrypt(long hSession, byte[] pData, long ulDataLen, byte[] pEncryptedData, LongRef pulEncryptedDataLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pEncryptedData = outView(arena, pEncryptedData);
+            MemorySegment ffm_pulEncryptedDataLen = ulong(arena, pulEncryptedDataLen.value);
+            long rv = (long) mhEncrypt.invokeExact(hSession, view(arena, pData), ulDataLen, ffm_pEncryptedData, ffm_pulEncryptedDataLen);
+            pulEncryptedDataLen.value = getUL(ffm_pulEncryptedDataLen, 0);
+            copy(ffm_pEncryptedData, pEncryptedData, pulEncryptedDataLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_EncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pEncryptedPart = outView(arena, pEncryptedPart);
+            MemorySegment ffm_pulEncryptedPartLen = ulong(arena, pulEncryptedPartLen.value);
+            long rv = (long) mhEncryptUpdate.invokeExact(hSession, view(arena, pPart), ulPartLen, ffm_pEncryptedPart, ffm_pulEncryptedPartLen);
+            pulEncryptedPartLen.value = getUL(ffm_pulEncryptedPartLen, 0);
+            copy(ffm_pEncryptedPart, pEncryptedPart, pulEncryptedPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pLastEncryptedPart = outView(arena, pLastEncryptedPart);
+            MemorySegment ffm_pulLastEncryptedPartLen = ulong(arena, pulLastEncryptedPartLen.value);
+            long rv = (long) mhEncryptFinal.invokeExact(hSession, ffm_pLastEncryptedPart, ffm_pulLastEncryptedPartLen);
+            pulLastEncryptedPartLen.value = getUL(ffm_pulLastEncryptedPartLen, 0);
+            copy(ffm_pLastEncryptedPart, pLastEncryptedPart, pulLastEncryptedPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptInit(long hSession, CKM pMechanism, long hKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhDecryptInit.invokeExact(hSession, mechanism(arena, pMechanism), hKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Decrypt(long hSession, byte[] pEncryptedData, long ulEncryptedDataLen, byte[] pData, LongRef pulDataLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pData = outView(arena, pData);
+            MemorySegment ffm_pulDataLen = ulong(arena, pulDataLen.value);
+            long rv = (long) mhDecrypt.invokeExact(hSession, view(arena, pEncryptedData), ulEncryptedDataLen, ffm_pData, ffm_pulDataLen);
+            pulDataLen.value = getUL(ffm_pulDataLen, 0);
+            copy(ffm_pData, pData, pulDataLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pData, LongRef pulDataLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pData = outView(arena, pData);
+            MemorySegment ffm_pulDataLen = ulong(arena, pulDataLen.value);
+            long rv = (long) mhDecryptUpdate.invokeExact(hSession, view(arena, pEncryptedPart), ulEncryptedPartLen, ffm_pData, ffm_pulDataLen);
+            pulDataLen.value = getUL(ffm_pulDataLen, 0);
+            copy(ffm_pData, pData, pulDataLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptFinal(long hSession, byte[] pLastPart, LongRef pulLastPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pLastPart = outView(arena, pLastPart);
+            MemorySegment ffm_pulLastPartLen = ulong(arena, pulLastPartLen.value);
+            long rv = (long) mhDecryptFinal.invokeExact(hSession, ffm_pLastPart, ffm_pulLastPartLen);
+            pulLastPartLen.value = getUL(ffm_pulLastPartLen, 0);
+            copy(ffm_pLastPart, pLastPart, pulLastPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestInit(long hSession, CKM pMechanism) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhDigestInit.invokeExact(hSession, mechanism(arena, pMechanism));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Digest(long hSession, byte[] pData, long ulDataLen, byte[] pDigest, LongRef pulDigestLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pDigest = outView(arena, pDigest);
+            MemorySegment ffm_pulDigestLen = ulong(arena, pulDigestLen.value);
+            long rv = (long) mhDigest.invokeExact(hSession, view(arena, pData), ulDataLen, ffm_pDigest, ffm_pulDigestLen);
+            pulDigestLen.value = getUL(ffm_pulDigestLen, 0);
+            copy(ffm_pDigest, pDigest, pulDigestLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestUpdate(long hSession, byte[] pPart, long ulPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhDigestUpdate.invokeExact(hSession, view(arena, pPart), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestKey(long hSession, long hKey) {
+        try {
+            return (long) mhDigestKey.invokeExact(hSession, hKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestFinal(long hSession, byte[] pDigest, LongRef pulDigestLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pDigest = outView(arena, pDigest);
+            MemorySegment ffm_pulDigestLen = ulong(arena, pulDigestLen.value);
+            long rv = (long) mhDigestFinal.invokeExact(hSession, ffm_pDigest, ffm_pulDigestLen);
+            pulDigestLen.value = getUL(ffm_pulDigestLen, 0);
+            copy(ffm_pDigest, pDigest, pulDigestLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignInit(long hSession, CKM pMechanism, long hKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhSignInit.invokeExact(hSession, mechanism(arena, pMechanism), hKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Sign(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, LongRef pulSignatureLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pSignature = outView(arena, pSignature);
+            MemorySegment ffm_pulSignatureLen = ulong(arena, pulSignatureLen.value);
+            long rv = (long) mhSign.invokeExact(hSession, view(arena, pData), ulDataLen, ffm_pSignature, ffm_pulSignatureLen);
+            pulSignatureLen.value = getUL(ffm_pulSignatureLen, 0);
+            copy(ffm_pSignature, pSignature, pulSignatureLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignUpdate(long hSession, byte[] pPart, long ulPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhSignUpdate.invokeExact(hSession, view(arena, pPart), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignFinal(long hSession, byte[] pSignature, LongRef pulSignatureLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pSignature = outView(arena, pSignature);
+            MemorySegment ffm_pulSignatureLen = ulong(arena, pulSignatureLen.value);
+            long rv = (long) mhSignFinal.invokeExact(hSession, ffm_pSignature, ffm_pulSignatureLen);
+            pulSignatureLen.value = getUL(ffm_pulSignatureLen, 0);
+            copy(ffm_pSignature, pSignature, pulSignatureLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignRecoverInit(long hSession, CKM pMechanism, long hKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhSignRecoverInit.invokeExact(hSession, mechanism(arena, pMechanism), hKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignRecover(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, LongRef pulSignatureLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pSignature = outView(arena, pSignature);
+            MemorySegment ffm_pulSignatureLen = ulong(arena, pulSignatureLen.value);
+            long rv = (long) mhSignRecover.invokeExact(hSession, view(arena, pData), ulDataLen, ffm_pSignature, ffm_pulSignatureLen);
+            pulSignatureLen.value = getUL(ffm_pulSignatureLen, 0);
+            copy(ffm_pSignature, pSignature, pulSignatureLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyInit(long hSession, CKM pMechanism, long hKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerifyInit.invokeExact(hSession, mechanism(arena, pMechanism), hKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Verify(long hSession, byte[] pData, long ulDataLen, byte[] pSignature, long ulSignatureLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerify.invokeExact(hSession, view(arena, pData), ulDataLen, view(arena, pSignature), ulSignatureLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyUpdate(long hSession, byte[] pPart, long ulPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerifyUpdate.invokeExact(hSession, view(arena, pPart), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyFinal(long hSession, byte[] pSignature, long ulSignatureLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerifyFinal.invokeExact(hSession, view(arena, pSignature), ulSignatureLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyRecoverInit(long hSession, CKM pMechanism, long hKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerifyRecoverInit.invokeExact(hSession, mechanism(arena, pMechanism), hKey);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyRecover(long hSession, byte[] pSignature, long ulSignatureLen, byte[] pData, LongRef pulDataLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pData = outView(arena, pData);
+            MemorySegment ffm_pulDataLen = ulong(arena, pulDataLen.value);
+            long rv = (long) mhVerifyRecover.invokeExact(hSession, view(arena, pSignature), ulSignatureLen, ffm_pData, ffm_pulDataLen);
+            pulDataLen.value = getUL(ffm_pulDataLen, 0);
+            copy(ffm_pData, pData, pulDataLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pEncryptedPart = outView(arena, pEncryptedPart);
+            MemorySegment ffm_pulEncryptedPartLen = ulong(arena, pulEncryptedPartLen.value);
+            long rv = (long) mhDigestEncryptUpdate.invokeExact(hSession, view(arena, pPart), ulPartLen, ffm_pEncryptedPart, ffm_pulEncryptedPartLen);
+            pulEncryptedPartLen.value = getUL(ffm_pulEncryptedPartLen, 0);
+            copy(ffm_pEncryptedPart, pEncryptedPart, pulEncryptedPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptDigestUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, LongRef pulPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pPart = outView(arena, pPart);
+            MemorySegment ffm_pulPartLen = ulong(arena, pulPartLen.value);
+            long rv = (long) mhDecryptDigestUpdate.invokeExact(hSession, view(arena, pEncryptedPart), ulEncryptedPartLen, ffm_pPart, ffm_pulPartLen);
+            pulPartLen.value = getUL(ffm_pulPartLen, 0);
+            copy(ffm_pPart, pPart, pulPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignEncryptUpdate(long hSession, byte[] pPart, long ulPartLen, byte[] pEncryptedPart, LongRef pulEncryptedPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pEncryptedPart = outView(arena, pEncryptedPart);
+            MemorySegment ffm_pulEncryptedPartLen = ulong(arena, pulEncryptedPartLen.value);
+            long rv = (long) mhSignEncryptUpdate.invokeExact(hSession, view(arena, pPart), ulPartLen, ffm_pEncryptedPart, ffm_pulEncryptedPartLen);
+            pulEncryptedPartLen.value = getUL(ffm_pulEncryptedPartLen, 0);
+            copy(ffm_pEncryptedPart, pEncryptedPart, pulEncryptedPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptVerifyUpdate(long hSession, byte[] pEncryptedPart, long ulEncryptedPartLen, byte[] pPart, LongRef pulPartLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pPart = outView(arena, pPart);
+            MemorySegment ffm_pulPartLen = ulong(arena, pulPartLen.value);
+            long rv = (long) mhDecryptVerifyUpdate.invokeExact(hSession, view(arena, pEncryptedPart), ulEncryptedPartLen, ffm_pPart, ffm_pulPartLen);
+            pulPartLen.value = getUL(ffm_pulPartLen, 0);
+            copy(ffm_pPart, pPart, pulPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GenerateKey(long hSession, CKM pMechanism, CKA[] pTemplate, long ulCount, LongRef phKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            MemorySegment ffm_phKey = ulong(arena, phKey.value);
+            long rv = (long) mhGenerateKey.invokeExact(hSession, mechanism(arena, pMechanism), ffm_pTemplate.segment, ulCount, ffm_phKey);
+            phKey.value = getUL(ffm_phKey, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GenerateKeyPair(long hSession, CKM pMechanism, CKA[] pPublicKeyTemplate, long ulPublicKeyAttributeCount,
+            CKA[] pPrivateKeyTemplate, long ulPrivateKeyAttributeCount, LongRef phPublicKey, LongRef phPrivateKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pPublicKeyTemplate = new Template(arena, pPublicKeyTemplate);
+            Template ffm_pPrivateKeyTemplate = new Template(arena, pPrivateKeyTemplate);
+            MemorySegment ffm_phPublicKey = ulong(arena, phPublicKey.value);
+            MemorySegment ffm_phPrivateKey = ulong(arena, phPrivateKey.value);
+            long rv = (long) mhGenerateKeyPair.invokeExact(hSession, mechanism(arena, pMechanism), ffm_pPublicKeyTemplate.segment, ulPublicKeyAttributeCount,
+                ffm_pPrivateKeyTemplate.segment, ulPrivateKeyAttributeCount, ffm_phPublicKey, ffm_phPrivateKey);
+            phPublicKey.value = getUL(ffm_phPublicKey, 0);
+            phPrivateKey.value = getUL(ffm_phPrivateKey, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_WrapKey(long hSession, CKM pMechanism, long hWrappingKey, long hKey, byte[] pWrappedKey, LongRef pulWrappedKeyLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pWrappedKey = outView(arena, pWrappedKey);
+            MemorySegment ffm_pulWrappedKeyLen = ulong(arena, pulWrappedKeyLen.value);
+            long rv = (long) mhWrapKey.invokeExact(hSession, mechanism(arena, pMechanism), hWrappingKey, hKey, ffm_pWrappedKey, ffm_pulWrappedKeyLen);
+            pulWrappedKeyLen.value = getUL(ffm_pulWrappedKeyLen, 0);
+            copy(ffm_pWrappedKey, pWrappedKey, pulWrappedKeyLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_UnwrapKey(long hSession, CKM pMechanism, long hUnwrappingKey, byte[] pWrappedKey, long ulWrappedKeyLen,
+            CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            MemorySegment ffm_phKey = ulong(arena, phKey.value);
+            long rv = (long) mhUnwrapKey.invokeExact(hSession, mechanism(arena, pMechanism), hUnwrappingKey, in(arena, pWrappedKey), ulWrappedKeyLen,
+                ffm_pTemplate.segment, ulAttributeCount, ffm_phKey);
+            phKey.value = getUL(ffm_phKey, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DeriveKey(long hSession, CKM pMechanism, long hBaseKey, CKA[] pTemplate, long ulAttributeCount, LongRef phKey) {
+        try (Arena arena = Arena.ofConfined()) {
+            Template ffm_pTemplate = new Template(arena, pTemplate);
+            MemorySegment ffm_phKey = ulong(arena, phKey.value);
+            long rv = (long) mhDeriveKey.invokeExact(hSession, mechanism(arena, pMechanism), hBaseKey, ffm_pTemplate.segment, ulAttributeCount, ffm_phKey);
+            phKey.value = getUL(ffm_phKey, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SeedRandom(long hSession, byte[] pSeed, long ulSeedLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhSeedRandom.invokeExact(hSession, view(arena, pSeed), ulSeedLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GenerateRandom(long hSession, byte[] pRandomData, long ulRandomLen) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pRandomData = outView(arena, pRandomData);
+            long rv = (long) mhGenerateRandom.invokeExact(hSession, ffm_pRandomData, ulRandomLen);
+            copy(ffm_pRandomData, pRandomData, ulRandomLen);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_GetFunctionStatus(long hSession) {
+        try {
+            return (long) mhGetFunctionStatus.invokeExact(hSession);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_CancelFunction(long hSession) {
+        try {
+            return (long) mhCancelFunction.invokeExact(hSession);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Encrypt(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pEncryptedData, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, pulEncryptedDataLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulEncryptedDataLen = ulong(arena, pulEncryptedDataLen.value);
+            long rv = (long) mhEncrypt.invokeExact(hSession, buffer(pData), ulDataLen, buffer(pEncryptedData), ffm_pulEncryptedDataLen);
+            pulEncryptedDataLen.value = getUL(ffm_pulEncryptedDataLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_EncryptUpdate(long hSession, ByteBuffer pPart, long ulPartLen, ByteBuffer pEncryptedPart, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, pulEncryptedPartLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulEncryptedPartLen = ulong(arena, pulEncryptedPartLen.value);
+            long rv = (long) mhEncryptUpdate.invokeExact(hSession, buffer(pPart), ulPartLen, buffer(pEncryptedPart), ffm_pulEncryptedPartLen);
+            pulEncryptedPartLen.value = getUL(ffm_pulEncryptedPartLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_EncryptFinal(long hSession, ByteBuffer pLastEncryptedPart, LongRef pulLastEncryptedPartLen) {
+        NioBuf.clamp(pLastEncryptedPart, pulLastEncryptedPartLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulLastEncryptedPartLen = ulong(arena, pulLastEncryptedPartLen.value);
+            long rv = (long) mhEncryptFinal.invokeExact(hSession, buffer(pLastEncryptedPart), ffm_pulLastEncryptedPartLen);
+            pulLastEncryptedPartLen.value = getUL(ffm_pulLastEncryptedPartLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Decrypt(long hSession, ByteBuffer pEncryptedData, long ulEncryptedDataLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, ulEncryptedDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulDataLen = ulong(arena, pulDataLen.value);
+            long rv = (long) mhDecrypt.invokeExact(hSession, buffer(pEncryptedData), ulEncryptedDataLen, buffer(pData), ffm_pulDataLen);
+            pulDataLen.value = getUL(ffm_pulDataLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptUpdate(long hSession, ByteBuffer pEncryptedPart, long ulEncryptedPartLen, ByteBuffer pData, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, ulEncryptedPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, pulDataLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulDataLen = ulong(arena, pulDataLen.value);
+            long rv = (long) mhDecryptUpdate.invokeExact(hSession, buffer(pEncryptedPart), ulEncryptedPartLen, buffer(pData), ffm_pulDataLen);
+            pulDataLen.value = getUL(ffm_pulDataLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptFinal(long hSession, ByteBuffer pLastPart, LongRef pulLastPartLen) {
+        NioBuf.clamp(pLastPart, pulLastPartLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulLastPartLen = ulong(arena, pulLastPartLen.value);
+            long rv = (long) mhDecryptFinal.invokeExact(hSession, buffer(pLastPart), ffm_pulLastPartLen);
+            pulLastPartLen.value = getUL(ffm_pulLastPartLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Digest(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pDigest, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, pulDigestLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulDigestLen = ulong(arena, pulDigestLen.value);
+            long rv = (long) mhDigest.invokeExact(hSession, buffer(pData), ulDataLen, buffer(pDigest), ffm_pulDigestLen);
+            pulDigestLen.value = getUL(ffm_pulDigestLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try {
+            return (long) mhDigestUpdate.invokeExact(hSession, buffer(pPart), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestFinal(long hSession, ByteBuffer pDigest, LongRef pulDigestLen) {
+        NioBuf.clamp(pDigest, pulDigestLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulDigestLen = ulong(arena, pulDigestLen.value);
+            long rv = (long) mhDigestFinal.invokeExact(hSession, buffer(pDigest), ffm_pulDigestLen);
+            pulDigestLen.value = getUL(ffm_pulDigestLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Sign(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulSignatureLen = ulong(arena, pulSignatureLen.value);
+            long rv = (long) mhSign.invokeExact(hSession, buffer(pData), ulDataLen, buffer(pSignature), ffm_pulSignatureLen);
+            pulSignatureLen.value = getUL(ffm_pulSignatureLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try {
+            return (long) mhSignUpdate.invokeExact(hSession, buffer(pPart), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignFinal(long hSession, ByteBuffer pSignature, LongRef pulSignatureLen) {
+        NioBuf.clamp(pSignature, pulSignatureLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pulSignatureLen = ulong(arena, pulSignatureLen.value);
+            long rv = (long) mhSignFinal.invokeExact(hSession, buffer(pSignature), ffm_pulSignatureLen);
+            pulSignatureLen.value = getUL(ffm_pulSignatureLen, 0);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Verify(long hSession, ByteBuffer pData, long ulDataLen, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, ulDataLen) || !NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try {
+            return (long) mhVerify.invokeExact(hSession, buffer(pData), ulDataLen, buffer(pSignature), ulSignatureLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyUpdate(long hSession, ByteBuffer pPart, long ulPartLen) {
+        if (!NioBuf.fits(pPart, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try {
+            return (long) mhVerifyUpdate.invokeExact(hSession, buffer(pPart), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyFinal(long hSession, ByteBuffer pSignature, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try {
+            return (long) mhVerifyFinal.invokeExact(hSession, buffer(pSignature), ulSignatureLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Encrypt(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pEncryptedData, int encryptedDataOff, LongRef pulEncryptedDataLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pEncryptedData, encryptedDataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedData, encryptedDataOff, pulEncryptedDataLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pEncryptedData = outView(arena, pEncryptedData, encryptedDataOff);
+            MemorySegment ffm_pulEncryptedDataLen = ulong(arena, pulEncryptedDataLen.value);
+            long rv = (long) mhEncrypt.invokeExact(hSession, view(arena, pData, dataOff, ulDataLen), ulDataLen, ffm_pEncryptedData, ffm_pulEncryptedDataLen);
+            pulEncryptedDataLen.value = getUL(ffm_pulEncryptedDataLen, 0);
+            copy(ffm_pEncryptedData, pEncryptedData, encryptedDataOff, pulEncryptedDataLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_EncryptUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen, byte[] pEncryptedPart, int encryptedPartOff, LongRef pulEncryptedPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen) || !NioBuf.fits(pEncryptedPart, encryptedPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pEncryptedPart, encryptedPartOff, pulEncryptedPartLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pEncryptedPart = outView(arena, pEncryptedPart, encryptedPartOff);
+            MemorySegment ffm_pulEncryptedPartLen = ulong(arena, pulEncryptedPartLen.value);
+            long rv = (long) mhEncryptUpdate.invokeExact(hSession, view(arena, pPart, partOff, ulPartLen), ulPartLen, ffm_pEncryptedPart, ffm_pulEncryptedPartLen);
+            pulEncryptedPartLen.value = getUL(ffm_pulEncryptedPartLen, 0);
+            copy(ffm_pEncryptedPart, pEncryptedPart, encryptedPartOff, pulEncryptedPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_EncryptFinal(long hSession, byte[] pLastEncryptedPart, int lastEncryptedPartOff, LongRef pulLastEncryptedPartLen) {
+        if (!NioBuf.fits(pLastEncryptedPart, lastEncryptedPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pLastEncryptedPart, lastEncryptedPartOff, pulLastEncryptedPartLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pLastEncryptedPart = outView(arena, pLastEncryptedPart, lastEncryptedPartOff);
+            MemorySegment ffm_pulLastEncryptedPartLen = ulong(arena, pulLastEncryptedPartLen.value);
+            long rv = (long) mhEncryptFinal.invokeExact(hSession, ffm_pLastEncryptedPart, ffm_pulLastEncryptedPartLen);
+            pulLastEncryptedPartLen.value = getUL(ffm_pulLastEncryptedPartLen, 0);
+            copy(ffm_pLastEncryptedPart, pLastEncryptedPart, lastEncryptedPartOff, pulLastEncryptedPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Decrypt(long hSession, byte[] pEncryptedData, int encryptedDataOff, long ulEncryptedDataLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedData, encryptedDataOff, ulEncryptedDataLen) || !NioBuf.fits(pData, dataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, dataOff, pulDataLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pData = outView(arena, pData, dataOff);
+            MemorySegment ffm_pulDataLen = ulong(arena, pulDataLen.value);
+            long rv = (long) mhDecrypt.invokeExact(hSession, view(arena, pEncryptedData, encryptedDataOff, ulEncryptedDataLen), ulEncryptedDataLen, ffm_pData, ffm_pulDataLen);
+            pulDataLen.value = getUL(ffm_pulDataLen, 0);
+            copy(ffm_pData, pData, dataOff, pulDataLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptUpdate(long hSession, byte[] pEncryptedPart, int encryptedPartOff, long ulEncryptedPartLen, byte[] pData, int dataOff, LongRef pulDataLen) {
+        if (!NioBuf.fits(pEncryptedPart, encryptedPartOff, ulEncryptedPartLen) || !NioBuf.fits(pData, dataOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pData, dataOff, pulDataLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pData = outView(arena, pData, dataOff);
+            MemorySegment ffm_pulDataLen = ulong(arena, pulDataLen.value);
+            long rv = (long) mhDecryptUpdate.invokeExact(hSession, view(arena, pEncryptedPart, encryptedPartOff, ulEncryptedPartLen), ulEncryptedPartLen, ffm_pData, ffm_pulDataLen);
+            pulDataLen.value = getUL(ffm_pulDataLen, 0);
+            copy(ffm_pData, pData, dataOff, pulDataLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DecryptFinal(long hSession, byte[] pLastPart, int lastPartOff, LongRef pulLastPartLen) {
+        if (!NioBuf.fits(pLastPart, lastPartOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pLastPart, lastPartOff, pulLastPartLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pLastPart = outView(arena, pLastPart, lastPartOff);
+            MemorySegment ffm_pulLastPartLen = ulong(arena, pulLastPartLen.value);
+            long rv = (long) mhDecryptFinal.invokeExact(hSession, ffm_pLastPart, ffm_pulLastPartLen);
+            pulLastPartLen.value = getUL(ffm_pulLastPartLen, 0);
+            copy(ffm_pLastPart, pLastPart, lastPartOff, pulLastPartLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Digest(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pDigest, digestOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, digestOff, pulDigestLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pDigest = outView(arena, pDigest, digestOff);
+            MemorySegment ffm_pulDigestLen = ulong(arena, pulDigestLen.value);
+            long rv = (long) mhDigest.invokeExact(hSession, view(arena, pData, dataOff, ulDataLen), ulDataLen, ffm_pDigest, ffm_pulDigestLen);
+            pulDigestLen.value = getUL(ffm_pulDigestLen, 0);
+            copy(ffm_pDigest, pDigest, digestOff, pulDigestLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhDigestUpdate.invokeExact(hSession, view(arena, pPart, partOff, ulPartLen), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_DigestFinal(long hSession, byte[] pDigest, int digestOff, LongRef pulDigestLen) {
+        if (!NioBuf.fits(pDigest, digestOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pDigest, digestOff, pulDigestLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pDigest = outView(arena, pDigest, digestOff);
+            MemorySegment ffm_pulDigestLen = ulong(arena, pulDigestLen.value);
+            long rv = (long) mhDigestFinal.invokeExact(hSession, ffm_pDigest, ffm_pulDigestLen);
+            pulDigestLen.value = getUL(ffm_pulDigestLen, 0);
+            copy(ffm_pDigest, pDigest, digestOff, pulDigestLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Sign(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pSignature, signatureOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, signatureOff, pulSignatureLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pSignature = outView(arena, pSignature, signatureOff);
+            MemorySegment ffm_pulSignatureLen = ulong(arena, pulSignatureLen.value);
+            long rv = (long) mhSign.invokeExact(hSession, view(arena, pData, dataOff, ulDataLen), ulDataLen, ffm_pSignature, ffm_pulSignatureLen);
+            pulSignatureLen.value = getUL(ffm_pulSignatureLen, 0);
+            copy(ffm_pSignature, pSignature, signatureOff, pulSignatureLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhSignUpdate.invokeExact(hSession, view(arena, pPart, partOff, ulPartLen), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_SignFinal(long hSession, byte[] pSignature, int signatureOff, LongRef pulSignatureLen) {
+        if (!NioBuf.fits(pSignature, signatureOff, 0)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        NioBuf.clamp(pSignature, signatureOff, pulSignatureLen);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment ffm_pSignature = outView(arena, pSignature, signatureOff);
+            MemorySegment ffm_pulSignatureLen = ulong(arena, pulSignatureLen.value);
+            long rv = (long) mhSignFinal.invokeExact(hSession, ffm_pSignature, ffm_pulSignatureLen);
+            pulSignatureLen.value = getUL(ffm_pulSignatureLen, 0);
+            copy(ffm_pSignature, pSignature, signatureOff, pulSignatureLen.value);
+            return rv;
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_Verify(long hSession, byte[] pData, int dataOff, long ulDataLen, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        if (!NioBuf.fits(pData, dataOff, ulDataLen) || !NioBuf.fits(pSignature, signatureOff, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerify.invokeExact(hSession, view(arena, pData, dataOff, ulDataLen), ulDataLen, view(arena, pSignature, signatureOff, ulSignatureLen), ulSignatureLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyUpdate(long hSession, byte[] pPart, int partOff, long ulPartLen) {
+        if (!NioBuf.fits(pPart, partOff, ulPartLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerifyUpdate.invokeExact(hSession, view(arena, pPart, partOff, ulPartLen), ulPartLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long C_VerifyFinal(long hSession, byte[] pSignature, int signatureOff, long ulSignatureLen) {
+        if (!NioBuf.fits(pSignature, signatureOff, ulSignatureLen)) {
+            return CKR.ARGUMENTS_BAD;
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            return (long) mhVerifyFinal.invokeExact(hSession, view(arena, pSignature, signatureOff, ulSignatureLen), ulSignatureLen);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Creates a downcall handle that takes and returns CK_ULONG as java long regardless of
+     * native size.
+     * @param name function name
+     * @param critical true to allow heap segments, see class comment
+     * @param signature one char per argument: U for CK_ULONG, A for pointer, B for CK_BYTE
+     * @return method handle
+     */
+    private MethodHandle downcall(String name, boolean critical, String signature) {
+        MemoryLayout[] layouts = new MemoryLayout[signature.length()];
+        Class<?>[] types = new Class<?>[signature.length()];
+        for (int i = 0; i < layouts.length; i++) {
+            switch (signature.charAt(i)) {
+                case 'U': layouts[i] = CK_ULONG; types[i] = long.class; break;
+                case 'A': layouts[i] = ValueLayout.ADDRESS; types[i] = MemorySegment.class; break;
+                case 'B': layouts[i] = ValueLayout.JAVA_BYTE; types[i] = byte.class; break;
+                default: throw new IllegalArgumentException("Invalid signature " + signature);
+            }
+        }
+        MemorySegment address = lookup.find(name).orElseThrow(
+            () -> new UnsatisfiedLinkError("Error looking up function '" + name + "' in " + library));
+        Linker.Option[] options = critical
+            ? new Linker.Option[] {Linker.Option.critical(true)} : new Linker.Option[0];
+        MethodHandle handle = LINKER.downcallHandle(address, FunctionDescriptor.of(CK_ULONG, layouts), options);
+        return MethodHandles.explicitCastArguments(handle, MethodType.methodType(long.class, types));
+    }
+
+    private static MemorySegment upcall(MethodHandle target, FunctionDescriptor descriptor, Arena arena) {
+        return LINKER.upcallStub(MethodHandles.explicitCastArguments(target, descriptor.toMethodType()), descriptor, arena);
+    }
+
+    private static MethodHandle findStatic(String name, Class<?>... ptypes) {
+        try {
+            return MethodHandles.lookup().findStatic(FFM.class, name, MethodType.methodType(long.class, ptypes));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static long align(long offset, long alignment) {
+        return PACKED ? offset : (offset + alignment - 1) & -alignment;
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+    }
+
+    private MemorySegment initArgs(Arena arena, Arena stubs, CK_C_INITIALIZE_ARGS args) {
+        MemorySegment s = arena.allocate(INIT_ARGS_SIZE, 8);
+        s.set(ValueLayout.ADDRESS_UNALIGNED, 0, args.createMutex == null ? MemorySegment.NULL
+            : upcall(CREATE_MUTEX.bindTo(args.createMutex), MUTEX, stubs));
+        s.set(ValueLayout.ADDRESS_UNALIGNED, PTR, args.destroyMutex == null ? MemorySegment.NULL
+            : upcall(DESTROY_MUTEX.bindTo(args.destroyMutex), MUTEX, stubs));
+        s.set(ValueLayout.ADDRESS_UNALIGNED, 2 * PTR, args.lockMutex == null ? MemorySegment.NULL
+            : upcall(LOCK_MUTEX.bindTo(args.lockMutex), MUTEX, stubs));
+        s.set(ValueLayout.ADDRESS_UNALIGNED, 3 * PTR, args.unlockMutex == null ? MemorySegment.NULL
+            : upcall(UNLOCK_MUTEX.bindTo(args.unlockMutex), MUTEX, stubs));
+        setUL(s, INIT_ARGS_FLAGS, args.flags);
+        s.set(ValueLayout.ADDRESS_UNALIGNED, INIT_ARGS_RESERVED, pointer(args.pReserved));
+        return s;
+    }
+
+    private static MemorySegment mechanism(Arena arena, CKM ckm) {
+        if (ckm == null) {
+            return MemorySegment.NULL;
+        }
+        if (ckm instanceof PreparedCKM prepared) {
+            return MemorySegment.ofAddress(prepared.getAddress());
+        }
+        MemorySegment s = arena.allocate(TLV_SIZE, 8);
+        setUL(s, 0, ckm.mechanism);
+        MemorySegment param = ckm.bParameter != null ? arena.allocateFrom(ValueLayout.JAVA_BYTE, ckm.bParameter)
+            : MemorySegment.ofAddress(ckm.getParameterAddress());
+        s.set(ValueLayout.ADDRESS_UNALIGNED, TLV_PVALUE, param);
+        setUL(s, TLV_LEN, ckm.ulParameterLen);
+        return s;
+    }
+
+    private static MemorySegment pointer(NativePointer p) {
+        return p == null ? MemorySegment.NULL : MemorySegment.ofAddress(p.getAddress());
+    }
+
+    private static long getUL(MemorySegment s, long offset) {
+        return UL == 8 ? s.get(ValueLayout.JAVA_LONG_UNALIGNED, offset) : s.get(ValueLayout.JAVA_INT_UNALIGNED, offset);
+    }
+
+    private static void setUL(MemorySegment s, long offset, long value) {
+        if (UL == 8) {
+            s.set(ValueLayout.JAVA_LONG_UNALIGNED, offset, value);
+        } else {
+            s.set(ValueLayout.JAVA_INT_UNALIGNED, offset, (int) value);
+        }
+    }
+
+    private static MemorySegment ulong(Arena arena, long value) {
+        MemorySegment s = arena.allocate(UL, UL);
+        setUL(s, 0, value);
+        return s;
+    }
+
+    private static MemorySegment ulongs(Arena arena, long[] values) {
+        if (values == null) {
+            return MemorySegment.NULL;
+        }
+        MemorySegment s = arena.allocate(Math.max(1, values.length) * (long) UL, UL);
+        for (int i = 0; i < values.length; i++) {
+            setUL(s, (long) i * UL, values[i]);
+        }
+        return s;
+    }
+
+    private static void read(MemorySegment s, long[] values) {
+        if (values == null) {
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getUL(s, (long) i * UL);
+        }
+    }
+
+    private static void read(MemorySegment s, long offset, byte[] dst) {
+        MemorySegment.copy(s, ValueLayout.JAVA_BYTE, offset, dst, 0, dst.length);
+    }
+
+    private static void readVersion(MemorySegment s, long offset, CK_VERSION version) {
+        version.major = s.get(ValueLayout.JAVA_BYTE, offset);
+        version.minor = s.get(ValueLayout.JAVA_BYTE, offset + 1);
+    }
+
+    /** Copies input data to native memory. */
+    private static MemorySegment in(Arena arena, byte[] buf) {
+        return buf == null ? MemorySegment.NULL : arena.allocateFrom(ValueLayout.JAVA_BYTE, buf);
+    }
+
+    /** Allocates native memory for output data. */
+    private static MemorySegment out(Arena arena, byte[] buf) {
+        return buf == null ? MemorySegment.NULL : arena.allocate(Math.max(1, buf.length));
+    }
+
+    /** Input data for critical functions, a view over buf if heapAccess is enabled. */
+    private MemorySegment view(Arena arena, byte[] buf) {
+        return heapAccess && buf != null ? MemorySegment.ofArray(buf) : in(arena, buf);
+    }
+
+    /** Output data for critical functions, a view over buf if heapAccess is enabled. */
+    private MemorySegment outView(Arena arena, byte[] buf) {
+        return heapAccess && buf != null ? MemorySegment.ofArray(buf) : out(arena, buf);
+    }
+
+    /** Input data from buf[off] for critical functions, checked with NioBuf.fits. */
+    private MemorySegment view(Arena arena, byte[] buf, int off, long len) {
+        if (buf == null) {
+            return MemorySegment.NULL;
+        }
+        if (heapAccess) {
+            return MemorySegment.ofArray(buf).asSlice(off);
+        }
+        MemorySegment s = arena.allocate(Math.max(1, len));
+        MemorySegment.copy(buf, off, s, ValueLayout.JAVA_BYTE, 0, (int) len);
+        return s;
+    }
+
+    /** Output data to buf[off] for critical functions, checked with NioBuf.fits. */
+    private MemorySegment outView(Arena arena, byte[] buf, int off) {
+        if (buf == null) {
+            return MemorySegment.NULL;
+        }
+        return heapAccess ? MemorySegment.ofArray(buf).asSlice(off) : arena.allocate(Math.max(1, buf.length - off));
+    }
+
+    /**
+     * Segment for buf from position to limit.  Heap buffers are only allowed
+     * with heapAccess, see class comment.
+     */
+    private MemorySegment buffer(ByteBuffer buf) {
+        if (buf == null) {
+            return MemorySegment.NULL;
+        }
+        if (!buf.isDirect() && !heapAccess) {
+            throw new IllegalArgumentException("ByteBuffer must be direct");
+        }
+        return MemorySegment.ofBuffer(buf);
+    }
+
+    /** Copies output data from native memory into buf, nothing to do for heap views. */
+    private static void copy(MemorySegment s, byte[] buf, long len) {
+        if (buf == null || !s.isNative()) {
+            return;
+        }
+        MemorySegment.copy(s, ValueLayout.JAVA_BYTE, 0, buf, 0, (int) Math.max(0, Math.min(len, buf.length)));
+    }
+
+    /** Copies output data from native memory into buf[off], nothing to do for heap views. */
+    private static void copy(MemorySegment s, byte[] buf, int off, long len) {
+        if (buf == null || !s.isNative()) {
+            return;
+        }
+        MemorySegment.copy(s, ValueLayout.JAVA_BYTE, 0, buf, off, (int) Math.max(0, Math.min(len, buf.length - off)));
+    }
+
+    private static long notifyCallback(CK_NOTIFY notify, long hSession, long event, MemorySegment pApplication) {
+        try {
+            return notify.invoke(hSession, event, new NativePointer(pApplication.address()));
+        } catch (Throwable t) {
+            // exceptions must not propagate into native code
+            return CKR.GENERAL_ERROR;
+        }
+    }
+
+    private static long createMutex(CK_CREATEMUTEX callback, MemorySegment ppMutex) {
+        try {
+            NativePointerByReference mutex = new NativePointerByReference(new NativePointer(0));
+            long rv = callback.invoke(mutex);
+            ppMutex.reinterpret(PTR).set(ValueLayout.ADDRESS_UNALIGNED, 0,
+                MemorySegment.ofAddress(mutex.getPointer().getAddress()));
+            return rv;
+        } catch (Throwable t) {
+            return CKR.GENERAL_ERROR;
+        }
+    }
+
+    private static long destroyMutex(CK_DESTROYMUTEX callback, MemorySegment mutex) {
+        try {
+            return callback.invoke(new NativePointer(mutex.address()));
+        } catch (Throwable t) {
+            return CKR.GENERAL_ERROR;
+        }
+    }
+
+    private static long lockMutex(CK_LOCKMUTEX callback, MemorySegment mutex) {
+        try {
+            return callback.invoke(new NativePointer(mutex.address()));
+        } catch (Throwable t) {
+            return CKR.GENERAL_ERROR;
+        }
+    }
+
+    private static long unlockMutex(CK_UNLOCKMUTEX callback, MemorySegment mutex) {
+        try {
+            return callback.invoke(new NativePointer(mutex.address()));
+        } catch (Throwable t) {
+            return CKR.GENERAL_ERROR;
+        }
+    }
+
+    private static final class NotifyStub {
+        final long slotID;
+        final Arena arena;
+
+        NotifyStub(long slotID, Arena arena) {
+            this.slotID = slotID;
+            this.arena = arena;
+        }
+    }
+
+    /**
+     * CK_ATTRIBUTE[] laid out with all values in one contiguous segment.
+     */
+    private static final class Template {
+        final MemorySegment segment;
+        private final CKA[] list;
+        private final MemorySegment[] values;
+
+        Template(Arena arena, CKA[] list) {
+            this.list = list;
+            int len = list == null ? 0 : list.length;
+            if (len == 0) {
+                segment = MemorySegment.NULL;
+                values = null;
+                return;
+            }
+            long size = len * TLV_SIZE;
+            for (CKA cka : list) {
+                size += (cka.ulValueLen + 7) & ~7L;
+            }
+            segment = arena.allocate(size, 8);
+            values = new MemorySegment[len];
+            long valueOffset = len * TLV_SIZE;
+            for (int i = 0; i < len; i++) {
+                long offset = i * TLV_SIZE;
+                setUL(segment, offset, list[i].type);
+                MemorySegment pValue = MemorySegment.NULL;
+                if (list[i].ulValueLen > 0) {
+                    pValue = segment.asSlice(valueOffset, list[i].ulValueLen);
+                    MemorySegment.copy(list[i].pValue, 0, pValue, ValueLayout.JAVA_BYTE, 0, (int) list[i].ulValueLen);
+                    valueOffset += (list[i].ulValueLen + 7) & ~7L;
+                }
+                values[i] = pValue;
+                segment.set(ValueLayout.ADDRESS_UNALIGNED, offset + TLV_PVALUE, pValue);
+                setUL(segment, offset + TLV_LEN, list[i].ulValueLen);
+            }
+        }
+
+        /**
+         * Reads lengths and values written by the library back into the CKA list.
+         */
+        void update() {
+            if (values == null) {
+                return;
+            }
+            for (int i = 0; i < list.length; i++) {
+                long ulValueLen = getUL(segment, i * TLV_SIZE + TLV_LEN);
+                if (values[i].byteSize() > 0 && ulValueLen > 0) {
+                    MemorySegment.copy(values[i], ValueLayout.JAVA_BYTE, 0, list[i].pValue, 0,
+                        (int) Math.min(ulValueLen, values[i].byteSize()));
+                }
+                list[i].ulValueLen = ulValueLen;
+                list[i].set();
+            }
+        }
+    }
+}
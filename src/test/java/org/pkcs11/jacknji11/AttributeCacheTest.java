@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link AttributeCache} with {@link CryptokiE} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class AttributeCacheTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+    private final byte[] modulus = new byte[256];
+
+    private void addObject(long object) {
+        Map<Long, byte[]> values = new HashMap<Long, byte[]>();
+        values.put(CKA.CLASS, ULong.ulong2b(CKO.PUBLIC_KEY));
+        values.put(CKA.MODULUS, modulus);
+        values.put(CKA.LABEL, Buf.c2b("k"));
+        token.attributes.put(object, values);
+    }
+
+    private int reads() {
+        return token.calls("C_GetAttributeValue");
+    }
+
+    @Test
+    public void testValueNotCached() {
+        ce.setAttributeCache(new AttributeCache());
+        Map<Long, byte[]> values = new HashMap<Long, byte[]>();
+        values.put(CKA.CLASS, ULong.ulong2b(CKO.DATA));
+        values.put(CKA.VALUE, Buf.c2b("v1"));
+        token.attributes.put(12L, values);
+        long session = ce.OpenSession(1);
+        assertEquals("v1", ce.GetAttributeValue(session, 12, CKA.VALUE).getValueStr());
+
+        // data object VALUE changed outside this CryptokiE is read again
+        values.put(CKA.VALUE, Buf.c2b("v2"));
+        assertEquals("v2", ce.GetAttributeValue(session, 12, CKA.VALUE).getValueStr());
+    }
+
+    @Test
+    public void testCache() {
+        AttributeCache cache = new AttributeCache();
+        ce.setAttributeCache(cache);
+        addObject(11);
+        long session = ce.OpenSession(1);
+        CKA[] first = ce.GetAttributeValue(session, 11, CKA.CLASS, CKA.MODULUS, CKA.LABEL);
+        int reads = reads();
+        assertEquals(2, cache.size());
+
+        // only LABEL, which can change, is read again
+        CKA[] second = ce.GetAttributeValue(session, 11, CKA.CLASS, CKA.MODULUS, CKA.LABEL);
+        assertTrue(reads() > reads);
+        assertEquals(CKO.PUBLIC_KEY, (long) second[0].getValueLong());
+        assertArrayEquals(first[1].getValue(), second[1].getValue());
+        assertEquals("k", second[2].getValueStr());
+        reads = reads();
+        assertArrayEquals(modulus, ce.GetAttributeValue(session, 11, CKA.MODULUS).getValue());
+        assertEquals(CKO.PUBLIC_KEY, (long) ce.GetAttributeValue(session, 11, CKA.CLASS).getValueLong());
+        assertEquals(reads, reads());
+        assertEquals(4, cache.getHits());
+
+        // returned values are copies
+        second[1].pValue[0] = 1;
+        assertEquals(0, ce.GetAttributeValue(session, 11, CKA.MODULUS).getValue()[0]);
+
+        // changing or destroying the object drops its values
+        ce.SetAttributeValue(session, 11, new CKA(CKA.LABEL, "x"));
+        assertEquals(0, cache.size());
+        ce.GetAttributeValue(session, 11, CKA.MODULUS);
+        assertTrue(reads() > reads);
+        ce.DestroyObject(session, 11);
+        assertEquals(0, cache.size());
+
+        // missing attributes are not cached
+        assertNull(ce.GetAttributeValue(session, 11, CKA.EC_POINT).getValue());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        AttributeCache cache = new AttributeCache(2, Collections.singleton(CKA.MODULUS));
+        ce.setAttributeCache(cache);
+        addObject(11);
+        addObject(12);
+        addObject(13);
+        long session = ce.OpenSession(1);
+        long session2 = ce.OpenSession(2);
+        ce.GetAttributeValue(session, 11, CKA.CLASS, CKA.MODULUS);
+        assertEquals(1, cache.size());
+        ce.GetAttributeValue(session2, 11, CKA.MODULUS);
+        ce.GetAttributeValue(session2, 12, CKA.MODULUS);
+        ce.GetAttributeValue(session2, 13, CKA.MODULUS);
+        assertTrue(cache.size() <= 2);
+
+        // session objects of a session that created objects are gone when it closes
+        ce.GetAttributeValue(session, 11, CKA.MODULUS);
+        ce.CreateObject(session2, new CKA(CKA.LABEL, "k"));
+        ce.CloseSession(session2);
+        assertEquals(1, cache.size());
+
+        cache.slotEvent(1, false);
+        assertEquals(0, cache.size());
+        ce.GetAttributeValue(session, 11, CKA.MODULUS);
+        ce.Finalize();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLoginAndCreate() {
+        AttributeCache cache = new AttributeCache();
+        ce.setAttributeCache(cache);
+        addObject(11);
+        long session = ce.OpenSession(1);
+        ce.GetAttributeValue(session, 11, CKA.CLASS, CKA.MODULUS);
+        assertEquals(2, cache.size());
+
+        // private objects are only visible while logged in
+        ce.LoginUser(session, StubToken.PIN);
+        assertEquals(0, cache.size());
+        ce.GetAttributeValue(session, 11, CKA.CLASS, CKA.MODULUS);
+        ce.Logout(session);
+        assertEquals(0, cache.size());
+
+        // a new object may reuse a handle
+        ce.GetAttributeValue(session, 11, CKA.CLASS, CKA.MODULUS);
+        addObject(12);
+        ce.GetAttributeValue(session, 12, CKA.CLASS);
+        assertEquals(3, cache.size());
+        ce.CreateObject(session, new CKA[] {new CKA(CKA.LABEL, "k")}, new LongRef(11));
+        assertEquals(1, cache.size());
+        assertEquals(CKO.PUBLIC_KEY, (long) ce.GetAttributeValue(session, 12, CKA.CLASS).getValueLong());
+    }
+
+    @Test
+    public void testEviction() {
+        AttributeCache cache = new AttributeCache(3, Collections.singleton(CKA.MODULUS));
+        ce.setAttributeCache(cache);
+        long session = ce.OpenSession(1);
+        addObject(11);
+        ce.GetAttributeValue(session, 11, CKA.MODULUS);
+        for (long object = 12; object < 40; object++) {
+            addObject(object);
+            ce.GetAttributeValue(session, object, CKA.MODULUS);
+            assertTrue(cache.size() <= 3);
+            // object in regular use stays cached
+            int reads = reads();
+            ce.GetAttributeValue(session, 11, CKA.MODULUS);
+            assertEquals(reads, reads());
+        }
+
+        // dropping one object leaves the others
+        int size = cache.size();
+        cache.invalidate(1, 11);
+        assertEquals(size - 1, cache.size());
+        int reads = reads();
+        ce.GetAttributeValue(session, 39, CKA.MODULUS);
+        assertEquals(reads, reads());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.pkcs11.jacknji11.AttributeLengthStrategy.AdaptiveLengthStrategy;
+
+/**
+ * Tests {@link AdaptiveLengthStrategy} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class AttributeLengthStrategyTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    private void addObject(long object, int modulusLength) {
+        Map<Long, byte[]> values = new HashMap<Long, byte[]>();
+        values.put(CKA.MODULUS, new byte[modulusLength]);
+        values.put(CKA.LABEL, Buf.c2b("key" + object));
+        token.attributes.put(object, values);
+    }
+
+    private int reads() {
+        return token.calls("C_GetAttributeValue");
+    }
+
+    @Test
+    public void testAdaptive() {
+        AdaptiveLengthStrategy strategy = new AdaptiveLengthStrategy();
+        ce.setAttributeLengthStrategy(strategy);
+        addObject(11, 256);
+        addObject(12, 512);
+        addObject(13, 20000);
+        long session = ce.OpenSession(1);
+
+        // lengths queried first time
+        ce.GetAttributeValue(session, 11, CKA.MODULUS, CKA.LABEL);
+        assertEquals(2, reads());
+        assertEquals(Integer.valueOf(256), strategy.getLearnedLengths().get(CKA.MODULUS));
+        assertEquals(Integer.valueOf(8), strategy.getLearnedLengths().get(CKA.LABEL));
+
+        // then a single call
+        CKA[] values = ce.GetAttributeValue(session, 11, CKA.MODULUS, CKA.LABEL);
+        assertEquals(3, reads());
+        assertEquals(256, values[0].getValue().length);
+        assertEquals("key11", values[1].getValueStr());
+
+        // longer value than learned is queried again and learned
+        assertArrayEquals(new byte[512], ce.GetAttributeValue(session, 12, CKA.MODULUS).getValue());
+        assertEquals(Integer.valueOf(512), strategy.getLearnedLengths().get(CKA.MODULUS));
+        int reads = reads();
+        ce.GetAttributeValue(session, 11, CKA.MODULUS);
+        ce.GetAttributeValue(session, 12, CKA.MODULUS);
+        assertEquals(reads + 2, reads());
+
+        // too long to learn, always queried
+        assertEquals(20000, ce.GetAttributeValue(session, 13, CKA.MODULUS).getValue().length);
+        assertEquals(Integer.valueOf(0), strategy.getLearnedLengths().get(CKA.MODULUS));
+        assertEquals(0, strategy.getAttributeLength(CKA.MODULUS));
+
+        strategy.reset();
+        assertEquals(0, strategy.getLearnedLengths().size());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests bulk reads into {@link AttributeValues} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class AttributeValuesTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    private long[] addObjects(int count) {
+        long[] objects = new long[count];
+        for (int i = 0; i < count; i++) {
+            objects[i] = 1000 + i;
+            Map<Long, byte[]> values = new HashMap<Long, byte[]>();
+            values.put(CKA.MODULUS, new byte[256]);
+            values.put(CKA.LABEL, Buf.c2b("key" + i));
+            token.attributes.put(objects[i], values);
+        }
+        return objects;
+    }
+
+    @Test
+    public void testGetAttributeValues() {
+        long[] objects = addObjects(10);
+        // object removed by someone else
+        token.attributes.remove(objects[3]);
+        long session = ce.OpenSession(1);
+        AttributeValues values = ce.GetAttributeValues(session, objects, CKA.LABEL, CKA.MODULUS);
+        assertEquals(10, values.size());
+        assertEquals(1, values.getErrorCount());
+        assertEquals(CKR.OBJECT_HANDLE_INVALID, values.getError(3).getCKR());
+        assertNull(values.get(3));
+        assertEquals("key9", values.get(9, CKA.LABEL).getValueStr());
+        assertEquals(256, values.get(9)[1].getValue().length);
+        assertNull(values.get(9, CKA.ID));
+
+        // lengths learned from the first object, each other object read in one call
+        // (plus the failed object's single call)
+        assertEquals(2 + 9, token.calls("C_GetAttributeValue"));
+    }
+
+    @Test
+    public void testPool() {
+        long[] objects = addObjects(101);
+        SessionPool pool = new SessionPool(ce, 1, null, 1, 4, 5000);
+        try {
+            AttributeValues values = pool.getAttributeValues(objects, 4, CKA.LABEL);
+            assertEquals(0, values.getErrorCount());
+            for (int i = 0; i < objects.length; i++) {
+                assertEquals("key" + i, values.get(i, CKA.LABEL).getValueStr());
+            }
+            assertEquals(2 + 100, token.calls("C_GetAttributeValue"));
+
+            // lost sessions are recovered
+            token.restart();
+            values = pool.getAttributeValues(objects, 1, CKA.LABEL);
+            assertEquals(0, values.getErrorCount());
+            assertEquals(0, pool.getAttributeValues(new long[0], 4, CKA.LABEL).size());
+        } finally {
+            pool.close();
+        }
+    }
+}
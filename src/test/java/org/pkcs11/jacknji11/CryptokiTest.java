@@ -21,6 +21,7 @@
 
 package org.pkcs11.jacknji11;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.function.Predicate;
 
@@ -62,6 +63,17 @@ public class CryptokiTest extends TestCase {
         // C.NATIVE = new org.pkcs11.jacknji11.jna.JNA("/usr/lib/softhsm/libsofthsm2.so");
         // Or JFFI can be used rather than JNA:
         // C.NATIVE = new org.pkcs11.jacknji11.jffi.JFFI();
+        // Or with system property jacknji11.test.provider=jni|jnadirect|jffi
+        if (C.NATIVE == null) {
+            String provider = System.getProperty("jacknji11.test.provider", "");
+            if (provider.equals("jni")) {
+                C.NATIVE = new org.pkcs11.jacknji11.jni.JNI();
+            } else if (provider.equals("jnadirect")) {
+                C.NATIVE = new org.pkcs11.jacknji11.jna.JNADirect();
+            } else if (provider.equals("jffi")) {
+                C.NATIVE = new org.pkcs11.jacknji11.jffi.JFFI();
+            }
+        }
         CE.Initialize();
     }
 
@@ -266,6 +278,64 @@ public class CryptokiTest extends TestCase {
         assertTrue(Arrays.equals(plaintext, Buf.cat(decrypted2a, decrypted2b, decrypted2c)));
     }
 
+    public void testEncryptDecryptByteBuffer() {
+        long session = CE.OpenSession(TESTSLOT, CK_SESSION_INFO.CKF_RW_SESSION | CK_SESSION_INFO.CKF_SERIAL_SESSION, null, null);
+        CE.LoginUser(session, USER_PIN);
+
+        long aeskey = CE.GenerateKey(session, new CKM(CKM.AES_KEY_GEN),
+                new CKA(CKA.VALUE_LEN, 32),
+                new CKA(CKA.LABEL, "labelencaesbuf"),
+                new CKA(CKA.ID, "labelencaesbuf"),
+                new CKA(CKA.TOKEN, false),
+                new CKA(CKA.SENSITIVE, false),
+                new CKA(CKA.ENCRYPT, true),
+                new CKA(CKA.DECRYPT, true));
+
+        byte[] plaintext = new byte[64];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) i;
+        }
+        CE.EncryptInit(session, new CKM(CKM.AES_CBC, new byte[16]), aeskey);
+        byte[] expected = CE.Encrypt(session, plaintext);
+
+        // direct buffers, data at non-zero position
+        ByteBuffer in = ByteBuffer.allocateDirect(plaintext.length + 3);
+        in.position(3);
+        in.put(plaintext).position(3);
+        ByteBuffer out = ByteBuffer.allocateDirect(plaintext.length + 5);
+        out.position(5);
+        CE.EncryptInit(session, new CKM(CKM.AES_CBC, new byte[16]), aeskey);
+        assertEquals(plaintext.length, CE.CRYPTOKIE.Encrypt(session, in, out));
+        assertEquals(in.limit(), in.position());
+        assertEquals(out.limit(), out.position());
+        byte[] encrypted = new byte[plaintext.length];
+        out.position(5);
+        out.get(encrypted);
+        assertTrue(Arrays.equals(expected, encrypted));
+
+        // heap buffers, multi-part
+        ByteBuffer heapIn = ByteBuffer.wrap(expected, 16, 48).slice();
+        ByteBuffer heapOut = ByteBuffer.allocate(64);
+        CE.DecryptInit(session, new CKM(CKM.AES_CBC, Arrays.copyOf(expected, 16)), aeskey);
+        CE.CRYPTOKIE.DecryptUpdate(session, heapIn, heapOut);
+        CE.CRYPTOKIE.DecryptFinal(session, heapOut);
+        assertEquals(48, heapOut.position());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(plaintext, 16, 64), Arrays.copyOf(heapOut.array(), 48)));
+
+        // byte[] slices with offsets
+        byte[] sliced = new byte[plaintext.length + 7];
+        CE.EncryptInit(session, new CKM(CKM.AES_CBC, new byte[16]), aeskey);
+        int n = CE.CRYPTOKIE.EncryptUpdate(session, plaintext, 0, 32, sliced, 7);
+        n += CE.CRYPTOKIE.EncryptUpdate(session, plaintext, 32, 32, sliced, 7 + n);
+        n += CE.CRYPTOKIE.EncryptFinal(session, sliced, 7 + n);
+        assertEquals(plaintext.length, n);
+        assertTrue(Arrays.equals(expected, Arrays.copyOfRange(sliced, 7, sliced.length)));
+        byte[] decrypted = new byte[plaintext.length];
+        CE.DecryptInit(session, new CKM(CKM.AES_CBC, new byte[16]), aeskey);
+        assertEquals(plaintext.length, CE.CRYPTOKIE.Decrypt(session, sliced, 7, plaintext.length, decrypted, 0));
+        assertTrue(Arrays.equals(plaintext, decrypted));
+    }
+
     public void testDigest() {
         long session = CE.OpenSession(TESTSLOT, CK_SESSION_INFO.CKF_RW_SESSION | CK_SESSION_INFO.CKF_SERIAL_SESSION, null, null);
         CE.Login(session, CKU.USER, USER_PIN); // Needed depending on HSM policy
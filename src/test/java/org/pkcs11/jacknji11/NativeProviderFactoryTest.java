@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link NativeProviderFactory} without a cryptoki library.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class NativeProviderFactoryTest {
+
+    /** @return provider that returns rv for every call */
+    static NativeProvider stub(final long rv) {
+        return (NativeProvider) Proxy.newProxyInstance(NativeProvider.class.getClassLoader(),
+            new Class[] {NativeProvider.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().startsWith("C_") ? Long.valueOf(rv) : null;
+                }
+            });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateUnknown() {
+        NativeProviderFactory.create("NoSuchProvider", "cryptoki");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateNotProvider() {
+        NativeProviderFactory.create("java.lang.String", "cryptoki");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSelectMissingLibrary() {
+        NativeProviderFactory.select("/no/such/libcryptoki.so", false);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSelectCalibratedMissingLibrary() {
+        NativeProviderFactory.select("/no/such/libcryptoki.so", true);
+    }
+
+    @Test
+    public void testCalibrateProcess() throws Exception {
+        assertTrue(NativeProviderFactory.calibrateProcess("/no/such/libcryptoki.so").isEmpty());
+    }
+
+    @Test
+    public void testDiscover() {
+        List<String> names = NativeProviderFactory.discover();
+        assertTrue(names.contains("JNA"));
+        assertTrue(names.indexOf("JFFI") < names.indexOf("JNA"));
+    }
+
+    @Test
+    public void testCalibrate() {
+        assertTrue(NativeProviderFactory.calibrate(stub(CKR.CRYPTOKI_NOT_INITIALIZED)) >= 0);
+    }
+
+    @Test
+    public void testMetricsProvider() {
+        NativeProvider provider = stub(CKR.OK);
+        Cryptoki cryptoki = new Cryptoki(provider);
+        assertEquals(provider.getClass().getSimpleName(), cryptoki.getMetrics().getProvider());
+        assertTrue(cryptoki.getMetrics().getCalibration().isEmpty());
+    }
+}
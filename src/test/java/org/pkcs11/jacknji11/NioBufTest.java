@@ -0,0 +1,228 @@
+/*
+ * Copyright 2010-2011 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests ByteBuffer handling in {@link NioBuf} and {@link Cryptoki} using a
+ * provider that xors data with 0x5a, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class NioBufTest {
+
+    /** Records which C_Encrypt overload was called. */
+    static class XorProvider implements InvocationHandler {
+        String called;
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!method.getName().equals("C_Encrypt")) {
+                return CKR.FUNCTION_NOT_SUPPORTED;
+            }
+            // C_Encrypt(session, in, inOff, len, out, outOff, outLen) or without offsets
+            boolean offsets = args.length == 7;
+            int inOff = offsets ? (Integer) args[2] : 0;
+            int outOff = offsets ? (Integer) args[5] : 0;
+            if (offsets) {
+                args = new Object[] {args[0], args[1], args[3], args[4], args[6]};
+            }
+            LongRef outLen = (LongRef) args[4];
+            int len = (int) (long) (Long) args[2];
+            if (args[3] == null) {
+                outLen.value = len;
+                return CKR.OK;
+            }
+            if (outLen.value < len) {
+                outLen.value = len;
+                return CKR.BUFFER_TOO_SMALL;
+            }
+            if (args[1] instanceof ByteBuffer) {
+                called = "ByteBuffer";
+                ByteBuffer in = ((ByteBuffer) args[1]).duplicate();
+                ByteBuffer out = ((ByteBuffer) args[3]).duplicate();
+                for (int i = 0; i < len; i++) {
+                    out.put((byte) (in.get() ^ 0x5a));
+                }
+            } else {
+                called = offsets ? "byte[] offsets" : "byte[]";
+                byte[] in = (byte[]) args[1];
+                byte[] out = (byte[]) args[3];
+                for (int i = 0; i < len; i++) {
+                    out[outOff + i] = (byte) (in[inOff + i] ^ 0x5a);
+                }
+            }
+            outLen.value = len;
+            return CKR.OK;
+        }
+    }
+
+    private final XorProvider xor = new XorProvider();
+    private final Cryptoki c = new Cryptoki((NativeProvider) Proxy.newProxyInstance(
+        NativeProvider.class.getClassLoader(), new Class<?>[] {NativeProvider.class}, xor));
+    private final CryptokiE ce = new CryptokiE(c);
+
+    @Test
+    public void testInOut() {
+        byte[] array = {1, 2, 3, 4};
+        ByteBuffer whole = ByteBuffer.wrap(array);
+        assertSame(array, NioBuf.in(whole));
+        assertSame(array, NioBuf.out(whole));
+
+        ByteBuffer part = ByteBuffer.wrap(array, 1, 2);
+        assertSame(array, NioBuf.in(part));
+        assertSame(array, NioBuf.out(part));
+        assertEquals(1, NioBuf.offset(part));
+        assertEquals(2, NioBuf.offset(((ByteBuffer) part.position(2)).slice()));
+
+        ByteBuffer readOnly = whole.asReadOnlyBuffer();
+        readOnly.position(1);
+        assertArrayEquals(new byte[] {2, 3, 4}, NioBuf.in(readOnly));
+        assertEquals(0, NioBuf.offset(readOnly));
+        byte[] out = NioBuf.out(readOnly);
+        assertNotSame(array, out);
+        assertEquals(3, out.length);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.position(1);
+        out[0] = 9;
+        NioBuf.copyOut(direct, out, 1);
+        assertEquals(9, direct.get(1));
+        assertEquals(1, direct.position());
+    }
+
+    @Test
+    public void testFitsClampArray() {
+        byte[] buf = new byte[8];
+        assertEquals(true, NioBuf.fits(buf, 2, 6));
+        assertEquals(false, NioBuf.fits(buf, 2, 7));
+        assertEquals(true, NioBuf.fits(buf, 8, 0));
+        assertEquals(false, NioBuf.fits(buf, 9, 0));
+        assertEquals(false, NioBuf.fits(buf, -1, 1));
+        assertEquals(false, NioBuf.fits(buf, 0, -1));
+        assertEquals(true, NioBuf.fits(null, 3, 7));
+        LongRef l = new LongRef(10);
+        NioBuf.clamp(buf, 3, l);
+        assertEquals(5, l.value);
+        NioBuf.clamp(null, 3, l);
+        assertEquals(5, l.value);
+    }
+
+    @Test
+    public void testFitsClamp() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(8);
+        buf.position(2);
+        assertEquals(true, NioBuf.fits(buf, 6));
+        assertEquals(false, NioBuf.fits(buf, 7));
+        assertEquals(true, NioBuf.fits(null, 7));
+        LongRef l = new LongRef(10);
+        NioBuf.clamp(buf, l);
+        assertEquals(6, l.value);
+    }
+
+    @Test
+    public void testCopyInOut() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(6);
+        buf.put(new byte[] {0, 1, 2, 3, 4, 5}).position(2);
+        assertArrayEquals(new byte[] {2, 3, 4}, NioBuf.copyIn(buf, 3));
+        assertEquals(null, NioBuf.copyIn(null, 3));
+        LongRef l = new LongRef(3);
+        byte[] out = NioBuf.newOut(buf, l);
+        assertEquals(3, out.length);
+        assertEquals(null, NioBuf.newOut(null, l));
+        NioBuf.copyOut(buf, new byte[] {9, 9}, 2);
+        assertEquals(2, buf.position());
+        assertEquals(9, buf.get(2));
+        assertEquals(9, buf.get(3));
+        assertEquals(4, buf.get(4));
+    }
+
+    @Test
+    public void testEncryptDirect() {
+        ByteBuffer in = ByteBuffer.allocateDirect(6);
+        in.put(new byte[] {0, 0, 1, 2, 3, 4}).position(2);
+        ByteBuffer out = ByteBuffer.allocateDirect(6);
+        out.position(1);
+        LongRef l = new LongRef();
+        assertEquals(CKR.OK, c.Encrypt(1, in, out, l));
+        assertEquals("ByteBuffer", xor.called);
+        assertEquals(4, l.value);
+        assertEquals(6, in.position());
+        assertEquals(5, out.position());
+        byte[] result = new byte[4];
+        out.position(1);
+        out.get(result);
+        assertArrayEquals(new byte[] {0x5b, 0x58, 0x59, 0x5e}, result);
+    }
+
+    @Test
+    public void testEncryptHeap() {
+        byte[] result = new byte[6];
+        ByteBuffer in = ByteBuffer.wrap(new byte[] {0, 0, 1, 2, 3, 4}, 2, 4);
+        ByteBuffer out = ByteBuffer.wrap(result, 1, 5);
+        LongRef l = new LongRef();
+        assertEquals(CKR.OK, c.Encrypt(1, in, out, l));
+        assertEquals("byte[] offsets", xor.called);
+        assertEquals(6, in.position());
+        assertEquals(5, out.position());
+        assertArrayEquals(new byte[] {0, 0x5b, 0x58, 0x59, 0x5e, 0}, result);
+    }
+
+    @Test
+    public void testEncryptBufferTooSmall() {
+        ByteBuffer in = ByteBuffer.allocateDirect(4);
+        ByteBuffer out = ByteBuffer.allocateDirect(3);
+        LongRef l = new LongRef();
+        assertEquals(CKR.OK, c.Encrypt(1, in, null, l));
+        assertEquals(4, l.value);
+        assertEquals(0, in.position());
+        assertEquals(CKR.BUFFER_TOO_SMALL, c.Encrypt(1, in, out, l));
+        assertEquals(0, in.position());
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    public void testEncryptOffsets() {
+        byte[] data = {0, 0, 1, 2, 3, 4, 0};
+        byte[] result = new byte[8];
+        assertEquals(4, ce.Encrypt(1, data, 2, 4, result, 3));
+        assertEquals("byte[] offsets", xor.called);
+        assertArrayEquals(new byte[] {0, 0, 0, 0x5b, 0x58, 0x59, 0x5e, 0}, result);
+        try {
+            ce.Encrypt(1, data, 2, 4, result, 5);
+            fail("expected BUFFER_TOO_SMALL");
+        } catch (CKRException e) {
+            assertEquals(CKR.BUFFER_TOO_SMALL, e.getCKR());
+        }
+        assertEquals(4, ce.Encrypt(1, data, 2, 4, null, 0));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ObjectHandleCache} with {@link CryptokiE} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class ObjectHandleCacheTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+    private final CKA label = new CKA(CKA.LABEL, "k");
+
+    private int searches() {
+        return token.calls("C_FindObjectsInit");
+    }
+
+    @Test
+    public void testCache() {
+        ObjectHandleCache cache = new ObjectHandleCache();
+        ce.setObjectHandleCache(cache);
+        token.keys.put(1L, 11L);
+        long session = ce.OpenSession(1);
+        assertArrayEquals(new long[] {11}, ce.FindObjects(session, label));
+        assertArrayEquals(new long[] {11}, ce.FindObjects(session, new CKA(CKA.LABEL, "k")));
+        assertEquals(1, searches());
+        assertEquals(1, cache.getHits());
+
+        // different template or slot is not cached
+        ce.FindObjects(session, new CKA(CKA.LABEL, "other"));
+        long session2 = ce.OpenSession(2);
+        ce.FindObjects(session2, label);
+        assertEquals(3, searches());
+
+        // changes drop results for the slot only
+        ce.CreateObject(session2, label);
+        ce.FindObjects(session, label);
+        assertEquals(3, searches());
+        ce.FindObjects(session2, label);
+        assertEquals(4, searches());
+        ce.DestroyObject(session, 11);
+        ce.FindObjects(session, label);
+        assertEquals(5, searches());
+
+        // login changes visible objects
+        ce.LoginUser(session, StubToken.PIN);
+        ce.FindObjects(session, label);
+        assertEquals(6, searches());
+
+        // closing a session that created objects
+        ce.FindObjects(session2, label);
+        assertEquals(6, searches());
+        ce.CloseSession(session2);
+        session2 = ce.OpenSession(2);
+        ce.FindObjects(session2, label);
+        assertEquals(7, searches());
+
+        cache.slotEvent(1, false);
+        ce.FindObjects(session, label);
+        assertEquals(8, searches());
+    }
+
+    @Test
+    public void testTokenObjects() {
+        ce.setObjectHandleCache(new ObjectHandleCache());
+        long session = ce.OpenSession(1);
+        long session2 = ce.OpenSession(1);
+        ce.CreateObject(session2, label, new CKA(CKA.TOKEN, true));
+        ce.FindObjects(session, label);
+        assertEquals(1, searches());
+
+        // token objects outlive the session that created them
+        ce.CloseSession(session2);
+        ce.FindObjects(session, label);
+        assertEquals(1, searches());
+
+        // session objects are destroyed when their session closes
+        session2 = ce.OpenSession(1);
+        ce.CreateObject(session2, label, new CKA(CKA.TOKEN, false));
+        ce.FindObjects(session, label);
+        ce.CloseSession(session2);
+        ce.FindObjects(session, label);
+        assertEquals(3, searches());
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        CryptokiE other = token.ce();
+        // session not opened through ce, slot found with GetSessionInfo once
+        long session = other.OpenSession(1);
+        ObjectHandleCache cache = new ObjectHandleCache(2, 50);
+        ce.setObjectHandleCache(cache);
+        for (int i = 0; i < 5; i++) {
+            ce.FindObjects(session, new CKA(CKA.ID, new byte[] {(byte) i}));
+            assertTrue(cache.size() <= 2);
+        }
+        assertEquals(1, token.calls("C_GetSessionInfo"));
+
+        ce.FindObjects(session, label);
+        ce.FindObjects(session, label);
+        assertEquals(6, searches());
+        Thread.sleep(60);
+        ce.FindObjects(session, label);
+        assertEquals(7, searches());
+    }
+}
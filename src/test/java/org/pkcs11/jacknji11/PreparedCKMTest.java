@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+import org.pkcs11.jacknji11.jna.JNA;
+import org.pkcs11.jacknji11.jna.JNANativeI;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Tests native CK_MECHANISM layout of {@link PreparedCKM}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class PreparedCKMTest {
+    private static final int UL = NativeLong.SIZE;
+    private static final int PTR = Native.POINTER_SIZE;
+
+    @Test
+    public void testStruct() {
+        byte[] param = Hex.s2b("0102030405060708090a0b0c0d0e0f10");
+        try (PreparedCKM ckm = new PreparedCKM(CKM.AES_CBC, param)) {
+            Pointer p = new Pointer(ckm.getAddress());
+            assertEquals(CKM.AES_CBC, p.getNativeLong(0).longValue());
+            Pointer pParameter = p.getPointer(UL);
+            assertEquals(Pointer.nativeValue(ckm.pParameter), Pointer.nativeValue(pParameter));
+            assertEquals(param.length, p.getNativeLong(UL + PTR).longValue());
+            assertArrayEquals(param, pParameter.getByteArray(0, param.length));
+            assertEquals(param.length, ckm.ulParameterLen);
+            assertEquals(CKM.AES_CBC, ckm.mechanism);
+        }
+    }
+
+    @Test
+    public void testNoParam() {
+        try (PreparedCKM ckm = new PreparedCKM(CKM.SHA256_RSA_PKCS)) {
+            Pointer p = new Pointer(ckm.getAddress());
+            assertEquals(CKM.SHA256_RSA_PKCS, p.getNativeLong(0).longValue());
+            assertNull(p.getPointer(UL));
+            assertEquals(0, p.getNativeLong(UL + PTR).longValue());
+            assertNull(ckm.pParameter);
+        }
+    }
+
+    @Test
+    public void testClose() {
+        PreparedCKM ckm = new PreparedCKM(CKM.AES_CBC_PAD);
+        assertFalse(ckm.isClosed());
+        assertEquals(16, ckm.ulParameterLen);
+        ckm.close();
+        assertTrue(ckm.isClosed());
+        assertNotNull(ckm.pParameter);
+        assertEquals(16, ckm.ulParameterLen);
+        try {
+            ckm.getAddress();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+        ckm.close();
+        assertTrue(ckm.toString().endsWith("closed"));
+    }
+
+    @Test
+    public void testInitAfterClose() {
+        JNANativeI stub = (JNANativeI) Proxy.newProxyInstance(JNANativeI.class.getClassLoader(),
+            new Class<?>[] {JNANativeI.class}, (proxy, method, args) -> 0);
+        JNA jna = new JNA(stub);
+        PreparedCKM ckm = new PreparedCKM(CKM.AES_CBC_PAD);
+        assertEquals(CKR.OK, jna.C_EncryptInit(1, ckm, 2));
+        ckm.close();
+        try {
+            jna.C_EncryptInit(1, ckm, 2);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SessionPool} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SessionPoolTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    @Test
+    public void testReuse() {
+        SessionPool pool = new SessionPool(ce, 1, StubToken.PIN, 1, 4, 1000);
+        assertEquals(1, token.sessions.size());
+        assertTrue(token.loggedIn);
+        long session;
+        try (SessionPool.Lease lease = pool.borrow()) {
+            session = lease.getSession();
+        }
+        try (SessionPool.Lease lease = pool.borrow()) {
+            assertEquals(session, lease.getSession());
+        }
+        assertEquals(1, token.calls("C_OpenSession"));
+        pool.close();
+        assertEquals(0, token.sessions.size());
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        final SessionPool pool = new SessionPool(ce, 1, null, 0, 2, 50);
+        SessionPool.Lease a = pool.borrow();
+        long first = a.getSession();
+        SessionPool.Lease b = pool.borrow();
+        assertEquals(2, pool.getSize());
+        try {
+            pool.borrow();
+            fail("expected timeout");
+        } catch (CKRException e) {
+            assertEquals(CKR.SESSION_COUNT, e.getCKR());
+        }
+
+        // waiter gets the session returned by another thread
+        final CountDownLatch done = new CountDownLatch(1);
+        final long[] got = new long[1];
+        Thread t = new Thread() {
+            public void run() {
+                try (SessionPool.Lease lease = pool.borrow(5, TimeUnit.SECONDS)) {
+                    got[0] = lease.getSession();
+                }
+                done.countDown();
+            }
+        };
+        t.start();
+        Thread.sleep(20);
+        a.close();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(first, got[0]);
+        b.close();
+        assertEquals(2, pool.getIdle());
+        pool.close();
+    }
+
+    @Test
+    public void testInvalidate() {
+        SessionPool pool = new SessionPool(ce, 1, null, 0, 2, 50);
+        try (SessionPool.Lease lease = pool.borrow()) {
+            lease.invalidate();
+        }
+        assertEquals(0, pool.getSize());
+        assertEquals(0, token.sessions.size());
+        pool.close();
+    }
+
+    @Test
+    public void testLoginFails() {
+        try {
+            new SessionPool(ce, 1, Buf.c2b("0000"), 1, 2, 50);
+            fail("expected PIN_INCORRECT");
+        } catch (CKRException e) {
+            assertEquals(CKR.PIN_INCORRECT, e.getCKR());
+        }
+        assertEquals(0, token.sessions.size());
+    }
+
+    @Test
+    public void testOpenFailsReleasesSlot() {
+        SessionPool pool = new SessionPool(ce, 1, null, 0, 1, 50);
+        token.fail("C_OpenSession", CKR.DEVICE_ERROR);
+        try {
+            pool.borrow();
+            fail("expected DEVICE_ERROR");
+        } catch (CKRException e) {
+            assertEquals(CKR.DEVICE_ERROR, e.getCKR());
+        }
+        assertEquals(0, pool.getSize());
+        try (SessionPool.Lease lease = pool.borrow()) {
+            assertEquals(1, pool.getSize());
+        }
+        pool.close();
+    }
+
+    @Test
+    public void testClose() {
+        SessionPool pool = new SessionPool(ce, 1, null, 2, 2, 50);
+        SessionPool.Lease lease = pool.borrow();
+        pool.close();
+        assertEquals(1, token.sessions.size());
+        lease.close();
+        assertEquals(0, token.sessions.size());
+        try {
+            pool.borrow();
+            fail("expected closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testExecuteRecovers() throws Exception {
+        final SessionPool pool = new SessionPool(ce, 1, StubToken.PIN, 2, 8, 1000);
+        final SessionCall<Long> info = session -> {
+            ce.GetSessionInfo(session, new CK_SESSION_INFO());
+            return session;
+        };
+        long before = pool.execute(info);
+        token.restart();
+
+        // all threads see the lost session at once, one recovers and all succeed
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger ok = new AtomicInteger();
+        Thread[] ts = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            ts[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        pool.execute(info);
+                        ok.incrementAndGet();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            ts[i].start();
+        }
+        start.countDown();
+        for (Thread t : ts) {
+            t.join();
+        }
+        assertEquals(threads, ok.get());
+        assertTrue(token.loggedIn);
+        assertFalse(token.sessions.containsKey(before));
+        assertEquals(pool.getSize(), token.sessions.size());
+
+        // other errors are not retried
+        token.fail("C_GetSessionInfo", CKR.DEVICE_ERROR);
+        int calls = token.calls("C_GetSessionInfo");
+        try {
+            pool.execute(info);
+            fail("expected DEVICE_ERROR");
+        } catch (CKRException e) {
+            assertEquals(CKR.DEVICE_ERROR, e.getCKR());
+        }
+        assertEquals(calls + 1, token.calls("C_GetSessionInfo"));
+        pool.close();
+        assertEquals(0, token.sessions.size());
+    }
+
+    @Test
+    public void testMaintain() throws Exception {
+        SessionPool pool = new SessionPool(ce, 1, StubToken.PIN, 2, 4, 1000);
+        long dropped;
+        try (SessionPool.Lease lease = pool.borrow()) {
+            dropped = lease.getSession();
+        }
+        // HSM drops one idle session and logs out
+        token.sessions.remove(dropped);
+        token.loggedIn = false;
+        assertEquals(1, pool.maintain());
+        assertTrue(token.loggedIn);
+        assertEquals(2, pool.getSize());
+        assertEquals(2, pool.getIdle());
+        assertEquals(2, token.sessions.size());
+        assertEquals(0, pool.maintain());
+
+        // in the background
+        token.sessions.clear();
+        pool.startMaintenance(5);
+        for (int i = 0; i < 500 && token.sessions.size() < 2; i++) {
+            Thread.sleep(2);
+        }
+        assertEquals(2, token.sessions.size());
+        pool.close();
+        assertEquals(0, token.sessions.size());
+    }
+}
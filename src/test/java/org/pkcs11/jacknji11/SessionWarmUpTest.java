@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SessionWarmUp} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SessionWarmUpTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    @Test
+    public void testRun() {
+        token.keys.put(1L, 11L);
+        SessionPool a = new SessionPool(ce, 1, StubToken.PIN, 0, 8, 1000);
+        SessionPool b = new SessionPool(ce, 2, StubToken.PIN, 1, 3, 1000);
+        SessionWarmUp.Report report = SessionWarmUp.run(Arrays.asList(a, b), 5, 4, "k");
+        assertEquals(5, a.getSize());
+        assertEquals(5, a.getIdle());
+        // b already had 1 and is full at 3
+        assertEquals(3, b.getSize());
+        assertEquals(7, report.getSessionsOpened());
+        assertEquals(8, token.sessions.size());
+        assertTrue(token.loggedIn);
+        assertEquals(11, report.getKey(1, "k"));
+        assertEquals(CK.INVALID_HANDLE, report.getKey(2, "k"));
+        assertEquals(CK.INVALID_HANDLE, report.getKey(3, "k"));
+        assertTrue(report.getTotalMillis() >= 0);
+        assertEquals(CKO.PRIVATE_KEY, token.lastFind[0].getValueLong().longValue());
+        assertEquals("k", token.lastFind[1].getValueStr());
+
+        // key class can be given
+        report = SessionWarmUp.run(Arrays.asList(a), 5, 4, CKO.SECRET_KEY, "k");
+        assertEquals(0, report.getSessionsOpened());
+        assertEquals(CKO.SECRET_KEY, token.lastFind[0].getValueLong().longValue());
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void testError() {
+        SessionPool a = new SessionPool(ce, 1, StubToken.PIN, 0, 8, 1000);
+        token.fail("C_Login", CKR.PIN_LOCKED);
+        try {
+            SessionWarmUp.run(Arrays.asList(a), 4, 2);
+            fail("expected PIN_LOCKED");
+        } catch (CKRException e) {
+            assertEquals(CKR.PIN_LOCKED, e.getCKR());
+        }
+        assertEquals(0, a.getSize());
+        assertEquals(0, token.sessions.size());
+    }
+}
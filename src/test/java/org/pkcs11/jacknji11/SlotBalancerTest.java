@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SlotBalancer} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotBalancerTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    private SlotBalancer balancer(long retryMillis) {
+        return new SlotBalancer(ce, Arrays.asList(
+            new SessionPool(ce, 1, StubToken.PIN, 0, 4, 1000),
+            new SessionPool(ce, 2, StubToken.PIN, 0, 4, 1000)), retryMillis);
+    }
+
+    /** @return slot that call ran on */
+    private long slot(SlotBalancer lb, SlotBalancer.Key key) {
+        return lb.execute(key, (session, handle) -> token.sessions.get(session));
+    }
+
+    @Test
+    public void testFindKey() {
+        token.keys.put(2L, 77L);
+        SlotBalancer lb = balancer(1000);
+        SlotBalancer.Key key = lb.findKey("k");
+        assertEquals(CK.INVALID_HANDLE, key.getHandle(1));
+        assertEquals(77, key.getHandle(2));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(2, slot(lb, key));
+        }
+        lb.sign(key, new CKM(CKM.SHA256_RSA_PKCS), new byte[32]);
+
+        token.keys.clear();
+        try {
+            lb.findKey("missing");
+            fail("expected KEY_HANDLE_INVALID");
+        } catch (CKRException e) {
+            assertEquals(CKR.KEY_HANDLE_INVALID, e.getCKR());
+        }
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+        token.keys.put(1L, 11L);
+        token.keys.put(2L, 22L);
+        final SlotBalancer lb = balancer(1000);
+        final SlotBalancer.Key key = lb.findKey("k");
+        for (int i = 0; i < 4; i++) {
+            // while one slot is busy the next call goes to the other
+            long[] used = lb.execute(key, (session, handle) -> {
+                long outer = token.sessions.get(session);
+                assertEquals(outer == 1 ? 11 : 22, handle);
+                return new long[] {outer, slot(lb, key)};
+            });
+            assertTrue(used[0] != used[1]);
+        }
+    }
+
+    @Test
+    public void testFailover() {
+        token.keys.put(1L, 11L);
+        token.keys.put(2L, 22L);
+        SlotBalancer lb = balancer(60000);
+        SlotBalancer.Key key = lb.findKey("k");
+
+        token.fail("C_SignInit", CKR.DEVICE_ERROR);
+        lb.sign(key, new CKM(CKM.SHA256_RSA_PKCS), new byte[32]);
+        long down = lb.isHealthy(1) ? 2 : 1;
+        assertFalse(lb.isHealthy(down));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(slot(lb, key) != down);
+        }
+
+        // other errors are not retried on another slot
+        token.fail("C_SignInit", CKR.MECHANISM_INVALID);
+        try {
+            lb.sign(key, new CKM(CKM.SHA256_RSA_PKCS), new byte[32]);
+            fail("expected MECHANISM_INVALID");
+        } catch (CKRException e) {
+            assertEquals(CKR.MECHANISM_INVALID, e.getCKR());
+        }
+
+        // other slot fails too, the down slot is still tried and back in rotation when it works
+        token.fail("C_SignInit", CKR.DEVICE_ERROR);
+        lb.sign(key, new CKM(CKM.SHA256_RSA_PKCS), new byte[32]);
+        assertTrue(lb.isHealthy(down));
+        assertFalse(lb.isHealthy(3 - down));
+        assertEquals(down, slot(lb, key));
+    }
+
+    @Test
+    public void testAbsentExpires() throws Exception {
+        token.keys.put(1L, 11L);
+        SlotBalancer lb = balancer(100);
+        SlotBalancer.Key key = lb.findKey("k");
+
+        // key created in slot 2 is used once the slot is looked up again
+        token.keys.put(2L, 22L);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1, slot(lb, key));
+        }
+        assertEquals(CK.INVALID_HANDLE, key.getHandle(2));
+        Thread.sleep(150);
+        assertEquals(2, slot(lb, key));
+        assertEquals(22, key.getHandle(2));
+    }
+
+    @Test
+    public void testLookupFailure() {
+        token.keys.put(1L, 11L);
+        token.keys.put(2L, 22L);
+        SlotBalancer lb = balancer(60000);
+
+        // slot that fails is looked up when next used
+        token.fail("C_FindObjectsInit", CKR.DEVICE_ERROR);
+        SlotBalancer.Key key = lb.findKey("k");
+        assertFalse(lb.isHealthy(1));
+        assertEquals(CK.INVALID_HANDLE, key.getHandle(1));
+        assertEquals(22, key.getHandle(2));
+        token.keys.remove(2L);
+        SlotBalancer.Key other = lb.findKey("k");
+        assertEquals(CK.INVALID_HANDLE, other.getHandle(2));
+        assertEquals(1, slot(lb, other));
+
+        // failure is not found
+        token.keys.clear();
+        token.fail("C_FindObjectsInit", CKR.DEVICE_ERROR);
+        try {
+            lb.findKey("k");
+            fail("expected DEVICE_ERROR");
+        } catch (CKRException e) {
+            assertEquals(CKR.DEVICE_ERROR, e.getCKR());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SlotBulkhead}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotBulkheadTest {
+
+    @Test
+    public void testLimitFromToken() {
+        StubToken token = new StubToken();
+        CryptokiE ce = token.ce();
+        assertEquals(16, new SlotBulkhead(ce, 1, CK_SESSION_INFO.CKF_RW_SESSION, 16, 1000).getLimit());
+        token.maxSessions = 4;
+        ce.OpenSession(1);
+        ce.OpenSession(2);
+        // sessions open when created do not reduce the limit, reserved sessions do
+        assertEquals(4, new SlotBulkhead(ce, 1, CK_SESSION_INFO.CKF_RW_SESSION, 16, 1000).getLimit());
+        assertEquals(3, new SlotBulkhead(ce, 1, CK_SESSION_INFO.CKF_RW_SESSION, 16, 1000, 1).getLimit());
+        assertEquals(2, new SlotBulkhead(ce, 1, CK_SESSION_INFO.CKF_RW_SESSION, 2, 1000).getLimit());
+        token.maxSessions = 1;
+        assertEquals(1, new SlotBulkhead(ce, 1, CK_SESSION_INFO.CKF_RW_SESSION, 16, 1000).getLimit());
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        final SlotBulkhead bulkhead = new SlotBulkhead(1, 1, 20);
+        SlotBulkhead.Permit permit = bulkhead.enter();
+        assertEquals(1, bulkhead.getActive());
+        try {
+            bulkhead.enter();
+            fail("expected timeout");
+        } catch (CKRException e) {
+            assertEquals(CKR.SESSION_COUNT, e.getCKR());
+        }
+
+        // waiter runs once the permit is closed
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread t = new Thread() {
+            public void run() {
+                SlotBulkhead.Permit p = bulkhead.enter(5, TimeUnit.SECONDS);
+                try {
+                    done.countDown();
+                } finally {
+                    p.close();
+                }
+            }
+        };
+        t.start();
+        for (int i = 0; i < 500 && bulkhead.getQueueDepth() == 0; i++) {
+            Thread.sleep(2);
+        }
+        assertEquals(1, bulkhead.getQueueDepth());
+        permit.close();
+        permit.close();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        t.join();
+        assertEquals(0, bulkhead.getActive());
+        assertEquals("ok", bulkhead.execute(() -> "ok"));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SlotEventWatcher} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotEventWatcherTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    private SlotEventWatcher start(boolean blocking) {
+        SlotEventWatcher watcher = new SlotEventWatcher(ce, blocking, 5);
+        watcher.addListener((slotID, present) -> events.add(slotID + (present ? " in" : " out")));
+        watcher.start();
+        return watcher;
+    }
+
+    private void assertEvents(SlotEventWatcher watcher) throws Exception {
+        token.slotEvent(2, false);
+        assertEquals("2 out", events.poll(5, TimeUnit.SECONDS));
+        token.slotEvent(2, true);
+        assertEquals("2 in", events.poll(5, TimeUnit.SECONDS));
+        watcher.close();
+    }
+
+    @Test
+    public void testBlocking() throws Exception {
+        assertEvents(start(true));
+    }
+
+    @Test
+    public void testDontBlock() throws Exception {
+        token.waitForSlotEvent = 1;
+        assertEvents(start(true));
+        assertFalse(token.calls("C_WaitForSlotEvent") < 2);
+    }
+
+    @Test
+    public void testPollSlotInfo() throws Exception {
+        token.waitForSlotEvent = 0;
+        SlotEventWatcher watcher = start(false);
+        // wait for first poll to record slots
+        for (int i = 0; i < 500 && token.calls("C_GetSlotInfo") < 3; i++) {
+            Thread.sleep(2);
+        }
+        assertEvents(watcher);
+    }
+
+    @Test
+    public void testReset() {
+        SessionPool pool = new SessionPool(ce, 2, StubToken.PIN, 2, 4, 1000);
+        SessionPool.Lease lease = pool.borrow();
+        long leased = lease.getSession();
+        pool.reset();
+        assertEquals(1, pool.getSize());
+        assertEquals(1, token.sessions.size());
+        lease.close();
+        assertFalse(token.sessions.containsKey(leased));
+        assertEquals(0, pool.getSize());
+
+        ThreadSessionCache cache = new ThreadSessionCache(ce, 2, StubToken.PIN);
+        long session = cache.getSession();
+        cache.reset();
+        assertTrue(token.sessions.containsKey(session));
+        assertFalse(session == cache.getSession());
+        assertFalse(token.sessions.containsKey(session));
+        assertEquals(1, cache.getSize());
+        cache.close();
+        pool.close();
+    }
+}
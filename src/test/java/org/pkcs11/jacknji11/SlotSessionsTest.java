@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SlotSessions} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class SlotSessionsTest {
+    private static final long RO = CK_SESSION_INFO.CKF_SERIAL_SESSION;
+    private static final long RW = CK_SESSION_INFO.CKF_RW_SESSION | CK_SESSION_INFO.CKF_SERIAL_SESSION;
+
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    private long flags(long session) {
+        return token.sessionFlags.get(session);
+    }
+
+    @Test
+    public void testRouting() {
+        SlotSessions sessions = new SlotSessions(ce, 1, StubToken.PIN);
+        assertEquals(1, sessions.getReadOnly().getSize());
+        assertEquals(0, sessions.getReadWrite().getSize());
+        assertEquals(RO, (long) sessions.execute(this::flags));
+        assertEquals(RW, (long) sessions.executeReadWrite(this::flags));
+
+        sessions.sign(new CKM(CKM.SHA256_RSA_PKCS), 2, new byte[32]);
+        sessions.findObjects(new CKA(CKA.LABEL, "k"));
+        assertEquals(0, token.lastWrite);
+        sessions.createObject(new CKA(CKA.LABEL, "k"));
+        assertEquals(RW, flags(token.lastWrite));
+        token.lastWrite = 0;
+        sessions.generateKey(new CKM(CKM.AES_KEY_GEN), new CKA(CKA.LABEL, "k"));
+        assertEquals(RW, flags(token.lastWrite));
+        token.lastWrite = 0;
+        sessions.setAttributeValue(3, new CKA(CKA.LABEL, "k"));
+        assertEquals(RW, flags(token.lastWrite));
+        token.lastWrite = 0;
+        sessions.destroyObject(3);
+        assertEquals(RW, flags(token.lastWrite));
+        sessions.close();
+        assertEquals(0, token.sessions.size());
+    }
+
+    @Test
+    public void testLostSession() {
+        SlotSessions sessions = new SlotSessions(ce, 1, StubToken.PIN);
+        sessions.createObject(new CKA(CKA.LABEL, "k"));
+        long session = token.lastWrite;
+        token.fail("C_CreateObject", CKR.SESSION_HANDLE_INVALID);
+        try {
+            sessions.createObject(new CKA(CKA.LABEL, "k"));
+            fail("expected CKRException");
+        } catch (CKRException e) {
+            assertEquals(CKR.SESSION_HANDLE_INVALID, e.getCKR());
+        }
+        // lost session is closed, not handed to the next caller
+        assertFalse(token.sessions.containsKey(session));
+        sessions.createObject(new CKA(CKA.LABEL, "k"));
+        assertNotEquals(session, token.lastWrite);
+        sessions.close();
+    }
+
+    @Test
+    public void testTokenLimits() {
+        token.maxSessions = 3;
+        SlotSessions sessions = new SlotSessions(ce, 1, StubToken.PIN, 8, 2, 1000);
+        assertEquals(2, sessions.getReadWrite().getMaxSize());
+        assertEquals(1, sessions.getReadOnly().getMaxSize());
+        sessions.close();
+
+        SessionPool ro = new SessionPool(ce, 1, null, RO, 0, 1, 1000);
+        try {
+            new SlotSessions(ro, ro);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory token for tests that need sessions but no cryptoki library.
+ * Has slots 1, 2 and 3 whose tokens can be removed and inserted with
+ * {@link #slotEvent(long, boolean)}.  Tracks open sessions per slot and
+ * login state, finds a key per slot, or all objects in {@link #attributes}
+ * with an empty template, returns their attribute values, counts calls,
+ * and returns OK for any other function.  Errors can be queued per function
+ * with {@link #fail(String, long)} and a restart of the HSM simulated with
+ * {@link #restart()}.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+class StubToken implements InvocationHandler {
+    static final byte[] PIN = Buf.c2b("1234");
+
+    /** open sessions and their slot */
+    final Map<Long, Long> sessions = new ConcurrentHashMap<Long, Long>();
+    /** flags sessions were opened with */
+    final Map<Long, Long> sessionFlags = new ConcurrentHashMap<Long, Long>();
+    /** session of the last call that creates, changes or destroys an object */
+    volatile long lastWrite;
+    final Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+    private final Map<String, ConcurrentLinkedQueue<Long>> failures = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Long>>();
+    private final AtomicLong nextSession = new AtomicLong(100);
+    volatile boolean loggedIn;
+    /** key handle found by any FindObjects in a slot */
+    final Map<Long, Long> keys = new ConcurrentHashMap<Long, Long>();
+    /** attribute values of objects returned by GetAttributeValue */
+    final Map<Long, Map<Long, byte[]>> attributes = new ConcurrentHashMap<Long, Map<Long, byte[]>>();
+    /** ulMaxSessionCount and ulMaxRwSessionCount returned by GetTokenInfo */
+    volatile long maxSessions = CK.EFFECTIVELY_INFINITE;
+    /** slots 1, 2 and 3, tokens removed from these slots */
+    final Set<Long> removed = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Long> slotEvents = new LinkedBlockingQueue<Long>();
+    /** 2 if C_WaitForSlotEvent can block, 1 if only CKF_DONT_BLOCK, 0 if not supported */
+    volatile int waitForSlotEvent = 2;
+    private final Map<Long, Boolean> searching = new ConcurrentHashMap<Long, Boolean>();
+    /** template of the last C_FindObjectsInit */
+    volatile CKA[] lastFind;
+
+    final NativeProvider provider = (NativeProvider) Proxy.newProxyInstance(
+        NativeProvider.class.getClassLoader(), new Class<?>[] {NativeProvider.class}, this);
+
+    /** @return CryptokiE using this token */
+    CryptokiE ce() {
+        return new CryptokiE(new Cryptoki(provider));
+    }
+
+    /** next call of method returns rv */
+    void fail(String method, long rv) {
+        failures.computeIfAbsent(method, k -> new ConcurrentLinkedQueue<Long>()).add(rv);
+    }
+
+    /** all sessions are lost and the user is logged out, as when the HSM restarts */
+    void restart() {
+        sessions.clear();
+        loggedIn = false;
+    }
+
+    /** token inserted or removed */
+    void slotEvent(long slotID, boolean present) {
+        if (present) {
+            removed.remove(slotID);
+        } else {
+            removed.add(slotID);
+        }
+        slotEvents.add(slotID);
+    }
+
+    int calls(String method) {
+        AtomicInteger n = calls.get(method);
+        return n == null ? 0 : n.get();
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return "StubToken";
+        }
+        calls.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+        ConcurrentLinkedQueue<Long> q = failures.get(name);
+        Long rv = q == null ? null : q.poll();
+        if (rv != null) {
+            return rv;
+        }
+        if (name.equals("C_GetSlotList")) {
+            long[] list = (long[]) args[1];
+            int n = 0;
+            for (long slot = 1; slot <= 3; slot++) {
+                if (!(Boolean) args[0] || !removed.contains(slot)) {
+                    if (list != null) {
+                        list[n] = slot;
+                    }
+                    n++;
+                }
+            }
+            ((LongRef) args[2]).value = n;
+        } else if (name.equals("C_GetSlotInfo")) {
+            ((CK_SLOT_INFO) args[1]).flags = removed.contains(args[0]) ? 0 : CK_SLOT_INFO.CKF_TOKEN_PRESENT;
+        } else if (name.equals("C_WaitForSlotEvent")) {
+            boolean dontBlock = ((Long) args[0] & SlotEventWatcher.CKF_DONT_BLOCK) != 0;
+            if (waitForSlotEvent < (dontBlock ? 1 : 2)) {
+                return CKR.FUNCTION_NOT_SUPPORTED;
+            }
+            Long slot;
+            try {
+                slot = dontBlock ? slotEvents.poll() : slotEvents.take();
+            } catch (InterruptedException e) {
+                // as if finalized
+                return CKR.CRYPTOKI_NOT_INITIALIZED;
+            }
+            if (slot == null) {
+                return CKR.NO_EVENT;
+            }
+            ((LongRef) args[1]).value = slot;
+        } else if (name.equals("C_OpenSession")) {
+            long session = nextSession.incrementAndGet();
+            sessions.put(session, (Long) args[0]);
+            sessionFlags.put(session, (Long) args[1]);
+            ((LongRef) args[4]).value = session;
+        } else if (name.equals("C_CloseSession")) {
+            if (sessions.remove(args[0]) == null) {
+                return CKR.SESSION_HANDLE_INVALID;
+            }
+        } else if (name.equals("C_CloseAllSessions")) {
+            sessions.values().removeAll(java.util.Collections.singleton(args[0]));
+        } else if (name.equals("C_Login")) {
+            if (!sessions.containsKey(args[0])) {
+                return CKR.SESSION_HANDLE_INVALID;
+            }
+            if (!java.util.Arrays.equals(PIN, (byte[]) args[2])) {
+                return CKR.PIN_INCORRECT;
+            }
+            if (loggedIn) {
+                return CKR.USER_ALREADY_LOGGED_IN;
+            }
+            loggedIn = true;
+        } else if (name.equals("C_Logout")) {
+            loggedIn = false;
+        } else if (name.equals("C_CreateObject") || name.equals("C_GenerateKey") || name.equals("C_GenerateKeyPair")
+                || name.equals("C_SetAttributeValue") || name.equals("C_DestroyObject")) {
+            lastWrite = (Long) args[0];
+        } else if (name.equals("C_FindObjectsInit")) {
+            CKA[] templ = (CKA[]) args[1];
+            lastFind = templ;
+            searching.put((Long) args[0], templ == null || templ.length == 0);
+        } else if (name.equals("C_FindObjects")) {
+            Boolean all = searching.remove(args[0]);
+            long[] found = (long[]) args[1];
+            int n = 0;
+            if (Boolean.TRUE.equals(all)) {
+                // empty template finds all objects with attributes
+                for (Long object : attributes.keySet()) {
+                    found[n++] = object;
+                }
+            } else if (all != null && keys.get(sessions.get(args[0])) != null) {
+                found[n++] = keys.get(sessions.get(args[0]));
+            }
+            ((LongRef) args[3]).value = n;
+        } else if (name.equals("C_GetAttributeValue")) {
+            Map<Long, byte[]> values = attributes.get(args[1]);
+            if (values == null) {
+                return CKR.OBJECT_HANDLE_INVALID;
+            }
+            long result = CKR.OK;
+            for (CKA cka : (CKA[]) args[2]) {
+                byte[] value = values.get(cka.type);
+                if (value == null) {
+                    cka.ulValueLen = CK.UNAVAILABLE_INFORMATION;
+                    result = CKR.ATTRIBUTE_TYPE_INVALID;
+                } else if (cka.pValue == null) {
+                    cka.ulValueLen = value.length;
+                } else if (cka.pValue.length < value.length) {
+                    cka.ulValueLen = CK.UNAVAILABLE_INFORMATION;
+                    result = CKR.BUFFER_TOO_SMALL;
+                } else {
+                    System.arraycopy(value, 0, cka.pValue, 0, value.length);
+                    cka.ulValueLen = value.length;
+                    cka.set();
+                }
+            }
+            return result;
+        } else if (name.equals("C_GetTokenInfo")) {
+            CK_TOKEN_INFO info = (CK_TOKEN_INFO) args[1];
+            info.ulMaxSessionCount = maxSessions;
+            info.ulMaxRwSessionCount = maxSessions;
+            info.ulSessionCount = sessions.values().stream().filter(args[0]::equals).count();
+            info.ulRwSessionCount = info.ulSessionCount;
+        } else if (name.equals("C_GetSessionInfo")) {
+            if (!sessions.containsKey(args[0])) {
+                return CKR.SESSION_HANDLE_INVALID;
+            }
+            CK_SESSION_INFO info = (CK_SESSION_INFO) args[1];
+            info.slotID = sessions.get(args[0]);
+            info.state = loggedIn ? CKS.RW_USER_FUNCTIONS : CKS.RW_PUBLIC_SESSION;
+            info.flags = CK_SESSION_INFO.CKF_RW_SESSION | CK_SESSION_INFO.CKF_SERIAL_SESSION;
+        }
+        return CKR.OK;
+    }
+}
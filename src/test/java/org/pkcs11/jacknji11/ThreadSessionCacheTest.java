@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ThreadSessionCache} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class ThreadSessionCacheTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    /** @return session opened by a new thread that has died when this returns */
+    private long onOtherThread(final ThreadSessionCache cache) throws InterruptedException {
+        final long[] session = new long[1];
+        Thread t = new Thread() {
+            public void run() {
+                session[0] = cache.getSession();
+            }
+        };
+        t.start();
+        t.join();
+        return session[0];
+    }
+
+    @Test
+    public void testPerThread() throws Exception {
+        ThreadSessionCache cache = new ThreadSessionCache(ce, 1, StubToken.PIN);
+        assertEquals(0, token.sessions.size());
+        long session = cache.getSession();
+        assertEquals(session, cache.getSession());
+        assertTrue(token.loggedIn);
+        assertEquals(1, token.calls("C_OpenSession"));
+
+        long other = onOtherThread(cache);
+        assertNotEquals(session, other);
+        assertEquals(2, cache.getSize());
+
+        // dead thread's session is closed by reclaim, ours is kept
+        assertEquals(1, cache.reclaim());
+        assertEquals(1, cache.getSize());
+        assertEquals(java.util.Collections.singleton(session), token.sessions.keySet());
+
+        cache.close();
+        assertEquals(0, token.sessions.size());
+        try {
+            cache.getSession();
+            fail("expected closed");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testMaxSessions() throws Exception {
+        final ThreadSessionCache cache = new ThreadSessionCache(ce, 1, null, CK_SESSION_INFO.CKF_RW_SESSION, 1);
+        long dead = onOtherThread(cache);
+        // cap reached but held by a dead thread, reclaimed on open
+        long session = cache.getSession();
+        assertEquals(1, cache.getSize());
+        assertEquals(java.util.Collections.singleton(session), token.sessions.keySet());
+        assertFalse(token.sessions.containsKey(dead));
+
+        final CKRException[] err = new CKRException[1];
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    cache.getSession();
+                } catch (CKRException e) {
+                    err[0] = e;
+                }
+            }
+        };
+        t.start();
+        t.join();
+        assertEquals(CKR.SESSION_COUNT, err[0].getCKR());
+        assertEquals(1, cache.getSize());
+        cache.close();
+    }
+
+    @Test
+    public void testResetClosesStale() throws Exception {
+        final ThreadSessionCache cache = new ThreadSessionCache(ce, 1, null);
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CountDownLatch reset = new CountDownLatch(1);
+        final long[] sessions = new long[2];
+        Thread t = new Thread() {
+            public void run() {
+                sessions[0] = cache.getSession();
+                opened.countDown();
+                try {
+                    reset.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                sessions[1] = cache.getSession();
+            }
+        };
+        t.start();
+        opened.await();
+        long before = cache.getSession();
+        cache.reset();
+        assertEquals(2, cache.reclaim());
+        // live threads' stale sessions are closed, each opens a new one on next use
+        assertFalse(token.sessions.containsKey(sessions[0]));
+        assertFalse(token.sessions.containsKey(before));
+        assertEquals(0, cache.getSize());
+        assertNotEquals(before, cache.getSession());
+        reset.countDown();
+        t.join();
+        assertNotEquals(sessions[0], sessions[1]);
+        assertTrue(token.sessions.containsKey(sessions[1]));
+        assertEquals(2, cache.getSize());
+        // thread has died
+        assertEquals(1, cache.reclaim());
+        assertEquals(1, cache.getSize());
+        cache.close();
+    }
+
+    @Test
+    public void testInvalidate() {
+        ThreadSessionCache cache = new ThreadSessionCache(ce, 1, null);
+        long session = cache.getSession();
+        cache.invalidate();
+        assertEquals(0, cache.getSize());
+        assertFalse(token.sessions.containsKey(session));
+        assertNotEquals(session, cache.getSession());
+
+        // failed open does not count against the cap
+        cache.invalidate();
+        token.fail("C_OpenSession", CKR.DEVICE_ERROR);
+        try {
+            cache.getSession();
+            fail("expected DEVICE_ERROR");
+        } catch (CKRException e) {
+            assertEquals(CKR.DEVICE_ERROR, e.getCKR());
+        }
+        assertEquals(0, cache.getSize());
+        cache.close();
+    }
+
+    @Test
+    public void testTokenMax() {
+        CK_TOKEN_INFO info = new CK_TOKEN_INFO();
+        info.ulMaxSessionCount = CK.EFFECTIVELY_INFINITE;
+        info.ulMaxRwSessionCount = CK.UNAVAILABLE_INFORMATION;
+        assertEquals(Integer.MAX_VALUE, SessionOpener.maxSessions(info, CK_SESSION_INFO.CKF_RW_SESSION));
+        info.ulMaxSessionCount = 0xffffffffL;
+        info.ulMaxRwSessionCount = 4;
+        assertEquals(4, SessionOpener.maxSessions(info, CK_SESSION_INFO.CKF_RW_SESSION));
+        assertEquals(Integer.MAX_VALUE, SessionOpener.maxSessions(info, 0));
+    }
+
+    @Test
+    public void testExecuteRecovers() throws Exception {
+        ThreadSessionCache cache = new ThreadSessionCache(ce, 1, StubToken.PIN);
+        SessionCall<Long> info = session -> {
+            ce.GetSessionInfo(session, new CK_SESSION_INFO());
+            return session;
+        };
+        long before = cache.execute(info);
+        token.restart();
+        long after = cache.execute(info);
+        assertNotEquals(before, after);
+        assertEquals(after, cache.getSession());
+        assertTrue(token.loggedIn);
+        assertEquals(1, cache.getSize());
+        assertEquals(2, token.calls("C_Login"));
+
+        // lost again on retry is not retried a second time
+        token.fail("C_GetSessionInfo", CKR.SESSION_CLOSED);
+        token.fail("C_GetSessionInfo", CKR.SESSION_CLOSED);
+        try {
+            cache.execute(info);
+            fail("expected SESSION_CLOSED");
+        } catch (CKRException e) {
+            assertEquals(CKR.SESSION_CLOSED, e.getCKR());
+        }
+        cache.close();
+        assertEquals(0, token.sessions.size());
+    }
+}
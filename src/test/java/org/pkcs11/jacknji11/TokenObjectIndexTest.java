@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TokenObjectIndex} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class TokenObjectIndexTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+
+    private void addObject(long object, long cko, String label, byte[] id) {
+        Map<Long, byte[]> values = new HashMap<Long, byte[]>();
+        values.put(CKA.CLASS, ULong.ulong2b(cko));
+        values.put(CKA.LABEL, Buf.c2b(label));
+        values.put(CKA.ID, id);
+        values.put(CKA.SIGN, new byte[] {(byte) (cko == CKO.PRIVATE_KEY ? 1 : 0)});
+        token.attributes.put(object, values);
+    }
+
+    private int searches() {
+        return token.calls("C_FindObjectsInit");
+    }
+
+    @Test
+    public void testIndex() {
+        addObject(11, CKO.PRIVATE_KEY, "a", new byte[] {1});
+        addObject(12, CKO.PUBLIC_KEY, "a", new byte[] {1});
+        addObject(13, CKO.SECRET_KEY, "b", new byte[] {2});
+        SessionPool pool = new SessionPool(ce, 1, null, 1, 2, 5000);
+        TokenObjectIndex index = new TokenObjectIndex(pool);
+        try {
+            assertEquals(2, index.findByLabel("a").size());
+            TokenObjectIndex.Entry key = index.findByLabel("a", CKO.PRIVATE_KEY).get(0);
+            assertEquals(11, key.getHandle());
+            assertTrue(key.is(CKA.SIGN));
+            assertFalse(key.is(CKA.DERIVE));
+            assertNull(key.getKeyType());
+            assertEquals(2, index.findById(new byte[] {1}).size());
+            assertEquals(12, index.findById(new byte[] {1}, CKO.PUBLIC_KEY).get(0).getHandle());
+            assertEquals("b", index.get(13).getLabel());
+            assertEquals(0, index.findByLabel("c").size());
+            assertEquals(3, index.size());
+            assertEquals(1, searches());
+
+            // changes through ce read only the changed object again
+            long session = ce.OpenSession(1);
+            token.attributes.get(13L).put(CKA.LABEL, Buf.c2b("d"));
+            ce.SetAttributeValue(session, 13, new CKA(CKA.LABEL, "d"));
+            int reads = token.calls("C_GetAttributeValue");
+            assertEquals(0, index.findByLabel("b").size());
+            assertEquals(13, index.findByLabel("d").get(0).getHandle());
+            assertTrue(token.calls("C_GetAttributeValue") > reads);
+            token.attributes.remove(12L);
+            ce.DestroyObject(session, 12);
+            assertEquals(1, index.findByLabel("a").size());
+            assertNull(index.get(12));
+            assertEquals(1, searches());
+
+            // login changes visible objects, full refresh
+            addObject(14, CKO.PRIVATE_KEY, "c", new byte[] {3});
+            ce.LoginUser(session, StubToken.PIN);
+            assertEquals(1, index.findByLabel("c").size());
+            assertEquals(2, searches());
+
+            token.attributes.remove(14L);
+            index.slotEvent(1, false);
+            assertEquals(0, index.findByLabel("c").size());
+            assertEquals(3, searches());
+
+            // changes on other slots are ignored
+            index.objectsChanged(2);
+            index.size();
+            assertEquals(3, searches());
+        } finally {
+            index.close();
+            pool.close();
+        }
+        ce.DestroyObject(ce.OpenSession(1), 11);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testConcurrentRefresh() throws Exception {
+        addObject(11, CKO.PRIVATE_KEY, "a", new byte[] {1});
+        SessionPool pool = new SessionPool(ce, 1, null, 1, 4, 5000);
+        TokenObjectIndex index = new TokenObjectIndex(pool);
+        try {
+            assertEquals(1, index.size());
+            index.objectsChanged(1);
+            Thread[] threads = new Thread[4];
+            synchronized (index.refresh) {
+                // all threads see the index is stale and wait for the lock
+                for (int i = 0; i < threads.length; i++) {
+                    threads[i] = new Thread(index::size);
+                    threads[i].start();
+                }
+                for (Thread t : threads) {
+                    while (t.getState() != Thread.State.BLOCKED) {
+                        Thread.sleep(1);
+                    }
+                }
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertEquals(2, searches());
+        } finally {
+            index.close();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testUpdateErrors() {
+        addObject(11, CKO.PRIVATE_KEY, "a", new byte[] {1});
+        addObject(12, CKO.PUBLIC_KEY, "b", new byte[] {2});
+        SessionPool pool = new SessionPool(ce, 1, null, 1, 2, 5000);
+        TokenObjectIndex index = new TokenObjectIndex(pool);
+        try {
+            assertEquals(2, index.size());
+            long session = ce.OpenSession(1);
+
+            // an object that could not be read is kept and read again
+            ce.SetAttributeValue(session, 11, new CKA(CKA.LABEL, "a"));
+            token.fail("C_GetAttributeValue", CKR.DEVICE_ERROR);
+            try {
+                index.get(11);
+                fail("expected CKRException");
+            } catch (CKRException e) {
+                assertEquals(CKR.DEVICE_ERROR, e.getCKR());
+            }
+            int reads = token.calls("C_GetAttributeValue");
+            assertEquals(11, index.findByLabel("a").get(0).getHandle());
+            assertTrue(token.calls("C_GetAttributeValue") > reads);
+
+            // an object that is no longer valid is removed
+            token.attributes.remove(12L);
+            ce.SetAttributeValue(session, 12, new CKA(CKA.LABEL, "b"));
+            assertNull(index.get(12));
+            assertEquals(1, index.size());
+            assertEquals(1, searches());
+        } finally {
+            index.close();
+            pool.close();
+        }
+    }
+}
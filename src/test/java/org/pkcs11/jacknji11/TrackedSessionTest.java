@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TrackedSession} against a {@link StubToken}, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class TrackedSessionTest {
+    private final StubToken token = new StubToken();
+    private final CryptokiE ce = token.ce();
+    private final CKM mechanism = new CKM(CKM.SHA256_RSA_PKCS);
+
+    @Test
+    public void testTracking() {
+        TrackedSession s = new TrackedSession(ce, ce.OpenSession(1));
+        s.SignInit(mechanism, 2);
+        s.FindObjectsInit(new CKA(CKA.LABEL, "k"));
+        assertEquals(EnumSet.of(TrackedSession.Operation.FIND, TrackedSession.Operation.SIGN), s.getActive());
+        s.SignUpdate(new byte[8]);
+        s.SignFinal();
+        s.FindObjectsFinal();
+        assertTrue(s.isIdle());
+
+        // error in update ends the operation, BUFFER_TOO_SMALL does not
+        s.EncryptInit(mechanism, 2);
+        token.fail("C_EncryptUpdate", CKR.BUFFER_TOO_SMALL);
+        try {
+            s.EncryptUpdate(new byte[8]);
+            fail("expected BUFFER_TOO_SMALL");
+        } catch (CKRException e) {
+        }
+        assertEquals(EnumSet.of(TrackedSession.Operation.ENCRYPT), s.getActive());
+        token.fail("C_EncryptUpdate", CKR.DATA_LEN_RANGE);
+        try {
+            s.EncryptUpdate(new byte[8]);
+            fail("expected DATA_LEN_RANGE");
+        } catch (CKRException e) {
+        }
+        assertTrue(s.isIdle());
+
+        // failed init is not active
+        token.fail("C_DigestInit", CKR.MECHANISM_INVALID);
+        try {
+            s.DigestInit(mechanism);
+            fail("expected MECHANISM_INVALID");
+        } catch (CKRException e) {
+        }
+        assertTrue(s.isIdle());
+    }
+
+    @Test
+    public void testTerminate() {
+        TrackedSession s = new TrackedSession(ce, ce.OpenSession(1));
+        s.FindObjectsInit();
+        s.VerifyInit(mechanism, 2);
+        token.fail("C_VerifyFinal", CKR.SIGNATURE_LEN_RANGE);
+        assertTrue(s.terminate());
+        assertTrue(s.isIdle());
+        assertEquals(1, token.calls("C_FindObjectsFinal"));
+        assertEquals(1, token.calls("C_VerifyFinal"));
+
+        s.DecryptInit(mechanism, 2);
+        token.fail("C_DecryptFinal", CKR.DEVICE_ERROR);
+        assertFalse(s.terminate());
+    }
+
+    @Test
+    public void testLease() {
+        SessionPool pool = new SessionPool(ce, 1, StubToken.PIN, 1, 1, 1000);
+        long session;
+        try (SessionPool.Lease lease = pool.borrow()) {
+            session = lease.getSession();
+            lease.getTracked().SignInit(mechanism, 2);
+            // exception before Sign leaves SIGN active
+        }
+        assertEquals(2, token.calls("C_SignFinal"));
+        try (SessionPool.Lease lease = pool.borrow()) {
+            assertEquals(session, lease.getSession());
+            lease.getTracked().SignInit(mechanism, 2);
+            token.fail("C_SignFinal", CKR.DEVICE_ERROR);
+        }
+        // could not terminate, session closed
+        assertFalse(token.sessions.containsKey(session));
+        assertEquals(0, pool.getSize());
+        pool.close();
+    }
+}
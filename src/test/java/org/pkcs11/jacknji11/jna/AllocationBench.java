@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11.jna;
+
+import java.lang.management.ManagementFactory;
+
+import org.pkcs11.jacknji11.C;
+import org.pkcs11.jacknji11.CK_SESSION_INFO;
+import org.pkcs11.jacknji11.Cryptoki;
+import org.pkcs11.jacknji11.LongRef;
+import org.pkcs11.jacknji11.NativePointer;
+import org.pkcs11.jacknji11.NativeProvider;
+import org.pkcs11.jacknji11.jffi.JFFI;
+
+/**
+ * Measures heap allocation and time per C_Sign call for the JNA and JFFI providers.
+ * C_Sign is called without C_SignInit so no key or login is needed, the
+ * provider still does all of its marshalling before the token returns
+ * CKR_OPERATION_NOT_INITIALIZED.  Each provider is called directly, through
+ * {@link Cryptoki} with its default metrics proxy, and through a
+ * {@link Cryptoki} built without metrics.  Not run as part of the tests:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) org.pkcs11.jacknji11.jna.AllocationBench [library] [slot]
+ * </pre>
+ * Library and slot default to JACKNJI11_PKCS11_LIB_PATH and JACKNJI11_TEST_TESTSLOT.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class AllocationBench {
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    public static void main(String[] args) {
+        String lib = args.length > 0 ? args[0] : C.getLibraryName();
+        String slotEnv = System.getenv("JACKNJI11_TEST_TESTSLOT");
+        long slot = args.length > 1 ? Long.parseLong(args[1])
+            : slotEnv != null && slotEnv.length() > 0 ? Long.parseLong(slotEnv) : 0;
+
+        run("JNA", new JNA(lib), slot);
+        run("JNADirect", new JNADirect(lib), slot);
+        if (com.sun.jna.NativeLong.SIZE == 8) {
+            run("JNALP64", new JNALP64(lib), slot);
+        }
+        run("JFFI", new JFFI(lib), slot);
+    }
+
+    /** One C_Sign call through the layer being measured. */
+    private interface Signer {
+        long sign(long session, byte[] data, byte[] sig, LongRef sigLen);
+    }
+
+    private static void run(String name, NativeProvider provider, long slot) {
+        Cryptoki cryptoki = new Cryptoki(provider);
+        Cryptoki direct = new Cryptoki(provider, false);
+        cryptoki.Initialize();
+        LongRef session = new LongRef();
+        cryptoki.OpenSession(slot, CK_SESSION_INFO.CKF_SERIAL_SESSION, new NativePointer(0), null, session);
+        try {
+            measure(name, "provider", session.value, (s, d, sig, l) -> provider.C_Sign(s, d, d.length, sig, l));
+            measure(name, "Cryptoki", session.value, cryptoki::Sign);
+            measure(name, "no metrics", session.value, direct::Sign);
+        } finally {
+            cryptoki.CloseSession(session.value);
+            cryptoki.Finalize();
+        }
+    }
+
+    private static void measure(String name, String layer, long session, Signer signer) {
+        byte[] data = new byte[32];
+        byte[] sig = new byte[256];
+        LongRef sigLen = new LongRef();
+        loop(signer, session, data, sig, sigLen, WARMUP);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long bytes = mx.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        long rv = loop(signer, session, data, sig, sigLen, ITERATIONS);
+        long nanos = System.nanoTime() - start;
+        bytes = mx.getThreadAllocatedBytes(tid) - bytes;
+        System.out.printf("%-10s %-10s C_Sign rv=0x%08x %6.1f bytes/call %6.0f ns/call%n",
+            name, layer, rv, (double) bytes / ITERATIONS, (double) nanos / ITERATIONS);
+    }
+
+    private static long loop(Signer signer, long session, byte[] data, byte[] sig, LongRef sigLen, int n) {
+        long rv = 0;
+        for (int i = 0; i < n; i++) {
+            sigLen.value = sig.length;
+            rv = signer.sign(session, data, sig, sigLen);
+        }
+        return rv;
+    }
+}
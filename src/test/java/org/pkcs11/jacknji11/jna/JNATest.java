@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2026 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11.jna;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.pkcs11.jacknji11.CKA;
+import org.pkcs11.jacknji11.CKM;
+import org.pkcs11.jacknji11.CKO;
+import org.pkcs11.jacknji11.LongRef;
+
+import com.sun.jna.Pointer;
+
+/**
+ * Tests {@link JNA} with a stub native interface, no token required.
+ *
+ * @author Joel Hockey (joel.hockey@gmail.com)
+ */
+public class JNATest {
+
+    @Test
+    public void testAddress() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(8);
+        buf.position(2);
+        assertEquals(JNA.address(buf) - 2, JNA.address(buf.duplicate().position(0)));
+        assertEquals(0, JNA.address(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddressHeap() {
+        JNA.address(ByteBuffer.allocate(1));
+    }
+
+    @Test
+    public void testGenerateKeyPairReleasesTemplates() {
+        JNANativeI stub = (JNANativeI) Proxy.newProxyInstance(JNANativeI.class.getClassLoader(),
+            new Class<?>[] {JNANativeI.class}, (proxy, method, args) -> 0);
+        JNA jna = new JNA(stub);
+        CKA[] pub = {new CKA(CKA.CLASS, CKO.PUBLIC_KEY)};
+        Template t = new Template(pub);
+        Pointer block = t.getPointer();
+        t.release();
+
+        CKA bad = CKA.allocate(CKA.VALUE, 8);
+        bad.ulValueLen = 16;
+        try {
+            jna.C_GenerateKeyPair(1, new CKM(CKM.RSA_PKCS_KEY_PAIR_GEN), pub, pub.length,
+                new CKA[] {bad}, 1, new LongRef(), new LongRef());
+            fail("expected exception writing 16 bytes from an 8 byte value");
+        } catch (RuntimeException expected) {
+        }
+        // public template handed the thread's block back
+        t = new Template(pub);
+        assertSame(block, t.getPointer());
+        t.release();
+    }
+}
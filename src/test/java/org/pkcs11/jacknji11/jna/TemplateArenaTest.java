@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2011 Joel Hockey (joel.hockey@gmail.com). All rights reserved.
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.pkcs11.jacknji11.jna;
+
+import org.junit.Test;
+import org.pkcs11.jacknji11.CKA;
+import org.pkcs11.jacknji11.CKO;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TemplateArenaTest {
+    private static final int CK_ATTRIBUTE_SIZE = NativeLong.SIZE + Native.POINTER_SIZE + NativeLong.SIZE;
+
+    private static CKA[] template() {
+        return new CKA[] {
+            new CKA(CKA.CLASS, CKO.PRIVATE_KEY),
+            new CKA(CKA.TOKEN, true),
+            new CKA(CKA.LABEL, "label"),
+            new CKA(CKA.ID, "id"),
+            CKA.allocate(CKA.MODULUS, 512),
+            CKA.allocate(CKA.PUBLIC_EXPONENT, 8),
+        };
+    }
+
+    @Test
+    public void testContiguousLayout() {
+        TemplateArena arena = new TemplateArena();
+        CKA[] templ = template();
+        Template t = new Template(templ, arena);
+        try {
+            Pointer base = t.getPointer();
+            long start = Pointer.nativeValue(base);
+            long end = start + ((Memory) base).size();
+            for (int i = 0; i < templ.length; i++) {
+                long p = Pointer.nativeValue(base.getPointer(i * CK_ATTRIBUTE_SIZE + NativeLong.SIZE));
+                assertTrue(p >= start + templ.length * CK_ATTRIBUTE_SIZE && p < end);
+            }
+            assertArrayEquals("label".getBytes(), base.getPointer(2 * CK_ATTRIBUTE_SIZE + NativeLong.SIZE).getByteArray(0, 5));
+        } finally {
+            t.release();
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        TemplateArena arena = new TemplateArena();
+        CKA[] templ = template();
+        Template t = new Template(templ, arena);
+        try {
+            // emulate the token writing 3 bytes into MODULUS
+            int offset = 4 * CK_ATTRIBUTE_SIZE;
+            t.getPointer().getPointer(offset + NativeLong.SIZE).write(0, new byte[] {1, 2, 3}, 0, 3);
+            if (NativeLong.SIZE == 4) {
+                t.getPointer().setInt(offset + NativeLong.SIZE + Native.POINTER_SIZE, 3);
+            } else {
+                t.getPointer().setLong(offset + NativeLong.SIZE + Native.POINTER_SIZE, 3);
+            }
+            t.update();
+        } finally {
+            t.release();
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, templ[4].getValue());
+        assertEquals("label", templ[2].getValueStr());
+    }
+
+    @Test
+    public void testReuse() {
+        TemplateArena arena = new TemplateArena();
+        Template t1 = new Template(template(), arena);
+        Pointer p1 = t1.getPointer();
+        // second template while the first is leased gets its own block
+        Template t2 = new Template(template(), arena);
+        assertNotSame(p1, t2.getPointer());
+        t2.release();
+        t1.release();
+        t1.release();
+
+        Template t3 = new Template(template(), arena);
+        assertSame(p1, t3.getPointer());
+        t3.release();
+        assertEquals(2, arena.getAllocations());
+        assertEquals(3, arena.getLeases());
+    }
+
+    @Test
+    public void testReusedAcrossCalls() {
+        int calls = 1000;
+        TemplateArena arena = new TemplateArena();
+        for (int i = 0; i < calls; i++) {
+            Template t = new Template(template(), arena);
+            t.update();
+            t.release();
+        }
+        assertEquals(1, arena.getAllocations());
+        assertEquals(calls, arena.getLeases());
+    }
+
+    @Test
+    public void testReleasedOnError() {
+        TemplateArena arena = new TemplateArena();
+        Pointer p = new Template(template(), arena).getPointer();
+        arena.release((Memory) p);
+
+        CKA bad = CKA.allocate(CKA.VALUE, 8);
+        bad.ulValueLen = 16;
+        try {
+            new Template(new CKA[] {new CKA(CKA.CLASS, CKO.SECRET_KEY), bad}, arena);
+            fail("expected exception writing 16 bytes from an 8 byte value");
+        } catch (RuntimeException expected) {
+        }
+        // block is not left leased
+        Template t = new Template(template(), arena);
+        assertSame(p, t.getPointer());
+        t.release();
+        assertEquals(1, arena.getAllocations());
+    }
+}